@@ -0,0 +1,52 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+import org.sqlite.core.panama.AggregateState;
+import org.sqlite.core.panama.FunctionArgs;
+import org.sqlite.core.panama.FunctionResult;
+
+/**
+ * A user-defined aggregate function whose state per group lives in {@link #slots()} primitive
+ * slots of memory SQLite allocates for the group, rather than in the function object. Groups are
+ * independent of each other, so one instance serves any number of groups, statements and
+ * connections at once. Eg. an average:
+ *
+ * <pre>
+ *      Function.create(conn, "avg2", 1, Function.FLAG_DETERMINISTIC, new AggregateFunction() {
+ *          public int slots() { return 2; }
+ *
+ *          public void xStep(AggregateState state, FunctionArgs args) throws SQLException {
+ *              state.addDouble(0, args.getDouble(0));
+ *              state.addLong(1, 1);
+ *          }
+ *
+ *          public void xFinal(AggregateState state, FunctionResult result) throws SQLException {
+ *              if (state.getLong(1) == 0) result.setNull();
+ *              else result.setDouble(state.getDouble(0) / state.getLong(1));
+ *          }
+ *      });
+ * </pre>
+ *
+ * @see Function#create(java.sql.Connection, String, int, int, AggregateFunction)
+ * @see WindowFunction
+ */
+public interface AggregateFunction {
+    /** @return The number of 8 byte slots of state per group; all start as 0. */
+    int slots();
+
+    /**
+     * Adds a row to the group.
+     *
+     * @param state The state of the group.
+     * @param args The arguments for the row.
+     */
+    void xStep(AggregateState state, FunctionArgs args) throws SQLException;
+
+    /**
+     * Sets the result of the group. It is also called for an empty group, with zeroed slots.
+     *
+     * @param state The state of the group, freed once this returns.
+     * @param result Receives the result; it is NULL if none is set.
+     */
+    void xFinal(AggregateState state, FunctionResult result) throws SQLException;
+}
@@ -71,6 +71,33 @@ public abstract class Collation {
         }
     }
 
+    /**
+     * Registers a collation that compares UTF-8 bytes without decoding them.
+     *
+     * @param conn The connection.
+     * @param name The name of the collation.
+     * @param c The collation to register, e.g. one of {@link Utf8Collations}.
+     */
+    public static final void create(Connection conn, String name, Utf8Collation c)
+            throws SQLException {
+        if (conn == null || !(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        if (conn.isClosed()) {
+            throw new SQLException("connection closed");
+        }
+        if (name == null || name.length() > 255) {
+            throw new SQLException("invalid collation name: '" + name + "'");
+        }
+        if (c == null) {
+            throw new SQLException("collation must not be null");
+        }
+
+        if (((SQLiteConnection) conn).getDatabase().create_collation(name, c) != Codes.SQLITE_OK) {
+            throw new SQLException("error creating collation");
+        }
+    }
+
     /**
      * Removes a named collation from the given connection.
      *
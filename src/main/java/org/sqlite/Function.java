@@ -17,8 +17,13 @@ package org.sqlite;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
 import org.sqlite.core.Codes;
 import org.sqlite.core.DB;
+import org.sqlite.core.panama.FunctionArgs;
 
 /**
  * Provides an interface for creating SQLite user-defined functions.
@@ -54,18 +59,34 @@ public abstract class Function {
      */
     public static final int FLAG_DETERMINISTIC = 0x800;
 
+    /**
+     * Flag that marks a function as having no side effects and not leaking information, so that
+     * it may be used in views, triggers and schema structures of untrusted databases.
+     */
+    public static final int FLAG_INNOCUOUS = 0x200000;
+
+    /** Flag that restricts a function to top-level SQL, outside of views, triggers and schema. */
+    public static final int FLAG_DIRECTONLY = 0x80000;
+
     private SQLiteConnection conn;
     private DB db;
 
     long context = 0; // pointer sqlite3_context*
     long value = 0; // pointer sqlite3_value**
     int args = 0;
+    private FunctionArgs arguments; // argument cursor of the call, Panama backend only
 
     public void setCallback(long context, int args, long value)
+    {
+        setCallback(context, args, value, null);
+    }
+
+    public void setCallback(long context, int args, long value, FunctionArgs arguments)
     {
         this.context = context;
         this.args = args;
         this.value = value;
+        this.arguments = arguments;
     }
 
     /**
@@ -126,6 +147,156 @@ public abstract class Function {
         }
     }
 
+    /**
+     * Registers a scalar function that gets its arguments and result per call. Unlike a {@link
+     * Function} subclass, it keeps no state between calls, so the same instance runs concurrently
+     * on every connection it is registered with.
+     *
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param nArgs The number of arguments that the function takes, or -1 for any.
+     * @param flags Extra flags to pass, such as {@link #FLAG_DETERMINISTIC} and {@link
+     *     #FLAG_INNOCUOUS}
+     * @param f The function to register.
+     */
+    public static final void create(
+            Connection conn, String name, int nArgs, int flags, ScalarFunction f)
+            throws SQLException {
+        DB db = database(conn, name, nArgs);
+        if (f == null) {
+            throw new SQLException("function must not be null");
+        }
+        if (db.create_function(name, f, nArgs, flags) != Codes.SQLITE_OK) {
+            throw new SQLException("error creating function");
+        }
+    }
+
+    /**
+     * Registers an aggregate function that keeps its state per group in memory SQLite allocates
+     * for the group. A {@link WindowFunction} can also be used as an aggregate window function.
+     *
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param nArgs The number of arguments that the function takes, or -1 for any.
+     * @param flags Extra flags to pass, such as {@link #FLAG_DETERMINISTIC} and {@link
+     *     #FLAG_INNOCUOUS}
+     * @param f The function to register.
+     */
+    public static final void create(
+            Connection conn, String name, int nArgs, int flags, AggregateFunction f)
+            throws SQLException {
+        DB db = database(conn, name, nArgs);
+        if (f == null) {
+            throw new SQLException("function must not be null");
+        }
+        if (f.slots() < 0) {
+            throw new SQLException("invalid number of slots: " + f.slots());
+        }
+        if (db.create_function(name, f, nArgs, flags) != Codes.SQLITE_OK) {
+            throw new SQLException("error creating function");
+        }
+    }
+
+    /**
+     * Registers a function of one INTEGER argument. It returns NULL for a NULL argument.
+     *
+     * @see #create(Connection, String, int, int, ScalarFunction)
+     */
+    public static final void createLong(
+            Connection conn, String name, int flags, LongUnaryOperator f) throws SQLException {
+        create(
+                conn,
+                name,
+                1,
+                flags,
+                (args, result) -> {
+                    if (args.isNull(0)) {
+                        result.setNull();
+                    } else {
+                        result.setLong(f.applyAsLong(args.getLong(0)));
+                    }
+                });
+    }
+
+    /**
+     * Registers a function of two INTEGER arguments. It returns NULL if either argument is NULL.
+     *
+     * @see #create(Connection, String, int, int, ScalarFunction)
+     */
+    public static final void createLong(
+            Connection conn, String name, int flags, LongBinaryOperator f) throws SQLException {
+        create(
+                conn,
+                name,
+                2,
+                flags,
+                (args, result) -> {
+                    if (args.isNull(0) || args.isNull(1)) {
+                        result.setNull();
+                    } else {
+                        result.setLong(f.applyAsLong(args.getLong(0), args.getLong(1)));
+                    }
+                });
+    }
+
+    /**
+     * Registers a function of one REAL argument. It returns NULL for a NULL argument.
+     *
+     * @see #create(Connection, String, int, int, ScalarFunction)
+     */
+    public static final void createDouble(
+            Connection conn, String name, int flags, DoubleUnaryOperator f) throws SQLException {
+        create(
+                conn,
+                name,
+                1,
+                flags,
+                (args, result) -> {
+                    if (args.isNull(0)) {
+                        result.setNull();
+                    } else {
+                        result.setDouble(f.applyAsDouble(args.getDouble(0)));
+                    }
+                });
+    }
+
+    /**
+     * Registers a function of two REAL arguments. It returns NULL if either argument is NULL.
+     *
+     * @see #create(Connection, String, int, int, ScalarFunction)
+     */
+    public static final void createDouble(
+            Connection conn, String name, int flags, DoubleBinaryOperator f) throws SQLException {
+        create(
+                conn,
+                name,
+                2,
+                flags,
+                (args, result) -> {
+                    if (args.isNull(0) || args.isNull(1)) {
+                        result.setNull();
+                    } else {
+                        result.setDouble(f.applyAsDouble(args.getDouble(0), args.getDouble(1)));
+                    }
+                });
+    }
+
+    private static DB database(Connection conn, String name, int nArgs) throws SQLException {
+        if (conn == null || !(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        if (conn.isClosed()) {
+            throw new SQLException("connection closed");
+        }
+        if (nArgs < -1 || nArgs > 127) {
+            throw new SQLException("invalid args provided: " + nArgs);
+        }
+        if (name == null || name.length() > 255) {
+            throw new SQLException("invalid function name: '" + name + "'");
+        }
+        return ((SQLiteConnection) conn).getDatabase();
+    }
+
     /**
      * Removes a named function from the given connection.
      *
@@ -176,6 +347,17 @@ public abstract class Function {
         return value;
     }
 
+    /**
+     * Returns the arguments of the call in progress, for reading them without the checks and the
+     * lock of <tt>value_&lt;type&gt;(int)</tt>. Only valid until <tt>xFunc()</tt> returns.
+     *
+     * @return The arguments, or null outside of a call or if the connection does not use the
+     *     Panama backend.
+     */
+    public final FunctionArgs arguments() {
+        return arguments;
+    }
+
     /**
      * Called by <tt>xFunc</tt> to return a value.
      *
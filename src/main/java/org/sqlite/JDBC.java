@@ -103,4 +103,15 @@ public class JDBC implements Driver {
         url = url.trim();
         return new JDBC4Connection(url, extractAddress(url), prop);
     }
+
+    /**
+     * Creates a new database connection with a compiled plan.
+     *
+     * @param plan The plan to open the database with.
+     * @return A Connection object that represents a connection to the database of the plan.
+     * @throws SQLException
+     */
+    static SQLiteConnection createConnection(SQLiteOpenPlan plan) throws SQLException {
+        return new JDBC4Connection(plan);
+    }
 }
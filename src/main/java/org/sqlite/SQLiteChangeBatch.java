@@ -0,0 +1,68 @@
+package org.sqlite;
+
+/**
+ * The rows one committed transaction changed, in the order it changed them, as published by
+ * {@link SQLiteConnection#publishChanges(java.util.concurrent.Executor, int)}.
+ *
+ * <p>A batch is immutable and holds its changes in parallel arrays rather than as an object per
+ * row. Database and table names are shared by every change of the same table.
+ */
+public final class SQLiteChangeBatch {
+    private final int size;
+    private final byte[] types;
+    private final String[] databases;
+    private final String[] tables;
+    private final long[] rowIds;
+
+    /**
+     * Created by the driver; the arrays are owned by the batch and must not be changed afterwards.
+     *
+     * @param size The number of changes.
+     * @param types The sqlite3_update_hook operation codes of the changes.
+     * @param databases The database names of the changes.
+     * @param tables The table names of the changes.
+     * @param rowIds The rowids of the changed rows.
+     */
+    public SQLiteChangeBatch(
+            int size, byte[] types, String[] databases, String[] tables, long[] rowIds) {
+        this.size = size;
+        this.types = types;
+        this.databases = databases;
+        this.tables = tables;
+        this.rowIds = rowIds;
+    }
+
+    /** @return The number of changes in the batch. */
+    public int size() {
+        return size;
+    }
+
+    public SQLiteUpdateListener.Type type(int index) {
+        return SQLiteUpdateListener.Type.of(types[check(index)]);
+    }
+
+    public String database(int index) {
+        return databases[check(index)];
+    }
+
+    public String table(int index) {
+        return tables[check(index)];
+    }
+
+    public long rowId(int index) {
+        return rowIds[check(index)];
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                    "change " + index + " out of bounds [0," + size + ")");
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteChangeBatch[" + size + " changes]";
+    }
+}
@@ -0,0 +1,50 @@
+package org.sqlite;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import org.sqlite.core.DB;
+
+/**
+ * Publishes the rows each committed transaction of a connection changed, as one {@link
+ * SQLiteChangeBatch} per transaction. Unlike {@link SQLiteUpdateListener}s, subscribers run on the
+ * executor, not inside SQLite's hooks on the writing thread; the hooks only record each change
+ * into a reused buffer. The changes of rolled back transactions are never published.
+ *
+ * <p>A batch is submitted once its COMMIT returned, by the committing thread after it released the
+ * connection. Every subscriber buffers up to the given number of batches. While one of them is
+ * full, that thread blocks until the subscriber requests more. Changes undone by {@code ROLLBACK
+ * TO} a savepoint are still published with their transaction, as SQLite reports no hook for them.
+ *
+ * <p>Closing the publisher, or the connection, completes its subscribers.
+ *
+ * @see SQLiteConnection#publishChanges(Executor, int)
+ */
+public final class SQLiteChangePublisher
+        implements Flow.Publisher<SQLiteChangeBatch>, AutoCloseable {
+    private final DB db;
+    private final SubmissionPublisher<SQLiteChangeBatch> publisher;
+
+    SQLiteChangePublisher(DB db, Executor executor, int maxBufferedBatches, int capacity) {
+        this.db = db;
+        this.publisher = new SubmissionPublisher<>(executor, maxBufferedBatches);
+        db.addChangePublisher(publisher, capacity);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SQLiteChangeBatch> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /** @return The number of subscribers that have not cancelled or been completed. */
+    public int getNumberOfSubscribers() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /** Stops recording changes and completes the subscribers once they received every batch. */
+    @Override
+    public void close() {
+        db.removeChangePublisher(publisher);
+        publisher.close();
+    }
+}
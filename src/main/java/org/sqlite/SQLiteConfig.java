@@ -29,9 +29,11 @@ import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 /**
  * SQLite Configuration
@@ -85,6 +87,9 @@ public class SQLiteConfig {
                         pragmaTable.getProperty(Pragma.SHARED_CACHE.pragmaName, "false")));
         // Enable URI filenames
         setOpenMode(SQLiteOpenMode.OPEN_URI);
+        if (isThreadConfined()) {
+            setThreadConfined(true);
+        }
 
         this.busyTimeout =
                 Integer.parseInt(pragmaTable.getProperty(Pragma.BUSY_TIMEOUT.pragmaName, "3000"));
@@ -112,12 +117,17 @@ public class SQLiteConfig {
      * @throws SQLException
      */
     public void apply(Connection conn) throws SQLException {
+        apply(conn, pragmaScript());
+    }
 
-        HashSet<String> pragmaParams = new HashSet<String>();
-        for (Pragma each : Pragma.values()) {
-            pragmaParams.add(each.pragmaName);
-        }
-
+    /**
+     * Configures a connection, running the pragmas of this configuration as one script.
+     *
+     * @param conn The connection to configure.
+     * @param pragmaScript The result of {@link #pragmaScript()}.
+     * @throws SQLException
+     */
+    void apply(Connection conn, String pragmaScript) throws SQLException {
         if (conn instanceof SQLiteConnection) {
             SQLiteConnection sqliteConn = (SQLiteConnection) conn;
             sqliteConn.setLimit(
@@ -160,63 +170,56 @@ public class SQLiteConfig {
                     parseLimitPragma(Pragma.LIMIT_PAGE_COUNT, DEFAULT_MAX_PAGE_COUNT));
         }
 
-        pragmaParams.remove(Pragma.OPEN_MODE.pragmaName);
-        pragmaParams.remove(Pragma.SHARED_CACHE.pragmaName);
-        pragmaParams.remove(Pragma.LOAD_EXTENSION.pragmaName);
-        pragmaParams.remove(Pragma.DATE_PRECISION.pragmaName);
-        pragmaParams.remove(Pragma.DATE_CLASS.pragmaName);
-        pragmaParams.remove(Pragma.DATE_STRING_FORMAT.pragmaName);
-        pragmaParams.remove(Pragma.PASSWORD.pragmaName);
-        pragmaParams.remove(Pragma.HEXKEY_MODE.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_ATTACHED.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_COLUMN.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_COMPOUND_SELECT.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_EXPR_DEPTH.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_FUNCTION_ARG.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_LENGTH.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_LIKE_PATTERN_LENGTH.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_SQL_LENGTH.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_TRIGGER_DEPTH.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_VARIABLE_NUMBER.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_VDBE_OP.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_WORKER_THREADS.pragmaName);
-        pragmaParams.remove(Pragma.LIMIT_PAGE_COUNT.pragmaName);
-
-        Statement stat = conn.createStatement();
-        try {
-            if (pragmaTable.containsKey(Pragma.PASSWORD.pragmaName)) {
-                String password = pragmaTable.getProperty(Pragma.PASSWORD.pragmaName);
-                if (password != null && !password.isEmpty()) {
-                    String hexkeyMode = pragmaTable.getProperty(Pragma.HEXKEY_MODE.pragmaName);
-                    String passwordPragma;
-                    if (HexKeyMode.SSE.name().equalsIgnoreCase(hexkeyMode)) {
-                        passwordPragma = "pragma hexkey = '%s'";
-                    } else if (HexKeyMode.SQLCIPHER.name().equalsIgnoreCase(hexkeyMode)) {
-                        passwordPragma = "pragma key = \"x'%s'\"";
-                    } else {
-                        passwordPragma = "pragma key = '%s'";
-                    }
-                    stat.execute(String.format(passwordPragma, password.replace("'", "''")));
-                    stat.execute("select 1 from sqlite_master");
-                }
+        String password = pragmaTable.getProperty(Pragma.PASSWORD.pragmaName);
+        if (password != null && !password.isEmpty()) {
+            String hexkeyMode = pragmaTable.getProperty(Pragma.HEXKEY_MODE.pragmaName);
+            String passwordPragma;
+            if (HexKeyMode.SSE.name().equalsIgnoreCase(hexkeyMode)) {
+                passwordPragma = "pragma hexkey = '%s'";
+            } else if (HexKeyMode.SQLCIPHER.name().equalsIgnoreCase(hexkeyMode)) {
+                passwordPragma = "pragma key = \"x'%s'\"";
+            } else {
+                passwordPragma = "pragma key = '%s'";
+            }
+            try (Statement stat = conn.createStatement()) {
+                stat.execute(String.format(passwordPragma, password.replace("'", "''")));
+                stat.execute("select 1 from sqlite_master");
             }
+        }
 
-            for (Object each : pragmaTable.keySet()) {
-                String key = each.toString();
-                if (!pragmaParams.contains(key)) {
-                    continue;
-                }
+        if (pragmaScript.isEmpty()) {
+            return;
+        }
+        if (conn instanceof SQLiteConnection) {
+            // one sqlite3_exec rather than a prepared statement per pragma
+            ((SQLiteConnection) conn).getDatabase()._exec(pragmaScript);
+        } else {
+            try (Statement stat = conn.createStatement()) {
+                stat.execute(pragmaScript);
+            }
+        }
+    }
 
-                String value = pragmaTable.getProperty(key);
-                if (value != null) {
-                    stat.execute(String.format("pragma %s=%s", key, value));
+    /**
+     * @return The pragmas of this configuration that are set by running them, as a script of
+     *     {@code pragma name=value;} statements; empty if there are none.
+     * @throws SQLException If a value is not a single number, name or string literal, so it could
+     *     end the pragma and run statements of its own.
+     */
+    String pragmaScript() throws SQLException {
+        StringBuilder script = new StringBuilder();
+        for (Map.Entry<Object, Object> each : pragmaTable.entrySet()) {
+            String key = each.getKey().toString();
+            if (each.getValue() != null && SCRIPT_PRAGMAS.contains(key)) {
+                String value = each.getValue().toString();
+                if (!PRAGMA_VALUE.matcher(value).matches()) {
+                    throw new SQLException("invalid value of pragma " + key + ": " + value);
                 }
-            }
-        } finally {
-            if (stat != null) {
-                stat.close();
+                script.append("pragma ").append(key).append('=').append(value);
+                script.append(';');
             }
         }
+        return script.toString();
     }
 
     /**
@@ -287,6 +290,26 @@ public class SQLiteConfig {
         return getBoolean(Pragma.LOAD_EXTENSION, "false");
     }
 
+    /**
+     * Checks if connections are confined to a single thread.
+     *
+     * @return True if turned on; false otherwise.
+     * @see #setThreadConfined(boolean)
+     */
+    public boolean isThreadConfined() {
+        return getBoolean(Pragma.THREAD_CONFINED, "false");
+    }
+
+    /**
+     * Checks if thread-confined connections verify the thread using them.
+     *
+     * @return True if turned on; false otherwise.
+     * @see #setCheckThreadConfinement(boolean)
+     */
+    public boolean isCheckThreadConfinement() {
+        return getBoolean(Pragma.CHECK_THREAD_CONFINEMENT, "false");
+    }
+
     /** @return The open mode flags. */
     public int getOpenModeFlags() {
         return openModeFlag;
@@ -321,6 +344,9 @@ public class SQLiteConfig {
         pragmaTable.setProperty(
                 Pragma.DATE_STRING_FORMAT.pragmaName,
                 defaultConnectionConfig.getDateStringFormat());
+        pragmaTable.setProperty(
+                Pragma.REWRITE_BATCHED_INSERTS.pragmaName,
+                Boolean.toString(defaultConnectionConfig.isRewriteBatchedInserts()));
 
         return pragmaTable;
     }
@@ -351,6 +377,50 @@ public class SQLiteConfig {
         }
     }
 
+    /**
+     * The pragmas set with a {@code pragma} statement; the others are open flags, limits or
+     * settings of the driver.
+     */
+    private static final Set<String> SCRIPT_PRAGMAS = new HashSet<String>();
+    /** A signed number, a name, or a quoted string or name: what SQLite takes as a pragma value. */
+    private static final Pattern PRAGMA_VALUE =
+            Pattern.compile(
+                    "[+-]?(\\d+(\\.\\d*)?([eE][+-]?\\d+)?|0[xX]\\p{XDigit}+)"
+                            + "|[A-Za-z_][A-Za-z0-9_$]*"
+                            + "|'([^']|'')*'"
+                            + "|\"([^\"]|\"\")*\"");
+
+    static {
+        for (Pragma each : Pragma.values()) {
+            SCRIPT_PRAGMAS.add(each.pragmaName);
+        }
+        SCRIPT_PRAGMAS.remove(Pragma.OPEN_MODE.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.SHARED_CACHE.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.THREAD_CONFINED.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.CHECK_THREAD_CONFINEMENT.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LOAD_EXTENSION.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.DATE_PRECISION.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.DATE_CLASS.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.DATE_STRING_FORMAT.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.REWRITE_BATCHED_INSERTS.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.STATEMENT_CACHE_SIZE.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.PASSWORD.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.HEXKEY_MODE.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_ATTACHED.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_COLUMN.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_COMPOUND_SELECT.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_EXPR_DEPTH.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_FUNCTION_ARG.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_LENGTH.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_LIKE_PATTERN_LENGTH.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_SQL_LENGTH.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_TRIGGER_DEPTH.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_VARIABLE_NUMBER.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_VDBE_OP.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_WORKER_THREADS.pragmaName);
+        SCRIPT_PRAGMAS.remove(Pragma.LIMIT_PAGE_COUNT.pragmaName);
+    }
+
     public static enum Pragma {
 
         // Parameters requiring SQLite3 API invocation
@@ -360,6 +430,16 @@ public class SQLiteConfig {
                 "enable_load_extension",
                 "Enable SQLite load_extention() function, native driver only",
                 OnOff),
+        THREAD_CONFINED(
+                "thread_confined",
+                "Open connections with SQLITE_OPEN_NOMUTEX and without Java-side locking;"
+                        + " each connection must only be used by one thread",
+                OnOff),
+        CHECK_THREAD_CONFINEMENT(
+                "check_thread_confinement",
+                "Fail when a thread-confined connection is used by a thread other than"
+                        + " the one that opened it",
+                OnOff),
 
         // Pragmas that can be set after opening the database
         CACHE_SIZE("cache_size"),
@@ -448,6 +528,15 @@ public class SQLiteConfig {
                 "date_string_format",
                 "Format to store and retrieve dates stored as text. Defaults to \"yyyy-MM-dd HH:mm:ss.SSS\"",
                 null),
+        REWRITE_BATCHED_INSERTS(
+                "rewrite_batched_inserts",
+                "Execute batches of single-row INSERT ... VALUES statements as multi-row INSERTs",
+                OnOff),
+        STATEMENT_CACHE_SIZE(
+                "statement_cache_size",
+                "The number of idle prepared statements kept per connection for reuse."
+                        + " Defaults to 0 (disabled)",
+                null),
         BUSY_TIMEOUT("busy_timeout", null),
         HEXKEY_MODE("hexkey_mode", toStringArray(HexKeyMode.values())),
         PASSWORD("password", null);
@@ -509,6 +598,45 @@ public class SQLiteConfig {
         set(Pragma.SHARED_CACHE, enable);
     }
 
+    /**
+     * Confines each connection to a single thread. Connections are opened with
+     * SQLITE_OPEN_NOMUTEX, so SQLite does not serialize calls on them, and the Panama backend
+     * reads columns and binds parameters without taking a lock. Using such a connection,
+     * or its statements and result sets, from two threads at once corrupts it; only {@link
+     * java.sql.Statement#cancel()} may be called from another thread, and {@link
+     * SQLiteConnection#backup(String, String, int, java.time.Duration,
+     * org.sqlite.core.DB.ProgressObserver, java.util.concurrent.Executor) paced backups}, which
+     * run on an executor, are rejected. A pooled connection, e.g. from {@link
+     * org.sqlite.javax.SQLiteConnectionPool}, is confined to the thread that checked it out until
+     * it is returned.
+     *
+     * @param enable True to enable; false to disable.
+     * @see #setCheckThreadConfinement(boolean)
+     * @see <a
+     *     href="https://www.sqlite.org/threadsafe.html">https://www.sqlite.org/threadsafe.html</a>
+     */
+    public void setThreadConfined(boolean enable) {
+        set(Pragma.THREAD_CONFINED, enable);
+        if (enable) {
+            setOpenMode(SQLiteOpenMode.NOMUTEX);
+            resetOpenMode(SQLiteOpenMode.FULLMUTEX);
+        } else {
+            resetOpenMode(SQLiteOpenMode.NOMUTEX);
+        }
+    }
+
+    /**
+     * Makes thread-confined connections check that they are used by the thread that opened them,
+     * or that checked them out of a pool, failing with an SQLException otherwise. Meant for
+     * debugging: the check costs a little on every column read and bind.
+     *
+     * @param enable True to enable; false to disable.
+     * @see #setThreadConfined(boolean)
+     */
+    public void setCheckThreadConfinement(boolean enable) {
+        set(Pragma.CHECK_THREAD_CONFINEMENT, enable);
+    }
+
     /**
      * Enables or disables extension loading.
      *
@@ -1082,6 +1210,43 @@ public class SQLiteConfig {
         this.defaultConnectionConfig.setDateStringFormat(dateStringFormat);
     }
 
+    /**
+     * Enables or disables executing the batch of a prepared single-row {@code INSERT ... VALUES
+     * (?, ...)} as multi-row INSERTs, each holding as many rows as the limit on the number of
+     * parameters allows. Rows of a chunk are applied all or none, and a chunk that changes fewer
+     * rows than it holds (e.g. {@code INSERT OR IGNORE}) reports {@link
+     * java.sql.Statement#SUCCESS_NO_INFO} for its rows.
+     *
+     * @param enable True to enable; false to disable.
+     */
+    public void setRewriteBatchedInserts(boolean enable) {
+        this.defaultConnectionConfig.setRewriteBatchedInserts(enable);
+    }
+
+    /** @return True if batched single-row INSERTs are executed as multi-row INSERTs. */
+    public boolean isRewriteBatchedInserts() {
+        return this.defaultConnectionConfig.isRewriteBatchedInserts();
+    }
+
+    /**
+     * Sets the number of idle prepared statements each connection keeps for reuse. A closed
+     * PreparedStatement is reset and kept, and preparing the same SQL again reuses it instead of
+     * compiling it. Statements are dropped when the connection changes the schema; changes made by
+     * other connections are picked up by SQLite when a statement runs, but the column count and
+     * names a reused statement reports before running are those it was prepared with.
+     *
+     * @param size The maximum number of idle statements; 0 (the default) disables the cache.
+     * @see SQLiteConnection#getStatementCache()
+     */
+    public void setStatementCacheSize(int size) {
+        set(Pragma.STATEMENT_CACHE_SIZE, size);
+    }
+
+    /** @return The maximum number of idle statements kept per connection; 0 if disabled. */
+    public int getStatementCacheSize() {
+        return parseLimitPragma(Pragma.STATEMENT_CACHE_SIZE, 0);
+    }
+
     /** @param milliseconds Connect to DB timeout in milliseconds */
     public void setBusyTimeout(int milliseconds) {
         setPragma(Pragma.BUSY_TIMEOUT, Integer.toString(milliseconds));
@@ -0,0 +1,69 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+
+/**
+ * Decides what to do when a change of a changeset cannot be applied as is, see
+ * https://www.sqlite.org/session/sqlite3changeset_apply.html
+ *
+ * @see SQLiteConnection#applyChangeset(java.nio.ByteBuffer, SQLiteConflictHandler)
+ */
+@FunctionalInterface
+public interface SQLiteConflictHandler {
+    /** Skips every conflicting change. */
+    SQLiteConflictHandler OMIT = (conflict, type, table) -> Action.OMIT;
+
+    /** Aborts on the first conflict, rolling back the whole changeset. */
+    SQLiteConflictHandler ABORT = (conflict, type, table) -> Action.ABORT;
+
+    /**
+     * Overwrites conflicting rows where SQLite allows it, and skips the other conflicting
+     * changes.
+     */
+    SQLiteConflictHandler REPLACE =
+            (conflict, type, table) ->
+                    conflict == Conflict.DATA || conflict == Conflict.CONFLICT
+                            ? Action.REPLACE
+                            : Action.OMIT;
+
+    /** The SQLITE_CHANGESET_* conflict codes. */
+    enum Conflict {
+        /** The row to update or delete exists, but its values are not the expected ones. */
+        DATA,
+        /** The row to update or delete does not exist. */
+        NOTFOUND,
+        /** The row to insert already exists. */
+        CONFLICT,
+        /** The change violates a constraint. */
+        CONSTRAINT,
+        /** Foreign key constraints are violated once every change is applied. */
+        FOREIGN_KEY;
+
+        /** @param code The SQLITE_CHANGESET_* code passed to xConflict. */
+        public static Conflict of(int code) {
+            return values()[code - 1];
+        }
+    }
+
+    /** The SQLITE_CHANGESET_* return codes. */
+    enum Action {
+        /** Skips the change. */
+        OMIT,
+        /**
+         * Applies the change anyway; only allowed for {@link Conflict#DATA} and {@link
+         * Conflict#CONFLICT}.
+         */
+        REPLACE,
+        /** Stops and rolls back every change of the changeset applied so far. */
+        ABORT
+    }
+
+    /**
+     * @param conflict The kind of conflict.
+     * @param type The change that conflicts, or null for {@link Conflict#FOREIGN_KEY}.
+     * @param table The table of the change, or null for {@link Conflict#FOREIGN_KEY}.
+     * @return What to do with the change.
+     */
+    Action onConflict(Conflict conflict, SQLiteUpdateListener.Type type, String table)
+            throws SQLException;
+}
@@ -7,21 +7,28 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import org.sqlite.core.ConfinedPanamaDB;
 import org.sqlite.core.CoreDatabaseMetaData;
 import org.sqlite.core.DB;
-import org.sqlite.core.NativeDB;
+import org.sqlite.core.LockingNativeDB;
 import org.sqlite.core.PanamaDBImpl;
+import org.sqlite.core.StatementCache;
 import org.sqlite.jdbc4.JDBC4DatabaseMetaData;
 
 /** */
 public abstract class SQLiteConnection implements Connection {
     private static final String RESOURCE_NAME_PREFIX = ":resource:";
+    /** Changes buffered per transaction before the buffer of a change publisher grows. */
+    private static final int CHANGE_BUFFER_CAPACITY = 1024;
     private final DB db;
     private CoreDatabaseMetaData meta = null;
     private final SQLiteConnectionConfig connectionConfig;
@@ -56,12 +63,22 @@ public abstract class SQLiteConnection implements Connection {
      * @throws SQLException
      */
     public SQLiteConnection(String url, String fileName, Properties prop) throws SQLException {
+        this(SQLiteOpenPlan.compile(url, fileName, prop));
+    }
+
+    /**
+     * Constructor to create a connection with a plan compiled from the URL and configuration.
+     *
+     * @param plan The plan to open the database with.
+     * @throws SQLException
+     */
+    protected SQLiteConnection(SQLiteOpenPlan plan) throws SQLException {
         DB newDB = null;
         try {
-            this.db = newDB = open(url, fileName, prop);
-            SQLiteConfig config = this.db.getConfig();
-            this.connectionConfig = this.db.getConfig().newConnectionConfig();
-            config.apply(this);
+            SQLiteConfig config = plan.newConfig();
+            this.db = newDB = open(plan.getUrl(), plan.getFileName(), config);
+            this.connectionConfig = config.newConnectionConfig();
+            config.apply(this, plan.pragmaScript());
         } catch (Throwable t) {
             try {
                 if (newDB != null) {
@@ -191,15 +208,7 @@ public abstract class SQLiteConnection implements Connection {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/c_open_autoproxy.html">http://www.sqlite.org/c3ref/c_open_autoproxy.html</a>
      */
-    private static DB open(String url, String origFileName, Properties props) throws SQLException {
-        // Create a copy of the given properties
-        Properties newProps = new Properties();
-        newProps.putAll(props);
-
-        // Extract pragma as properties
-        String fileName = extractPragmasFromFilename(url, origFileName, newProps);
-        SQLiteConfig config = new SQLiteConfig(newProps);
-
+    private static DB open(String url, String fileName, SQLiteConfig config) throws SQLException {
         // check the path to the file exists
         if (!fileName.isEmpty()
                 && !":memory:".equals(fileName)
@@ -254,10 +263,13 @@ public abstract class SQLiteConnection implements Connection {
         try {
             var type = SQLiteJDBCLoader.initialize();
             if (type == SQLiteJDBCLoader.NativeType.JNI)
-                db = new NativeDB(url, fileName, config);
+                db = new LockingNativeDB(url, fileName, config);
             else {
                 PanamaDBImpl.load();
-                db = new PanamaDBImpl(url, fileName, config);
+                db =
+                        config.isThreadConfined()
+                                ? new ConfinedPanamaDB(url, fileName, config)
+                                : new PanamaDBImpl(url, fileName, config);
             }
         } catch (Exception e) {
             SQLException err = new SQLException("Error opening connection");
@@ -374,6 +386,15 @@ public abstract class SQLiteConnection implements Connection {
         db.busy_timeout(timeoutMillis);
     }
 
+    /**
+     * @return The cache of idle prepared statements of this connection, with its hit, miss and
+     *     eviction counters.
+     * @see SQLiteConfig#setStatementCacheSize(int)
+     */
+    public StatementCache getStatementCache() {
+        return db.getStatementCache();
+    }
+
     public void setLimit(SQLiteLimits limit, int value) throws SQLException {
         // Calling sqlite3_limit with a negative number is a no-op:
         // https://www.sqlite.org/c3ref/limit.html
@@ -476,6 +497,149 @@ public abstract class SQLiteConnection implements Connection {
         db.removeCommitListener(listener);
     }
 
+    /**
+     * Add a listener for the values of rows before and after each change, see
+     * https://www.sqlite.org/c3ref/preupdate_blobwrite.html
+     *
+     * @param listener The listener to receive pre-update events
+     * @throws java.sql.SQLFeatureNotSupportedException If SQLite was compiled without the hook.
+     */
+    public void addPreUpdateListener(SQLitePreUpdateListener listener) throws SQLException {
+        checkOpen();
+        db.addPreUpdateListener(listener);
+    }
+
+    /**
+     * Remove a listener registered for pre-update events.
+     *
+     * @param listener The listener to no longer receive pre-update events
+     */
+    public void removePreUpdateListener(SQLitePreUpdateListener listener) throws SQLException {
+        db.removePreUpdateListener(listener);
+    }
+
+    /**
+     * Copies a database of this connection into memory, in the format of a database file. The
+     * copy can be loaded into another connection with {@link #deserialize(String, ByteBuffer)},
+     * e.g. to fork a database for a test, or written to a file.
+     *
+     * @param schema The database to copy, e.g. "main".
+     * @return The database image.
+     */
+    public ByteBuffer serialize(String schema) throws SQLException {
+        checkOpen();
+        return db.serialize(schema);
+    }
+
+    /**
+     * Replaces a database of this connection with an image, without any file I/O. The
+     * connection must have no statement in progress. Eg.
+     *
+     * <pre>
+     *      try (FileChannel file = FileChannel.open(path)) {
+     *          conn.deserialize("main", file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+     *      }
+     * </pre>
+     *
+     * <p>A heap buffer is copied, and the database can then be written like an in-memory one. A
+     * direct buffer, such as a memory-mapped file, is used in place without copying: the database
+     * cannot grow beyond the buffer, and is read-only if the buffer is. The connection keeps such a
+     * buffer until it is closed or the database replaced again.
+     *
+     * @param schema The database to replace, e.g. "main".
+     * @param image The image, from the position to the limit of the buffer.
+     */
+    public void deserialize(String schema, ByteBuffer image) throws SQLException {
+        checkOpen();
+        db.deserialize(schema, image);
+    }
+
+    /**
+     * Backs up a database of this connection to a file in the background, a few pages at a time,
+     * without keeping the connection from running other statements meanwhile. Eg.
+     *
+     * <pre>
+     *      CompletableFuture&lt;Void&gt; done = conn.backup("main", "/backups/app.db", 256,
+     *          Duration.ofMillis(5), (remaining, total) -&gt; log(remaining, total),
+     *          ForkJoinPool.commonPool());
+     * </pre>
+     *
+     * <p>Changes made through this connection while the backup runs end up in the copy; changes
+     * made through other connections make SQLite restart the copy. Cancel the future to stop the
+     * backup, which leaves the destination incomplete.
+     *
+     * @param database The database to back up, e.g. "main".
+     * @param destFileName The file to back up to; it is overwritten.
+     * @param pagesPerStep The number of pages copied while holding the connection, or -1 for all.
+     * @param pause The time to wait between steps, which bounds how much of the connection the
+     *     backup takes.
+     * @param observer Receives the remaining and total page counts after every step; may be null.
+     * @param executor Runs the backup.
+     * @return Completed once the backup is done, or exceptionally if it failed.
+     * @throws java.sql.SQLFeatureNotSupportedException With the JNI backend, or if the connection
+     *     is thread-confined.
+     */
+    public CompletableFuture<Void> backup(
+            String database,
+            String destFileName,
+            int pagesPerStep,
+            Duration pause,
+            DB.ProgressObserver observer,
+            Executor executor)
+            throws SQLException {
+        checkOpen();
+        return db.backup(
+                database, destFileName, pagesPerStep, pause.toMillis(), observer, executor);
+    }
+
+    /**
+     * Creates a session recording the changes made through this connection. See {@link
+     * SQLiteSession}.
+     *
+     * @param database The database to record, e.g. "main".
+     * @throws java.sql.SQLFeatureNotSupportedException If SQLite was compiled without sessions.
+     */
+    public SQLiteSession createSession(String database) throws SQLException {
+        checkOpen();
+        return new SQLiteSession(db, database);
+    }
+
+    /**
+     * Applies a changeset or patchset of a {@link SQLiteSession}, in a single transaction.
+     *
+     * @param changeset The changes, from the position to the limit of the buffer.
+     * @param handler Decides what to do with changes that conflict with the database.
+     * @throws SQLException If the changeset is invalid, or the handler aborted it; no change is
+     *     applied then.
+     */
+    public void applyChangeset(ByteBuffer changeset, SQLiteConflictHandler handler)
+            throws SQLException {
+        checkOpen();
+        int rc = db.changeset_apply(changeset, handler);
+        if (rc != SQLiteErrorCode.SQLITE_OK.code) {
+            db.throwex(rc);
+        }
+    }
+
+    /**
+     * Publishes the changes of every transaction committed from now on, one batch per
+     * transaction, to subscribers running on the executor. See {@link SQLiteChangePublisher}.
+     *
+     * @param executor Runs the subscribers, e.g. {@link
+     *     java.util.concurrent.ForkJoinPool#commonPool()}.
+     * @param maxBufferedBatches The number of batches buffered per subscriber before the
+     *     committing thread blocks.
+     * @return The publisher; close it to stop publishing.
+     */
+    public SQLiteChangePublisher publishChanges(Executor executor, int maxBufferedBatches)
+            throws SQLException {
+        checkOpen();
+        if (maxBufferedBatches <= 0) {
+            throw new SQLException("invalid buffer size: " + maxBufferedBatches);
+        }
+        return new SQLiteChangePublisher(db, executor, maxBufferedBatches, CHANGE_BUFFER_CAPACITY);
+    }
+
     /**
      * Extracts PRAGMA values from the filename and sets them into the Properties object which will
      * be used to build the SQLConfig. The sanitized filename is returned.
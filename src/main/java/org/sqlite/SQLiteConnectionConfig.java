@@ -19,26 +19,34 @@ public class SQLiteConnectionConfig implements Cloneable {
     private int transactionIsolation = Connection.TRANSACTION_SERIALIZABLE;
     private SQLiteConfig.TransactionMode transactionMode = SQLiteConfig.TransactionMode.DEFERRED;
     private boolean autoCommit = true;
+    private boolean rewriteBatchedInserts = false;
 
     public static SQLiteConnectionConfig fromPragmaTable(Properties pragmaTable) {
-        return new SQLiteConnectionConfig(
-                SQLiteConfig.DateClass.getDateClass(
+        SQLiteConnectionConfig config =
+                new SQLiteConnectionConfig(
+                        SQLiteConfig.DateClass.getDateClass(
+                                pragmaTable.getProperty(
+                                        SQLiteConfig.Pragma.DATE_CLASS.pragmaName,
+                                        SQLiteConfig.DateClass.INTEGER.name())),
+                        SQLiteConfig.DatePrecision.getPrecision(
+                                pragmaTable.getProperty(
+                                        SQLiteConfig.Pragma.DATE_PRECISION.pragmaName,
+                                        SQLiteConfig.DatePrecision.MILLISECONDS.name())),
                         pragmaTable.getProperty(
-                                SQLiteConfig.Pragma.DATE_CLASS.pragmaName,
-                                SQLiteConfig.DateClass.INTEGER.name())),
-                SQLiteConfig.DatePrecision.getPrecision(
+                                SQLiteConfig.Pragma.DATE_STRING_FORMAT.pragmaName,
+                                DEFAULT_DATE_STRING_FORMAT),
+                        Connection.TRANSACTION_SERIALIZABLE,
+                        SQLiteConfig.TransactionMode.getMode(
+                                pragmaTable.getProperty(
+                                        SQLiteConfig.Pragma.TRANSACTION_MODE.pragmaName,
+                                        SQLiteConfig.TransactionMode.DEFERRED.name())),
+                        true);
+        config.setRewriteBatchedInserts(
+                Boolean.parseBoolean(
                         pragmaTable.getProperty(
-                                SQLiteConfig.Pragma.DATE_PRECISION.pragmaName,
-                                SQLiteConfig.DatePrecision.MILLISECONDS.name())),
-                pragmaTable.getProperty(
-                        SQLiteConfig.Pragma.DATE_STRING_FORMAT.pragmaName,
-                        DEFAULT_DATE_STRING_FORMAT),
-                Connection.TRANSACTION_SERIALIZABLE,
-                SQLiteConfig.TransactionMode.getMode(
-                        pragmaTable.getProperty(
-                                SQLiteConfig.Pragma.TRANSACTION_MODE.pragmaName,
-                                SQLiteConfig.TransactionMode.DEFERRED.name())),
-                true);
+                                SQLiteConfig.Pragma.REWRITE_BATCHED_INSERTS.pragmaName,
+                                "false")));
+        return config;
     }
 
     public SQLiteConnectionConfig(
@@ -57,13 +65,16 @@ public class SQLiteConnectionConfig implements Cloneable {
     }
 
     public SQLiteConnectionConfig copyConfig() {
-        return new SQLiteConnectionConfig(
-                dateClass,
-                datePrecision,
-                dateStringFormat,
-                transactionIsolation,
-                transactionMode,
-                autoCommit);
+        SQLiteConnectionConfig copy =
+                new SQLiteConnectionConfig(
+                        dateClass,
+                        datePrecision,
+                        dateStringFormat,
+                        transactionIsolation,
+                        transactionMode,
+                        autoCommit);
+        copy.setRewriteBatchedInserts(rewriteBatchedInserts);
+        return copy;
     }
 
     public long getDateMultiplier() {
@@ -107,6 +118,15 @@ public class SQLiteConnectionConfig implements Cloneable {
         this.autoCommit = autoCommit;
     }
 
+    /** @return True if batches of single-row INSERTs are executed as multi-row INSERTs. */
+    public boolean isRewriteBatchedInserts() {
+        return rewriteBatchedInserts;
+    }
+
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        this.rewriteBatchedInserts = rewriteBatchedInserts;
+    }
+
     public int getTransactionIsolation() {
         return transactionIsolation;
     }
@@ -45,6 +45,7 @@ public class SQLiteDataSource implements DataSource {
 
     private String url = JDBC.PREFIX; // use memory database in default
     private String databaseName = ""; // the name of the current database
+    private transient volatile SQLiteOpenPlan openPlan;
 
     /** Default constructor. */
     public SQLiteDataSource() {
@@ -435,9 +436,19 @@ public class SQLiteDataSource implements DataSource {
     /** @see javax.sql.DataSource#getConnection(java.lang.String, java.lang.String) */
     public SQLiteConnection getConnection(String username, String password) throws SQLException {
         Properties p = config.toProperties();
-        if (username != null) p.put("user", username);
-        if (password != null) p.put("pass", password);
-        return JDBC.createConnection(url, p);
+        if (username != null || password != null || !JDBC.isValidURL(url)) {
+            if (username != null) p.put("user", username);
+            if (password != null) p.put("pass", password);
+            return JDBC.createConnection(url, p);
+        }
+
+        // reuse the plan while neither the URL nor the configuration changed
+        SQLiteOpenPlan plan = openPlan;
+        if (plan == null || !plan.matches(url.trim(), p)) {
+            plan = SQLiteOpenPlan.compile(url, p);
+            openPlan = plan;
+        }
+        return JDBC.createConnection(plan);
     }
 
     /** @see javax.sql.DataSource#getLogWriter() */
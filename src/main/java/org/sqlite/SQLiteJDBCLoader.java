@@ -52,6 +52,7 @@ import org.sqlite.util.StringUtils;
 public class SQLiteJDBCLoader {
 
     private static boolean extracted = false;
+    private static NativeType nativeType;
 
     enum NativeType {PANAMA, JNI}
     public static Path extractedLibraryName;
@@ -62,19 +63,24 @@ public class SQLiteJDBCLoader {
      * @return True if SQLite native library is successfully loaded; false otherwise.
      */
     public static synchronized NativeType initialize() throws Exception {
+        // once a library is loaded, loadSQLiteNativeLibrary returns early for any name
+        if (nativeType != null) {
+            return nativeType;
+        }
         // only cleanup before the first extract
         if (!extracted) {
             cleanup();
         }
         try {
             loadSQLiteNativeLibrary("sqlite3");
-            return NativeType.PANAMA;
+            nativeType = NativeType.PANAMA;
         }
         catch (Exception ex)
         {
             loadSQLiteNativeLibrary("sqlitejdbc");
+            nativeType = NativeType.JNI;
         }
-        return NativeType.JNI;
+        return nativeType;
     }
 
     private static File getTempDir() {
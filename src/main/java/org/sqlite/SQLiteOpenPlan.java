@@ -0,0 +1,91 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * What opening a connection needs from its URL and properties, worked out once: the file name
+ * without the pragmas of the URL, the properties with them, and the pragma statements to run,
+ * as one script. {@link SQLiteDataSource} keeps the plan of its URL and configuration, so that
+ * opening a connection skips parsing and only opens the database, sets the limits and runs the
+ * script.
+ *
+ * <p>A plan is immutable; every connection gets a configuration of its own.
+ */
+public final class SQLiteOpenPlan {
+    private final String url;
+    private final String fileName;
+    private final Properties source;
+    private final Properties properties;
+    private final String pragmaScript;
+
+    private SQLiteOpenPlan(
+            String url,
+            String fileName,
+            Properties source,
+            Properties properties,
+            String pragmaScript) {
+        this.url = url;
+        this.fileName = fileName;
+        this.source = source;
+        this.properties = properties;
+        this.pragmaScript = pragmaScript;
+    }
+
+    /**
+     * @param url The URL of the database, e.g. "jdbc:sqlite:app.db?journal_mode=WAL".
+     * @param prop The configuration; its pragmas override the ones of the URL.
+     * @return The plan to open the database with.
+     */
+    static SQLiteOpenPlan compile(String url, Properties prop) throws SQLException {
+        url = url.trim();
+        return compile(url, JDBC.extractAddress(url), prop);
+    }
+
+    /**
+     * @param url The URL of the database.
+     * @param fileName The address in the URL, still with its pragmas.
+     * @param prop The configuration; its pragmas override the ones of the URL.
+     * @return The plan to open the database with.
+     */
+    static SQLiteOpenPlan compile(String url, String fileName, Properties prop)
+            throws SQLException {
+        Properties source = new Properties();
+        source.putAll(prop);
+        Properties properties = new Properties();
+        properties.putAll(prop);
+        String file = SQLiteConnection.extractPragmasFromFilename(url, fileName, properties);
+        // the configuration adds its defaults to the properties it is created with
+        Properties scratch = new Properties();
+        scratch.putAll(properties);
+        String pragmaScript = new SQLiteConfig(scratch).pragmaScript();
+        return new SQLiteOpenPlan(url, file, source, properties, pragmaScript);
+    }
+
+    /** @return True if the plan was compiled from this URL and configuration. */
+    boolean matches(String url, Properties prop) {
+        return this.url.equals(url) && source.equals(prop);
+    }
+
+    /** @return A new configuration for a connection opened with this plan. */
+    SQLiteConfig newConfig() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return new SQLiteConfig(copy);
+    }
+
+    /** @return The statements that set the pragmas of the configuration. */
+    String pragmaScript() {
+        return pragmaScript;
+    }
+
+    /** @return The URL of the database. */
+    public String getUrl() {
+        return url;
+    }
+
+    /** @return The name of the database file, without the pragmas of the URL. */
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,35 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+import org.sqlite.core.panama.PreUpdateRow;
+
+/**
+ * Called before each row is inserted, deleted or updated, with the values of the row before and
+ * after the change; see https://www.sqlite.org/c3ref/preupdate_blobwrite.html
+ *
+ * <p>Needs a SQLite library compiled with SQLITE_ENABLE_PREUPDATE_HOOK; adding a listener
+ * otherwise throws {@link java.sql.SQLFeatureNotSupportedException}. The listener runs inside the
+ * statement making the change, so it should only record what it needs. An exception it throws does
+ * not stop the change: it is passed to the uncaught exception handler of the thread.
+ */
+public interface SQLitePreUpdateListener {
+
+    /**
+     * @param type The kind of change.
+     * @param database The name of the database, e.g. "main".
+     * @param table The name of the table.
+     * @param oldRowId The rowid of the row before the change, undefined for an INSERT.
+     * @param newRowId The rowid of the row after the change, undefined for a DELETE.
+     * @param oldRow The values before the change, or null for an INSERT.
+     * @param newRow The values after the change, or null for a DELETE.
+     */
+    void onPreUpdate(
+            SQLiteUpdateListener.Type type,
+            String database,
+            String table,
+            long oldRowId,
+            long newRowId,
+            PreUpdateRow oldRow,
+            PreUpdateRow newRow)
+            throws SQLException;
+}
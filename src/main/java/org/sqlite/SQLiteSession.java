@@ -0,0 +1,89 @@
+package org.sqlite;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import org.sqlite.core.DB;
+
+/**
+ * Records the changes made to the tables of a database through its connection, to be shipped as
+ * a changeset or patchset and applied elsewhere with {@link
+ * SQLiteConnection#applyChangeset(ByteBuffer, SQLiteConflictHandler)}. The size of a changeset is
+ * proportional to the rows changed, not to the size of the database. Eg.
+ *
+ * <pre>
+ *      try (SQLiteSession session = conn.createSession("main")) {
+ *          session.attach(null);
+ *          conn.createStatement().executeUpdate("update stock set qty = qty - 1 where id = 7;");
+ *          replica.applyChangeset(session.changeset(), SQLiteConflictHandler.REPLACE);
+ *      }
+ * </pre>
+ *
+ * <p>Needs a SQLite library compiled with SQLITE_ENABLE_SESSION; creating a session otherwise
+ * throws {@link java.sql.SQLFeatureNotSupportedException}. Only tables with a PRIMARY KEY are
+ * recorded. See https://www.sqlite.org/session/intro.html
+ *
+ * @see SQLiteConnection#createSession(String)
+ */
+public final class SQLiteSession implements AutoCloseable {
+    private final DB db;
+    private final long pointer;
+    private boolean closed;
+
+    SQLiteSession(DB db, String database) throws SQLException {
+        this.db = db;
+        this.pointer = db.session_create(database);
+    }
+
+    /**
+     * Starts recording the changes of a table.
+     *
+     * @param table The name of the table, or null for every table of the database, including
+     *     tables created later.
+     */
+    public void attach(String table) throws SQLException {
+        db.session_attach(pointer(), table);
+    }
+
+    /** @return The changes recorded so far, with the original values of changed rows. */
+    public ByteBuffer changeset() throws SQLException {
+        return db.session_changeset(pointer(), false);
+    }
+
+    /**
+     * @return The changes recorded so far, without the original values of changed rows, which
+     *     is smaller than a changeset but gives the conflict handler less to go on.
+     */
+    public ByteBuffer patchset() throws SQLException {
+        return db.session_changeset(pointer(), true);
+    }
+
+    /** @return True if no change was recorded. */
+    public boolean isEmpty() throws SQLException {
+        return db.session_isempty(pointer());
+    }
+
+    /** Pauses or resumes recording; a new session records. */
+    public void setEnabled(boolean enabled) throws SQLException {
+        db.session_enable(pointer(), enabled ? 1 : 0);
+    }
+
+    public boolean isEnabled() throws SQLException {
+        return db.session_enable(pointer(), -1);
+    }
+
+    /** Deletes the session; the connection deletes those left open when it is closed. */
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            db.session_delete(pointer);
+        }
+    }
+
+    private long pointer() throws SQLException {
+        if (closed) {
+            throw new SQLException("session is closed");
+        }
+        return pointer;
+    }
+}
@@ -6,7 +6,24 @@ public interface SQLiteUpdateListener {
     public enum Type {
         INSERT,
         DELETE,
-        UPDATE
+        UPDATE;
+
+        /**
+         * @param code The operation code sqlite3_update_hook passes: SQLITE_INSERT, SQLITE_DELETE
+         *     or SQLITE_UPDATE.
+         */
+        public static Type of(int code) {
+            switch (code) {
+                case 18:
+                    return INSERT;
+                case 9:
+                    return DELETE;
+                case 23:
+                    return UPDATE;
+                default:
+                    throw new AssertionError("Unknown type: " + code);
+            }
+        }
     }
 
     void onUpdate(Type type, String database, String table, long rowId);
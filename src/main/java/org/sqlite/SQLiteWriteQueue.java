@@ -0,0 +1,243 @@
+package org.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies writes that many threads submit through one connection, committing them in groups: a
+ * single writer thread takes up to a maximum number of waiting writes, runs each in its own
+ * savepoint inside one transaction and commits once. The cost of taking the write lock and of
+ * syncing the commit is then shared by the whole group rather than paid by every write.
+ *
+ * <p>A write that fails rolls back to its savepoint, so it does not undo the others, and fails
+ * its future. The futures of a group complete once it is committed, on the writer thread; use
+ * the async methods of {@link CompletableFuture} for work that should not delay the next group.
+ * If the commit fails, the futures of the whole group fail. Should the writer thread die, the
+ * futures of every write it has not committed fail, and the queue rejects further writes.
+ *
+ * <p>The queue owns the connection until it is closed: it switches the connection out of
+ * auto-commit mode, and no other thread may use it. A write must not commit, roll back or change
+ * the auto-commit mode. Setting {@link SQLiteConfig.TransactionMode#IMMEDIATE} on the connection
+ * makes each group take the write lock when it starts rather than on its first write.
+ */
+public final class SQLiteWriteQueue implements AutoCloseable {
+    /** A write, run on the writer thread inside the transaction of its group. */
+    @FunctionalInterface
+    public interface Write<T> {
+        T apply(SQLiteConnection conn) throws SQLException;
+    }
+
+    private static final class Submission<T> {
+        final Write<T> write;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        Submission(Write<T> write) {
+            this.write = write;
+        }
+
+        void run(SQLiteConnection conn) throws SQLException {
+            result = write.apply(conn);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    private static final Submission<Void> STOP = new Submission<>(conn -> null);
+
+    private final SQLiteConnection conn;
+    private final int maxGroupSize;
+    private final LinkedBlockingQueue<Submission<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong committedWrites = new AtomicLong();
+    private boolean closed;
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param conn The connection to write through; not thread confined.
+     * @param maxGroupSize The maximum number of writes to commit at once.
+     */
+    public SQLiteWriteQueue(SQLiteConnection conn, int maxGroupSize) throws SQLException {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be positive: " + maxGroupSize);
+        }
+        this.conn = conn;
+        this.maxGroupSize = maxGroupSize;
+        conn.setAutoCommit(false);
+        writer = new Thread(this::run, "SQLite write queue " + conn.getDatabase().getUrl());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Submits an SQL statement.
+     *
+     * @param sql The statement, with ? for the parameters.
+     * @param parameters The parameters, as for {@link PreparedStatement#setObject(int, Object)}.
+     * @return The number of rows the statement changed, once it is committed.
+     */
+    public CompletableFuture<Integer> submit(String sql, Object... parameters) {
+        return submit(
+                conn -> {
+                    try (PreparedStatement stat = conn.prepareStatement(sql)) {
+                        for (int i = 0; i < parameters.length; i++) {
+                            stat.setObject(i + 1, parameters[i]);
+                        }
+                        return stat.executeUpdate();
+                    }
+                });
+    }
+
+    /**
+     * Submits a write.
+     *
+     * @param write The write, which may run several statements.
+     * @return What the write returned, once it is committed.
+     */
+    public <T> CompletableFuture<T> submit(Write<T> write) {
+        Submission<T> submission = new Submission<>(write);
+        synchronized (queue) {
+            if (closed) {
+                submission.future.completeExceptionally(
+                        new SQLException("The write queue is closed"));
+                return submission.future;
+            }
+            queue.add(submission);
+        }
+        return submission.future;
+    }
+
+    /** @return The number of committed groups. */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /** @return The number of committed writes, over all groups. */
+    public long getCommittedWrites() {
+        return committedWrites.get();
+    }
+
+    /**
+     * Commits the writes submitted so far, stops the writer thread and switches the connection
+     * back to auto-commit mode. The connection stays open.
+     */
+    @Override
+    public void close() throws SQLException {
+        synchronized (queue) {
+            if (!closed) {
+                closed = true;
+                queue.add(STOP);
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!conn.isClosed()) {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void run() {
+        List<Submission<?>> group = new ArrayList<>(Math.min(maxGroupSize, 1024));
+        boolean stop = false;
+        try {
+            while (!stop) {
+                try {
+                    group.add(queue.take());
+                } catch (InterruptedException e) {
+                    // only close() stops the writer
+                    continue;
+                }
+                queue.drainTo(group, maxGroupSize - 1);
+                int stopAt = group.indexOf(STOP);
+                if (stopAt >= 0) {
+                    stop = true;
+                    group.subList(stopAt, group.size()).clear();
+                }
+                if (!group.isEmpty()) {
+                    write(group);
+                }
+                group.clear();
+            }
+        } catch (Throwable e) {
+            abandon(group, e);
+            throw e;
+        }
+    }
+
+    /** Fails the writes the dying writer thread will not commit, and rejects new ones. */
+    private void abandon(List<Submission<?>> group, Throwable cause) {
+        SQLException e = new SQLException("The writer thread of the write queue died", cause);
+        synchronized (queue) {
+            closed = true;
+        }
+        try {
+            conn.rollback();
+        } catch (Throwable suppressed) {
+            e.addSuppressed(suppressed);
+        }
+        for (Submission<?> submission : group) {
+            submission.future.completeExceptionally(e);
+        }
+        Submission<?> submission;
+        while ((submission = queue.poll()) != null) {
+            if (submission != STOP) {
+                submission.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void write(List<Submission<?>> group) {
+        List<Submission<?>> written = new ArrayList<>(group.size());
+        try {
+            for (Submission<?> submission : group) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    submission.run(conn);
+                } catch (Throwable e) {
+                    conn.rollback(savepoint);
+                    conn.releaseSavepoint(savepoint);
+                    submission.future.completeExceptionally(e);
+                    continue;
+                }
+                conn.releaseSavepoint(savepoint);
+                written.add(submission);
+            }
+            conn.commit();
+        } catch (Throwable e) {
+            try {
+                conn.rollback();
+            } catch (Throwable suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            for (Submission<?> submission : group) {
+                submission.future.completeExceptionally(e);
+            }
+            return;
+        }
+        commits.incrementAndGet();
+        committedWrites.addAndGet(written.size());
+        for (Submission<?> submission : written) {
+            submission.complete();
+        }
+    }
+}
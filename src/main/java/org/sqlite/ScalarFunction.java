@@ -0,0 +1,32 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+import org.sqlite.core.panama.FunctionArgs;
+import org.sqlite.core.panama.FunctionResult;
+
+/**
+ * A user-defined scalar function whose per-call state is passed to it instead of being kept in
+ * the function object, so one instance can be registered with many connections and run on all of
+ * them at once. Eg.
+ *
+ * <pre>
+ *      Function.create(conn, "clamp", 3, Function.FLAG_DETERMINISTIC,
+ *          (args, result) -&gt; result.setLong(
+ *              Math.max(args.getLong(1), Math.min(args.getLong(2), args.getLong(0)))));
+ * </pre>
+ *
+ * <p>Neither argument may be used after the call returns. An exception thrown by the function
+ * makes the calling statement fail with its message.
+ *
+ * @see Function#create(java.sql.Connection, String, int, int, ScalarFunction)
+ */
+@FunctionalInterface
+public interface ScalarFunction {
+    /**
+     * Called by SQLite for every row the function is evaluated on.
+     *
+     * @param args The arguments of the call.
+     * @param result Receives the result of the call; it is NULL if none is set.
+     */
+    void xFunc(FunctionArgs args, FunctionResult result) throws SQLException;
+}
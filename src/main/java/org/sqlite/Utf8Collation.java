@@ -0,0 +1,30 @@
+package org.sqlite;
+
+import jdk.incubator.foreign.MemorySegment;
+
+/**
+ * A user-defined collation that compares the UTF-8 bytes SQLite passes to it, without decoding
+ * them into Strings. Register it with {@link Collation#create(java.sql.Connection, String,
+ * Utf8Collation)}; {@link Utf8Collations} has ready-made ones. Eg.
+ *
+ * <pre>
+ *      Collation.create(conn, "NATSORT", Utf8Collations.NATURAL);
+ *      conn.createStatement().execute("select name from files order by name collate NATSORT;");
+ * </pre>
+ *
+ * <p>The segments are only valid during the call and must not be written to; an empty string is
+ * an empty heap segment. The comparison must not throw, as there is no way to report an error to
+ * SQLite from a collation. Like any collation, it must be a total order: consistent, antisymmetric
+ * and transitive, or SQLite may return rows in an undefined order and indexes using it may become
+ * corrupt.
+ */
+@FunctionalInterface
+public interface Utf8Collation {
+    /**
+     * @param str1 The UTF-8 bytes of the first string, without terminator.
+     * @param str2 The UTF-8 bytes of the second string, without terminator.
+     * @return an integer that is negative, zero, or positive if the first string is less than,
+     *     equal to, or greater than the second, respectively
+     */
+    int compare(MemorySegment str1, MemorySegment str2);
+}
@@ -0,0 +1,276 @@
+package org.sqlite;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import org.sqlite.core.panama.Utf8Decoder;
+
+/**
+ * Ready-made {@link Utf8Collation}s.
+ *
+ * <p>{@link #ASCII_NOCASE}, {@link #UNICODE_NOCASE} and {@link #NATURAL} work on the bytes and
+ * allocate nothing per comparison. {@link #collator(Collator, int)} covers locale-sensitive
+ * ordering by caching sort keys.
+ */
+public final class Utf8Collations {
+    /**
+     * Folds ASCII letters to lower case and compares the bytes, like the built-in NOCASE
+     * collation of SQLite.
+     */
+    public static final Utf8Collation ASCII_NOCASE = Utf8Collations::compareAsciiNoCase;
+
+    /**
+     * Folds the case of every Unicode character, as {@code
+     * Character.toLowerCase(Character.toUpperCase(c))} does, and compares code points. Strings
+     * that differ only in case compare equal, e.g. "STRASSE" and "strasse", but not "Straße".
+     */
+    public static final Utf8Collation UNICODE_NOCASE = Utf8Collations::compareUnicodeNoCase;
+
+    /**
+     * Compares runs of ASCII digits by their numeric value and everything else byte by byte, so
+     * that "file9" sorts before "file10". Strings equal by value, such as "a01" and "a1", are
+     * ordered by their bytes.
+     */
+    public static final Utf8Collation NATURAL = Utf8Collations::compareNatural;
+
+    private static final long INVALID = 0x110000; // code points of bytes that are not valid UTF-8
+
+    private Utf8Collations() {}
+
+    /**
+     * Orders strings as the collator does. The sort keys of the most recently compared strings
+     * are cached, which is much faster than {@link Collator#compare(String, String)} when the same
+     * strings are compared repeatedly, as sorting does; each comparison still decodes both
+     * strings.
+     *
+     * <p>The returned collation is thread safe, but calls on it are serialized: register a
+     * separate one with each connection that sorts concurrently.
+     *
+     * @param collator The collator; it is copied, so later changes to it have no effect.
+     * @param cacheSize The maximum number of sort keys kept, or 0 for none.
+     */
+    public static Utf8Collation collator(Collator collator, int cacheSize) {
+        return new CollatorCollation((Collator) collator.clone(), cacheSize);
+    }
+
+    static int compareAsciiNoCase(MemorySegment str1, MemorySegment str2) {
+        long len1 = str1.byteSize();
+        long len2 = str2.byteSize();
+        long len = Math.min(len1, len2);
+        long i = 0;
+        // skip the common prefix a word at a time
+        for (long limit = len & ~7; i < limit; i += 8) {
+            if (MemoryAccess.getLongAtOffset(str1, i) != MemoryAccess.getLongAtOffset(str2, i)) {
+                break;
+            }
+        }
+        for (; i < len; i++) {
+            int c1 = foldAscii(MemoryAccess.getByteAtOffset(str1, i) & 0xFF);
+            int c2 = foldAscii(MemoryAccess.getByteAtOffset(str2, i) & 0xFF);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return Long.compare(len1, len2);
+    }
+
+    static int compareUnicodeNoCase(MemorySegment str1, MemorySegment str2) {
+        long len1 = str1.byteSize();
+        long len2 = str2.byteSize();
+        long i = 0;
+        long j = 0;
+        while (i < len1 && j < len2) {
+            int b1 = MemoryAccess.getByteAtOffset(str1, i) & 0xFF;
+            int b2 = MemoryAccess.getByteAtOffset(str2, j) & 0xFF;
+            if ((b1 | b2) < 0x80) {
+                int c1 = foldAscii(b1);
+                int c2 = foldAscii(b2);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+                i++;
+                j++;
+                continue;
+            }
+            long d1 = decode(str1, i, len1);
+            long d2 = decode(str2, j, len2);
+            int c1 = foldCodePoint((int) d1);
+            int c2 = foldCodePoint((int) d2);
+            if (c1 != c2) {
+                return Integer.compare(c1, c2);
+            }
+            i += d1 >>> 32;
+            j += d2 >>> 32;
+        }
+        return Boolean.compare(i < len1, j < len2);
+    }
+
+    static int compareNatural(MemorySegment str1, MemorySegment str2) {
+        long len1 = str1.byteSize();
+        long len2 = str2.byteSize();
+        long i = 0;
+        long j = 0;
+        while (i < len1 && j < len2) {
+            int c1 = MemoryAccess.getByteAtOffset(str1, i) & 0xFF;
+            int c2 = MemoryAccess.getByteAtOffset(str2, j) & 0xFF;
+            if (isDigit(c1) && isDigit(c2)) {
+                long start1 = skipZeros(str1, i, len1);
+                long start2 = skipZeros(str2, j, len2);
+                long end1 = skipDigits(str1, start1, len1);
+                long end2 = skipDigits(str2, start2, len2);
+                // without leading zeros, the longer run is the larger number
+                if (end1 - start1 != end2 - start2) {
+                    return Long.compare(end1 - start1, end2 - start2);
+                }
+                for (long k = 0; k < end1 - start1; k++) {
+                    int d1 = MemoryAccess.getByteAtOffset(str1, start1 + k);
+                    int d2 = MemoryAccess.getByteAtOffset(str2, start2 + k);
+                    if (d1 != d2) {
+                        return d1 - d2;
+                    }
+                }
+                i = end1;
+                j = end2;
+                continue;
+            }
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+            i++;
+            j++;
+        }
+        if (i < len1 || j < len2) {
+            return Boolean.compare(i < len1, j < len2);
+        }
+        return compareBytes(str1, str2);
+    }
+
+    /** Unsigned byte order, shorter first on a common prefix. */
+    private static int compareBytes(MemorySegment str1, MemorySegment str2) {
+        long at = str1.mismatch(str2);
+        if (at < 0) {
+            return 0;
+        }
+        if (at == str1.byteSize() || at == str2.byteSize()) {
+            return Long.compare(str1.byteSize(), str2.byteSize());
+        }
+        return (MemoryAccess.getByteAtOffset(str1, at) & 0xFF)
+                - (MemoryAccess.getByteAtOffset(str2, at) & 0xFF);
+    }
+
+    private static int foldAscii(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int foldCodePoint(int c) {
+        if (c < FoldTable.FOLD.length) {
+            return FoldTable.FOLD[c];
+        }
+        if (c >= INVALID) {
+            return c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long skipZeros(MemorySegment s, long i, long len) {
+        while (i < len && MemoryAccess.getByteAtOffset(s, i) == '0') {
+            i++;
+        }
+        return i;
+    }
+
+    private static long skipDigits(MemorySegment s, long i, long len) {
+        while (i < len && isDigit(MemoryAccess.getByteAtOffset(s, i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes the UTF-8 sequence at i. A byte that does not start a valid sequence decodes on its
+     * own, to a value above every code point.
+     *
+     * @return The code point in the low 32 bits and the number of bytes read in the high ones.
+     */
+    private static long decode(MemorySegment s, long i, long len) {
+        int b0 = MemoryAccess.getByteAtOffset(s, i) & 0xFF;
+        int extra;
+        int cp;
+        if (b0 < 0x80) {
+            return b0 | (1L << 32);
+        } else if (b0 >= 0xC2 && b0 <= 0xDF) {
+            extra = 1;
+            cp = b0 & 0x1F;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            extra = 2;
+            cp = b0 & 0x0F;
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            extra = 3;
+            cp = b0 & 0x07;
+        } else {
+            return (INVALID + b0) | (1L << 32);
+        }
+        if (i + extra >= len) {
+            return (INVALID + b0) | (1L << 32);
+        }
+        for (int k = 1; k <= extra; k++) {
+            int b = MemoryAccess.getByteAtOffset(s, i + k) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                return (INVALID + b0) | (1L << 32);
+            }
+            cp = (cp << 6) | (b & 0x3F);
+        }
+        return cp | ((long) (extra + 1) << 32);
+    }
+
+    /** Case folding of the Basic Multilingual Plane, built on first use of UNICODE_NOCASE. */
+    private static final class FoldTable {
+        static final char[] FOLD = new char[0x10000];
+
+        static {
+            for (int c = 0; c < FOLD.length; c++) {
+                FOLD[c] = Character.toLowerCase(Character.toUpperCase((char) c));
+            }
+        }
+    }
+
+    private static final class CollatorCollation implements Utf8Collation {
+        private final Collator collator;
+        private final Utf8Decoder decoder = new Utf8Decoder();
+        private final Map<String, CollationKey> keys;
+
+        CollatorCollation(Collator collator, int cacheSize) {
+            this.collator = collator;
+            int maxSize = Math.max(0, cacheSize);
+            this.keys =
+                    new LinkedHashMap<String, CollationKey>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, CollationKey> e) {
+                            return size() > maxSize;
+                        }
+                    };
+        }
+
+        @Override
+        public synchronized int compare(MemorySegment str1, MemorySegment str2) {
+            return key(str1).compareTo(key(str2));
+        }
+
+        private CollationKey key(MemorySegment str) {
+            String text = decoder.decode(str.address(), (int) str.byteSize());
+            CollationKey key = keys.get(text);
+            if (key == null) {
+                key = collator.getCollationKey(text);
+                keys.put(text, key);
+            }
+            return key;
+        }
+    }
+}
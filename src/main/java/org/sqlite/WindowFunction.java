@@ -0,0 +1,31 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+import org.sqlite.core.panama.AggregateState;
+import org.sqlite.core.panama.FunctionArgs;
+import org.sqlite.core.panama.FunctionResult;
+
+/**
+ * An {@link AggregateFunction} that can also be used as an aggregate window function, whose frame
+ * moves over the rows of a partition.
+ *
+ * @see <a href="https://www.sqlite.org/windowfunctions.html#user_defined_aggregate_window_functions">
+ *     User-Defined Aggregate Window Functions</a>
+ */
+public interface WindowFunction extends AggregateFunction {
+    /**
+     * Removes a row that left the frame; it was added by {@link #xStep} before.
+     *
+     * @param state The state of the group.
+     * @param args The arguments for the row.
+     */
+    void xInverse(AggregateState state, FunctionArgs args) throws SQLException;
+
+    /**
+     * Sets the result for the current frame, without ending the group.
+     *
+     * @param state The state of the group.
+     * @param result Receives the result; it is NULL if none is set.
+     */
+    void xValue(AggregateState state, FunctionResult result) throws SQLException;
+}
@@ -0,0 +1,156 @@
+package org.sqlite.core;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteLimits;
+
+/**
+ * Executes the batch of a single-row {@code INSERT ... VALUES (?, ...)} as multi-row {@code
+ * INSERT ... VALUES (?, ...), (?, ...), ...} statements, so that SQLite runs one program per
+ * chunk of rows instead of one per row.
+ *
+ * <p>Chunks hold as many rows as {@link SQLiteLimits#SQLITE_LIMIT_VARIABLE_NUMBER} and {@link
+ * SQLiteLimits#SQLITE_LIMIT_SQL_LENGTH} allow. The rows left over are executed in chunks of
+ * decreasing powers of two, so only a handful of statements are ever prepared; they are kept for
+ * the lifetime of the batched statement.
+ *
+ * <p>A chunk is a single statement: if one of its rows fails, none of them are applied.
+ *
+ * @see org.sqlite.SQLiteConfig#setRewriteBatchedInserts(boolean)
+ */
+final class BatchInsertRewriter {
+    /** INSERT or REPLACE whose only parameters are one VALUES row at the very end. */
+    private static final Pattern SINGLE_ROW_INSERT =
+            Pattern.compile(
+                    "^\\s*((?:insert|replace)\\b.*\\bvalues)"
+                            + "\\s*(\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\))\\s*;?\\s*$",
+                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final SQLiteConnection conn;
+    private final String prefix;
+    private final int prefixBytes; // SQLITE_LIMIT_SQL_LENGTH counts UTF-8 bytes
+    private final String row; // ASCII only
+    private final int params;
+    private final Map<Integer, CorePreparedStatement> statements =
+            new HashMap<Integer, CorePreparedStatement>();
+
+    private BatchInsertRewriter(SQLiteConnection conn, String prefix, String row, int params) {
+        this.conn = conn;
+        this.prefix = prefix;
+        this.prefixBytes = prefix.getBytes(StandardCharsets.UTF_8).length;
+        this.row = row;
+        this.params = params;
+    }
+
+    /**
+     * @param sql SQL of the batched statement.
+     * @param params Number of parameters of the statement.
+     * @return A rewriter, or null if the statement is not a single-row INSERT.
+     */
+    static BatchInsertRewriter of(SQLiteConnection conn, String sql, int params) {
+        if (params < 1) {
+            return null;
+        }
+        Matcher matcher = SINGLE_ROW_INSERT.matcher(sql);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        StringBuilder row = new StringBuilder(params * 2 + 1).append('(');
+        int markers = 0;
+        for (char c : matcher.group(2).toCharArray()) {
+            if (c == '?') {
+                row.append(markers++ == 0 ? "?" : ",?");
+            }
+        }
+        // a parameter before VALUES, e.g. in a literal SQLite does not treat as one, is unsafe
+        if (markers != params) {
+            return null;
+        }
+        return new BatchInsertRewriter(conn, matcher.group(1), row.append(')').toString(), params);
+    }
+
+    /**
+     * Executes the batch rows of the buffer.
+     *
+     * @return Number of rows changed by each batch row: 1, or {@link Statement#SUCCESS_NO_INFO}
+     *     for rows of a chunk that changed fewer rows than it holds (e.g. {@code INSERT OR
+     *     IGNORE}).
+     * @throws BatchUpdateException If a chunk fails; its update counts cover the chunks executed
+     *     before.
+     */
+    int[] execute(DB db, ParameterBuffer values, int count) throws SQLException {
+        int[] changes = new int[count];
+        db.getLock().lock();
+        try {
+            int maxRows = chunkRows(db);
+            int done = 0;
+            try {
+                while (done < count) {
+                    int left = count - done;
+                    int rows = left >= maxRows ? maxRows : Integer.highestOneBit(left);
+                    int changed = db.executeRows(statement(rows).pointer, values, done, rows);
+                    Arrays.fill(
+                            changes,
+                            done,
+                            done + rows,
+                            changed == rows ? 1 : Statement.SUCCESS_NO_INFO);
+                    done += rows;
+                }
+            } catch (SQLException e) {
+                throw new BatchUpdateException(
+                        "batch entry " + done + ": " + e.getMessage(),
+                        e.getSQLState(),
+                        e.getErrorCode(),
+                        Arrays.copyOf(changes, done),
+                        e);
+            } finally {
+                db.ensureAutoCommit(conn.getAutoCommit());
+            }
+        } finally {
+            db.getLock().unlock();
+        }
+        return changes;
+    }
+
+    /** Finalizes the rewritten statements. */
+    void close() throws SQLException {
+        for (CorePreparedStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    /** @return Rows per chunk under the current limits, which may change between batches. */
+    private int chunkRows(DB db) throws SQLException {
+        int variables = db.limit(SQLiteLimits.SQLITE_LIMIT_VARIABLE_NUMBER.getId(), -1);
+        int sqlLength = db.limit(SQLiteLimits.SQLITE_LIMIT_SQL_LENGTH.getId(), -1);
+        int byLength = (sqlLength - prefixBytes - 1) / (row.length() + 1);
+        return Math.max(1, Math.min(variables / params, byLength));
+    }
+
+    private CorePreparedStatement statement(int rows) throws SQLException {
+        CorePreparedStatement statement = statements.get(rows);
+        if (statement == null) {
+            StringBuilder sql =
+                    new StringBuilder(prefix.length() + rows * (row.length() + 1))
+                            .append(prefix)
+                            .append(' ')
+                            .append(row);
+            for (int i = 1; i < rows; i++) {
+                sql.append(',').append(row);
+            }
+            statement = (CorePreparedStatement) conn.prepareStatement(sql.toString());
+            statements.put(rows, statement);
+        }
+        return statement;
+    }
+}
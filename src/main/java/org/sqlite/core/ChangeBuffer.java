@@ -0,0 +1,77 @@
+package org.sqlite.core;
+
+import java.util.Arrays;
+import org.sqlite.SQLiteChangeBatch;
+
+/**
+ * Collects the changes of the open transaction, as the update hook reports them, into
+ * preallocated parallel arrays, so recording a change allocates nothing. The arrays grow if a
+ * transaction changes more rows than they hold, and are reused by the next transaction.
+ */
+final class ChangeBuffer {
+    private byte[] types;
+    private String[] databases;
+    private String[] tables;
+    private long[] rowIds;
+    private int size;
+
+    ChangeBuffer(int capacity) {
+        int initial = Math.max(16, capacity);
+        types = new byte[initial];
+        databases = new String[initial];
+        tables = new String[initial];
+        rowIds = new long[initial];
+    }
+
+    void add(int type, String database, String table, long rowId) {
+        if (size == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            databases = Arrays.copyOf(databases, capacity);
+            tables = Arrays.copyOf(tables, capacity);
+            rowIds = Arrays.copyOf(rowIds, capacity);
+        }
+        types[size] = (byte) type;
+        databases[size] = database;
+        tables[size] = table;
+        rowIds[size] = rowId;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Drops the changes recorded after the first ones, which SQLite rolled back. */
+    void truncate(int mark) {
+        if (mark < size) {
+            Arrays.fill(databases, mark, size, null);
+            Arrays.fill(tables, mark, size, null);
+            size = mark;
+        }
+    }
+
+    /** @return The changes of the committed transaction, or null if there are none. */
+    SQLiteChangeBatch drain() {
+        if (size == 0) {
+            return null;
+        }
+        SQLiteChangeBatch batch =
+                new SQLiteChangeBatch(
+                        size,
+                        Arrays.copyOf(types, size),
+                        Arrays.copyOf(databases, size),
+                        Arrays.copyOf(tables, size),
+                        Arrays.copyOf(rowIds, size));
+        clear();
+        return batch;
+    }
+
+    /** Discards the changes of a rolled back transaction. */
+    void clear() {
+        // drop the references to names of tables that may be gone by the next transaction
+        Arrays.fill(databases, 0, size, null);
+        Arrays.fill(tables, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,233 @@
+package org.sqlite.core;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.core.panama.ResultCode;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link PanamaDBImpl} for connections used by a single thread. The connection is opened with
+ * SQLITE_OPEN_NOMUTEX, and the calls made per row and per parameter (step, reset, column reads
+ * and binds) take no lock either.
+ *
+ * <p>Nothing but the caller guarantees the confinement: using the connection from two threads at
+ * once corrupts it. With {@link SQLiteConfig#setCheckThreadConfinement(boolean)} those calls
+ * first check that they run on the thread that owns the connection: the thread that opened it,
+ * or the one it was last handed to by {@link #setOwner(Thread)}.
+ *
+ * @see SQLiteConfig#setThreadConfined(boolean)
+ */
+public final class ConfinedPanamaDB extends PanamaDBImpl {
+    private volatile Thread owner = Thread.currentThread();
+    private final boolean checkOwner;
+
+    public ConfinedPanamaDB(String url, String fileName, SQLiteConfig config) throws SQLException {
+        super(url, fileName, config);
+        checkOwner = config.isCheckThreadConfinement();
+    }
+
+    /** @return The thread the connection is confined to. */
+    public Thread getOwner() {
+        return owner;
+    }
+
+    /**
+     * Hands the connection over to another thread. Pooled connections are handed to the thread
+     * that checks them out; the previous owner must be done with the connection and everything
+     * opened from it.
+     *
+     * @param owner The thread the connection is confined to from now on.
+     */
+    public void setOwner(Thread owner) {
+        this.owner = owner;
+    }
+
+    private void checkOwner() throws SQLException {
+        if (checkOwner && Thread.currentThread() != owner) {
+            throw new SQLException(
+                    "connection is confined to thread " + owner.getName()
+                            + " but was used by " + Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Not supported: the steps of the backup would run on the executor, concurrently with the
+     * unlocked calls of the owner thread.
+     *
+     * @see org.sqlite.core.DB#backup(String, String, int, long, ProgressObserver, Executor)
+     */
+    @Override
+    public CompletableFuture<Void> backup(
+            String dbName,
+            String destFileName,
+            int pagesPerStep,
+            long pauseMillis,
+            ProgressObserver observer,
+            Executor executor)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException(
+                "paced backups run on another thread, which a thread-confined connection forbids");
+    }
+
+    /** @see org.sqlite.core.DB#step(long) */
+    @Override
+    public int step(long stmt) throws SQLException {
+        checkOwner();
+        if (m_dbHandle.isValid())
+            return step_unlocked(stmt);
+        return ResultCode.SQLITE_MISUSE.code();
+    }
+
+    /** @see org.sqlite.core.DB#reset(long) */
+    @Override
+    public int reset(long stmt) throws SQLException {
+        checkOwner();
+        if (m_dbHandle.isValid())
+            return m_panama.sqlite3_reset(stmt);
+        return ResultCode.SQLITE_MISUSE.code();
+    }
+
+    /** @see org.sqlite.core.DB#clear_bindings(long) */
+    @Override
+    public int clear_bindings(long stmt) throws SQLException {
+        checkOwner();
+        if (m_dbHandle.isValid())
+            return m_panama.sqlite3_clear_bindings(stmt);
+        return ResultCode.SQLITE_MISUSE.code();
+    }
+
+    /** @see org.sqlite.core.DB#column_count(long) */
+    @Override
+    public int column_count(long stmt) throws SQLException {
+        checkOwner();
+        if (m_dbHandle.isValid())
+            return m_panama.sqlite3_column_count(stmt);
+        return ResultCode.SQLITE_MISUSE.code();
+    }
+
+    /** @see org.sqlite.core.DB#column_type(long, int) */
+    @Override
+    public int column_type(long stmt, int col) throws SQLException {
+        checkOwner();
+        if (m_dbHandle.isValid())
+            return m_panama.sqlite3_column_type(stmt, col);
+        return ResultCode.SQLITE_MISUSE.code();
+    }
+
+    /** @see org.sqlite.core.DB#column_text(long, int) */
+    @Override
+    public String column_text(long stmt, int col) throws SQLException {
+        checkOwner();
+        return column_text_utf8(stmt, col);
+    }
+
+    /** @see org.sqlite.core.DB#column_blob(long, int) */
+    @Override
+    public byte[] column_blob(long stmt, int col) throws SQLException {
+        checkOwner();
+        return column_blob_unlocked(stmt, col);
+    }
+
+    /** @see org.sqlite.core.DB#column_double(long, int) */
+    @Override
+    public double column_double(long stmt, int col) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_column_double(stmt, col);
+    }
+
+    /** @see org.sqlite.core.DB#column_long(long, int) */
+    @Override
+    public long column_long(long stmt, int col) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_column_int64(stmt, col);
+    }
+
+    /** @see org.sqlite.core.DB#column_int(long, int) */
+    @Override
+    public int column_int(long stmt, int col) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_column_int(stmt, col);
+    }
+
+    /** @see org.sqlite.core.DB#row_snapshot(long, RowSnapshot) */
+    @Override
+    void row_snapshot(long stmt, RowSnapshot row) throws SQLException {
+        checkOwner();
+        row_snapshot_unlocked(stmt, row);
+    }
+
+    /** @see org.sqlite.core.DB#fetch(long, RowBatch, int) */
+    @Override
+    int fetch(long stmt, RowBatch rows, int count) throws SQLException {
+        checkOwner();
+        return fetch_unlocked(stmt, rows, count);
+    }
+
+    /** @see org.sqlite.core.DB#bind_parameter_count(long) */
+    @Override
+    int bind_parameter_count(long stmt) throws SQLException {
+        checkOwner();
+        if (m_dbHandle.isValid())
+            return m_panama.sqlite3_bind_parameter_count(stmt);
+        return ResultCode.SQLITE_MISUSE.code();
+    }
+
+    /** @see org.sqlite.core.DB#bind_null(long, int) */
+    @Override
+    int bind_null(long stmt, int pos) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_bind_null(stmt, pos);
+    }
+
+    /** @see org.sqlite.core.DB#bind_int(long, int, int) */
+    @Override
+    int bind_int(long stmt, int pos, int v) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_bind_int(stmt, pos, v);
+    }
+
+    /** @see org.sqlite.core.DB#bind_long(long, int, long) */
+    @Override
+    int bind_long(long stmt, int pos, long v) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_bind_int64(stmt, pos, v);
+    }
+
+    /** @see org.sqlite.core.DB#bind_double(long, int, double) */
+    @Override
+    int bind_double(long stmt, int pos, double v) throws SQLException {
+        checkOwner();
+        return m_panama.sqlite3_bind_double(stmt, pos, v);
+    }
+
+    /** @see org.sqlite.core.DB#bind_text(long, int, java.lang.String) */
+    @Override
+    int bind_text(long stmt, int pos, String v) throws SQLException {
+        checkOwner();
+        return bind_text_utf8(stmt, pos, v);
+    }
+
+    /** @see org.sqlite.core.DB#bind_text(long, int, byte[], int, int) */
+    @Override
+    int bind_text(long stmt, int pos, byte[] utf8, int offset, int length) throws SQLException {
+        checkOwner();
+        return bind_text_unlocked(stmt, pos, utf8, offset, length);
+    }
+
+    /** @see org.sqlite.core.DB#bind_blob(long, int, byte[]) */
+    @Override
+    int bind_blob(long stmt, int pos, byte[] v) throws SQLException {
+        checkOwner();
+        return bind_blob_unlocked(stmt, pos, v);
+    }
+
+    /** @see org.sqlite.core.DB#bind_blob(long, int, byte[], int, int) */
+    @Override
+    int bind_blob(long stmt, int pos, byte[] v, int offset, int length) throws SQLException {
+        checkOwner();
+        return bind_blob_unlocked(stmt, pos, v, offset, length);
+    }
+}
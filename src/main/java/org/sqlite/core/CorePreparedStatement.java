@@ -28,6 +28,9 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
     protected int columnCount;
     protected int paramCount;
     protected int batchQueryCount;
+    protected ParameterBuffer parameters;
+    private BatchInsertRewriter batchRewriter;
+    private boolean batchRewriteChecked;
 
     /**
      * Constructs a prepared statement on a provided connection.
@@ -41,13 +44,12 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
 
         this.sql = sql;
         DB db = conn.getDatabase();
-        db.prepare(this);
+        db.prepareCached(this);
         rs.colsMeta = db.column_names(pointer);
         columnCount = db.column_count(pointer);
         paramCount = db.bind_parameter_count(pointer);
         batchQueryCount = 0;
-        batch = null;
-        batchPos = 0;
+        parameters = new ParameterBuffer(paramCount);
     }
 
     /** @see org.sqlite.jdbc3.JDBC3Statement#executeBatch() */
@@ -58,17 +60,52 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
         }
 
         try {
+            BatchInsertRewriter rewriter = batchRewriter();
+            if (rewriter != null) {
+                return rewriter.execute(conn.getDatabase(), parameters, batchQueryCount);
+            }
             return conn.getDatabase()
-                    .executeBatch(pointer, batchQueryCount, batch, conn.getAutoCommit());
+                    .executeBatch(pointer, batchQueryCount, parameters, conn.getAutoCommit());
         } finally {
             clearBatch();
         }
     }
 
+    /**
+     * @return The rewriter executing the batch as multi-row inserts, if enabled and the statement
+     *     is a single-row INSERT; null otherwise.
+     */
+    private BatchInsertRewriter batchRewriter() {
+        if (batchQueryCount < 2 || !conn.getConnectionConfig().isRewriteBatchedInserts()) {
+            return null;
+        }
+        if (!batchRewriteChecked) {
+            batchRewriter = BatchInsertRewriter.of(conn, sql, paramCount);
+            batchRewriteChecked = true;
+        }
+        return batchRewriter;
+    }
+
+    /** Hands the statement back to the statement cache of the connection. */
+    @Override
+    protected int releasePointer() throws SQLException {
+        return conn.getDatabase().release(this);
+    }
+
+    @Override
+    protected void internalClose() throws SQLException {
+        if (batchRewriter != null) {
+            batchRewriter.close();
+            batchRewriter = null;
+        }
+        super.internalClose();
+    }
+
     /** @see org.sqlite.jdbc3.JDBC3Statement#clearBatch() () */
     @Override
     public void clearBatch() throws SQLException {
         super.clearBatch();
+        parameters.clear();
         batchQueryCount = 0;
     }
 
@@ -85,7 +122,7 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
     // PARAMETER FUNCTIONS //////////////////////////////////////////
 
     /**
-     * Assigns the object value to the element at the specific position of array batch.
+     * Sets the parameter at the given position of the current batch row.
      *
      * @param pos
      * @param value
@@ -93,10 +130,19 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
      */
     protected void batch(int pos, Object value) throws SQLException {
         checkOpen();
-        if (batch == null) {
-            batch = new Object[paramCount];
-        }
-        batch[batchPos + pos - 1] = value;
+        parameters.set(pos, value);
+    }
+
+    /** @see #batch(int, Object) */
+    protected void batch(int pos, long value) throws SQLException {
+        checkOpen();
+        parameters.setLong(pos, value);
+    }
+
+    /** @see #batch(int, Object) */
+    protected void batch(int pos, double value) throws SQLException {
+        checkOpen();
+        parameters.setDouble(pos, value);
     }
 
     /** Store the date in the user's preferred format (text, int, or real) */
@@ -114,11 +160,11 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
 
             case REAL:
                 // long to Julian date
-                batch(pos, new Double((value / 86400000.0) + 2440587.5));
+                batch(pos, (value / 86400000.0) + 2440587.5);
                 break;
 
             default: // INTEGER:
-                batch(pos, new Long(value / config.getDateMultiplier()));
+                batch(pos, value / config.getDateMultiplier());
         }
     }
 }
@@ -31,13 +31,16 @@ public abstract class CoreResultSet implements Codes {
     public String[] colsMeta = null; // same as cols, but used by Meta interface
     protected boolean[][] meta = null;
 
-    protected int limitRows; // 0 means no limit, must check against maxRows
+    protected int limitRows; // fetch size; 0 means no limit, must check against maxRows
     protected int row = 0; // number of current row, starts at 1 (0 is for before loading data)
     protected int lastCol; // last column accessed, for wasNull(). -1 if none
 
     public boolean closeStmt;
     protected Map<String, Integer> columnNameToIndex = null;
 
+    private RowSnapshot snapshot; // values of the current row, filled on first access
+    private RowBatch fetched; // rows read ahead when limitRows > 1
+
     /**
      * Default constructor for a given statement.
      *
@@ -104,6 +107,63 @@ public abstract class CoreResultSet implements Codes {
         return --col;
     }
 
+    /**
+     * Returns the values of the current row: a row read ahead by {@link #nextFetched()}, or else
+     * the row the statement is on, captured on the first call after each step.
+     *
+     * @return The current row.
+     * @throws SQLException
+     */
+    protected RowValues currentRow() throws SQLException {
+        checkOpen();
+        if (fetched != null && fetched.hasRow()) {
+            return fetched;
+        }
+        if (snapshot == null) {
+            snapshot = new RowSnapshot(getDatabase());
+        }
+        if (!snapshot.isFilled()) {
+            getDatabase().row_snapshot(stmt.pointer, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return True if rows are read ahead, either because the fetch size is greater than one or
+     *     because the cursor is still on a row read ahead before the fetch size was lowered.
+     */
+    protected boolean isFetching() {
+        return limitRows > 1 || (fetched != null && fetched.hasRow());
+    }
+
+    /**
+     * Moves to the next row read ahead, fetching up to {@link #limitRows} more rows in one call
+     * into the database once the buffered ones are used up.
+     *
+     * @return SQLITE_ROW if there is a current row, otherwise the result that ended the statement.
+     * @throws SQLException
+     */
+    protected int nextFetched() throws SQLException {
+        if (fetched == null) {
+            fetched = new RowBatch(getDatabase());
+        }
+        int statusCode = fetched.status();
+        if (!fetched.next() && statusCode == SQLITE_ROW) {
+            int count = Math.max(1, maxRows == 0 ? limitRows : Math.min(limitRows, maxRows - row));
+            rowChanged();
+            statusCode = getDatabase().fetch(stmt.pointer, fetched, count);
+            fetched.next();
+        }
+        return fetched.hasRow() ? SQLITE_ROW : statusCode;
+    }
+
+    /** Discards the captured row; must be called before the statement is stepped or reset. */
+    protected void rowChanged() {
+        if (snapshot != null) {
+            snapshot.invalidate();
+        }
+    }
+
     /** @throws SQLException */
     public void checkMeta() throws SQLException {
         checkCol(1);
@@ -116,17 +176,21 @@ public abstract class CoreResultSet implements Codes {
         cols = null;
         colsMeta = null;
         meta = null;
-        limitRows = 0;
         row = 0;
         lastCol = -1;
         columnNameToIndex = null;
+        rowChanged();
+        if (fetched != null) {
+            fetched.clear();
+        }
 
         if (!open) {
             return;
         }
 
         DB db = stmt.getDatbase();
-        synchronized (db) {
+        db.getLock().lock();
+        try {
             if (stmt.pointer != 0) {
                 db.reset(stmt.pointer);
 
@@ -135,6 +199,8 @@ public abstract class CoreResultSet implements Codes {
                     ((Statement) stmt).close();
                 }
             }
+        } finally {
+            db.getLock().unlock();
         }
 
         open = false;
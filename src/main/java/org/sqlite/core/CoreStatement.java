@@ -32,6 +32,9 @@ public abstract class CoreStatement implements Codes {
     protected Object[] batch = null;
     protected boolean resultsWaiting = false;
 
+    /** Schema generation of the DB when the statement was taken from its statement cache. */
+    int schemaGeneration;
+
     protected CoreStatement(SQLiteConnection c) {
         conn = c;
         rs = new JDBC4ResultSet(this);
@@ -71,7 +74,7 @@ public abstract class CoreStatement implements Codes {
         boolean success = false;
         boolean rc = false;
         try {
-            rc = conn.getDatabase().execute(this, null);
+            rc = conn.getDatabase().execute(this, (Object[]) null);
             success = true;
         } finally {
             resultsWaiting = rc;
@@ -114,10 +117,19 @@ public abstract class CoreStatement implements Codes {
 
         batch = null;
         batchPos = 0;
-        int resp = conn.getDatabase().finalize(this);
+        int resp = releasePointer();
 
         if (resp != SQLITE_OK && resp != SQLITE_MISUSE) conn.getDatabase().throwex(resp);
     }
 
+    /**
+     * Gives up the statement handle when the statement is closed.
+     *
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     */
+    protected int releasePointer() throws SQLException {
+        return conn.getDatabase().finalize(this);
+    }
+
     public abstract ResultSet executeQuery(String sql, boolean closeStmt) throws SQLException;
 }
@@ -15,15 +15,27 @@
  */
 package org.sqlite.core;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.BatchUpdateException;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SubmissionPublisher;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import jdk.incubator.foreign.MemoryAddress;
 import org.sqlite.*;
+import org.sqlite.core.panama.PreUpdateRow;
 
 /*
  * This class is the interface to SQLite. It provides some helper functions
@@ -43,21 +55,56 @@ public abstract class DB implements Codes {
     private final SQLiteConfig config;
     private final AtomicBoolean closed = new AtomicBoolean(true);
 
+    /**
+     * Serializes the use of the connection. A lock rather than the monitor of this object, so that
+     * a virtual thread waiting for the connection parks and releases its carrier thread.
+     */
+    protected final ReentrantLock lock = new ConnectionLock();
+
     /** The "begin;"and "commit;" statement handles. */
     long begin = 0;
 
     long commit = 0;
 
+    /** The "select ?;" statement handle converting values read ahead, see {@link RowBatch}. */
+    private long convert = 0;
+
     /** Tracer for statements to avoid unfinalized statements on db close. */
     private final Map<Long, CoreStatement> stmts = new HashMap<Long, CoreStatement>();
 
-    private final Set<SQLiteUpdateListener> updateListeners = new HashSet<SQLiteUpdateListener>();
-    private final Set<SQLiteCommitListener> commitListeners = new HashSet<SQLiteCommitListener>();
+    /** Idle prepared statements, reused by statements preparing the same SQL. */
+    private final StatementCache statementCache;
+
+    /** Incremented when this connection may have changed the schema, see {@link #release}. */
+    private int schemaGeneration;
+
+    /** First keywords of the statements that change the schema seen by this connection. */
+    private static final String[] SCHEMA_CHANGES = {
+        "create", "drop", "alter", "attach", "detach", "vacuum"
+    };
+
+    // copy-on-write, so that the hooks firing inside a step iterate them without the lock
+    private final Set<SQLiteUpdateListener> updateListeners =
+            new CopyOnWriteArraySet<SQLiteUpdateListener>();
+    private final Set<SQLiteCommitListener> commitListeners =
+            new CopyOnWriteArraySet<SQLiteCommitListener>();
+    private final Set<SQLitePreUpdateListener> preUpdateListeners =
+            new CopyOnWriteArraySet<SQLitePreUpdateListener>();
+    private final Set<SubmissionPublisher<SQLiteChangeBatch>> changePublishers =
+            new CopyOnWriteArraySet<SubmissionPublisher<SQLiteChangeBatch>>();
+    /** The changes of the open transaction, while change publishers are registered. */
+    private ChangeBuffer changes;
+    /** Whether the commit hook fired for the buffered changes, and the COMMIT has not returned. */
+    private boolean commitPending;
+    /** Batches of transactions that committed, published once the connection is released. */
+    private final Queue<SQLiteChangeBatch> committed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean publishing = new AtomicBoolean();
 
     public DB(String url, String fileName, SQLiteConfig config) throws SQLException {
         this.url = url;
         this.fileName = fileName;
         this.config = config;
+        this.statementCache = new StatementCache(config.getStatementCacheSize());
     }
 
     public String getUrl() {
@@ -72,6 +119,19 @@ public abstract class DB implements Codes {
         return config;
     }
 
+    /**
+     * @return The lock serializing the use of this connection. Hold it to run several calls
+     *     without another thread using the connection in between.
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /** @return The cache of idle prepared statements of this connection. */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
     // WRAPPER FUNCTIONS ////////////////////////////////////////////
 
     /**
@@ -178,22 +238,28 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/exec.html">http://www.sqlite.org/c3ref/exec.html</a>
      */
-    public final synchronized void exec(String sql, boolean autoCommit) throws SQLException {
-        long pointer = 0;
+    public final void exec(String sql, boolean autoCommit) throws SQLException {
+        lock.lock();
         try {
-            pointer = prepare(sql);
-            int rc = step(pointer);
-            switch (rc) {
-                case SQLITE_DONE:
-                    ensureAutoCommit(autoCommit);
-                    return;
-                case SQLITE_ROW:
-                    return;
-                default:
-                    throwex(rc);
+            long pointer = 0;
+            schemaMayChange(sql);
+            try {
+                pointer = prepare(sql);
+                int rc = step(pointer);
+                switch (rc) {
+                    case SQLITE_DONE:
+                        ensureAutoCommit(autoCommit);
+                        return;
+                    case SQLITE_ROW:
+                        return;
+                    default:
+                        throwex(rc);
+                }
+            } finally {
+                finalize(pointer);
             }
         } finally {
-            finalize(pointer);
+            lock.unlock();
         }
     }
 
@@ -207,16 +273,21 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/open.html">http://www.sqlite.org/c3ref/open.html</a>
      */
-    public final synchronized void open(String file, int openFlags) throws SQLException {
-        _open(file, openFlags);
-        closed.set(false);
+    public final void open(String file, int openFlags) throws SQLException {
+        lock.lock();
+        try {
+            _open(file, openFlags);
+            closed.set(false);
 
-        if (fileName.startsWith("file:") && !fileName.contains("cache=")) {
-            // URI cache overrides flags
-            shared_cache(config.isEnabledSharedCache());
+            if (fileName.startsWith("file:") && !fileName.contains("cache=")) {
+                // URI cache overrides flags
+                shared_cache(config.isEnabledSharedCache());
+            }
+            enable_load_extension(config.isEnabledLoadExtension());
+            busy_timeout(config.getBusyTimeout());
+        } finally {
+            lock.unlock();
         }
-        enable_load_extension(config.isEnabledLoadExtension());
-        busy_timeout(config.getBusyTimeout());
     }
 
     /**
@@ -227,9 +298,10 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/close.html">http://www.sqlite.org/c3ref/close.html</a>
      */
-    public final synchronized void close() throws SQLException {
-        // finalize any remaining statements before closing db
-        synchronized (stmts) {
+    public final void close() throws SQLException {
+        lock.lock();
+        try {
+            // finalize any remaining statements before closing db
             Iterator<Map.Entry<Long, CoreStatement>> i = stmts.entrySet().iterator();
             while (i.hasNext()) {
                 Map.Entry<Long, CoreStatement> entry = i.next();
@@ -240,23 +312,35 @@ public abstract class DB implements Codes {
                 }
                 i.remove();
             }
-        }
 
-        // remove memory used by user-defined functions
-        free_functions();
+            for (Long pointer : statementCache.clear()) {
+                finalize(pointer.longValue());
+            }
 
-        // clean up commit object
-        if (begin != 0) {
-            finalize(begin);
-            begin = 0;
-        }
-        if (commit != 0) {
-            finalize(commit);
-            commit = 0;
-        }
+            // remove memory used by user-defined functions
+            free_functions();
+
+            closeChangePublishers();
+
+            // clean up commit object
+            if (begin != 0) {
+                finalize(begin);
+                begin = 0;
+            }
+            if (commit != 0) {
+                finalize(commit);
+                commit = 0;
+            }
+            if (convert != 0) {
+                finalize(convert);
+                convert = 0;
+            }
 
-        closed.set(true);
-        _close();
+            closed.set(true);
+            _close();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -267,15 +351,159 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/prepare.html">http://www.sqlite.org/c3ref/prepare.html</a>
      */
-    public final synchronized void prepare(CoreStatement stmt) throws SQLException {
-        if (stmt.sql == null) {
-            throw new NullPointerException();
+    public final void prepare(CoreStatement stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (stmt.sql == null) {
+                throw new NullPointerException();
+            }
+            if (stmt.pointer != 0) {
+                finalize(stmt);
+            }
+            schemaMayChange(stmt.sql);
+            stmt.pointer = prepare(stmt.sql);
+            stmts.put(new Long(stmt.pointer), stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compiles an SQL statement, or reuses an idle one with the same SQL from the {@link
+     * #getStatementCache() statement cache}. The statement should be given back with {@link
+     * #release(CoreStatement)}.
+     *
+     * @param stmt The SQL statement to compile.
+     * @throws SQLException
+     */
+    public final void prepareCached(CoreStatement stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (!statementCache.isEnabled()) {
+                prepare(stmt);
+                return;
+            }
+            if (stmt.sql == null) {
+                throw new NullPointerException();
+            }
+            if (stmt.pointer != 0) {
+                finalize(stmt);
+            }
+            schemaMayChange(stmt.sql);
+            long pointer = statementCache.take(stmt.sql);
+            if (pointer == 0) {
+                pointer = prepare(stmt.sql, true);
+            }
+            stmt.pointer = pointer;
+            stmt.schemaGeneration = schemaGeneration;
+            stmts.put(stmt.pointer, stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a statement obtained from {@link #prepareCached(CoreStatement)}. It is reset,
+     * its bindings are cleared and it is kept in the statement cache, unless the cache is
+     * disabled or the schema may have changed since it was prepared, in which case it is
+     * finalized.
+     *
+     * @param stmt The statement to release.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    public final int release(CoreStatement stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (stmt.pointer == 0) {
+                return 0;
+            }
+            if (!statementCache.isEnabled() || stmt.schemaGeneration != schemaGeneration) {
+                return finalize(stmt);
+            }
+
+            long pointer = stmt.pointer;
+            stmts.remove(pointer);
+            stmt.pointer = 0;
+            // an error of the last step is reported again by reset; the statement is still usable
+            reset(pointer);
+            clear_bindings(pointer);
+            long unused = statementCache.put(stmt.sql, pointer);
+            return unused == 0 ? SQLITE_OK : finalize(unused);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the cached statements if the SQL may change the schema: SQLite prepares them again
+     * when they are stepped, but their column count and names are read before that. Called for
+     * every SQL this connection runs.
+     *
+     * @param sql The SQL about to be run.
+     */
+    public final void schemaMayChange(String sql) throws SQLException {
+        lock.lock();
+        try {
+            if (statementCache.isEnabled() && changesSchema(sql)) {
+                schemaGeneration++;
+                for (Long pointer : statementCache.clear()) {
+                    finalize(pointer.longValue());
+                }
+            }
+        } finally {
+            lock.unlock();
         }
-        if (stmt.pointer != 0) {
-            finalize(stmt);
+    }
+
+    /**
+     * Checks whether any statement of the SQL starts with a keyword that changes the schema.
+     * String literals, quoted identifiers and comments are skipped, so a keyword inside them or
+     * in the middle of a statement does not count.
+     *
+     * @param sql One or more SQL statements.
+     * @return True if a statement may change the schema.
+     */
+    static boolean changesSchema(String sql) {
+        int n = sql.length();
+        boolean start = true;
+        for (int i = 0; i < n; ) {
+            char c = sql.charAt(i);
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                int end = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                // a doubled quote ends one literal and starts the next, which is equivalent
+                i = end < 0 ? n : end + 1;
+                start = false;
+            } else if (c == ';') {
+                start = true;
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                if (start) {
+                    for (String keyword : SCHEMA_CHANGES) {
+                        int end = i + keyword.length();
+                        if (sql.regionMatches(true, i, keyword, 0, keyword.length())
+                                && (end == n || !isIdentifierPart(sql.charAt(end)))) {
+                            return true;
+                        }
+                    }
+                    start = false;
+                }
+                i++;
+            }
         }
-        stmt.pointer = prepare(stmt.sql);
-        stmts.put(new Long(stmt.pointer), stmt);
+        return false;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
     }
 
     /**
@@ -287,18 +515,23 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/finalize.html">http://www.sqlite.org/c3ref/finalize.html</a>
      */
-    public final synchronized int finalize(CoreStatement stmt) throws SQLException {
-        if (stmt.pointer == 0) {
-            return 0;
-        }
-        int rc = SQLITE_ERROR;
+    public final int finalize(CoreStatement stmt) throws SQLException {
+        lock.lock();
         try {
-            rc = finalize(stmt.pointer);
+            if (stmt.pointer == 0) {
+                return 0;
+            }
+            int rc = SQLITE_ERROR;
+            try {
+                rc = finalize(stmt.pointer);
+            } finally {
+                stmts.remove(new Long(stmt.pointer));
+                stmt.pointer = 0;
+            }
+            return rc;
         } finally {
-            stmts.remove(new Long(stmt.pointer));
-            stmt.pointer = 0;
+            lock.unlock();
         }
-        return rc;
     }
 
     /**
@@ -344,6 +577,21 @@ public abstract class DB implements Codes {
      */
     protected abstract long prepare(String sql) throws SQLException;
 
+    /**
+     * Compiles an SQL statement that is expected to be reused many times.
+     *
+     * @param sql An SQL statement.
+     * @param persistent True to tell SQLite the statement is long lived (SQLITE_PREPARE_PERSISTENT
+     *     of sqlite3_prepare_v3), so that its memory is not taken from the lookaside pool.
+     * @return Pointer to a statement.
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/prepare.html">http://www.sqlite.org/c3ref/prepare.html</a>
+     */
+    protected long prepare(String sql, boolean persistent) throws SQLException {
+        return prepare(sql);
+    }
+
     /**
      * Destroys a prepared statement.
      *
@@ -496,6 +744,195 @@ public abstract class DB implements Codes {
      */
     public abstract int column_int(long stmt, int col) throws SQLException;
 
+    /**
+     * Captures every column of the current row of the statement in one locked call, so that
+     * result set getters do not each cross into the database. Backends that can hand out the
+     * pointers of TEXT and BLOB values record them; this implementation only records the storage
+     * class of those columns and leaves them to be read on demand.
+     *
+     * @param stmt Pointer to the statement, positioned on a row.
+     * @param row The snapshot to fill.
+     * @throws SQLException
+     */
+    void row_snapshot(long stmt, RowSnapshot row) throws SQLException {
+        lock.lock();
+        try {
+            int columns = column_count(stmt);
+            row.begin(stmt, columns);
+            for (int col = 0; col < columns; col++) {
+                int type = column_type(stmt, col);
+                switch (type) {
+                    case SQLITE_INTEGER:
+                        row.setLong(col, column_long(stmt, col));
+                        break;
+                    case SQLITE_FLOAT:
+                        row.setDouble(col, column_double(stmt, col));
+                        break;
+                    case SQLITE_NULL:
+                        row.setNull(col);
+                        break;
+                    default:
+                        row.setBytes(col, type, MemoryAddress.NULL, RowSnapshot.NOT_CAPTURED);
+                }
+            }
+            row.end();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Steps the statement up to the given number of times in one locked call and copies each row
+     * into the batch, so the cursor can be advanced without taking the lock again. The statement
+     * is reset as soon as it is done.
+     *
+     * @param stmt Pointer to the statement, positioned before the rows to fetch.
+     * @param rows The batch to fill; its previous rows are discarded.
+     * @param count Maximum number of rows to fetch.
+     * @return Result of the last step: SQLITE_ROW if the batch is full, SQLITE_DONE or an error.
+     * @throws SQLException
+     */
+    int fetch(long stmt, RowBatch rows, int count) throws SQLException {
+        lock.lock();
+        try {
+            int columns = column_count(stmt);
+            rows.begin(columns, count);
+            int fetched = 0;
+            int status = SQLITE_ROW;
+            while (fetched < count) {
+                status = step(stmt);
+                if (status != SQLITE_ROW) {
+                    break;
+                }
+                for (int col = 0; col < columns; col++) {
+                    int type = column_type(stmt, col);
+                    switch (type) {
+                        case SQLITE_INTEGER:
+                            rows.setLong(fetched, col, column_long(stmt, col));
+                            break;
+                        case SQLITE_FLOAT:
+                            rows.setDouble(fetched, col, column_double(stmt, col));
+                            break;
+                        case SQLITE_NULL:
+                            rows.setNull(fetched, col);
+                            break;
+                        default:
+                            rows.setBytes(fetched, col, type, column_blob(stmt, col));
+                    }
+                }
+                fetched++;
+            }
+            if (status == SQLITE_DONE) {
+                reset(stmt);
+            }
+            rows.end(fetched, status);
+            return status;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a value copied out of a row as an INTEGER, converted the way {@link #column_long(long,
+     * int)} converts a column of the row itself. Rows read ahead into a {@link RowBatch} use it
+     * once their statement has moved past them.
+     *
+     * @param type Storage class of the value.
+     * @param value The INTEGER value or the bits of the FLOAT value.
+     * @param bytes The bytes of a TEXT or BLOB value.
+     * @return The value as SQLite converts it.
+     * @throws SQLException
+     */
+    final long convert_long(int type, long value, byte[] bytes) throws SQLException {
+        lock.lock();
+        try {
+            long stmt = select(type, value, bytes);
+            try {
+                return column_long(stmt, 0);
+            } finally {
+                reset(stmt);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a value copied out of a row as a FLOAT, converted the way {@link #column_double(long,
+     * int)} converts a column of the row itself.
+     *
+     * @see #convert_long(int, long, byte[])
+     */
+    final double convert_double(int type, long value, byte[] bytes) throws SQLException {
+        lock.lock();
+        try {
+            long stmt = select(type, value, bytes);
+            try {
+                return column_double(stmt, 0);
+            } finally {
+                reset(stmt);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a value copied out of a row as TEXT, converted the way {@link #column_text(long, int)}
+     * converts a column of the row itself.
+     *
+     * @see #convert_long(int, long, byte[])
+     */
+    final String convert_text(int type, long value, byte[] bytes) throws SQLException {
+        lock.lock();
+        try {
+            long stmt = select(type, value, bytes);
+            try {
+                return column_text(stmt, 0);
+            } finally {
+                reset(stmt);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Steps a statement that selects the given value, so that the column_* functions can convert
+     * it; the caller holds the lock and resets the statement.
+     */
+    private long select(int type, long value, byte[] bytes) throws SQLException {
+        if (convert == 0) {
+            convert = prepare("select ?;");
+        }
+        int rc;
+        switch (type) {
+            case SQLITE_INTEGER:
+                rc = bind_long(convert, 1, value);
+                break;
+            case SQLITE_FLOAT:
+                rc = bind_double(convert, 1, Double.longBitsToDouble(value));
+                break;
+            case SQLITE_TEXT:
+                rc = bind_text(convert, 1, bytes, 0, bytes.length);
+                break;
+            case SQLITE_BLOB:
+                rc = bind_blob(convert, 1, bytes, 0, bytes.length);
+                break;
+            default:
+                rc = bind_null(convert, 1);
+        }
+        if (rc != SQLITE_OK) {
+            throwex(rc);
+        }
+        rc = step(convert);
+        if (rc != SQLITE_ROW) {
+            reset(convert);
+            throwex(rc);
+        }
+        return convert;
+    }
+
     /**
      * Binds NULL value to prepared statements with the pointer to the statement object and the
      * index of the SQL parameter to be set to NULL.
@@ -577,6 +1014,52 @@ public abstract class DB implements Codes {
      */
     abstract int bind_blob(long stmt, int pos, byte[] v) throws SQLException;
 
+    /**
+     * Binds text already encoded as UTF-8.
+     *
+     * @param stmt Pointer to the statement.
+     * @param pos Index of the SQL parameter to be set.
+     * @param utf8 Array holding the encoded text.
+     * @param offset Index of the first byte of the text in the array.
+     * @param length Length of the text in bytes.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/bind_blob.html">http://www.sqlite.org/c3ref/bind_blob.html</a>
+     */
+    int bind_text(long stmt, int pos, byte[] utf8, int offset, int length)
+            throws SQLException {
+        lock.lock();
+        try {
+            return bind_text(stmt, pos, new String(utf8, offset, length, StandardCharsets.UTF_8));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Binds a range of a byte array as a blob.
+     *
+     * @param stmt Pointer to the statement.
+     * @param pos Index of the SQL parameter to be set.
+     * @param v Array holding the blob.
+     * @param offset Index of the first byte of the blob in the array.
+     * @param length Length of the blob in bytes.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/bind_blob.html">http://www.sqlite.org/c3ref/bind_blob.html</a>
+     */
+    int bind_blob(long stmt, int pos, byte[] v, int offset, int length)
+            throws SQLException {
+        lock.lock();
+        try {
+            return bind_blob(stmt, pos, Arrays.copyOfRange(v, offset, offset + length));
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Sets the result of an SQL function as NULL with the pointer to the SQLite database context.
      *
@@ -737,6 +1220,42 @@ public abstract class DB implements Codes {
     public abstract int create_function(String name, Function f, int nArgs, int flags)
             throws SQLException;
 
+    /**
+     * Create a user defined scalar function that receives its arguments and result per call.
+     *
+     * @param name The function name to be created.
+     * @param f The function.
+     * @param nArgs The number of arguments, or -1 for any.
+     * @param flags Extra flags to use when creating the function, such as {@link
+     *     Function#FLAG_DETERMINISTIC}
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException If the backend does not support such functions.
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/create_function.html">http://www.sqlite.org/c3ref/create_function.html</a>
+     */
+    public int create_function(String name, ScalarFunction f, int nArgs, int flags)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("scalar functions need the Panama backend");
+    }
+
+    /**
+     * Create a user defined aggregate function whose state lives in SQLite's aggregate context.
+     *
+     * @param name The function name to be created.
+     * @param f The function; a {@link WindowFunction} is also registered as a window function.
+     * @param nArgs The number of arguments, or -1 for any.
+     * @param flags Extra flags to use when creating the function, such as {@link
+     *     Function#FLAG_DETERMINISTIC}
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException If the backend does not support such functions.
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/create_function.html">http://www.sqlite.org/c3ref/create_function.html</a>
+     */
+    public int create_function(String name, AggregateFunction f, int nArgs, int flags)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("aggregate functions need the Panama backend");
+    }
+
     /**
      * De-registers a user defined function
      *
@@ -758,6 +1277,20 @@ public abstract class DB implements Codes {
      */
     public abstract int create_collation(String name, Collation c) throws SQLException;
 
+    /**
+     * Create a user defined collation that compares UTF-8 bytes.
+     *
+     * @param name The collation name to be created.
+     * @param c The collation.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException If the backend does not support such collations.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/create_collation.html">https://www.sqlite.org/c3ref/create_collation.html</a>
+     */
+    public int create_collation(String name, Utf8Collation c) throws SQLException {
+        throw new SQLFeatureNotSupportedException("UTF-8 collations need the Panama backend");
+    }
+
     /**
      * Create a user defined collation with given collation name and the collation object.
      *
@@ -774,6 +1307,82 @@ public abstract class DB implements Codes {
      */
     abstract void free_functions() throws SQLException;
 
+    /**
+     * @param schema The database to serialize, e.g. "main".
+     * @return A copy of the database, as it would be stored in a file.
+     * @throws SQLException If the backend does not support serializing.
+     * @see <a href="https://www.sqlite.org/c3ref/serialize.html">sqlite3_serialize</a>
+     */
+    public ByteBuffer serialize(String schema) throws SQLException {
+        throw new SQLFeatureNotSupportedException("serialize needs the Panama backend");
+    }
+
+    /**
+     * Replaces a database with an image from {@link #serialize(String)} or a database file.
+     *
+     * @param schema The database to replace, e.g. "main".
+     * @param image The image, from its position to its limit; a direct buffer is used in place.
+     * @throws SQLException If the backend does not support deserializing.
+     * @see <a href="https://www.sqlite.org/c3ref/deserialize.html">sqlite3_deserialize</a>
+     */
+    public void deserialize(String schema, ByteBuffer image) throws SQLException {
+        throw new SQLFeatureNotSupportedException("deserialize needs the Panama backend");
+    }
+
+    /**
+     * Creates a session recording the changes made to a database of this connection.
+     *
+     * @param dbName The database to record, e.g. "main".
+     * @return The sqlite3_session* of the session.
+     * @throws SQLException If SQLite does not have the session extension.
+     * @see <a href="https://www.sqlite.org/session/intro.html">The Session Extension</a>
+     */
+    public long session_create(String dbName) throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
+    /** @param table The table to record, or null for every table. */
+    public void session_attach(long session, String table) throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
+    /**
+     * @param patchset True for a patchset, false for a changeset.
+     * @return A copy of the changes the session recorded.
+     */
+    public ByteBuffer session_changeset(long session, boolean patchset) throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
+    /**
+     * @param enable 1 to record changes, 0 to stop recording, -1 to only query.
+     * @return True if the session records changes.
+     */
+    public boolean session_enable(long session, int enable) throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
+    /** @return True if the session recorded no change. */
+    public boolean session_isempty(long session) throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
+    public void session_delete(long session) throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
+    /**
+     * Applies a changeset or patchset in a single transaction.
+     *
+     * @param changeset The changes, from its position to its limit.
+     * @param handler Decides what to do with conflicting changes.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     */
+    public int changeset_apply(ByteBuffer changeset, SQLiteConflictHandler handler)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("sessions need the Panama backend");
+    }
+
     /**
      * @param dbName Database name to be backed up.
      * @param destFileName Target backup file name.
@@ -784,6 +1393,34 @@ public abstract class DB implements Codes {
     public abstract int backup(String dbName, String destFileName, ProgressObserver observer)
             throws SQLException;
 
+    /**
+     * Backs up a database on the executor, a few pages at a time. The lock of the connection is
+     * only held while a step copies pages, so the connection keeps serving statements, and writes
+     * made through it while the backup runs are part of the copy.
+     *
+     * <p>Cancelling the returned future stops the backup after the step in progress; the
+     * destination is then left incomplete.
+     *
+     * @param dbName Database name to be backed up.
+     * @param destFileName Target backup file name.
+     * @param pagesPerStep The number of pages copied per step, or -1 for all at once.
+     * @param pauseMillis The time to wait between steps.
+     * @param observer Receives the remaining and total page counts after every step; may be null.
+     * @param executor Runs the backup.
+     * @return Completed once the backup is, or exceptionally if it failed.
+     * @throws SQLException If the backend does not support backups in the background.
+     */
+    public CompletableFuture<Void> backup(
+            String dbName,
+            String destFileName,
+            int pagesPerStep,
+            long pauseMillis,
+            ProgressObserver observer,
+            Executor executor)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("paced backups need the Panama backend");
+    }
+
     /**
      * @param dbName Database name for restoring data.
      * @param sourceFileName Source file name.
@@ -836,12 +1473,17 @@ public abstract class DB implements Codes {
      * @return String array of column names.
      * @throws SQLException
      */
-    public final synchronized String[] column_names(long stmt) throws SQLException {
-        String[] names = new String[column_count(stmt)];
-        for (int i = 0; i < names.length; i++) {
-            names[i] = column_name(stmt, i);
+    public final String[] column_names(long stmt) throws SQLException {
+        lock.lock();
+        try {
+            String[] names = new String[column_count(stmt)];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = column_name(stmt, i);
+            }
+            return names;
+        } finally {
+            lock.unlock();
         }
-        return names;
     }
 
     /**
@@ -855,26 +1497,31 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/bind_blob.html">http://www.sqlite.org/c3ref/bind_blob.html</a>
      */
-    final synchronized int sqlbind(long stmt, int pos, Object v) throws SQLException {
-        pos++;
-        if (v == null) {
-            return bind_null(stmt, pos);
-        } else if (v instanceof Integer) {
-            return bind_int(stmt, pos, ((Integer) v).intValue());
-        } else if (v instanceof Short) {
-            return bind_int(stmt, pos, ((Short) v).intValue());
-        } else if (v instanceof Long) {
-            return bind_long(stmt, pos, ((Long) v).longValue());
-        } else if (v instanceof Float) {
-            return bind_double(stmt, pos, ((Float) v).doubleValue());
-        } else if (v instanceof Double) {
-            return bind_double(stmt, pos, ((Double) v).doubleValue());
-        } else if (v instanceof String) {
-            return bind_text(stmt, pos, (String) v);
-        } else if (v instanceof byte[]) {
-            return bind_blob(stmt, pos, (byte[]) v);
-        } else {
-            throw new SQLException("unexpected param type: " + v.getClass());
+    final int sqlbind(long stmt, int pos, Object v) throws SQLException {
+        lock.lock();
+        try {
+            pos++;
+            if (v == null) {
+                return bind_null(stmt, pos);
+            } else if (v instanceof Integer) {
+                return bind_int(stmt, pos, ((Integer) v).intValue());
+            } else if (v instanceof Short) {
+                return bind_int(stmt, pos, ((Short) v).intValue());
+            } else if (v instanceof Long) {
+                return bind_long(stmt, pos, ((Long) v).longValue());
+            } else if (v instanceof Float) {
+                return bind_double(stmt, pos, ((Float) v).doubleValue());
+            } else if (v instanceof Double) {
+                return bind_double(stmt, pos, ((Double) v).doubleValue());
+            } else if (v instanceof String) {
+                return bind_text(stmt, pos, (String) v);
+            } else if (v instanceof byte[]) {
+                return bind_blob(stmt, pos, (byte[]) v);
+            } else {
+                throw new SQLException("unexpected param type: " + v.getClass());
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -884,50 +1531,119 @@ public abstract class DB implements Codes {
      * @see java.sql.Statement#executeBatch()
      * @param stmt Pointer of Stmt object.
      * @param count Number of SQL statements.
-     * @param vals Array of parameter values.
+     * @param params Parameter values, one row per SQL statement.
      * @return Array of the number of rows changed or inserted or deleted for each command if all
      *     commands execute successfully;
      * @throws SQLException
      */
-    final synchronized int[] executeBatch(long stmt, int count, Object[] vals, boolean autoCommit)
+    final int[] executeBatch(
+            long stmt, int count, ParameterBuffer params, boolean autoCommit)
             throws SQLException {
-        if (count < 1) {
-            throw new SQLException("count (" + count + ") < 1");
-        }
+        lock.lock();
+        try {
+            if (count < 1) {
+                throw new SQLException("count (" + count + ") < 1");
+            }
 
-        final int params = bind_parameter_count(stmt);
+            int[] changes = new int[count];
 
-        int rc;
-        int[] changes = new int[count];
+            try {
+                int executed = execute_batch(stmt, count, params, changes);
+                if (executed < count) {
+                    int rc = changes[executed];
+                    changes[executed] = 0;
+                    if (rc == SQLITE_ROW) {
+                        throw new BatchUpdateException(
+                                "batch entry " + executed + ": query returns results", changes);
+                    }
+                    throwex(rc);
+                }
+            } finally {
+                ensureAutoCommit(autoCommit);
+            }
 
+            reset(stmt);
+            return changes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Binds and steps every row of a batch, stopping at the first row that fails. The statement
+     * is reset if a step fails.
+     *
+     * @param stmt Pointer to the statement.
+     * @param count Number of rows to execute.
+     * @param params Parameter values, one row per execution.
+     * @param changes Receives the number of rows changed by each execution; for the row that
+     *     failed, its result code instead.
+     * @return Number of rows executed successfully; count if none failed.
+     * @throws SQLException
+     */
+    int execute_batch(long stmt, int count, ParameterBuffer params, int[] changes)
+            throws SQLException {
+        lock.lock();
         try {
             for (int i = 0; i < count; i++) {
                 reset(stmt);
-                for (int j = 0; j < params; j++) {
-                    rc = sqlbind(stmt, j, vals[(i * params) + j]);
-                    if (rc != SQLITE_OK) {
-                        throwex(rc);
-                    }
+                int rc = params.bind(this, stmt, i);
+                if (rc != SQLITE_OK) {
+                    changes[i] = rc;
+                    return i;
                 }
 
                 rc = step(stmt);
                 if (rc != SQLITE_DONE) {
                     reset(stmt);
-                    if (rc == SQLITE_ROW) {
-                        throw new BatchUpdateException(
-                                "batch entry " + i + ": query returns results", changes);
-                    }
-                    throwex(rc);
+                    changes[i] = rc;
+                    return i;
                 }
 
                 changes[i] = changes();
             }
+            return count;
         } finally {
-            ensureAutoCommit(autoCommit);
+            lock.unlock();
         }
+    }
+
+    /**
+     * Binds consecutive rows of a batch to a statement taking that many rows of parameters, e.g.
+     * an INSERT with a multi-row VALUES clause, and executes it.
+     *
+     * @param stmt Pointer of Stmt object.
+     * @param params Parameter values.
+     * @param first First batch row to bind.
+     * @param rows Number of batch rows to bind.
+     * @return Number of rows changed by the statement.
+     * @throws SQLException
+     */
+    final int executeRows(long stmt, ParameterBuffer params, int first, int rows)
+            throws SQLException {
+        lock.lock();
+        try {
+            reset(stmt);
+            int rc = params.bind(this, stmt, first, rows);
+            if (rc != SQLITE_OK) {
+                throwex(rc);
+            }
 
-        reset(stmt);
-        return changes;
+            rc = step(stmt);
+            if (rc != SQLITE_DONE) {
+                reset(stmt);
+                if (rc == SQLITE_ROW) {
+                    throw new SQLException("query returns results");
+                }
+                throwex(rc);
+            }
+
+            int changes = changes();
+            reset(stmt);
+            return changes;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -938,27 +1654,58 @@ public abstract class DB implements Codes {
      * @return True if a row of ResultSet is ready; false otherwise.
      * @throws SQLException
      */
-    public final synchronized boolean execute(CoreStatement stmt, Object[] vals)
+    public final boolean execute(CoreStatement stmt, Object[] vals)
             throws SQLException {
-        if (vals != null) {
-            final int params = bind_parameter_count(stmt.pointer);
-            if (params > vals.length) {
-                throw new SQLException(
-                        "assertion failure: param count ("
-                                + params
-                                + ") > value count ("
-                                + vals.length
-                                + ")");
-            }
+        lock.lock();
+        try {
+            if (vals != null) {
+                final int params = bind_parameter_count(stmt.pointer);
+                if (params > vals.length) {
+                    throw new SQLException(
+                            "assertion failure: param count ("
+                                    + params
+                                    + ") > value count ("
+                                    + vals.length
+                                    + ")");
+                }
 
-            for (int i = 0; i < params; i++) {
-                int rc = sqlbind(stmt.pointer, i, vals[i]);
-                if (rc != SQLITE_OK) {
-                    throwex(rc);
+                for (int i = 0; i < params; i++) {
+                    int rc = sqlbind(stmt.pointer, i, vals[i]);
+                    if (rc != SQLITE_OK) {
+                        throwex(rc);
+                    }
                 }
             }
+
+            return executeBound(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Binds the current parameters of a prepared statement and steps it.
+     *
+     * @param stmt Stmt object.
+     * @param params Parameter values; the current row is bound.
+     * @return True if a row of ResultSet is ready; false otherwise.
+     * @throws SQLException
+     */
+    public final boolean execute(CoreStatement stmt, ParameterBuffer params)
+            throws SQLException {
+        lock.lock();
+        try {
+            int rc = params.bind(this, stmt.pointer, params.rows());
+            if (rc != SQLITE_OK) {
+                throwex(rc);
+            }
+            return executeBound(stmt);
+        } finally {
+            lock.unlock();
         }
+    }
 
+    private boolean executeBound(CoreStatement stmt) throws SQLException {
         int statusCode = step(stmt.pointer);
         switch (statusCode & 0xFF) {
             case SQLITE_DONE:
@@ -987,18 +1734,24 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/exec.html">http://www.sqlite.org/c3ref/exec.html</a>
      */
-    final synchronized boolean execute(String sql, boolean autoCommit) throws SQLException {
-        int statusCode = _exec(sql);
-        switch (statusCode) {
-            case SQLITE_OK:
-                return false;
-            case SQLITE_DONE:
-                ensureAutoCommit(autoCommit);
-                return false;
-            case SQLITE_ROW:
-                return true;
-            default:
-                throw newSQLException(statusCode);
+    final boolean execute(String sql, boolean autoCommit) throws SQLException {
+        lock.lock();
+        try {
+            schemaMayChange(sql);
+            int statusCode = _exec(sql);
+            switch (statusCode) {
+                case SQLITE_OK:
+                    return false;
+                case SQLITE_DONE:
+                    ensureAutoCommit(autoCommit);
+                    return false;
+                case SQLITE_ROW:
+                    return true;
+                default:
+                    throw newSQLException(statusCode);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -1012,82 +1765,343 @@ public abstract class DB implements Codes {
      *     completed SQL.
      * @throws SQLException
      */
-    public final synchronized int executeUpdate(CoreStatement stmt, Object[] vals)
+    public final int executeUpdate(CoreStatement stmt, Object[] vals)
+            throws SQLException {
+        lock.lock();
+        try {
+            try {
+                if (execute(stmt, vals)) {
+                    throw new SQLException("query returns results");
+                }
+            } finally {
+                if (stmt.pointer != 0) reset(stmt.pointer);
+            }
+            return changes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Execute an SQL INSERT, UPDATE or DELETE statement with the Stmt object and the current
+     * parameter values of the prepared statement.
+     *
+     * @param stmt Stmt object.
+     * @param params Parameter values; the current row is bound.
+     * @return Number of database rows that were changed or inserted or deleted by the most
+     *     recently completed SQL.
+     * @throws SQLException
+     */
+    public final int executeUpdate(CoreStatement stmt, ParameterBuffer params)
             throws SQLException {
+        lock.lock();
         try {
-            if (execute(stmt, vals)) {
-                throw new SQLException("query returns results");
+            try {
+                if (execute(stmt, params)) {
+                    throw new SQLException("query returns results");
+                }
+            } finally {
+                if (stmt.pointer != 0) reset(stmt.pointer);
             }
+            return changes();
         } finally {
-            if (stmt.pointer != 0) reset(stmt.pointer);
+            lock.unlock();
         }
-        return changes();
     }
 
     abstract void set_commit_listener(boolean enabled);
 
     abstract void set_update_listener(boolean enabled);
 
-    public synchronized void addUpdateListener(SQLiteUpdateListener listener) {
-        if (updateListeners.add(listener) && updateListeners.size() == 1) {
-            set_update_listener(true);
+    void set_preupdate_listener(boolean enabled) throws SQLException {
+        throw new SQLFeatureNotSupportedException("pre-update hooks need the Panama backend");
+    }
+
+    public void addUpdateListener(SQLiteUpdateListener listener) {
+        lock.lock();
+        try {
+            boolean hooked = isUpdateHooked();
+            if (updateListeners.add(listener) && !hooked) {
+                set_update_listener(true);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void addCommitListener(SQLiteCommitListener listener) {
-        if (commitListeners.add(listener) && commitListeners.size() == 1) {
-            set_commit_listener(true);
+    public void addCommitListener(SQLiteCommitListener listener) {
+        lock.lock();
+        try {
+            boolean hooked = isCommitHooked();
+            if (commitListeners.add(listener) && !hooked) {
+                set_commit_listener(true);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void removeUpdateListener(SQLiteUpdateListener listener) {
-        if (updateListeners.remove(listener) && updateListeners.isEmpty()) {
-            set_update_listener(false);
+    public void removeUpdateListener(SQLiteUpdateListener listener) {
+        lock.lock();
+        try {
+            if (updateListeners.remove(listener) && !isUpdateHooked()) {
+                set_update_listener(false);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void removeCommitListener(SQLiteCommitListener listener) {
-        if (commitListeners.remove(listener) && commitListeners.isEmpty()) {
-            set_commit_listener(false);
+    public void removeCommitListener(SQLiteCommitListener listener) {
+        lock.lock();
+        try {
+            if (commitListeners.remove(listener) && !isCommitHooked()) {
+                set_commit_listener(false);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    void onUpdate(int type, String database, String table, long rowId) {
-        Set<SQLiteUpdateListener> listeners;
+    public void addPreUpdateListener(SQLitePreUpdateListener listener) throws SQLException {
+        lock.lock();
+        try {
+            if (preUpdateListeners.isEmpty()) {
+                set_preupdate_listener(true);
+            }
+            preUpdateListeners.add(listener);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        synchronized (this) {
-            listeners = new HashSet<SQLiteUpdateListener>(updateListeners);
+    public void removePreUpdateListener(SQLitePreUpdateListener listener) throws SQLException {
+        lock.lock();
+        try {
+            if (preUpdateListeners.remove(listener) && preUpdateListeners.isEmpty()) {
+                set_preupdate_listener(false);
+            }
+        } finally {
+            lock.unlock();
         }
+    }
 
-        for (SQLiteUpdateListener listener : listeners) {
-            SQLiteUpdateListener.Type operationType;
+    /**
+     * Publishes the changes of every transaction committed from now on to the publisher, as one
+     * batch per transaction. A batch is submitted once its COMMIT returned, by the thread that
+     * committed, after it released the connection. The changes of rolled back transactions and of
+     * failed commits are discarded.
+     *
+     * @param publisher Receives the batches; it is closed when the connection is.
+     * @param capacity The number of changes buffered before the buffer grows.
+     */
+    public void addChangePublisher(SubmissionPublisher<SQLiteChangeBatch> publisher, int capacity) {
+        lock.lock();
+        try {
+            boolean updateHooked = isUpdateHooked();
+            boolean commitHooked = isCommitHooked();
+            if (!changePublishers.add(publisher)) {
+                return;
+            }
+            if (changes == null) {
+                changes = new ChangeBuffer(capacity);
+            }
+            if (!updateHooked) {
+                set_update_listener(true);
+            }
+            if (!commitHooked) {
+                set_commit_listener(true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            switch (type) {
-                case 18:
-                    operationType = SQLiteUpdateListener.Type.INSERT;
-                    break;
-                case 9:
-                    operationType = SQLiteUpdateListener.Type.DELETE;
-                    break;
-                case 23:
-                    operationType = SQLiteUpdateListener.Type.UPDATE;
-                    break;
-                default:
-                    throw new AssertionError("Unknown type: " + type);
+    public void removeChangePublisher(SubmissionPublisher<SQLiteChangeBatch> publisher) {
+        lock.lock();
+        try {
+            if (!changePublishers.remove(publisher) || !changePublishers.isEmpty()) {
+                return;
+            }
+            changes = null;
+            commitPending = false;
+            if (!isUpdateHooked()) {
+                set_update_listener(false);
             }
+            if (!isCommitHooked()) {
+                set_commit_listener(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            listener.onUpdate(operationType, database, table, rowId);
+    private boolean isUpdateHooked() {
+        return !updateListeners.isEmpty() || !changePublishers.isEmpty();
+    }
+
+    private boolean isCommitHooked() {
+        return !commitListeners.isEmpty() || !changePublishers.isEmpty();
+    }
+
+    /** Completes the subscribers of the change publishers, once the connection is closed. */
+    private void closeChangePublishers() {
+        for (SubmissionPublisher<SQLiteChangeBatch> publisher : changePublishers) {
+            publisher.close();
         }
+        changePublishers.clear();
+        changes = null;
+        commitPending = false;
     }
 
-    void onCommit(boolean commit) {
-        Set<SQLiteCommitListener> listeners;
+    /**
+     * @return The number of changes buffered before a call that steps statements, to pass to
+     *     {@link #settle(int, int, boolean)}; -1 while no change publisher is registered.
+     */
+    final int changeMark() {
+        ChangeBuffer buffer = changes;
+        return buffer == null ? -1 : buffer.size();
+    }
 
-        synchronized (this) {
-            listeners = new HashSet<SQLiteCommitListener>(commitListeners);
+    /**
+     * Settles the buffered changes once a call that stepped statements returned. Called with the
+     * lock held, or by the owner of a confined connection.
+     *
+     * @param rc The result code of the call.
+     * @param mark The {@link #changeMark()} from before the call.
+     * @param undone Whether the failed call had its changes rolled back, without the transaction:
+     *     an aborted statement leaves them in the buffer, as SQLite reports no hook for it.
+     */
+    final void settle(int rc, int mark, boolean undone) {
+        ChangeBuffer buffer = changes;
+        if (buffer == null) {
+            return;
+        }
+        if (undone) {
+            buffer.truncate(mark);
         }
+        if (commitPending) {
+            if ((rc & 0xff) == SQLITE_BUSY) {
+                // the transaction is still open, and the changes are committed by a retry
+                commitPending = false;
+            } else {
+                // had the commit failed otherwise, the rollback hook would have cleared the buffer
+                detachCommitted();
+            }
+        }
+        if (!lock.isHeldByCurrentThread()) {
+            publishCommitted();
+        }
+    }
 
-        for (SQLiteCommitListener listener : listeners) {
+    /** @return Whether a call that stepped statements failed with the result code. */
+    static boolean failed(int rc) {
+        return rc != SQLITE_OK && rc != SQLITE_ROW && rc != SQLITE_DONE;
+    }
+
+    private void detachCommitted() {
+        commitPending = false;
+        SQLiteChangeBatch batch = changes.drain();
+        if (batch != null) {
+            committed.add(batch);
+        }
+    }
+
+    /** Submits the committed batches, in commit order, one thread at a time. */
+    private void publishCommitted() {
+        while (!committed.isEmpty() && publishing.compareAndSet(false, true)) {
+            try {
+                SQLiteChangeBatch batch;
+                while ((batch = committed.poll()) != null) {
+                    for (SubmissionPublisher<SQLiteChangeBatch> publisher : changePublishers) {
+                        try {
+                            // blocks while a subscriber's buffer is full
+                            publisher.submit(batch);
+                        } catch (IllegalStateException e) {
+                            // closed meanwhile
+                        }
+                    }
+                }
+            } finally {
+                publishing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Publishes the batches committed while it was held once the lock is released, so that a full
+     * subscriber holds up the committing thread, but not the connection.
+     */
+    private final class ConnectionLock extends ReentrantLock {
+        @Override
+        public void unlock() {
+            if (commitPending && getHoldCount() == 1) {
+                // committed by a call that does not settle, e.g. a step of the JNI backend
+                detachCommitted();
+            }
+            super.unlock();
+            if (!committed.isEmpty() && getHoldCount() == 0) {
+                publishCommitted();
+            }
+        }
+    }
+
+    /**
+     * Called by the update hook, on the thread stepping the statement. The names should be
+     * interned by the caller, as a transaction usually changes few tables.
+     */
+    void onUpdate(int type, String database, String table, long rowId) {
+        ChangeBuffer buffer = changes;
+        if (buffer != null) {
+            if (commitPending) {
+                // the commit went through, as a loop in native code stepped on
+                detachCommitted();
+            }
+            buffer.add(type, database, table, rowId);
+        }
+        if (updateListeners.isEmpty()) {
+            return;
+        }
+        SQLiteUpdateListener.Type operationType = SQLiteUpdateListener.Type.of(type);
+        for (SQLiteUpdateListener listener : updateListeners) {
+            listener.onUpdate(operationType, database, table, rowId);
+        }
+    }
+
+    /** Called by the pre-update hook, on the thread stepping the statement. */
+    void onPreUpdate(
+            int type,
+            String database,
+            String table,
+            long oldRowId,
+            long newRowId,
+            PreUpdateRow oldRow,
+            PreUpdateRow newRow) {
+        SQLiteUpdateListener.Type operationType = SQLiteUpdateListener.Type.of(type);
+        for (SQLitePreUpdateListener listener : preUpdateListeners) {
+            try {
+                listener.onPreUpdate(
+                        operationType, database, table, oldRowId, newRowId, oldRow, newRow);
+            } catch (SQLException | RuntimeException e) {
+                // the hook has no way to fail the change, and must not unwind through SQLite
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    void onCommit(boolean commit) {
+        ChangeBuffer buffer = changes;
+        if (buffer != null) {
+            if (commit) {
+                // the commit may still fail; the call that stepped it settles the changes
+                commitPending = true;
+            } else {
+                buffer.clear();
+                commitPending = false;
+            }
+        }
+        for (SQLiteCommitListener listener : commitListeners) {
             if (commit) listener.onCommit();
             else listener.onRollback();
         }
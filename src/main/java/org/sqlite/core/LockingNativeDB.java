@@ -0,0 +1,614 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import org.sqlite.BusyHandler;
+import org.sqlite.Collation;
+import org.sqlite.Function;
+import org.sqlite.ProgressHandler;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * The JNI backend of a connection. Each call takes the lock of the connection, the one compound
+ * callers such as {@link DB#executeUpdate(CoreStatement, Object[])} hold as well, so a thread
+ * waiting for the connection parks on the lock rather than blocking on a monitor.
+ *
+ * @see NativeDB
+ */
+public final class LockingNativeDB extends NativeDB {
+    public LockingNativeDB(String url, String fileName, SQLiteConfig config) throws SQLException {
+        super(url, fileName, config);
+    }
+
+    /** @see org.sqlite.core.DB#_open(java.lang.String, int) */
+    @Override
+    protected void _open(String file, int openFlags) throws SQLException {
+        lock.lock();
+        try {
+            super._open(file, openFlags);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#_close() */
+    @Override
+    protected void _close() throws SQLException {
+        lock.lock();
+        try {
+            super._close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#_exec(java.lang.String) */
+    @Override
+    public int _exec(String sql) throws SQLException {
+        lock.lock();
+        try {
+            return super._exec(sql);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#shared_cache(boolean) */
+    @Override
+    public int shared_cache(boolean enable) {
+        lock.lock();
+        try {
+            return super.shared_cache(enable);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#enable_load_extension(boolean) */
+    @Override
+    public int enable_load_extension(boolean enable) {
+        lock.lock();
+        try {
+            return super.enable_load_extension(enable);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#busy_timeout(int) */
+    @Override
+    public void busy_timeout(int ms) {
+        lock.lock();
+        try {
+            super.busy_timeout(ms);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#busy_handler(BusyHandler) */
+    @Override
+    public void busy_handler(BusyHandler busyHandler) {
+        lock.lock();
+        try {
+            super.busy_handler(busyHandler);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#prepare(java.lang.String) */
+    @Override
+    protected long prepare(String sql) throws SQLException {
+        lock.lock();
+        try {
+            return super.prepare(sql);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#errmsg() */
+    @Override
+    String errmsg() {
+        lock.lock();
+        try {
+            return super.errmsg();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#libversion() */
+    @Override
+    public String libversion() {
+        lock.lock();
+        try {
+            return super.libversion();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#changes() */
+    @Override
+    public int changes() {
+        lock.lock();
+        try {
+            return super.changes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#total_changes() */
+    @Override
+    public int total_changes() {
+        lock.lock();
+        try {
+            return super.total_changes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#finalize(long) */
+    @Override
+    protected int finalize(long stmt) {
+        lock.lock();
+        try {
+            return super.finalize(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#step(long) */
+    @Override
+    public int step(long stmt) {
+        lock.lock();
+        try {
+            return super.step(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#reset(long) */
+    @Override
+    public int reset(long stmt) {
+        lock.lock();
+        try {
+            return super.reset(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#clear_bindings(long) */
+    @Override
+    public int clear_bindings(long stmt) {
+        lock.lock();
+        try {
+            return super.clear_bindings(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_parameter_count(long) */
+    @Override
+    int bind_parameter_count(long stmt) {
+        lock.lock();
+        try {
+            return super.bind_parameter_count(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_count(long) */
+    @Override
+    public int column_count(long stmt) {
+        lock.lock();
+        try {
+            return super.column_count(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_type(long, int) */
+    @Override
+    public int column_type(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_type(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_decltype(long, int) */
+    @Override
+    public String column_decltype(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_decltype(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_table_name(long, int) */
+    @Override
+    public String column_table_name(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_table_name(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_name(long, int) */
+    @Override
+    public String column_name(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_name(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_text(long, int) */
+    @Override
+    public String column_text(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_text(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_blob(long, int) */
+    @Override
+    public byte[] column_blob(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_blob(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_double(long, int) */
+    @Override
+    public double column_double(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_double(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_long(long, int) */
+    @Override
+    public long column_long(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_long(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_int(long, int) */
+    @Override
+    public int column_int(long stmt, int col) {
+        lock.lock();
+        try {
+            return super.column_int(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_null(long, int) */
+    @Override
+    int bind_null(long stmt, int pos) {
+        lock.lock();
+        try {
+            return super.bind_null(stmt, pos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_int(long, int, int) */
+    @Override
+    int bind_int(long stmt, int pos, int v) {
+        lock.lock();
+        try {
+            return super.bind_int(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_long(long, int, long) */
+    @Override
+    int bind_long(long stmt, int pos, long v) {
+        lock.lock();
+        try {
+            return super.bind_long(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_double(long, int, double) */
+    @Override
+    int bind_double(long stmt, int pos, double v) {
+        lock.lock();
+        try {
+            return super.bind_double(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_text(long, int, java.lang.String) */
+    @Override
+    int bind_text(long stmt, int pos, String v) {
+        lock.lock();
+        try {
+            return super.bind_text(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_blob(long, int, byte[]) */
+    @Override
+    int bind_blob(long stmt, int pos, byte[] v) {
+        lock.lock();
+        try {
+            return super.bind_blob(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_null(long) */
+    @Override
+    public void result_null(long context) {
+        lock.lock();
+        try {
+            super.result_null(context);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_text(long, java.lang.String) */
+    @Override
+    public void result_text(long context, String val) {
+        lock.lock();
+        try {
+            super.result_text(context, val);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_blob(long, byte[]) */
+    @Override
+    public void result_blob(long context, byte[] val) {
+        lock.lock();
+        try {
+            super.result_blob(context, val);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_double(long, double) */
+    @Override
+    public void result_double(long context, double val) {
+        lock.lock();
+        try {
+            super.result_double(context, val);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_long(long, long) */
+    @Override
+    public void result_long(long context, long val) {
+        lock.lock();
+        try {
+            super.result_long(context, val);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_int(long, int) */
+    @Override
+    public void result_int(long context, int val) {
+        lock.lock();
+        try {
+            super.result_int(context, val);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#result_error(long, java.lang.String) */
+    @Override
+    public void result_error(long context, String err) {
+        lock.lock();
+        try {
+            super.result_error(context, err);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#create_function(java.lang.String, org.sqlite.Function, int, int) */
+    @Override
+    public int create_function(String name, Function func, int nArgs, int flags) {
+        lock.lock();
+        try {
+            return super.create_function(name, func, nArgs, flags);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#destroy_function(java.lang.String, int) */
+    @Override
+    public int destroy_function(String name, int nArgs) {
+        lock.lock();
+        try {
+            return super.destroy_function(name, nArgs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#create_collation(String, Collation) */
+    @Override
+    public int create_collation(String name, Collation coll) {
+        lock.lock();
+        try {
+            return super.create_collation(name, coll);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#destroy_collation(String) */
+    @Override
+    public int destroy_collation(String name) {
+        lock.lock();
+        try {
+            return super.destroy_collation(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#limit(int, int) */
+    @Override
+    public int limit(int id, int value) throws SQLException {
+        lock.lock();
+        try {
+            return super.limit(id, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @see org.sqlite.core.DB#backup(java.lang.String, java.lang.String,
+     *     org.sqlite.core.DB.ProgressObserver)
+     */
+    @Override
+    public int backup(String dbName, String destFileName, ProgressObserver observer)
+            throws SQLException {
+        lock.lock();
+        try {
+            return super.backup(dbName, destFileName, observer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @see org.sqlite.core.DB#restore(java.lang.String, java.lang.String,
+     *     org.sqlite.core.DB.ProgressObserver)
+     */
+    @Override
+    public int restore(String dbName, String sourceFileName, ProgressObserver observer)
+            throws SQLException {
+        lock.lock();
+        try {
+            return super.restore(dbName, sourceFileName, observer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_metadata(long) */
+    @Override
+    boolean[][] column_metadata(long stmt) {
+        lock.lock();
+        try {
+            return super.column_metadata(stmt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#execute_batch(long, int, ParameterBuffer, int[]) */
+    @Override
+    int execute_batch(long stmt, int count, ParameterBuffer params, int[] changes)
+            throws SQLException {
+        lock.lock();
+        try {
+            return super.execute_batch(stmt, count, params, changes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#set_commit_listener(boolean) */
+    @Override
+    void set_commit_listener(boolean enabled) {
+        lock.lock();
+        try {
+            super.set_commit_listener(enabled);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#set_update_listener(boolean) */
+    @Override
+    void set_update_listener(boolean enabled) {
+        lock.lock();
+        try {
+            super.set_update_listener(enabled);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#register_progress_handler(int, org.sqlite.ProgressHandler) */
+    @Override
+    public void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
+            throws SQLException {
+        lock.lock();
+        try {
+            super.register_progress_handler(vmCalls, progressHandler);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#clear_progress_handler() */
+    @Override
+    public void clear_progress_handler() throws SQLException {
+        lock.lock();
+        try {
+            super.clear_progress_handler();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1513,6 +1513,112 @@ JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_column_1metadata(
     return array;
 }
 
+/*
+** Binds and steps every row of a batch packed by ParameterBuffer: for cell
+** row * params + i, types holds the storage class (0 for NULL), values the
+** integer, the bits of the double, or the offset of TEXT and BLOB bytes in heap,
+** and lengths their byte count. The number of changes of each row is written to
+** changes; the row that fails gets its result code instead. Returns the number
+** of rows executed successfully.
+*/
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_execute_1batch_1packed(
+        JNIEnv *env, jobject this, jlong stmt, jint count, jint params,
+        jbyteArray types, jlongArray values, jintArray lengths, jbyteArray heap,
+        jintArray changes)
+{
+    sqlite3 *db;
+    sqlite3_stmt *dbstmt;
+    jbyte *t = 0, *h = 0;
+    jlong *v = 0;
+    jint *l = 0, *c = 0;
+    jint row;
+    int i, cell, rc;
+    double d;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return 0;
+    }
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return 0;
+    }
+
+    dbstmt = toref(stmt);
+
+    // not critical regions: stepping may call back into Java (functions, hooks)
+    t = (*env)->GetByteArrayElements(env, types, 0);
+    v = t ? (*env)->GetLongArrayElements(env, values, 0) : 0;
+    l = v ? (*env)->GetIntArrayElements(env, lengths, 0) : 0;
+    h = l ? (*env)->GetByteArrayElements(env, heap, 0) : 0;
+    c = h ? (*env)->GetIntArrayElements(env, changes, 0) : 0;
+    if (!c)
+    {
+        row = 0;
+        throwex_outofmemory(env);
+        goto release;
+    }
+
+    for (row = 0; row < count; row++)
+    {
+        sqlite3_reset(dbstmt);
+
+        rc = SQLITE_OK;
+        for (i = 0; i < params && rc == SQLITE_OK; i++)
+        {
+            cell = row * params + i;
+            switch (t[cell])
+            {
+                case SQLITE_INTEGER:
+                    rc = sqlite3_bind_int64(dbstmt, i + 1, v[cell]);
+                    break;
+                case SQLITE_FLOAT:
+                    memcpy(&d, &v[cell], sizeof(d));
+                    rc = sqlite3_bind_double(dbstmt, i + 1, d);
+                    break;
+                case SQLITE_TEXT:
+                    rc = sqlite3_bind_text(dbstmt, i + 1, (const char *) h + v[cell],
+                                           l[cell], SQLITE_TRANSIENT);
+                    break;
+                case SQLITE_BLOB:
+                    rc = sqlite3_bind_blob(dbstmt, i + 1, h + v[cell], l[cell],
+                                           SQLITE_TRANSIENT);
+                    break;
+                default:
+                    rc = sqlite3_bind_null(dbstmt, i + 1);
+            }
+        }
+        if (rc != SQLITE_OK)
+        {
+            c[row] = rc;
+            break;
+        }
+
+        rc = sqlite3_step(dbstmt);
+        if (rc != SQLITE_DONE)
+        {
+            sqlite3_reset(dbstmt);
+            c[row] = rc;
+            break;
+        }
+
+        c[row] = sqlite3_changes(db);
+    }
+
+release:
+    if (c) (*env)->ReleaseIntArrayElements(env, changes, c, 0);
+    if (h) (*env)->ReleaseByteArrayElements(env, heap, h, JNI_ABORT);
+    if (l) (*env)->ReleaseIntArrayElements(env, lengths, l, JNI_ABORT);
+    if (v) (*env)->ReleaseLongArrayElements(env, values, v, JNI_ABORT);
+    if (t) (*env)->ReleaseByteArrayElements(env, types, t, JNI_ABORT);
+
+    return row;
+}
+
 // backup function
 
 void reportProgress(JNIEnv* env, jobject func, int remaining, int pageCount) {
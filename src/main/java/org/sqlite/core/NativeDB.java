@@ -21,13 +21,19 @@ import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import org.sqlite.*;
 
-/** This class provides a thin JNI layer over the SQLite3 C API. */
-public final class NativeDB extends DB {
+/**
+ * This class provides a thin JNI layer over the SQLite3 C API. Its methods take no lock: {@link
+ * LockingNativeDB} takes the lock of the connection around each of them. The natives cannot take
+ * it themselves, and a Java wrapper cannot take their names without changing their JNI symbols.
+ */
+public abstract class NativeDB extends DB {
     /** SQLite connection handle. */
     long pointer = 0;
 
     private static boolean isLoaded;
     private static boolean loadSucceeded;
+    /** False once the loaded library turned out not to have execute_batch_packed. */
+    private static volatile boolean hasPackedBatch = true;
 
     static {
         if ("The Android Project".equals(System.getProperty("java.vm.vendor"))) {
@@ -41,7 +47,7 @@ public final class NativeDB extends DB {
         }
     }
 
-    public NativeDB(String url, String fileName, SQLiteConfig config) throws SQLException {
+    protected NativeDB(String url, String fileName, SQLiteConfig config) throws SQLException {
         super(url, fileName, config);
     }
 
@@ -68,31 +74,31 @@ public final class NativeDB extends DB {
 
     /** @see org.sqlite.core.DB#_open(java.lang.String, int) */
     @Override
-    protected synchronized void _open(String file, int openFlags) throws SQLException {
+    protected void _open(String file, int openFlags) throws SQLException {
         _open_utf8(stringToUtf8ByteArray(file), openFlags);
     }
 
-    synchronized native void _open_utf8(byte[] fileUtf8, int openFlags) throws SQLException;
+    native void _open_utf8(byte[] fileUtf8, int openFlags) throws SQLException;
 
     /** @see org.sqlite.core.DB#_close() */
     @Override
-    protected synchronized native void _close() throws SQLException;
+    protected native void _close() throws SQLException;
 
     /** @see org.sqlite.core.DB#_exec(java.lang.String) */
     @Override
-    public synchronized int _exec(String sql) throws SQLException {
+    public int _exec(String sql) throws SQLException {
         return _exec_utf8(stringToUtf8ByteArray(sql));
     }
 
-    synchronized native int _exec_utf8(byte[] sqlUtf8) throws SQLException;
+    native int _exec_utf8(byte[] sqlUtf8) throws SQLException;
 
     /** @see org.sqlite.core.DB#shared_cache(boolean) */
     @Override
-    public synchronized native int shared_cache(boolean enable);
+    public native int shared_cache(boolean enable);
 
     /** @see org.sqlite.core.DB#enable_load_extension(boolean) */
     @Override
-    public synchronized native int enable_load_extension(boolean enable);
+    public native int enable_load_extension(boolean enable);
 
     /** @see org.sqlite.core.DB#interrupt() */
     @Override
@@ -100,31 +106,31 @@ public final class NativeDB extends DB {
 
     /** @see org.sqlite.core.DB#busy_timeout(int) */
     @Override
-    public synchronized native void busy_timeout(int ms);
+    public native void busy_timeout(int ms);
 
     /** @see org.sqlite.core.DB#busy_handler(BusyHandler) */
     @Override
-    public synchronized native void busy_handler(BusyHandler busyHandler);
+    public native void busy_handler(BusyHandler busyHandler);
 
     /** @see org.sqlite.core.DB#prepare(java.lang.String) */
     @Override
-    protected synchronized long prepare(String sql) throws SQLException {
+    protected long prepare(String sql) throws SQLException {
         return prepare_utf8(stringToUtf8ByteArray(sql));
     }
 
-    synchronized native long prepare_utf8(byte[] sqlUtf8) throws SQLException;
+    native long prepare_utf8(byte[] sqlUtf8) throws SQLException;
 
     /** @see org.sqlite.core.DB#errmsg() */
     @Override
-    synchronized String errmsg() {
+    String errmsg() {
         return utf8ByteBufferToString(errmsg_utf8());
     }
 
-    synchronized native ByteBuffer errmsg_utf8();
+    native ByteBuffer errmsg_utf8();
 
     /** @see org.sqlite.core.DB#libversion() */
     @Override
-    public synchronized String libversion() {
+    public String libversion() {
         return utf8ByteBufferToString(libversion_utf8());
     }
 
@@ -132,219 +138,219 @@ public final class NativeDB extends DB {
 
     /** @see org.sqlite.core.DB#changes() */
     @Override
-    public synchronized native int changes();
+    public native int changes();
 
     /** @see org.sqlite.core.DB#total_changes() */
     @Override
-    public synchronized native int total_changes();
+    public native int total_changes();
 
     /** @see org.sqlite.core.DB#finalize(long) */
     @Override
-    protected synchronized native int finalize(long stmt);
+    protected native int finalize(long stmt);
 
     /** @see org.sqlite.core.DB#step(long) */
     @Override
-    public synchronized native int step(long stmt);
+    public native int step(long stmt);
 
     /** @see org.sqlite.core.DB#reset(long) */
     @Override
-    public synchronized native int reset(long stmt);
+    public native int reset(long stmt);
 
     /** @see org.sqlite.core.DB#clear_bindings(long) */
     @Override
-    public synchronized native int clear_bindings(long stmt);
+    public native int clear_bindings(long stmt);
 
     /** @see org.sqlite.core.DB#bind_parameter_count(long) */
     @Override
-    synchronized native int bind_parameter_count(long stmt);
+    native int bind_parameter_count(long stmt);
 
     /** @see org.sqlite.core.DB#column_count(long) */
     @Override
-    public synchronized native int column_count(long stmt);
+    public native int column_count(long stmt);
 
     /** @see org.sqlite.core.DB#column_type(long, int) */
     @Override
-    public synchronized native int column_type(long stmt, int col);
+    public native int column_type(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_decltype(long, int) */
     @Override
-    public synchronized String column_decltype(long stmt, int col) {
+    public String column_decltype(long stmt, int col) {
         return utf8ByteBufferToString(column_decltype_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_decltype_utf8(long stmt, int col);
+    native ByteBuffer column_decltype_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_table_name(long, int) */
     @Override
-    public synchronized String column_table_name(long stmt, int col) {
+    public String column_table_name(long stmt, int col) {
         return utf8ByteBufferToString(column_table_name_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_table_name_utf8(long stmt, int col);
+    native ByteBuffer column_table_name_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_name(long, int) */
     @Override
-    public synchronized String column_name(long stmt, int col) {
+    public String column_name(long stmt, int col) {
         return utf8ByteBufferToString(column_name_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_name_utf8(long stmt, int col);
+    native ByteBuffer column_name_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_text(long, int) */
     @Override
-    public synchronized String column_text(long stmt, int col) {
+    public String column_text(long stmt, int col) {
         return utf8ByteBufferToString(column_text_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_text_utf8(long stmt, int col);
+    native ByteBuffer column_text_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_blob(long, int) */
     @Override
-    public synchronized native byte[] column_blob(long stmt, int col);
+    public native byte[] column_blob(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_double(long, int) */
     @Override
-    public synchronized native double column_double(long stmt, int col);
+    public native double column_double(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_long(long, int) */
     @Override
-    public synchronized native long column_long(long stmt, int col);
+    public native long column_long(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_int(long, int) */
     @Override
-    public synchronized native int column_int(long stmt, int col);
+    public native int column_int(long stmt, int col);
 
     /** @see org.sqlite.core.DB#bind_null(long, int) */
     @Override
-    synchronized native int bind_null(long stmt, int pos);
+    native int bind_null(long stmt, int pos);
 
     /** @see org.sqlite.core.DB#bind_int(long, int, int) */
     @Override
-    synchronized native int bind_int(long stmt, int pos, int v);
+    native int bind_int(long stmt, int pos, int v);
 
     /** @see org.sqlite.core.DB#bind_long(long, int, long) */
     @Override
-    synchronized native int bind_long(long stmt, int pos, long v);
+    native int bind_long(long stmt, int pos, long v);
 
     /** @see org.sqlite.core.DB#bind_double(long, int, double) */
     @Override
-    synchronized native int bind_double(long stmt, int pos, double v);
+    native int bind_double(long stmt, int pos, double v);
 
     /** @see org.sqlite.core.DB#bind_text(long, int, java.lang.String) */
     @Override
-    synchronized int bind_text(long stmt, int pos, String v) {
+    int bind_text(long stmt, int pos, String v) {
         return bind_text_utf8(stmt, pos, stringToUtf8ByteArray(v));
     }
 
-    synchronized native int bind_text_utf8(long stmt, int pos, byte[] vUtf8);
+    native int bind_text_utf8(long stmt, int pos, byte[] vUtf8);
 
     /** @see org.sqlite.core.DB#bind_blob(long, int, byte[]) */
     @Override
-    synchronized native int bind_blob(long stmt, int pos, byte[] v);
+    native int bind_blob(long stmt, int pos, byte[] v);
 
     /** @see org.sqlite.core.DB#result_null(long) */
     @Override
-    public synchronized native void result_null(long context);
+    public native void result_null(long context);
 
     /** @see org.sqlite.core.DB#result_text(long, java.lang.String) */
     @Override
-    public synchronized void result_text(long context, String val) {
+    public void result_text(long context, String val) {
         result_text_utf8(context, stringToUtf8ByteArray(val));
     }
 
-    synchronized native void result_text_utf8(long context, byte[] valUtf8);
+    native void result_text_utf8(long context, byte[] valUtf8);
 
     /** @see org.sqlite.core.DB#result_blob(long, byte[]) */
     @Override
-    public synchronized native void result_blob(long context, byte[] val);
+    public native void result_blob(long context, byte[] val);
 
     /** @see org.sqlite.core.DB#result_double(long, double) */
     @Override
-    public synchronized native void result_double(long context, double val);
+    public native void result_double(long context, double val);
 
     /** @see org.sqlite.core.DB#result_long(long, long) */
     @Override
-    public synchronized native void result_long(long context, long val);
+    public native void result_long(long context, long val);
 
     /** @see org.sqlite.core.DB#result_int(long, int) */
     @Override
-    public synchronized native void result_int(long context, int val);
+    public native void result_int(long context, int val);
 
     /** @see org.sqlite.core.DB#result_error(long, java.lang.String) */
     @Override
-    public synchronized void result_error(long context, String err) {
+    public void result_error(long context, String err) {
         result_error_utf8(context, stringToUtf8ByteArray(err));
     }
 
-    synchronized native void result_error_utf8(long context, byte[] errUtf8);
+    native void result_error_utf8(long context, byte[] errUtf8);
 
     /** @see org.sqlite.core.DB#value_text(org.sqlite.Function, int) */
     @Override
-    public synchronized String value_text(Function f, int arg) {
+    public String value_text(Function f, int arg) {
         return utf8ByteBufferToString(value_text_utf8(f, arg));
     }
 
-    synchronized native ByteBuffer value_text_utf8(Function f, int argUtf8);
+    native ByteBuffer value_text_utf8(Function f, int argUtf8);
 
     /** @see org.sqlite.core.DB#value_blob(org.sqlite.Function, int) */
     @Override
-    public synchronized native byte[] value_blob(Function f, int arg);
+    public native byte[] value_blob(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_double(org.sqlite.Function, int) */
     @Override
-    public synchronized native double value_double(Function f, int arg);
+    public native double value_double(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_long(org.sqlite.Function, int) */
     @Override
-    public synchronized native long value_long(Function f, int arg);
+    public native long value_long(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_int(org.sqlite.Function, int) */
     @Override
-    public synchronized native int value_int(Function f, int arg);
+    public native int value_int(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_type(org.sqlite.Function, int) */
     @Override
-    public synchronized native int value_type(Function f, int arg);
+    public native int value_type(Function f, int arg);
 
     /** @see org.sqlite.core.DB#create_function(java.lang.String, org.sqlite.Function, int, int) */
     @Override
-    public synchronized int create_function(String name, Function func, int nArgs, int flags) {
+    public int create_function(String name, Function func, int nArgs, int flags) {
         return create_function_utf8(stringToUtf8ByteArray(name), func, nArgs, flags);
     }
 
-    synchronized native int create_function_utf8(
+    native int create_function_utf8(
             byte[] nameUtf8, Function func, int nArgs, int flags);
 
     /** @see org.sqlite.core.DB#destroy_function(java.lang.String, int) */
     @Override
-    public synchronized int destroy_function(String name, int nArgs) {
+    public int destroy_function(String name, int nArgs) {
         return destroy_function_utf8(stringToUtf8ByteArray(name), nArgs);
     }
 
-    synchronized native int destroy_function_utf8(byte[] nameUtf8, int nArgs);
+    native int destroy_function_utf8(byte[] nameUtf8, int nArgs);
 
     /** @see org.sqlite.core.DB#create_collation(String, Collation) */
     @Override
-    public synchronized int create_collation(String name, Collation coll) {
+    public int create_collation(String name, Collation coll) {
         return create_collation_utf8(stringToUtf8ByteArray(name), coll);
     }
 
-    synchronized native int create_collation_utf8(byte[] nameUtf8, Collation coll);
+    native int create_collation_utf8(byte[] nameUtf8, Collation coll);
 
     /** @see org.sqlite.core.DB#destroy_collation(String) */
     @Override
-    public synchronized int destroy_collation(String name) {
+    public int destroy_collation(String name) {
         return destroy_collation_utf8(stringToUtf8ByteArray(name));
     }
 
-    synchronized native int destroy_collation_utf8(byte[] nameUtf8);
+    native int destroy_collation_utf8(byte[] nameUtf8);
 
     /** @see org.sqlite.core.DB#free_functions() */
     @Override
-    synchronized native void free_functions();
+    native void free_functions();
 
     @Override
-    public synchronized native int limit(int id, int value) throws SQLException;
+    public native int limit(int id, int value) throws SQLException;
 
     /**
      * @see org.sqlite.core.DB#backup(java.lang.String, java.lang.String,
@@ -356,7 +362,7 @@ public final class NativeDB extends DB {
         return backup(stringToUtf8ByteArray(dbName), stringToUtf8ByteArray(destFileName), observer);
     }
 
-    synchronized native int backup(
+    native int backup(
             byte[] dbNameUtf8, byte[] destFileNameUtf8, ProgressObserver observer)
             throws SQLException;
 
@@ -365,14 +371,14 @@ public final class NativeDB extends DB {
      *     org.sqlite.core.DB.ProgressObserver)
      */
     @Override
-    public synchronized int restore(String dbName, String sourceFileName, ProgressObserver observer)
+    public int restore(String dbName, String sourceFileName, ProgressObserver observer)
             throws SQLException {
 
         return restore(
                 stringToUtf8ByteArray(dbName), stringToUtf8ByteArray(sourceFileName), observer);
     }
 
-    synchronized native int restore(
+    native int restore(
             byte[] dbNameUtf8, byte[] sourceFileName, ProgressObserver observer)
             throws SQLException;
 
@@ -388,13 +394,52 @@ public final class NativeDB extends DB {
      * @see org.sqlite.core.DB#column_metadata(long)
      */
     @Override
-    synchronized native boolean[][] column_metadata(long stmt);
+    native boolean[][] column_metadata(long stmt);
+
+    /**
+     * Executes the whole batch in a single native call, binding straight from the lanes of the
+     * parameter buffer. Libraries built without execute_batch_packed fall back to the loop of
+     * {@link DB}.
+     *
+     * @see org.sqlite.core.DB#execute_batch(long, int, ParameterBuffer, int[])
+     */
+    @Override
+    int execute_batch(long stmt, int count, ParameterBuffer params, int[] changes)
+            throws SQLException {
+        if (hasPackedBatch) {
+            try {
+                return execute_batch_packed(
+                        stmt,
+                        count,
+                        params.params(),
+                        params.types(),
+                        params.values(),
+                        params.lengths(),
+                        params.heap(),
+                        changes);
+            } catch (UnsatisfiedLinkError e) {
+                // linking fails before the native code runs, so no row has been executed
+                hasPackedBatch = false;
+            }
+        }
+        return super.execute_batch(stmt, count, params, changes);
+    }
+
+    native int execute_batch_packed(
+            long stmt,
+            int count,
+            int params,
+            byte[] types,
+            long[] values,
+            int[] lengths,
+            byte[] heap,
+            int[] changes);
 
     @Override
-    synchronized native void set_commit_listener(boolean enabled);
+    native void set_commit_listener(boolean enabled);
 
     @Override
-    synchronized native void set_update_listener(boolean enabled);
+    native void set_update_listener(boolean enabled);
 
     /**
      * Throws an SQLException
@@ -422,8 +467,8 @@ public final class NativeDB extends DB {
         return new String(buff, StandardCharsets.UTF_8);
     }
 
-    public synchronized native void register_progress_handler(
+    public native void register_progress_handler(
             int vmCalls, ProgressHandler progressHandler) throws SQLException;
 
-    public synchronized native void clear_progress_handler() throws SQLException;
+    public native void clear_progress_handler() throws SQLException;
 }
@@ -6,16 +6,25 @@ import jpassport.Utils;
 import org.sqlite.*;
 import org.sqlite.core.panama.*;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public class PanamaDBImpl extends DB {
 
-    private final List<ProgressFunction> progressList = new ArrayList<>();
-    private final PanamaCallbacks callbackCreator = new PanamaCallbacks();
+    // Registered callbacks, kept until SQLite no longer holds their upcall stubs
     private final Map<String, PanamaFunction> callbackFunctions = new HashMap<>();
     private PanamaBusyHandler m_currentHandler = null;
+    private PanamaCallbacks.Upcall m_busyCall = null;
+    private PanamaCallbacks.Upcall m_progressCall = null;
+    // bound to this connection, so created once and reused when the listeners are toggled
+    private PanamaCallbacks.Upcall m_commitHook = null;
+    private PanamaCallbacks.Upcall m_rollbackHook = null;
+    private PanamaCallbacks.Upcall m_updateHook = null;
+    private PanamaCallbacks.Upcall m_preUpdateHook = null;
 
     private static boolean isLoaded;
     private static boolean loadSucceeded;
@@ -29,6 +38,14 @@ public class PanamaDBImpl extends DB {
 
     private static final int SQLITE_TRANSIENT = -1;
 
+    private static final int BACKUP_PAGES_PER_STEP = 100;
+    private static final int BACKUP_BUSY_RETRIES = 3;
+    private static final long BACKUP_BUSY_PAUSE_MILLIS = 100;
+
+    private static final int SQLITE_DELETE = 9;     /* update hook operations */
+    private static final int SQLITE_INSERT = 18;
+    private static final int SQLITE_PREPARE_PERSISTENT = 0x01;
+
     private static final int SQLITE_OPEN_READONLY = 0x00000001;
     private static final int SQLITE_OPEN_READWRITE = 0x00000002;
     private static final int SQLITE_OPEN_CREATE =    0x00000004;
@@ -50,8 +67,20 @@ public class PanamaDBImpl extends DB {
         super(url, fileName, config);
     }
 
-    static PanamaDB m_panama = null;
+    static PanamaDB_impl m_panama = null;
     DBHandle m_dbHandle = new DBHandle(0);
+    private final Utf8Decoder textDecoder = new Utf8Decoder();
+    private final NameInterner hookNames = new NameInterner();
+    private final PreUpdateRow preUpdateOld = new PreUpdateRow(true);
+    private final PreUpdateRow preUpdateNew = new PreUpdateRow(false);
+    /** Sessions not yet deleted; SQLite requires deleting them before closing the connection. */
+    private final Set<Long> sessions = new HashSet<>();
+    /** sqlite3_backup* of the backups in progress, finished when the connection is closed. */
+    private final Set<Long> backups = new HashSet<>();
+    /** Direct buffers databases were deserialized from in place, kept reachable until closing. */
+    private final Map<String, ByteBuffer> images = new HashMap<>();
+    /** Encodes string arguments; replaced by a nested arena while sqlite3_exec runs. */
+    private ScratchArena arena = new ScratchArena();
 
     /**
      * Loads the SQLite interface backend.
@@ -83,11 +112,16 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#_open(java.lang.String, int)
      */
     @Override
-    protected synchronized void _open(String file, int openFlags) throws SQLException {
-        _open_utf8(file, openFlags);
+    protected void _open(String file, int openFlags) throws SQLException {
+        lock.lock();
+        try {
+            _open_utf8(file, openFlags);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized void _open_utf8(String file, int openFlags) throws SQLException {
+    void _open_utf8(String file, int openFlags) throws SQLException {
         if (m_dbHandle.isValid()) {
             m_panama.sqlite3_close(m_dbHandle.handle());
             throwex("DB already open");
@@ -103,11 +137,25 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#_close()
      */
     @Override
-    protected synchronized void _close() throws SQLException {
-        if (m_dbHandle.isValid()) {
-            int ret = m_panama.sqlite3_close(m_dbHandle.handle());
-            ResultCode.checkReturnCode(ret);
-            m_dbHandle = new DBHandle(0);
+    protected void _close() throws SQLException {
+        lock.lock();
+        try {
+            for (long session : sessions)
+                Sessions.delete(session);
+            sessions.clear();
+            for (long backup : backups)
+                m_panama.sqlite3_backup_finish(backup);
+            backups.clear();
+            if (m_dbHandle.isValid()) {
+                int ret = m_panama.sqlite3_close(m_dbHandle.handle());
+                ResultCode.checkReturnCode(ret);
+                m_dbHandle = new DBHandle(0);
+            }
+            images.clear();
+            arena.close();
+            releaseCallbacks();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -115,14 +163,37 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#_exec(java.lang.String)
      */
     @Override
-    public synchronized int _exec(String sql) throws SQLException {
-        return _exec_utf8(sql);
+    public int _exec(String sql) throws SQLException {
+        lock.lock();
+        try {
+            return _exec_utf8(sql);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized int _exec_utf8(String sqlUtf8) throws SQLException {
+    int _exec_utf8(String sqlUtf8) throws SQLException {
         m_dbHandle.checkValid();
-        int status = m_panama.sqlite3_exec(m_dbHandle.handle(), sqlUtf8, 0, 0, null);
-        ResultCode.checkReturnCode(status);
+        // functions and hooks may run (and encode strings) while exec still reads the SQL
+        var sqlArena = arena;
+        sqlArena.encode(sqlUtf8);
+        arena = sqlArena.nested();
+        int mark = changeMark();
+        int total = mark < 0 ? 0 : m_panama.sqlite3_total_changes(m_dbHandle.handle());
+        int status;
+        try {
+            status = m_panama.sqlite3_exec(m_dbHandle.handle(), sqlArena.address(), 0, 0, MemoryAddress.NULL);
+        }
+        finally {
+            arena = sqlArena;
+        }
+        // of several statements, only those that changed nothing are known to be undone
+        if (mark >= 0)
+            settle(status, mark,
+                    failed(status) && m_panama.sqlite3_total_changes(m_dbHandle.handle()) == total);
+        // like the JNI backend, fail with the message of the statement that failed
+        if (status != SQLITE_OK)
+            throwex(status);
         return status;
     }
 
@@ -130,17 +201,27 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#shared_cache(boolean)
      */
     @Override
-    public synchronized int shared_cache(boolean enable) {
-        return m_panama.sqlite3_enable_shared_cache(enable ? 1 : 0);
+    public int shared_cache(boolean enable) {
+        lock.lock();
+        try {
+            return m_panama.sqlite3_enable_shared_cache(enable ? 1 : 0);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#enable_load_extension(boolean)
      */
     @Override
-    public synchronized int enable_load_extension(boolean enable) throws SQLException {
-        m_dbHandle.checkValid();
-        return m_panama.sqlite3_enable_load_extension(m_dbHandle.handle(), enable ? 1 : 0);
+    public int enable_load_extension(boolean enable) throws SQLException {
+        lock.lock();
+        try {
+            m_dbHandle.checkValid();
+            return m_panama.sqlite3_enable_load_extension(m_dbHandle.handle(), enable ? 1 : 0);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -156,9 +237,18 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#busy_timeout(int)
      */
     @Override
-    public synchronized void busy_timeout(int ms) throws SQLException {
-        m_dbHandle.checkValid();
-        m_panama.sqlite3_busy_timeout(m_dbHandle.handle(), ms);
+    public void busy_timeout(int ms) throws SQLException {
+        lock.lock();
+        try {
+            m_dbHandle.checkValid();
+            m_panama.sqlite3_busy_timeout(m_dbHandle.handle(), ms);
+            // the timeout replaces any busy handler
+            m_currentHandler = null;
+            PanamaCallbacks.Upcall.close(m_busyCall);
+            m_busyCall = null;
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -166,18 +256,25 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#busy_handler(BusyHandler)
      */
     @Override
-    public synchronized void busy_handler(BusyHandler busyHandler)
+    public void busy_handler(BusyHandler busyHandler)
     {
-        if (busyHandler == null) {
-            m_panama.sqlite3_busy_handler(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
-            m_currentHandler = null;
-        } else {
-            if (m_currentHandler != null)
-                throw new IllegalArgumentException("A busy handler already exists");
-
-            m_currentHandler = new PanamaBusyHandler(busyHandler);
-            var addr = callbackCreator.createCallback(m_currentHandler, "callback");
-            m_panama.sqlite3_busy_handler(m_dbHandle.handle(), addr, MemoryAddress.NULL);
+        lock.lock();
+        try {
+            if (busyHandler == null) {
+                m_panama.sqlite3_busy_handler(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
+                m_currentHandler = null;
+                PanamaCallbacks.Upcall.close(m_busyCall);
+                m_busyCall = null;
+            } else {
+                if (m_currentHandler != null)
+                    throw new IllegalArgumentException("A busy handler already exists");
+
+                m_currentHandler = new PanamaBusyHandler(busyHandler);
+                m_busyCall = PanamaCallbacks.createCallback(m_currentHandler, "callback");
+                m_panama.sqlite3_busy_handler(m_dbHandle.handle(), m_busyCall.address(), MemoryAddress.NULL);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -185,28 +282,59 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#prepare(java.lang.String)
      */
     @Override
-    protected synchronized long prepare(String sql) throws SQLException {
-        return prepare_utf8(sql);
+    protected long prepare(String sql) throws SQLException {
+        lock.lock();
+        try {
+            return prepare_utf8(sql);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized long prepare_utf8(String sqlUtf8) throws SQLException {
+    long prepare_utf8(String sqlUtf8) throws SQLException {
         m_dbHandle.checkValid();
-        var stmtPtr = PrepStmt.createPrepareHandle();
-        int byteCount = sqlUtf8.getBytes(StandardCharsets.UTF_8).length;
-        int status = m_panama.sqlite3_prepare_v2(m_dbHandle.handle(), sqlUtf8, byteCount, stmtPtr, 0);
+        int byteCount = arena.encode(sqlUtf8);
+        var stmtPtr = arena.pointerSlot();
+        // the length includes the terminator, which lets SQLite skip copying the text
+        int status = m_panama.sqlite3_prepare_v2(m_dbHandle.handle(), arena.address(), byteCount + 1, stmtPtr, 0);
         ResultCode.checkReturnCode(status);
-        return stmtPtr[0].handle();
+        return arena.pointerSlotValue();
+    }
+
+    /**
+     * @see org.sqlite.core.DB#prepare(java.lang.String, boolean)
+     */
+    @Override
+    protected long prepare(String sql, boolean persistent) throws SQLException {
+        lock.lock();
+        try {
+            if (!persistent)
+                return prepare_utf8(sql);
+            m_dbHandle.checkValid();
+            int byteCount = arena.encode(sql);
+            var stmtPtr = arena.pointerSlot();
+            int status = m_panama.sqlite3_prepare_v3(m_dbHandle.handle(), arena.address(), byteCount + 1, SQLITE_PREPARE_PERSISTENT, stmtPtr);
+            ResultCode.checkReturnCode(status);
+            return arena.pointerSlotValue();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#errmsg()
      */
     @Override
-    synchronized String errmsg() {
-        return errmsg_utf8();
+    String errmsg() {
+        lock.lock();
+        try {
+            return errmsg_utf8();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized String errmsg_utf8() {
+    String errmsg_utf8() {
         if (m_dbHandle.isValid())
             return m_panama.sqlite3_errmsg(m_dbHandle.handle());
         return "No connection!";
@@ -216,8 +344,13 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#libversion()
      */
     @Override
-    public synchronized String libversion() {
-        return libversion_utf8();
+    public String libversion() {
+        lock.lock();
+        try {
+            return libversion_utf8();
+        } finally {
+            lock.unlock();
+        }
     }
 
     String libversion_utf8() {
@@ -228,101 +361,164 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#changes()
      */
     @Override
-    public synchronized int changes() {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_changes(m_dbHandle.handle());
-        return ResultCode.SQLITE_MISUSE.code();
+    public int changes() {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_changes(m_dbHandle.handle());
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#total_changes()
      */
     @Override
-    public synchronized int total_changes() {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_total_changes(m_dbHandle.handle());
-        return ResultCode.SQLITE_MISUSE.code();
+    public int total_changes() {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_total_changes(m_dbHandle.handle());
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#finalize(long)
      */
     @Override
-    protected synchronized int finalize(long stmt) {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_finalize(stmt);
-        return ResultCode.SQLITE_MISUSE.code();
+    protected int finalize(long stmt) {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_finalize(stmt);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#step(long)
      */
     @Override
-    public synchronized int step(long stmt) {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_step(stmt);
-        return ResultCode.SQLITE_MISUSE.code();
+    public int step(long stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return step_unlocked(stmt);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Steps the statement, and settles the changes it buffered for change publishers. Callers hold
+     * the lock of this DB, or own it (see {@link ConfinedPanamaDB}).
+     */
+    final int step_unlocked(long stmt)
+    {
+        int mark = changeMark();
+        int status = m_panama.sqlite3_step(stmt);
+        if (mark >= 0)
+            settle(status, mark,
+                    failed(status) && m_panama.sqlite3_changes(m_dbHandle.handle()) == 0);
+        return status;
     }
 
     /**
      * @see org.sqlite.core.DB#reset(long)
      */
     @Override
-    public synchronized int reset(long stmt) {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_reset(stmt);
-        return ResultCode.SQLITE_MISUSE.code();
+    public int reset(long stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_reset(stmt);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#clear_bindings(long)
      */
     @Override
-    public synchronized int clear_bindings(long stmt) {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_clear_bindings(stmt);
-        return ResultCode.SQLITE_MISUSE.code();
+    public int clear_bindings(long stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_clear_bindings(stmt);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#bind_parameter_count(long)
      */
     @Override
-    synchronized int bind_parameter_count(long stmt) {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_bind_parameter_count(stmt);
-        return ResultCode.SQLITE_MISUSE.code();
+    int bind_parameter_count(long stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_bind_parameter_count(stmt);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#column_count(long)
      */
     @Override
-    public synchronized int column_count(long stmt) {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_column_count(stmt);
-        return ResultCode.SQLITE_MISUSE.code();
-
+    public int column_count(long stmt) throws SQLException {
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_column_count(stmt);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @see org.sqlite.core.DB#column_type(long, int)
      */
     @Override
-    public synchronized int column_type(long stmt, int col)
+    public int column_type(long stmt, int col) throws SQLException
     {
-        if (m_dbHandle.isValid())
-            return m_panama.sqlite3_column_type(stmt, col);
-        return ResultCode.SQLITE_MISUSE.code();
+        lock.lock();
+        try {
+            if (m_dbHandle.isValid())
+                return m_panama.sqlite3_column_type(stmt, col);
+            return ResultCode.SQLITE_MISUSE.code();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#column_decltype(long, int) */
     @Override
-    public synchronized String column_decltype(long stmt, int col) {
-        return column_decltype_utf8(stmt, col);
+    public String column_decltype(long stmt, int col) {
+        lock.lock();
+        try {
+            return column_decltype_utf8(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized String column_decltype_utf8(long stmt, int col)
+    String column_decltype_utf8(long stmt, int col)
     {
         if (m_dbHandle.isValid())
             return m_panama.sqlite3_column_decltype(stmt, col);
@@ -331,11 +527,16 @@ public class PanamaDBImpl extends DB {
 
     /** @see org.sqlite.core.DB#column_table_name(long, int) */
     @Override
-    public synchronized String column_table_name(long stmt, int col) {
-        return column_table_name_utf8(stmt, col);
+    public String column_table_name(long stmt, int col) {
+        lock.lock();
+        try {
+            return column_table_name_utf8(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized String column_table_name_utf8(long stmt, int col)
+    String column_table_name_utf8(long stmt, int col)
     {
         if (m_dbHandle.isValid())
             return m_panama.sqlite3_column_table_name(stmt, col);
@@ -344,11 +545,16 @@ public class PanamaDBImpl extends DB {
 
     /** @see org.sqlite.core.DB#column_name(long, int) */
     @Override
-    public synchronized String column_name(long stmt, int col) {
-        return column_name_utf8(stmt, col);
+    public String column_name(long stmt, int col) {
+        lock.lock();
+        try {
+            return column_name_utf8(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized String column_name_utf8(long stmt, int col)
+    String column_name_utf8(long stmt, int col)
     {
         if (m_dbHandle.isValid())
             return m_panama.sqlite3_column_name(stmt, col);
@@ -357,20 +563,43 @@ public class PanamaDBImpl extends DB {
 
     /** @see org.sqlite.core.DB#column_text(long, int) */
     @Override
-    public synchronized String column_text(long stmt, int col) {
-        return column_text_utf8(stmt, col);
+    public String column_text(long stmt, int col) throws SQLException {
+        lock.lock();
+        try {
+            return column_text_utf8(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized String column_text_utf8(long stmt, int col)
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    String column_text_utf8(long stmt, int col)
     {
         if (m_dbHandle.isValid())
-            return m_panama.sqlite3_column_text(stmt, col);
+        {
+            // column_text must come first so that column_bytes reports the UTF-8 length
+            var text = m_panama.sqlite3_column_text_ptr(stmt, col);
+            if (text == MemoryAddress.NULL)
+                return null;
+            return textDecoder.decode(text, m_panama.sqlite3_column_bytes(stmt, col));
+        }
         return null;
     }
 
     /** @see org.sqlite.core.DB#column_blob(long, int) */
     @Override
-    public synchronized byte[] column_blob(long stmt, int col)
+    public byte[] column_blob(long stmt, int col) throws SQLException
+    {
+        lock.lock();
+        try {
+            return column_blob_unlocked(stmt, col);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    final byte[] column_blob_unlocked(long stmt, int col)
     {
         if (m_dbHandle.isValid())
         {
@@ -385,70 +614,233 @@ public class PanamaDBImpl extends DB {
         return null;
     }
 
+    /** @see org.sqlite.core.DB#row_snapshot(long, RowSnapshot) */
+    @Override
+    void row_snapshot(long stmt, RowSnapshot row) throws SQLException
+    {
+        lock.lock();
+        try {
+            row_snapshot_unlocked(stmt, row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    final void row_snapshot_unlocked(long stmt, RowSnapshot row) throws SQLException
+    {
+        m_dbHandle.checkValid();
+        int columns = m_panama.sqlite3_column_count(stmt);
+        row.begin(stmt, columns);
+        for (int col = 0; col < columns; col++)
+        {
+            int type = m_panama.sqlite3_column_type(stmt, col);
+            switch (type)
+            {
+                case SQLITE_INTEGER -> row.setLong(col, m_panama.sqlite3_column_int64(stmt, col));
+                case SQLITE_FLOAT -> row.setDouble(col, m_panama.sqlite3_column_double(stmt, col));
+                case SQLITE_TEXT -> {
+                    // text first, so that column_bytes reports the UTF-8 length
+                    var text = m_panama.sqlite3_column_text_ptr(stmt, col);
+                    row.setBytes(col, type, text, m_panama.sqlite3_column_bytes(stmt, col));
+                }
+                case SQLITE_BLOB -> {
+                    var blob = m_panama.sqlite3_column_blob(stmt, col);
+                    row.setBytes(col, type, blob, m_panama.sqlite3_column_bytes(stmt, col));
+                }
+                default -> row.setNull(col);
+            }
+        }
+        row.end();
+    }
+
+    /** @see org.sqlite.core.DB#fetch(long, RowBatch, int) */
+    @Override
+    int fetch(long stmt, RowBatch rows, int count) throws SQLException
+    {
+        lock.lock();
+        try {
+            return fetch_unlocked(stmt, rows, count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    final int fetch_unlocked(long stmt, RowBatch rows, int count) throws SQLException
+    {
+        m_dbHandle.checkValid();
+        int columns = m_panama.sqlite3_column_count(stmt);
+        rows.begin(columns, count);
+        int fetched = 0;
+        int status = SQLITE_ROW;
+        while (fetched < count)
+        {
+            status = step_unlocked(stmt);
+            if (status != SQLITE_ROW)
+                break;
+
+            for (int col = 0; col < columns; col++)
+            {
+                int type = m_panama.sqlite3_column_type(stmt, col);
+                switch (type)
+                {
+                    case SQLITE_INTEGER -> rows.setLong(fetched, col, m_panama.sqlite3_column_int64(stmt, col));
+                    case SQLITE_FLOAT -> rows.setDouble(fetched, col, m_panama.sqlite3_column_double(stmt, col));
+                    case SQLITE_TEXT -> {
+                        var text = m_panama.sqlite3_column_text_ptr(stmt, col);
+                        rows.setBytes(fetched, col, type, text, m_panama.sqlite3_column_bytes(stmt, col));
+                    }
+                    case SQLITE_BLOB -> {
+                        var blob = m_panama.sqlite3_column_blob(stmt, col);
+                        rows.setBytes(fetched, col, type, blob, m_panama.sqlite3_column_bytes(stmt, col));
+                    }
+                    default -> rows.setNull(fetched, col);
+                }
+            }
+            fetched++;
+        }
+        if (status == SQLITE_DONE)
+            m_panama.sqlite3_reset(stmt);
+        rows.end(fetched, status);
+        return status;
+    }
+
     /** @see org.sqlite.core.DB#column_double(long, int) */
     @Override
-    public synchronized double column_double(long stmt, int col)
+    public double column_double(long stmt, int col) throws SQLException
     {
-        return m_panama.sqlite3_column_double(stmt, col);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_column_double(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#column_long(long, int) */
     @Override
-    public synchronized long column_long(long stmt, int col)
+    public long column_long(long stmt, int col) throws SQLException
     {
-        return m_panama.sqlite3_column_int64(stmt, col);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_column_int64(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#column_int(long, int) */
     @Override
-    public synchronized int column_int(long stmt, int col)
+    public int column_int(long stmt, int col) throws SQLException
     {
-        return m_panama.sqlite3_column_int(stmt, col);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_column_int(stmt, col);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#bind_null(long, int) */
     @Override
-    synchronized int bind_null(long stmt, int pos)
+    int bind_null(long stmt, int pos) throws SQLException
     {
-        return m_panama.sqlite3_bind_null(stmt, pos);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_bind_null(stmt, pos);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#bind_int(long, int, int) */
     @Override
-    synchronized int bind_int(long stmt, int pos, int v)
+    int bind_int(long stmt, int pos, int v) throws SQLException
     {
-        return m_panama.sqlite3_bind_int(stmt, pos, v);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_bind_int(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#bind_long(long, int, long) */
     @Override
-    synchronized int bind_long(long stmt, int pos, long v)
+    int bind_long(long stmt, int pos, long v) throws SQLException
     {
-        return m_panama.sqlite3_bind_int64(stmt, pos, v);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_bind_int64(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#bind_double(long, int, double) */
     @Override
-    synchronized int bind_double(long stmt, int pos, double v)
+    int bind_double(long stmt, int pos, double v) throws SQLException
     {
-        return m_panama.sqlite3_bind_double(stmt, pos, v);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_bind_double(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#bind_text(long, int, java.lang.String) */
     @Override
-    synchronized int bind_text(long stmt, int pos, String v) {
-        return bind_text_utf8(stmt, pos, v);
+    int bind_text(long stmt, int pos, String v) throws SQLException {
+        lock.lock();
+        try {
+            return bind_text_utf8(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    int bind_text_utf8(long stmt, int pos, String vUtf8)
+    {
+        int len = arena.encode(vUtf8);
+        return m_panama.sqlite3_bind_text(stmt, pos, arena.address(), len, SQLITE_TRANSIENT);
+    }
+
+    /** @see org.sqlite.core.DB#bind_text(long, int, byte[], int, int) */
+    @Override
+    int bind_text(long stmt, int pos, byte[] utf8, int offset, int length) throws SQLException
+    {
+        lock.lock();
+        try {
+            return bind_text_unlocked(stmt, pos, utf8, offset, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized int bind_text_utf8(long stmt, int pos, String vUtf8)
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    final int bind_text_unlocked(long stmt, int pos, byte[] utf8, int offset, int length)
     {
-        int len = vUtf8.getBytes(StandardCharsets.UTF_8).length;
-        return m_panama.sqlite3_bind_text(stmt, pos, vUtf8, len, SQLITE_TRANSIENT);
+        arena.copy(utf8, offset, length);
+        return m_panama.sqlite3_bind_text(stmt, pos, arena.address(), length, SQLITE_TRANSIENT);
     }
 
     /** @see org.sqlite.core.DB#bind_blob(long, int, byte[]) */
     @Override
-    synchronized int bind_blob(long stmt, int pos, byte[] v)
+    int bind_blob(long stmt, int pos, byte[] v) throws SQLException
+    {
+        lock.lock();
+        try {
+            return bind_blob_unlocked(stmt, pos, v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    final int bind_blob_unlocked(long stmt, int pos, byte[] v)
     {
         int len = 0;
         if (v != null && v.length == 0)
@@ -459,150 +851,322 @@ public class PanamaDBImpl extends DB {
         return m_panama.sqlite3_bind_blob(stmt, pos, v, len, SQLITE_TRANSIENT);
     }
 
+    /** @see org.sqlite.core.DB#bind_blob(long, int, byte[], int, int) */
+    @Override
+    int bind_blob(long stmt, int pos, byte[] v, int offset, int length) throws SQLException
+    {
+        lock.lock();
+        try {
+            return bind_blob_unlocked(stmt, pos, v, offset, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers hold the lock of this DB, or own it (see {@link ConfinedPanamaDB}). */
+    final int bind_blob_unlocked(long stmt, int pos, byte[] v, int offset, int length)
+    {
+        if (length == 0)
+            return m_panama.sqlite3_bind_blob(stmt, pos, (byte[]) null, 0, SQLITE_TRANSIENT);
+        arena.copy(v, offset, length);
+        return m_panama.sqlite3_bind_blob(stmt, pos, arena.address(), length, SQLITE_TRANSIENT);
+    }
+
     /** @see org.sqlite.core.DB#result_null(long) */
     @Override
-    public synchronized void result_null(long context)
+    public void result_null(long context)
     {
-        m_panama.sqlite3_result_null(toref(context));
+        lock.lock();
+        try {
+            m_panama.sqlite3_result_null(toref(context));
+        } finally {
+            lock.unlock();
+        }
     }
 
 
     /** @see org.sqlite.core.DB#result_text(long, java.lang.String) */
     @Override
-    public synchronized void result_text(long context, String val) {
+    public void result_text(long context, String val) {
+        lock.lock();
+        try {
+            if (context == 0)
+                return;
+            if (val == null)
+            {
+                m_panama.sqlite3_result_null(toref(context));
+                return;
+            }
 
-        if (context == 0)
-            return;
-        if (val == null)
-        {
-            m_panama.sqlite3_result_null(toref(context));
-            return;
+            int len = arena.encode(val);
+            m_panama.sqlite3_result_text(toref(context), arena.address(), len, SQLITE_TRANSIENT);
+        } finally {
+            lock.unlock();
         }
-
-        m_panama.sqlite3_result_text(toref(context), val, val.getBytes(StandardCharsets.UTF_8).length, SQLITE_TRANSIENT);
     }
 
     /** @see org.sqlite.core.DB#result_blob(long, byte[]) */
     @Override
-    public synchronized void result_blob(long context, byte[] val)
+    public void result_blob(long context, byte[] val)
     {
-        m_panama.sqlite3_result_blob(toref(context), val, val.length, SQLITE_TRANSIENT);
+        lock.lock();
+        try {
+            m_panama.sqlite3_result_blob(toref(context), val, val.length, SQLITE_TRANSIENT);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#result_double(long, double) */
     @Override
-    public synchronized void result_double(long context, double val)
+    public void result_double(long context, double val)
     {
-        m_panama.sqlite3_result_double(toref(context), val);
+        lock.lock();
+        try {
+            m_panama.sqlite3_result_double(toref(context), val);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#result_long(long, long) */
     @Override
-    public synchronized void result_long(long context, long val)
+    public void result_long(long context, long val)
     {
-        m_panama.sqlite3_result_int64(toref(context), val);
+        lock.lock();
+        try {
+            m_panama.sqlite3_result_int64(toref(context), val);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#result_int(long, int) */
     @Override
-    public synchronized void result_int(long context, int val)
+    public void result_int(long context, int val)
     {
-        m_panama.sqlite3_result_int(toref(context), val);
+        lock.lock();
+        try {
+            m_panama.sqlite3_result_int(toref(context), val);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#result_error(long, java.lang.String) */
     @Override
-    public synchronized void result_error(long context, String err) {
-
-        m_panama.sqlite3_result_error(toref(context), err, err.getBytes(StandardCharsets.UTF_8).length);
+    public void result_error(long context, String err) {
+        lock.lock();
+        try {
+            int len = arena.encode(err);
+            m_panama.sqlite3_result_error(toref(context), arena.address(), len);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** @see org.sqlite.core.DB#value_text(org.sqlite.Function, int) */
     @Override
-    public synchronized String value_text(Function f, int arg) {
-        return m_panama.sqlite3_value_text(tovalue(f, arg));
+    public String value_text(Function f, int arg) throws SQLException {
+        return arguments(f).getText(arg);
     }
 
     /** @see org.sqlite.core.DB#value_blob(org.sqlite.Function, int) */
     @Override
-    public synchronized byte[] value_blob(Function f, int arg)
+    public byte[] value_blob(Function f, int arg) throws SQLException
     {
-        var value = tovalue(f, arg);
-        var mem = m_panama.sqlite3_value_blob(value);
-        if (mem == MemoryAddress.NULL)
-            return null;
-
-        int len = m_panama.sqlite3_value_bytes(value);
-        return Utils.toArrByte(mem, len);
+        return arguments(f).getBlob(arg);
     }
 
     /** @see org.sqlite.core.DB#value_double(org.sqlite.Function, int) */
     @Override
-    public synchronized double value_double(Function f, int arg)
+    public double value_double(Function f, int arg) throws SQLException
     {
-        return m_panama.sqlite3_value_double(tovalue(f, arg));
+        return arguments(f).getDouble(arg);
     }
 
     /** @see org.sqlite.core.DB#value_long(org.sqlite.Function, int) */
     @Override
-    public synchronized long value_long(Function f, int arg)
+    public long value_long(Function f, int arg) throws SQLException
     {
-        return m_panama.sqlite3_value_int64(tovalue(f, arg));
+        return arguments(f).getLong(arg);
     }
 
     /** @see org.sqlite.core.DB#value_int(org.sqlite.Function, int) */
     @Override
-    public synchronized int value_int(Function f, int arg)
+    public int value_int(Function f, int arg) throws SQLException
     {
-        return m_panama.sqlite3_value_int(tovalue(f, arg));
+        return arguments(f).getInt(arg);
     }
 
     /** @see org.sqlite.core.DB#value_type(org.sqlite.Function, int) */
     @Override
-    public synchronized int value_type(Function f, int arg)
+    public int value_type(Function f, int arg) throws SQLException
     {
-        return m_panama.sqlite3_value_type(tovalue(f, arg));
+        return arguments(f).type(arg);
     }
 
     /** @see org.sqlite.core.DB#create_function(java.lang.String, org.sqlite.Function, int, int) */
     @Override
-    public synchronized int create_function(String name, Function func, int nArgs, int flags) {
-        return create_function_utf8(name, func, nArgs, flags);
+    public int create_function(String name, Function func, int nArgs, int flags) {
+        lock.lock();
+        try {
+            return create_function_utf8(name, func, nArgs, flags);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized int create_function_utf8(String name, Function func, int nArgs, int flags)
+    int create_function_utf8(String name, Function func, int nArgs, int flags)
     {
-        var pFunc = new PanamaFunction(this, func);
-        callbackFunctions.put(name, pFunc);
+        return register(name, nArgs, flags, new PanamaFunction(this, func));
+    }
 
-        if (func instanceof Function.Aggregate)
+    /** @see org.sqlite.core.DB#create_function(java.lang.String, org.sqlite.ScalarFunction, int, int) */
+    @Override
+    public int create_function(String name, ScalarFunction func, int nArgs, int flags)
+    {
+        lock.lock();
+        try {
+            return register(name, nArgs, flags, new PanamaFunction(this, func));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#create_function(java.lang.String, org.sqlite.AggregateFunction, int, int) */
+    @Override
+    public int create_function(String name, AggregateFunction func, int nArgs, int flags)
+    {
+        lock.lock();
+        try {
+            return register(name, nArgs, flags, new PanamaFunction(this, func));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers the function and frees the one it replaces.
+     *
+     * <p>SQLite keeps one definition per text encoding, and a removed definition still hides the
+     * ones of other encodings. So when the replaced function was registered with another encoding,
+     * that definition is pointed at the new function too rather than removed.
+     */
+    private int register(String name, int nArgs, int flags, PanamaFunction pFunc)
+    {
+        arena.encode(name);
+        int encoding = encoding(pFunc);
+        int rc = createFunction(nArgs, encoding | flags, pFunc);
+        if (rc != SQLITE_OK)
         {
+            // SQLite kept the previous definition, if any
+            pFunc.close();
+            return rc;
+        }
+        pFunc.addEncoding(encoding);
+
+        var replaced = callbackFunctions.put(functionKey(name, nArgs), pFunc);
+        if (replaced != null)
+        {
+            int stale = replaced.encodings() & ~encoding;
+            if (stale != 0 && createFunction(nArgs, stale | flags, pFunc) == SQLITE_OK)
+                pFunc.addEncoding(stale);
+            replaced.close();
+        }
+        return rc;
+    }
+
+    /**
+     * {@link ScalarFunction}s and {@link AggregateFunction}s read their arguments as UTF-8, so
+     * SQLite never converts them; the {@link Function} API has always been registered as UTF-16.
+     */
+    private static int encoding(PanamaFunction pFunc)
+    {
+        return pFunc.wrapsFunction() ? SQLITE_UTF16 : SQLITE_UTF8;
+    }
 
-            return m_panama.sqlite3_create_window_function(m_dbHandle.handle(), name, nArgs, SQLITE_UTF16 | flags,
+    /**
+     * Calls sqlite3_create_function for the name in the arena.
+     *
+     * @param pFunc The function, or null to remove the definition.
+     */
+    private int createFunction(int nArgs, int flags, PanamaFunction pFunc)
+    {
+        if (pFunc == null)
+            return m_panama.sqlite3_create_function(m_dbHandle.handle(), arena.address(), nArgs, flags,
+                    0,
+                    MemoryAddress.NULL,
+                    MemoryAddress.NULL,
+                    MemoryAddress.NULL);
+        if (pFunc.isScalar())
+            return m_panama.sqlite3_create_function(m_dbHandle.handle(), arena.address(), nArgs, flags,
+                    0,
+                    pFunc.getxScalarCall(),
+                    MemoryAddress.NULL,
+                    MemoryAddress.NULL);
+        if (pFunc.isAggregate())
+            return m_panama.sqlite3_create_window_function(m_dbHandle.handle(), arena.address(), nArgs, flags,
                     0,
                     pFunc.getxStepCall(),
                     pFunc.getxFinalCall(),
-                    func instanceof Function.Window ? pFunc.getxValueCall() : MemoryAddress.NULL,
-                    func instanceof Function.Window ? pFunc.getxInverseCall() : MemoryAddress.NULL,
+                    pFunc.isWindow() ? pFunc.getxValueCall() : MemoryAddress.NULL,
+                    pFunc.isWindow() ? pFunc.getxInverseCall() : MemoryAddress.NULL,
                     MemoryAddress.NULL);
-        }
-
-        return m_panama.sqlite3_create_function(m_dbHandle.handle(), name, nArgs, SQLITE_UTF16 | flags,
+        return m_panama.sqlite3_create_function(m_dbHandle.handle(), arena.address(), nArgs, flags,
                 0,
                 pFunc.getxFuncCall(),
                 MemoryAddress.NULL,
                 MemoryAddress.NULL);
     }
 
+    /**
+     * SQLite matches names regardless of ASCII case, and tells functions of the same name but a
+     * different number of arguments apart.
+     */
+    private static String functionKey(String name, int nArgs)
+    {
+        return collationKey(name) + "/" + nArgs;
+    }
+
+    /**
+     * Folds A-Z only: SQLite keeps names apart that differ in the case of other letters, so two of
+     * them must not share a key and replace each other's callback.
+     */
+    private static String collationKey(String name)
+    {
+        char[] key = name.toCharArray();
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] >= 'A' && key[i] <= 'Z')
+                key[i] += 'a' - 'A';
+        }
+        return new String(key);
+    }
+
     /** @see org.sqlite.core.DB#destroy_function(java.lang.String, int) */
     @Override
-    public synchronized int destroy_function(String name, int nArgs) {
-        callbackFunctions.remove(name);
-        return m_panama.sqlite3_create_function(m_dbHandle.handle(), name, nArgs, SQLITE_UTF16,
-                0,
-                MemoryAddress.NULL,
-                MemoryAddress.NULL,
-                MemoryAddress.NULL);
+    public int destroy_function(String name, int nArgs) {
+        lock.lock();
+        try {
+            var key = functionKey(name, nArgs);
+            var current = callbackFunctions.get(key);
+            arena.encode(name);
+            int encodings = current == null ? SQLITE_UTF16 : current.encodings();
+            int rc = SQLITE_OK;
+            for (int encoding : new int[] {SQLITE_UTF8, SQLITE_UTF16})
+            {
+                if ((encodings & encoding) != 0 && rc == SQLITE_OK)
+                    rc = createFunction(nArgs, encoding, null);
+            }
+            if (rc == SQLITE_OK && current != null)
+            {
+                callbackFunctions.remove(key);
+                current.close();
+            }
+            return rc;
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -610,45 +1174,110 @@ public class PanamaDBImpl extends DB {
 
     /** @see org.sqlite.core.DB#create_collation(String, Collation) */
     @Override
-    public synchronized int create_collation(String name, Collation coll) {
-        var callback = new CollateCallback(coll);
-        activeCollates.put(name, callback);
+    public int create_collation(String name, Collation coll) {
+        lock.lock();
+        try {
+            return register_collation(name, new CollateCallback(coll, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see org.sqlite.core.DB#create_collation(String, Utf8Collation) */
+    @Override
+    public int create_collation(String name, Utf8Collation coll) {
+        lock.lock();
+        try {
+            return register_collation(name, new CollateCallback(null, coll));
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        return m_panama.sqlite3_create_collation(
+    private int register_collation(String name, CollateCallback callback)
+    {
+        callback.upcall = PanamaCallbacks.createCallback(callback, "callback");
+
+        arena.encode(name);
+        int rc = m_panama.sqlite3_create_collation(
                 m_dbHandle.handle(),
-                name,            // collation name
+                arena.address(), // collation name
                 SQLITE_UTF8,          // preferred chars
                 MemoryAddress.NULL,
-                callbackCreator.createCallback(callback, "callback"));
+                callback.upcall.address());
+        if (rc != SQLITE_OK)
+        {
+            callback.upcall.close();
+            return rc;
+        }
+        var replaced = activeCollates.put(collationKey(name), callback);
+        if (replaced != null)
+            replaced.upcall.close();
+        return rc;
     }
 
 
     /** @see org.sqlite.core.DB#destroy_collation(String) */
     @Override
-    public synchronized int destroy_collation(String name) {
-
-        activeCollates.remove(name);
-
-        return m_panama.sqlite3_create_collation(
-                m_dbHandle.handle(),
-                name,            // collation name
-                SQLITE_UTF8,          // preferred chars
-                MemoryAddress.NULL,
-                MemoryAddress.NULL);
-     }
+    public int destroy_collation(String name) {
+        lock.lock();
+        try {
+            arena.encode(name);
+            int rc = m_panama.sqlite3_create_collation(
+                    m_dbHandle.handle(),
+                    arena.address(), // collation name
+                    SQLITE_UTF8,          // preferred chars
+                    MemoryAddress.NULL,
+                    MemoryAddress.NULL);
+            if (rc == SQLITE_OK)
+            {
+                var removed = activeCollates.remove(collationKey(name));
+                if (removed != null)
+                    removed.upcall.close();
+            }
+            return rc;
+        } finally {
+            lock.unlock();
+        }
+    }
 
 
     /** @see org.sqlite.core.DB#free_functions() */
     @Override
-    synchronized  void free_functions()
+    void free_functions()
     {
+        // the stubs of the functions are freed by _close, once SQLite can no longer call them
+    }
+
+    /** Frees every upcall stub; called once the connection is closed. */
+    private void releaseCallbacks()
+    {
+        for (var function : callbackFunctions.values())
+            function.close();
         callbackFunctions.clear();
+        for (var collate : activeCollates.values())
+            collate.upcall.close();
+        activeCollates.clear();
+
+        PanamaCallbacks.Upcall.close(m_busyCall);
+        PanamaCallbacks.Upcall.close(m_progressCall);
+        PanamaCallbacks.Upcall.close(m_commitHook);
+        PanamaCallbacks.Upcall.close(m_rollbackHook);
+        PanamaCallbacks.Upcall.close(m_updateHook);
+        PanamaCallbacks.Upcall.close(m_preUpdateHook);
+        m_currentHandler = null;
+        m_busyCall = m_progressCall = m_commitHook = m_rollbackHook = m_updateHook = m_preUpdateHook = null;
     }
 
     @Override
-    public synchronized  int limit(int id, int value) throws SQLException
+    public int limit(int id, int value) throws SQLException
     {
-        return m_panama.sqlite3_limit(m_dbHandle.handle(), id, value);
+        lock.lock();
+        try {
+            return m_panama.sqlite3_limit(m_dbHandle.handle(), id, value);
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -659,34 +1288,146 @@ public class PanamaDBImpl extends DB {
     @Override
     public int backup(String dbName, String destFileName, ProgressObserver observer)
             throws SQLException {
+        var future = new CompletableFuture<Void>();
+        runBackup(dbName, destFileName, BACKUP_PAGES_PER_STEP, 0, BACKUP_BUSY_RETRIES, observer, future);
+        return SQLITE_OK;
+    }
 
+    /**
+     * @see org.sqlite.core.DB#backup(java.lang.String, java.lang.String, int, long,
+     *     org.sqlite.core.DB.ProgressObserver, java.util.concurrent.Executor)
+     */
+    @Override
+    public CompletableFuture<Void> backup(String dbName, String destFileName, int pagesPerStep, long pauseMillis,
+                                          ProgressObserver observer, Executor executor) throws SQLException
+    {
+        if (pagesPerStep == 0 || pagesPerStep < -1)
+            throw new SQLException("invalid number of pages per step: " + pagesPerStep);
+        if (pauseMillis < 0)
+            throw new SQLException("invalid pause: " + pauseMillis);
+        var future = new CompletableFuture<Void>();
+        try {
+            executor.execute(() -> {
+                try {
+                    // the writes of the application keep the source busy: retry until cancelled
+                    runBackup(dbName, destFileName, pagesPerStep, pauseMillis, -1, observer, future);
+                    future.complete(null);
+                }
+                catch (Throwable th)
+                {
+                    future.completeExceptionally(th);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Copies the database a step at a time, holding the lock only during each step, until done or
+     * until the future is cancelled.
+     *
+     * @param busyRetries The number of times a busy or locked step is retried, or -1 for no limit.
+     */
+    private void runBackup(String dbName, String destFileName, int pagesPerStep, long pauseMillis, int busyRetries,
+                           ProgressObserver observer, CompletableFuture<Void> future) throws SQLException
+    {
         int flags = SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE;
-        if (m_panama.sqlite3_strnicmp(destFileName, "file:", 5) == 0) {
+        if (m_panama.sqlite3_strnicmp(destFileName, "file:", 5) == 0)
             flags |= SQLITE_OPEN_URI;
-        }
 
         var pFile = DBHandle.createOpenHandle();
         int rc = m_panama.sqlite3_open_v2(destFileName, pFile, flags, null);
         long handle = pFile[0].handle();
+        try {
+            if (rc != SQLITE_OK)
+                throw backupError("cannot open " + destFileName, handle, rc);
 
-        if( rc==SQLITE_OK ){
+            long pBackup;
+            lock.lock();
+            try {
+                if (!m_dbHandle.isValid())
+                    throw new SQLException("The database has been closed");
+                pBackup = m_panama.sqlite3_backup_init(handle, "main", m_dbHandle.handle(), dbName);
+                if (pBackup == 0)
+                    throw backupError("cannot start the backup", handle, m_panama.sqlite3_errcode(handle));
+                backups.add(pBackup);
+            } finally {
+                lock.unlock();
+            }
 
-            /* Open the sqlite3_backup object used to accomplish the transfer */
-            var pBackup = m_panama.sqlite3_backup_init(handle, "main", m_dbHandle.handle(), dbName);
-            if( pBackup != 0 ){
-                while((rc = m_panama.sqlite3_backup_step(pBackup,100))==SQLITE_OK ){}
+            try {
+                int busy = 0;
+                while (!future.isCancelled())
+                {
+                    int remaining;
+                    int pageCount;
+                    lock.lock();
+                    try {
+                        if (!backups.contains(pBackup))
+                            throw new SQLException("The database has been closed during the backup");
+                        rc = m_panama.sqlite3_backup_step(pBackup, pagesPerStep);
+                        remaining = m_panama.sqlite3_backup_remaining(pBackup);
+                        pageCount = m_panama.sqlite3_backup_pagecount(pBackup);
+                    } finally {
+                        lock.unlock();
+                    }
 
-                /* Release resources allocated by backup_init(). */
-                m_panama.sqlite3_backup_finish(pBackup);
+                    if (rc == SQLITE_BUSY || rc == SQLITE_LOCKED)
+                    {
+                        if (busyRetries >= 0 && busy++ >= busyRetries)
+                            throw backupError("the database is busy", handle, rc);
+                        pause(Math.max(pauseMillis, BACKUP_BUSY_PAUSE_MILLIS));
+                        continue;
+                    }
+                    if (rc != SQLITE_OK && rc != SQLITE_DONE)
+                        throw backupError("backup failed", handle, rc);
+                    busy = 0;
+                    if (observer != null)
+                        observer.progress(remaining, pageCount);
+                    if (rc == SQLITE_DONE)
+                        return;
+                    pause(pauseMillis);
+                }
+            }
+            finally
+            {
+                lock.lock();
+                try {
+                    // unless the connection finished it when it was closed
+                    if (backups.remove(pBackup))
+                        m_panama.sqlite3_backup_finish(pBackup);
+                } finally {
+                    lock.unlock();
+                }
             }
-            rc = m_panama.sqlite3_errcode(handle);
         }
+        finally
+        {
+            m_panama.sqlite3_close(handle);
+        }
+    }
 
-        /* Close the database connection opened on database file zFilename
-         ** and return the result of this function. */
-        m_panama.sqlite3_close(handle);
+    private void pause(long millis) throws SQLException
+    {
+        if (millis <= 0)
+            return;
+        // a Java sleep, unlike sqlite3_sleep, lets a virtual thread unmount
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("backup interrupted", e);
+        }
+    }
 
-        return rc;
+    private SQLException backupError(String message, long handle, int rc)
+    {
+        String detail = handle == 0 ? null : m_panama.sqlite3_errmsg(handle);
+        return new SQLException(detail == null ? message : message + ": " + detail, null, rc);
     }
 
     /**
@@ -694,42 +1435,55 @@ public class PanamaDBImpl extends DB {
      *     org.sqlite.core.DB.ProgressObserver)
      */
     @Override
-    public synchronized int restore(String dbName, String sourceFileName, ProgressObserver observer)
+    public int restore(String dbName, String sourceFileName, ProgressObserver observer)
             throws SQLException {
+        lock.lock();
+        try {
+            /* Open the database file identified by dFileName. */
+            int flags = SQLITE_OPEN_READONLY;
+            if (m_panama.sqlite3_strnicmp(sourceFileName, "file:", 5) == 0) {
+                flags |= SQLITE_OPEN_URI;
+            }
 
-        /* Open the database file identified by dFileName. */
-        int flags = SQLITE_OPEN_READONLY;
-        if (m_panama.sqlite3_strnicmp(sourceFileName, "file:", 5) == 0) {
-            flags |= SQLITE_OPEN_URI;
-        }
-
-        var pFile = DBHandle.createOpenHandle();
-        int rc = m_panama.sqlite3_open_v2(sourceFileName, pFile, flags, null);
-        long handle = pFile[0].handle();
-
-        if( rc==SQLITE_OK ){
-            int nTimeout = 0;
-
-            /* Open the sqlite3_backup object used to accomplish the transfer */
-            var pBackup = m_panama.sqlite3_backup_init(m_dbHandle.handle(), dbName, handle, "main");
-            if( pBackup != 0 ){
-                while( (rc = m_panama.sqlite3_backup_step(pBackup,100))==SQLITE_OK
-                        || rc==SQLITE_BUSY  ){
-                    if( rc==SQLITE_BUSY ){
-                        if( nTimeout++ >= 3 ) break;
-                        m_panama.sqlite3_sleep(100);
+            var pFile = DBHandle.createOpenHandle();
+            int rc = m_panama.sqlite3_open_v2(sourceFileName, pFile, flags, null);
+            long handle = pFile[0].handle();
+
+            if( rc==SQLITE_OK ){
+                int nTimeout = 0;
+
+                /* Open the sqlite3_backup object used to accomplish the transfer */
+                var pBackup = m_panama.sqlite3_backup_init(m_dbHandle.handle(), dbName, handle, "main");
+                if( pBackup != 0 ){
+                    while( (rc = m_panama.sqlite3_backup_step(pBackup, BACKUP_PAGES_PER_STEP))==SQLITE_OK
+                            || rc==SQLITE_BUSY  ){
+                        if (observer != null && rc == SQLITE_OK)
+                            observer.progress(m_panama.sqlite3_backup_remaining(pBackup),
+                                    m_panama.sqlite3_backup_pagecount(pBackup));
+                        if( rc==SQLITE_BUSY ){
+                            if( nTimeout++ >= BACKUP_BUSY_RETRIES ) break;
+                            // a Java sleep, unlike sqlite3_sleep, lets a virtual thread unmount
+                            try {
+                                Thread.sleep(BACKUP_BUSY_PAUSE_MILLIS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                break;
+                            }
+                        }
                     }
+                    /* Release resources allocated by backup_init(). */
+                    m_panama.sqlite3_backup_finish(pBackup);
                 }
-                /* Release resources allocated by backup_init(). */
-                m_panama.sqlite3_backup_finish(pBackup);
+                rc = m_panama.sqlite3_errcode(handle);
             }
-            rc = m_panama.sqlite3_errcode(handle);
-        }
 
-        /* Close the database connection opened on database file zFilename
-         ** and return the result of this function. */
-        m_panama.sqlite3_close(handle);
-        return rc;
+            /* Close the database connection opened on database file zFilename
+             ** and return the result of this function. */
+            m_panama.sqlite3_close(handle);
+            return rc;
+        } finally {
+            lock.unlock();
+        }
     }
 
     // COMPOUND FUNCTIONS (for optimisation) /////////////////////////
@@ -744,58 +1498,82 @@ public class PanamaDBImpl extends DB {
      * @see org.sqlite.core.DB#column_metadata(long)
      */
     @Override
-    synchronized boolean[][] column_metadata(long stmt)
+    boolean[][] column_metadata(long stmt)
     {
-        int colCount = m_panama.sqlite3_column_count(stmt);
-        boolean[][] ret = new boolean[colCount][3];
+        lock.lock();
+        try {
+            int colCount = m_panama.sqlite3_column_count(stmt);
+            boolean[][] ret = new boolean[colCount][3];
 
 
-        for (int n = 0; n < colCount; ++n)
-        {
-            var zColumnName = m_panama.sqlite3_column_name(stmt, n);
-            var zTableName  = m_panama.sqlite3_column_table_name(stmt, n);
+            for (int n = 0; n < colCount; ++n)
+            {
+                var zColumnName = m_panama.sqlite3_column_name(stmt, n);
+                var zTableName  = m_panama.sqlite3_column_table_name(stmt, n);
 
-            int[] notNull = {0};
-            int[] primaryKey = {0};
-            int[] autoIncrement = {0};
+                int[] notNull = {0};
+                int[] primaryKey = {0};
+                int[] autoIncrement = {0};
 
-            if (zColumnName != null && zTableName != null) {
-                m_panama.sqlite3_table_column_metadata(m_dbHandle.handle(), null,
-                        zTableName, zColumnName, MemoryAddress.NULL, MemoryAddress.NULL,
-                        notNull, primaryKey, autoIncrement);
+                if (zColumnName != null && zTableName != null) {
+                    m_panama.sqlite3_table_column_metadata(m_dbHandle.handle(), null,
+                            zTableName, zColumnName, MemoryAddress.NULL, MemoryAddress.NULL,
+                            notNull, primaryKey, autoIncrement);
+                }
+
+                ret[n][0] = notNull[0] != 0;
+                ret[n][1] = primaryKey[0] != 0;
+                ret[n][2] = autoIncrement[0] != 0;
             }
 
-            ret[n][0] = notNull[0] != 0;
-            ret[n][1] = primaryKey[0] != 0;
-            ret[n][2] = autoIncrement[0] != 0;
+            return ret;
+        } finally {
+            lock.unlock();
         }
-
-        return ret;
     }
 
 
         @Override
-    synchronized void set_commit_listener(boolean enabled)
+    void set_commit_listener(boolean enabled)
     {
-        if (enabled)
-        {
-            m_panama.sqlite3_commit_hook(m_dbHandle.handle(), callbackCreator.createCallback(this, "commit_hook"), MemoryAddress.NULL);
-            m_panama.sqlite3_rollback_hook(m_dbHandle.handle(), callbackCreator.createCallback(this, "rollback_hook"), MemoryAddress.NULL);
-        }
-        else
-        {
-            m_panama.sqlite3_commit_hook(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
-            m_panama.sqlite3_rollback_hook(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
+        lock.lock();
+        try {
+            if (enabled)
+            {
+                if (m_commitHook == null)
+                {
+                    m_commitHook = PanamaCallbacks.createCallback(this, "commit_hook");
+                    m_rollbackHook = PanamaCallbacks.createCallback(this, "rollback_hook");
+                }
+                m_panama.sqlite3_commit_hook(m_dbHandle.handle(), m_commitHook.address(), MemoryAddress.NULL);
+                m_panama.sqlite3_rollback_hook(m_dbHandle.handle(), m_rollbackHook.address(), MemoryAddress.NULL);
+            }
+            else
+            {
+                m_panama.sqlite3_commit_hook(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
+                m_panama.sqlite3_rollback_hook(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
-    synchronized void set_update_listener(boolean enabled)
+    void set_update_listener(boolean enabled)
     {
-        if (enabled)
-            m_panama.sqlite3_update_hook(m_dbHandle.handle(), callbackCreator.createCallback(this, "update_hook"), MemoryAddress.NULL);
-        else
-            m_panama.sqlite3_update_hook(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
+        lock.lock();
+        try {
+            if (enabled)
+            {
+                if (m_updateHook == null)
+                    m_updateHook = PanamaCallbacks.createCallback(this, "update_hook");
+                m_panama.sqlite3_update_hook(m_dbHandle.handle(), m_updateHook.address(), MemoryAddress.NULL);
+            }
+            else
+                m_panama.sqlite3_update_hook(m_dbHandle.handle(), MemoryAddress.NULL, MemoryAddress.NULL);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -809,24 +1587,41 @@ public class PanamaDBImpl extends DB {
     }
 
 
-    public synchronized void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
+    public void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
     {
-        var progress = new ProgressFunction(progressHandler);
-        progressList.add(progress);
-
-        m_panama.sqlite3_progress_handler(m_dbHandle.handle(), vmCalls,
-                callbackCreator.createCallback(progress, "progress"), MemoryAddress.NULL);
+        lock.lock();
+        try {
+            var progress = PanamaCallbacks.createCallback(new ProgressFunction(progressHandler), "progress");
+            m_panama.sqlite3_progress_handler(m_dbHandle.handle(), vmCalls, progress.address(), MemoryAddress.NULL);
+            // SQLite only keeps one progress handler
+            PanamaCallbacks.Upcall.close(m_progressCall);
+            m_progressCall = progress;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized void clear_progress_handler()
+    public void clear_progress_handler()
     {
-        m_panama.sqlite3_progress_handler(m_dbHandle.handle(), 0, MemoryAddress.NULL, MemoryAddress.NULL);
-        progressList.clear();
+        lock.lock();
+        try {
+            m_panama.sqlite3_progress_handler(m_dbHandle.handle(), 0, MemoryAddress.NULL, MemoryAddress.NULL);
+            PanamaCallbacks.Upcall.close(m_progressCall);
+            m_progressCall = null;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized void setError(long context, String msg)
+    public void setError(long context, String msg)
     {
-        m_panama.sqlite3_result_error(toref(context), msg, msg.getBytes(StandardCharsets.UTF_8).length);
+        lock.lock();
+        try {
+            int len = arena.encode(msg);
+            m_panama.sqlite3_result_error(toref(context), arena.address(), len);
+        } finally {
+            lock.unlock();
+        }
     }
 
     private static MemoryAddress toref(long context)
@@ -834,27 +1629,156 @@ public class PanamaDBImpl extends DB {
         return MemoryAddress.ofLong(context);
     }
 
-    private static MemoryAddress tovalue(Function f, int arg)
+    @Override
+    void set_preupdate_listener(boolean enabled) throws SQLException
     {
-        if (arg < 0)
-            throw new IllegalArgumentException("Arg must bet >= 0, not "+ arg);
+        lock.lock();
+        try {
+            if (enabled)
+            {
+                PreUpdateHook.checkSupported();
+                if (m_preUpdateHook == null)
+                    m_preUpdateHook = PanamaCallbacks.createCallback(this, "preupdate_hook");
+                PreUpdateHook.set(m_dbHandle.handle(), m_preUpdateHook.address());
+            }
+            else
+                PreUpdateHook.set(m_dbHandle.handle(), MemoryAddress.NULL);
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    @Override
+    public ByteBuffer serialize(String schema) throws SQLException
+    {
+        lock.lock();
         try {
-            int args = f.args();
-            long value = f.value();
-            var addr = toref(value);
+            return Serializer.serialize(m_dbHandle.handle(), schema);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            if (arg >= args)
-                throw new IllegalArgumentException("arg out of range");
+    @Override
+    public void deserialize(String schema, ByteBuffer image) throws SQLException
+    {
+        lock.lock();
+        try {
+            Serializer.deserialize(m_dbHandle.handle(), schema, image);
+            String key = collationKey(schema);
+            if (image.isDirect())
+                images.put(key, image);
+            else
+                images.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            return toref(Utils.toArrLong(addr, args)[arg]);
+    @Override
+    public long session_create(String dbName) throws SQLException
+    {
+        lock.lock();
+        try {
+            long session = Sessions.create(m_dbHandle.handle(), dbName);
+            sessions.add(session);
+            return session;
+        } finally {
+            lock.unlock();
         }
-        catch (SQLException ex)
-        {
-            ex.printStackTrace();
+    }
+
+    @Override
+    public void session_attach(long session, String table) throws SQLException
+    {
+        lock.lock();
+        try {
+            Sessions.attach(checkSession(session), table);
+        } finally {
+            lock.unlock();
         }
+    }
+
+    @Override
+    public ByteBuffer session_changeset(long session, boolean patchset) throws SQLException
+    {
+        lock.lock();
+        try {
+            return Sessions.changeset(checkSession(session), patchset);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        return MemoryAddress.NULL;
+    @Override
+    public boolean session_enable(long session, int enable) throws SQLException
+    {
+        lock.lock();
+        try {
+            return Sessions.enable(checkSession(session), enable);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean session_isempty(long session) throws SQLException
+    {
+        lock.lock();
+        try {
+            return Sessions.isEmpty(checkSession(session));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void session_delete(long session) throws SQLException
+    {
+        lock.lock();
+        try {
+            if (sessions.remove(session))
+                Sessions.delete(session);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long checkSession(long session) throws SQLException
+    {
+        if (!sessions.contains(session))
+            throw new SQLException("session is closed");
+        return session;
+    }
+
+    @Override
+    public int changeset_apply(ByteBuffer changeset, SQLiteConflictHandler handler) throws SQLException
+    {
+        lock.lock();
+        try (var callback = new ConflictCallback(handler)) {
+            int mark = changeMark();
+            int rc = Sessions.apply(m_dbHandle.handle(), changeset, callback.address());
+            // a failed apply rolls back the savepoint it applied the changeset in
+            if (mark >= 0)
+                settle(rc, mark, failed(rc));
+            if (callback.failure() != null)
+                throw new SQLException("conflict handler failed", callback.failure());
+            return rc;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Arguments of the call of the function in progress. They are read without the lock: SQLite
+     * only calls the function from the step of a statement, on the thread that already holds it.
+     */
+    private static FunctionArgs arguments(Function f) throws SQLException
+    {
+        var arguments = f.arguments();
+        if (arguments == null)
+            throw new SQLException("not in value access state");
+        return arguments;
     }
 
     public int commit_hook(MemoryAddress context)
@@ -870,25 +1794,70 @@ public class PanamaDBImpl extends DB {
 
     public void update_hook(MemoryAddress context, int type, MemoryAddress database, MemoryAddress table, long row) {
 
-        onUpdate( type, Utils.readString(database), Utils.readString(table), row);
+        onUpdate(type, hookNames.intern(database), hookNames.intern(table), row);
     }
 
 
+    public void preupdate_hook(MemoryAddress context, MemoryAddress db, int type, MemoryAddress database,
+                               MemoryAddress table, long oldRowId, long newRowId)
+    {
+        long handle = db.toRawLongValue();
+        int count = PreUpdateHook.count(handle);
+        // a listener changing rows of its own connection reports them through fresh rows
+        boolean nested = preUpdateOld.isBound() || preUpdateNew.isBound();
+        var oldRow = type == SQLITE_INSERT ? null : nested ? new PreUpdateRow(true) : preUpdateOld;
+        var newRow = type == SQLITE_DELETE ? null : nested ? new PreUpdateRow(false) : preUpdateNew;
+        if (oldRow != null)
+            oldRow.bind(handle, count);
+        if (newRow != null)
+            newRow.bind(handle, count);
+        try {
+            onPreUpdate(type, hookNames.intern(database), hookNames.intern(table), oldRowId, newRowId, oldRow, newRow);
+        }
+        finally
+        {
+            if (oldRow != null)
+                oldRow.clear();
+            if (newRow != null)
+                newRow.clear();
+        }
+    }
+
     public static class CollateCallback
     {
-        Collation collation;
+        private static final MemorySegment EMPTY = MemorySegment.ofArray(new byte[0]);
+
+        private final Collation collation;
+        private final Utf8Collation utf8Collation;
+        private final Utf8Decoder decoder;
+        PanamaCallbacks.Upcall upcall;
 
-        CollateCallback(Collation callback)
+        /** Exactly one of the collations is given. */
+        CollateCallback(Collation collation, Utf8Collation utf8Collation)
         {
-            collation = callback;
+            this.collation = collation;
+            this.utf8Collation = utf8Collation;
+            decoder = collation == null ? null : new Utf8Decoder();
         }
 
         public int callback(MemoryAddress context, int len1, MemoryAddress str1, int len2, MemoryAddress str2 )
         {
-            String s1 = new String(Utils.toArrByte(str1, len1));
-            String s2 = new String(Utils.toArrByte(str2, len2));
+            if (utf8Collation != null)
+                return utf8Collation.compare(segment(str1, len1), segment(str2, len2));
 
-            return collation.xCompare(s1, s2);
+            // SQLite hands the text over as UTF-8, whatever the platform charset
+            return collation.xCompare(text(str1, len1), text(str2, len2));
+        }
+
+        private static MemorySegment segment(MemoryAddress str, int len)
+        {
+            // a native segment cannot be empty
+            return len == 0 ? EMPTY : str.asSegment(len, ResourceScope.globalScope());
+        }
+
+        private String text(MemoryAddress str, int len)
+        {
+            return len == 0 ? "" : decoder.decode(str, len);
         }
     }
 
@@ -925,9 +1894,4 @@ public class PanamaDBImpl extends DB {
             }
         }
     }
-
-    public PanamaCallbacks getCallbackCreator()
-    {
-        return callbackCreator;
-    }
 }
@@ -0,0 +1,376 @@
+package org.sqlite.core;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Parameter values of a prepared statement: the row being set, plus the rows added to its batch.
+ *
+ * <p>Values are kept in primitive lanes indexed by {@code row * params + param}: a storage class
+ * tag, an 8 byte value (INTEGER, FLOAT bits, or for TEXT and BLOB an offset into a shared byte
+ * heap) and a byte length. Strings are encoded to UTF-8 straight into the heap, so setting a
+ * parameter allocates nothing and {@link DB#executeBatch(long, int, ParameterBuffer, boolean)}
+ * binds without boxing or type checks.
+ *
+ * <p>Adding a row to the batch copies the tags and values of the current row only; TEXT and BLOB
+ * cells keep pointing at the same heap bytes. Bytes of overwritten values stay in the heap until
+ * it is full, at which point the live values are compacted into it.
+ */
+public final class ParameterBuffer implements Codes {
+    private static final int INITIAL_HEAP = 1024;
+
+    private final int params;
+
+    private byte[] types; // storage class per cell, 0 for unset (bound as NULL)
+    private long[] values; // INTEGER, FLOAT bits or heap offset per cell
+    private int[] lengths; // byte length of TEXT and BLOB cells
+    private byte[] heap = new byte[0];
+    private int heapUsed;
+    private int rows; // rows added to the batch; the current row follows them
+
+    public ParameterBuffer(int params) {
+        this.params = params;
+        types = new byte[params];
+        values = new long[params];
+        lengths = new int[params];
+    }
+
+    /** @return The number of parameters per row. */
+    public int params() {
+        return params;
+    }
+
+    /** @return The number of rows added to the batch. */
+    public int rows() {
+        return rows;
+    }
+
+    // CURRENT ROW ////////////////////////////////////////////////////
+
+    /** @param pos Parameter index, starting at 1. */
+    public void setNull(int pos) throws SQLException {
+        types[cell(pos)] = SQLITE_NULL;
+    }
+
+    /** @param pos Parameter index, starting at 1. */
+    public void setLong(int pos, long value) throws SQLException {
+        int cell = cell(pos);
+        types[cell] = SQLITE_INTEGER;
+        values[cell] = value;
+    }
+
+    /** @param pos Parameter index, starting at 1. */
+    public void setDouble(int pos, double value) throws SQLException {
+        int cell = cell(pos);
+        types[cell] = SQLITE_FLOAT;
+        values[cell] = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Encodes the string as UTF-8 into the heap. Unpaired surrogates are replaced by '?', as
+     * {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param pos Parameter index, starting at 1.
+     */
+    public void setText(int pos, String value) throws SQLException {
+        int cell = cell(pos);
+        if (value == null) {
+            types[cell] = SQLITE_NULL;
+            return;
+        }
+
+        int chars = value.length();
+        // a UTF-16 char never needs more than three UTF-8 bytes
+        ensureHeap(3L * chars);
+        byte[] out = heap;
+        int start = heapUsed;
+        int p = start;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[p++] = (byte) c;
+            } else if (c < 0x800) {
+                out[p++] = (byte) (0xC0 | (c >> 6));
+                out[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < chars ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int cp = Character.toCodePoint(c, low);
+                    out[p++] = (byte) (0xF0 | (cp >> 18));
+                    out[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[p++] = (byte) (0x80 | (cp & 0x3F));
+                    i++;
+                } else {
+                    out[p++] = (byte) '?';
+                }
+            } else {
+                out[p++] = (byte) (0xE0 | (c >> 12));
+                out[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        heapUsed = p;
+        types[cell] = SQLITE_TEXT;
+        values[cell] = start;
+        lengths[cell] = p - start;
+    }
+
+    /**
+     * Copies the bytes into the heap.
+     *
+     * @param pos Parameter index, starting at 1.
+     */
+    public void setBlob(int pos, byte[] value) throws SQLException {
+        int cell = cell(pos);
+        if (value == null) {
+            types[cell] = SQLITE_NULL;
+            return;
+        }
+
+        ensureHeap(value.length);
+        System.arraycopy(value, 0, heap, heapUsed, value.length);
+        types[cell] = SQLITE_BLOB;
+        values[cell] = heapUsed;
+        lengths[cell] = value.length;
+        heapUsed += value.length;
+    }
+
+    /**
+     * Sets a value of any of the types a prepared statement binds: null, Integer, Short, Long,
+     * Float, Double, String and byte[].
+     *
+     * @param pos Parameter index, starting at 1.
+     */
+    public void set(int pos, Object value) throws SQLException {
+        if (value == null) {
+            setNull(pos);
+        } else if (value instanceof Integer) {
+            setLong(pos, ((Integer) value).intValue());
+        } else if (value instanceof Short) {
+            setLong(pos, ((Short) value).intValue());
+        } else if (value instanceof Long) {
+            setLong(pos, ((Long) value).longValue());
+        } else if (value instanceof Float) {
+            setDouble(pos, ((Float) value).doubleValue());
+        } else if (value instanceof Double) {
+            setDouble(pos, ((Double) value).doubleValue());
+        } else if (value instanceof String) {
+            setText(pos, (String) value);
+        } else if (value instanceof byte[]) {
+            setBlob(pos, (byte[]) value);
+        } else {
+            throw new SQLException("unexpected param type: " + value.getClass());
+        }
+    }
+
+    /** Unsets every parameter of the current row. */
+    public void clearRow() {
+        int first = rows * params;
+        Arrays.fill(types, first, first + params, (byte) 0);
+    }
+
+    /** Adds the current row to the batch; the new current row starts with the same values. */
+    public void addRow() {
+        int from = rows * params;
+        int to = from + params;
+        if (to + params > types.length) {
+            int cells = Math.max(types.length * 2, to + params);
+            types = Arrays.copyOf(types, cells);
+            values = Arrays.copyOf(values, cells);
+            lengths = Arrays.copyOf(lengths, cells);
+        }
+        System.arraycopy(types, from, types, to, params);
+        System.arraycopy(values, from, values, to, params);
+        System.arraycopy(lengths, from, lengths, to, params);
+        rows++;
+    }
+
+    /** Drops the batch rows and unsets every parameter. */
+    public void clear() {
+        rows = 0;
+        heapUsed = 0;
+        Arrays.fill(types, 0, params, (byte) 0);
+    }
+
+    // BINDING //////////////////////////////////////////////////////////
+
+    /**
+     * Binds one row to the statement.
+     *
+     * @param row The batch row, or {@link #rows()} for the current row.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     */
+    int bind(DB db, long stmt, int row) throws SQLException {
+        return bind(db, stmt, row, 1);
+    }
+
+    /**
+     * Binds consecutive batch rows to a statement taking that many rows of parameters, e.g. an
+     * INSERT with a multi-row VALUES clause.
+     *
+     * @param first The first batch row.
+     * @param count Number of rows to bind.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     */
+    int bind(DB db, long stmt, int first, int count) throws SQLException {
+        int firstCell = first * params;
+        int cells = count * params;
+        for (int i = 0; i < cells; i++) {
+            int cell = firstCell + i;
+            int rc;
+            switch (types[cell]) {
+                case SQLITE_INTEGER:
+                    rc = db.bind_long(stmt, i + 1, values[cell]);
+                    break;
+                case SQLITE_FLOAT:
+                    rc = db.bind_double(stmt, i + 1, Double.longBitsToDouble(values[cell]));
+                    break;
+                case SQLITE_TEXT:
+                    rc = db.bind_text(stmt, i + 1, heap, (int) values[cell], lengths[cell]);
+                    break;
+                case SQLITE_BLOB:
+                    rc = db.bind_blob(stmt, i + 1, heap, (int) values[cell], lengths[cell]);
+                    break;
+                default:
+                    rc = db.bind_null(stmt, i + 1);
+            }
+            if (rc != SQLITE_OK) {
+                return rc;
+            }
+        }
+        return SQLITE_OK;
+    }
+
+    // Raw lanes, for backends that bind a whole batch natively. Cells are indexed by
+    // row * params + param; TEXT and BLOB values are at heap[values[cell]], lengths[cell] long.
+
+    byte[] types() {
+        return types;
+    }
+
+    long[] values() {
+        return values;
+    }
+
+    int[] lengths() {
+        return lengths;
+    }
+
+    byte[] heap() {
+        return heap;
+    }
+
+    /**
+     * @param pos Parameter index, starting at 1.
+     * @return The value of a parameter of the current row, boxed as it was set.
+     */
+    public Object get(int pos) throws SQLException {
+        int cell = cell(pos);
+        switch (types[cell]) {
+            case SQLITE_INTEGER:
+                return values[cell];
+            case SQLITE_FLOAT:
+                return Double.longBitsToDouble(values[cell]);
+            case SQLITE_TEXT:
+                return new String(
+                        heap, (int) values[cell], lengths[cell], StandardCharsets.UTF_8);
+            case SQLITE_BLOB:
+                int offset = (int) values[cell];
+                return Arrays.copyOfRange(heap, offset, offset + lengths[cell]);
+            default:
+                return null;
+        }
+    }
+
+    /** @return The values of the current row, e.g. {@code [1, abc, null]}. */
+    @Override
+    public String toString() {
+        Object[] current = new Object[params];
+        for (int i = 0; i < params; i++) {
+            try {
+                current[i] = get(i + 1);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return Arrays.deepToString(current);
+    }
+
+    private int cell(int pos) throws SQLException {
+        if (pos < 1 || pos > params) {
+            throw new SQLException(
+                    "parameter index " + pos + " is out of range (1.." + params + ")");
+        }
+        return rows * params + pos - 1;
+    }
+
+    /** Makes room for the given number of bytes at the end of the heap. */
+    private void ensureHeap(long extra) throws SQLException {
+        if (heapUsed + extra <= heap.length) {
+            return;
+        }
+        compact(extra);
+    }
+
+    /**
+     * Copies the values still referenced by a cell into a heap with room for extra bytes. Cells
+     * sharing bytes with the same parameter of the previous row, as rows added to the batch do,
+     * keep sharing them.
+     */
+    private void compact(long extra) throws SQLException {
+        int cells = (rows + 1) * params;
+        long live = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (hasBytes(cell) && !(cell >= params && sameBytes(cell, cell - params))) {
+                live += lengths[cell];
+            }
+        }
+
+        long limit = Integer.MAX_VALUE - 8;
+        long needed = live + extra;
+        if (needed > limit) {
+            throw new SQLException("batch parameters exceed " + limit + " bytes");
+        }
+        int size = heap.length;
+        if (needed > size / 2) {
+            // grow once live values fill half of the heap, so that compaction stays amortized
+            size = (int) Math.min(limit, Math.max(INITIAL_HEAP, needed * 2));
+        }
+
+        byte[] compacted = new byte[size];
+        int used = 0;
+        long[] movedFrom = new long[params];
+        for (int cell = 0; cell < cells; cell++) {
+            if (!hasBytes(cell)) {
+                continue;
+            }
+            int param = cell % params;
+            long offset = values[cell];
+            if (cell >= params
+                    && types[cell - params] == types[cell]
+                    && lengths[cell - params] == lengths[cell]
+                    && movedFrom[param] == offset) {
+                values[cell] = values[cell - params];
+                continue;
+            }
+            System.arraycopy(heap, (int) offset, compacted, used, lengths[cell]);
+            movedFrom[param] = offset;
+            values[cell] = used;
+            used += lengths[cell];
+        }
+        heap = compacted;
+        heapUsed = used;
+    }
+
+    private boolean hasBytes(int cell) {
+        return types[cell] == SQLITE_TEXT || types[cell] == SQLITE_BLOB;
+    }
+
+    private boolean sameBytes(int cell, int other) {
+        return types[cell] == types[other]
+                && values[cell] == values[other]
+                && lengths[cell] == lengths[other];
+    }
+}
@@ -0,0 +1,273 @@
+package org.sqlite.core;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.sqlite.core.panama.Utf8Decoder;
+
+/**
+ * Rows fetched ahead of the cursor by {@link DB#fetch(long, RowBatch, int)}, used by result sets
+ * whose fetch size is greater than one.
+ *
+ * <p>Values are stored column by column in off-heap lanes: a storage class byte and an 8 byte
+ * value per cell (INTEGER, FLOAT bits, or for TEXT and BLOB an offset into a shared heap that
+ * receives a copy of the bytes, with the length kept in a separate lane). Because every value is
+ * copied, the statement can be stepped past the buffered rows.
+ *
+ * <p>Values are served as the storage class they were fetched with. INTEGER to text or FLOAT, and
+ * FLOAT to INTEGER, are converted in Java as {@link RowSnapshot} does. The conversions only SQLite
+ * can make exactly, FLOAT to text and text to a number, are left to it through {@link
+ * DB#convert_text(int, long, byte[])} and its siblings, so the result is the one the
+ * row-at-a-time getters would return.
+ */
+public final class RowBatch implements Codes, RowValues {
+    private static final long INITIAL_HEAP = 4096;
+
+    private final DB db;
+    private final Utf8Decoder decoder = new Utf8Decoder();
+
+    private MemorySegment types; // byte per cell
+    private MemorySegment values; // long per cell
+    private MemorySegment lengths; // int per cell
+    private MemorySegment heap;
+    private long heapUsed;
+
+    private int capacity; // rows per column lane
+    private int columns;
+    private int size; // rows held
+    private int position = -1; // row the cursor is on
+    private int status = SQLITE_ROW; // result of the last step
+
+    RowBatch(DB db) {
+        this.db = db;
+    }
+
+    // WRITERS, used by DB implementations ///////////////////////////
+
+    /** Drops the held rows and prepares lanes for up to rows x columns cells. */
+    void begin(int columns, int rows) {
+        long cells = (long) Math.max(1, columns) * Math.max(1, rows);
+        if (types == null || types.byteSize() < cells) {
+            ResourceScope scope = ResourceScope.newImplicitScope();
+            types = MemorySegment.allocateNative(cells, 8, scope);
+            values = MemorySegment.allocateNative(cells * 8, 8, scope);
+            lengths = MemorySegment.allocateNative(cells * 4, 8, scope);
+        }
+        if (heap == null) {
+            heap = MemorySegment.allocateNative(INITIAL_HEAP, 8, ResourceScope.newImplicitScope());
+        }
+        this.columns = columns;
+        this.capacity = Math.max(1, rows);
+        heapUsed = 0;
+        size = 0;
+        position = -1;
+    }
+
+    /**
+     * Completes a fetch.
+     *
+     * @param rows Number of rows written.
+     * @param status Result of the last sqlite3_step: SQLITE_ROW if more rows may follow.
+     */
+    void end(int rows, int status) {
+        this.size = rows;
+        this.status = status;
+    }
+
+    void setNull(int row, int col) {
+        MemoryAccess.setByteAtOffset(types, cell(row, col), (byte) SQLITE_NULL);
+    }
+
+    void setLong(int row, int col, long value) {
+        long cell = cell(row, col);
+        MemoryAccess.setByteAtOffset(types, cell, (byte) SQLITE_INTEGER);
+        MemoryAccess.setLongAtIndex(values, cell, value);
+    }
+
+    void setDouble(int row, int col, double value) {
+        long cell = cell(row, col);
+        MemoryAccess.setByteAtOffset(types, cell, (byte) SQLITE_FLOAT);
+        MemoryAccess.setDoubleAtIndex(values, cell, value);
+    }
+
+    /** Copies a TEXT or BLOB value owned by SQLite into the heap. */
+    void setBytes(int row, int col, int type, MemoryAddress pointer, int length) {
+        long offset = reserve(row, col, type, length);
+        if (length > 0) {
+            heap.asSlice(offset, length)
+                    .copyFrom(pointer.asSegment(length, ResourceScope.globalScope()));
+        }
+    }
+
+    /** Copies a TEXT or BLOB value into the heap. */
+    void setBytes(int row, int col, int type, byte[] bytes) {
+        int length = bytes == null ? 0 : bytes.length;
+        long offset = reserve(row, col, type, length);
+        if (length > 0) {
+            heap.asSlice(offset, length).copyFrom(MemorySegment.ofArray(bytes));
+        }
+    }
+
+    private long reserve(int row, int col, int type, int length) {
+        if (heapUsed + length > heap.byteSize()) {
+            long grown = Math.max(heap.byteSize() * 2, heapUsed + length);
+            MemorySegment bigger =
+                    MemorySegment.allocateNative(grown, 8, ResourceScope.newImplicitScope());
+            bigger.copyFrom(heap.asSlice(0, heapUsed));
+            heap = bigger;
+        }
+        long cell = cell(row, col);
+        long offset = heapUsed;
+        MemoryAccess.setByteAtOffset(types, cell, (byte) type);
+        MemoryAccess.setLongAtIndex(values, cell, offset);
+        MemoryAccess.setIntAtIndex(lengths, cell, length);
+        heapUsed += length;
+        return offset;
+    }
+
+    private long cell(int row, int col) {
+        return (long) col * capacity + row;
+    }
+
+    // CURSOR, used by result sets ////////////////////////////////////
+
+    /**
+     * Moves to the next held row.
+     *
+     * @return False if all held rows have been consumed.
+     */
+    boolean next() {
+        if (position + 1 >= size) {
+            position = size;
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    /** @return True if the cursor is on a held row. */
+    boolean hasRow() {
+        return position >= 0 && position < size;
+    }
+
+    /** @return Result of the last step; SQLITE_ROW if the statement may have more rows. */
+    int status() {
+        return status;
+    }
+
+    /** Forgets all rows, ready for a new execution of the statement. */
+    void clear() {
+        size = 0;
+        position = -1;
+        heapUsed = 0;
+        status = SQLITE_ROW;
+    }
+
+    // READERS ////////////////////////////////////////////////////////
+
+    /** @see DB#column_type(long, int) */
+    public int column_type(int col) throws SQLException {
+        return MemoryAccess.getByteAtOffset(types, checkCell(col));
+    }
+
+    /** @see DB#column_long(long, int) */
+    public long column_long(int col) throws SQLException {
+        long cell = checkCell(col);
+        switch (MemoryAccess.getByteAtOffset(types, cell)) {
+            case SQLITE_INTEGER:
+                return MemoryAccess.getLongAtIndex(values, cell);
+            case SQLITE_FLOAT:
+                // saturates like sqlite3_column_int64
+                return (long) MemoryAccess.getDoubleAtIndex(values, cell);
+            case SQLITE_NULL:
+                return 0;
+            default:
+                return db.convert_long(type(cell), value(cell), bytes(cell));
+        }
+    }
+
+    /** @see DB#column_int(long, int) */
+    public int column_int(int col) throws SQLException {
+        // sqlite3_column_int keeps the low 32 bits of the 64-bit value
+        return (int) column_long(col);
+    }
+
+    /** @see DB#column_double(long, int) */
+    public double column_double(int col) throws SQLException {
+        long cell = checkCell(col);
+        switch (MemoryAccess.getByteAtOffset(types, cell)) {
+            case SQLITE_FLOAT:
+                return MemoryAccess.getDoubleAtIndex(values, cell);
+            case SQLITE_INTEGER:
+                return MemoryAccess.getLongAtIndex(values, cell);
+            case SQLITE_NULL:
+                return 0;
+            default:
+                return db.convert_double(type(cell), value(cell), bytes(cell));
+        }
+    }
+
+    /** @see DB#column_text(long, int) */
+    public String column_text(int col) throws SQLException {
+        long cell = checkCell(col);
+        switch (MemoryAccess.getByteAtOffset(types, cell)) {
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                MemorySegment text = heapSlice(cell);
+                return decoder.decode(text.address(), (int) text.byteSize());
+            case SQLITE_INTEGER:
+                return Long.toString(MemoryAccess.getLongAtIndex(values, cell));
+            case SQLITE_NULL:
+                return null;
+            default:
+                return db.convert_text(type(cell), value(cell), null);
+        }
+    }
+
+    /** @see DB#column_blob(long, int) */
+    public byte[] column_blob(int col) throws SQLException {
+        long cell = checkCell(col);
+        switch (MemoryAccess.getByteAtOffset(types, cell)) {
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return bytes(cell);
+            case SQLITE_INTEGER:
+                return Long.toString(MemoryAccess.getLongAtIndex(values, cell))
+                        .getBytes(StandardCharsets.US_ASCII);
+            case SQLITE_NULL:
+                return null;
+            default:
+                return db.convert_text(type(cell), value(cell), null)
+                        .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private int type(long cell) {
+        return MemoryAccess.getByteAtOffset(types, cell);
+    }
+
+    private long value(long cell) {
+        return MemoryAccess.getLongAtIndex(values, cell);
+    }
+
+    private byte[] bytes(long cell) {
+        int type = type(cell);
+        return type == SQLITE_TEXT || type == SQLITE_BLOB ? heapSlice(cell).toByteArray() : null;
+    }
+
+    private MemorySegment heapSlice(long cell) {
+        return heap.asSlice(
+                MemoryAccess.getLongAtIndex(values, cell),
+                MemoryAccess.getIntAtIndex(lengths, cell));
+    }
+
+    private long checkCell(int col) throws SQLException {
+        if (!hasRow() || col < 0 || col >= columns) {
+            throw new SQLException("column " + col + " is not part of the current row");
+        }
+        return cell(position, col);
+    }
+}
@@ -0,0 +1,216 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.sqlite.core.panama.Utf8Decoder;
+
+/**
+ * The current row of a statement, captured by {@link DB#row_snapshot(long, RowSnapshot)} in one
+ * call into the database instead of one call per getter.
+ *
+ * <p>Each column occupies one slot of an off-heap buffer holding its storage class, its
+ * fixed-width value (INTEGER or FLOAT) and, for TEXT and BLOB, the pointer and byte length that
+ * SQLite returned. Those pointers stay valid until the statement is stepped, reset or finalized,
+ * which only happens after the owning result set has invalidated the snapshot.
+ *
+ * <p>The accessors mirror the {@code column_*} methods of {@link DB}. Conversions whose result
+ * only SQLite can produce (text to number, number to text for FLOAT) and values the backend did
+ * not capture are read from the database instead.
+ */
+public final class RowSnapshot implements Codes, RowValues {
+    private static final long SLOT_SIZE = 24;
+    private static final long TYPE = 0;
+    private static final long LENGTH = 4;
+    private static final long VALUE = 8;
+    private static final long POINTER = 16;
+
+    /** Length recorded for TEXT and BLOB values whose pointer was not captured. */
+    static final int NOT_CAPTURED = -1;
+
+    private final DB db;
+    private final Utf8Decoder decoder = new Utf8Decoder();
+    private MemorySegment slots;
+    private long stmt;
+    private int columns;
+    private boolean filled;
+
+    RowSnapshot(DB db) {
+        this.db = db;
+    }
+
+    /** @return True if the snapshot holds the current row. */
+    boolean isFilled() {
+        return filled;
+    }
+
+    /** Forgets the captured row; called whenever the statement moves. */
+    void invalidate() {
+        filled = false;
+    }
+
+    // WRITERS, used by DB implementations ///////////////////////////
+
+    /** Prepares the snapshot to receive the given number of columns. */
+    void begin(long stmt, int columns) {
+        this.stmt = stmt;
+        this.columns = columns;
+        long size = Math.max(1, columns) * SLOT_SIZE;
+        if (slots == null || slots.byteSize() < size) {
+            slots = MemorySegment.allocateNative(size, 8, ResourceScope.newImplicitScope());
+        }
+    }
+
+    /** Marks the snapshot as complete. */
+    void end() {
+        filled = true;
+    }
+
+    void setNull(int col) {
+        MemoryAccess.setIntAtOffset(slots, col * SLOT_SIZE + TYPE, SQLITE_NULL);
+    }
+
+    void setLong(int col, long value) {
+        MemoryAccess.setIntAtOffset(slots, col * SLOT_SIZE + TYPE, SQLITE_INTEGER);
+        MemoryAccess.setLongAtOffset(slots, col * SLOT_SIZE + VALUE, value);
+    }
+
+    void setDouble(int col, double value) {
+        MemoryAccess.setIntAtOffset(slots, col * SLOT_SIZE + TYPE, SQLITE_FLOAT);
+        MemoryAccess.setDoubleAtOffset(slots, col * SLOT_SIZE + VALUE, value);
+    }
+
+    /**
+     * Records a TEXT or BLOB value.
+     *
+     * @param pointer Address of the value as returned by SQLite; ignored if length is {@link
+     *     #NOT_CAPTURED}.
+     */
+    void setBytes(int col, int type, MemoryAddress pointer, int length) {
+        MemoryAccess.setIntAtOffset(slots, col * SLOT_SIZE + TYPE, type);
+        MemoryAccess.setIntAtOffset(slots, col * SLOT_SIZE + LENGTH, length);
+        MemoryAccess.setLongAtOffset(slots, col * SLOT_SIZE + POINTER, pointer.toRawLongValue());
+    }
+
+    // READERS, used by result sets ///////////////////////////////////
+
+    /** @return The number of columns in the snapshot. */
+    public int column_count() {
+        return columns;
+    }
+
+    /** @see DB#column_type(long, int) */
+    public int column_type(int col) throws SQLException {
+        checkCol(col);
+        return type(col);
+    }
+
+    /** @see DB#column_long(long, int) */
+    public long column_long(int col) throws SQLException {
+        checkCol(col);
+        switch (type(col)) {
+            case SQLITE_INTEGER:
+                return MemoryAccess.getLongAtOffset(slots, col * SLOT_SIZE + VALUE);
+            case SQLITE_FLOAT:
+                return (long) MemoryAccess.getDoubleAtOffset(slots, col * SLOT_SIZE + VALUE);
+            case SQLITE_NULL:
+                return 0;
+            default:
+                return db.column_long(stmt, col);
+        }
+    }
+
+    /** @see DB#column_int(long, int) */
+    public int column_int(int col) throws SQLException {
+        switch (column_type(col)) {
+            case SQLITE_INTEGER:
+            case SQLITE_FLOAT:
+            case SQLITE_NULL:
+                // sqlite3_column_int keeps the low 32 bits of the 64-bit value
+                return (int) column_long(col);
+            default:
+                return db.column_int(stmt, col);
+        }
+    }
+
+    /** @see DB#column_double(long, int) */
+    public double column_double(int col) throws SQLException {
+        checkCol(col);
+        switch (type(col)) {
+            case SQLITE_INTEGER:
+                return MemoryAccess.getLongAtOffset(slots, col * SLOT_SIZE + VALUE);
+            case SQLITE_FLOAT:
+                return MemoryAccess.getDoubleAtOffset(slots, col * SLOT_SIZE + VALUE);
+            case SQLITE_NULL:
+                return 0;
+            default:
+                return db.column_double(stmt, col);
+        }
+    }
+
+    /** @see DB#column_text(long, int) */
+    public String column_text(int col) throws SQLException {
+        checkCol(col);
+        switch (type(col)) {
+            case SQLITE_NULL:
+                return null;
+            case SQLITE_INTEGER:
+                return Long.toString(MemoryAccess.getLongAtOffset(slots, col * SLOT_SIZE + VALUE));
+            case SQLITE_TEXT:
+                int length = length(col);
+                if (length != NOT_CAPTURED) {
+                    return decoder.decode(pointer(col), length);
+                }
+                return db.column_text(stmt, col);
+            case SQLITE_BLOB:
+                // sqlite3_column_text may reallocate the blob to terminate it, which invalidates
+                // the captured pointer
+                MemoryAccess.setIntAtOffset(slots, col * SLOT_SIZE + LENGTH, NOT_CAPTURED);
+                return db.column_text(stmt, col);
+            default:
+                return db.column_text(stmt, col);
+        }
+    }
+
+    /** @see DB#column_blob(long, int) */
+    public byte[] column_blob(int col) throws SQLException {
+        checkCol(col);
+        switch (type(col)) {
+            case SQLITE_NULL:
+                return null;
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                int length = length(col);
+                if (length == NOT_CAPTURED) {
+                    return db.column_blob(stmt, col);
+                }
+                if (length == 0) {
+                    return new byte[0];
+                }
+                return pointer(col).asSegment(length, ResourceScope.globalScope()).toByteArray();
+            default:
+                return db.column_blob(stmt, col);
+        }
+    }
+
+    private int type(int col) {
+        return MemoryAccess.getIntAtOffset(slots, col * SLOT_SIZE + TYPE);
+    }
+
+    private int length(int col) {
+        return MemoryAccess.getIntAtOffset(slots, col * SLOT_SIZE + LENGTH);
+    }
+
+    private MemoryAddress pointer(int col) {
+        return MemoryAddress.ofLong(
+                MemoryAccess.getLongAtOffset(slots, col * SLOT_SIZE + POINTER));
+    }
+
+    private void checkCol(int col) throws SQLException {
+        if (!filled || col < 0 || col >= columns) {
+            throw new SQLException("column " + col + " is not part of the current row");
+        }
+    }
+}
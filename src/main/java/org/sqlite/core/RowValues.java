@@ -0,0 +1,31 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+
+/**
+ * Read access to the values of the row a result set is positioned on. The methods mirror the
+ * {@code column_*} methods of {@link DB}, with columns numbered from 0, and return the same values
+ * SQLite would.
+ *
+ * @see RowSnapshot
+ * @see RowBatch
+ */
+public interface RowValues {
+    /** @see DB#column_type(long, int) */
+    int column_type(int col) throws SQLException;
+
+    /** @see DB#column_long(long, int) */
+    long column_long(int col) throws SQLException;
+
+    /** @see DB#column_int(long, int) */
+    int column_int(int col) throws SQLException;
+
+    /** @see DB#column_double(long, int) */
+    double column_double(int col) throws SQLException;
+
+    /** @see DB#column_text(long, int) */
+    String column_text(int col) throws SQLException;
+
+    /** @see DB#column_blob(long, int) */
+    byte[] column_blob(int col) throws SQLException;
+}
@@ -0,0 +1,111 @@
+package org.sqlite.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Idle prepared statements of a connection, keyed by their SQL and kept in least recently used
+ * order. A closed {@link CorePreparedStatement} hands its statement handle back here after it has
+ * been reset and its bindings cleared, and the next prepare of the same SQL picks it up instead of
+ * compiling it again.
+ *
+ * <p>Only idle handles are held: a handle is removed while a statement uses it, so two open
+ * statements with the same SQL never share one. The cache itself does not finalize anything; the
+ * handles it gives up are returned to the {@link DB}, which owns them. Its counters can be read
+ * from any thread.
+ *
+ * @see org.sqlite.SQLiteConfig#setStatementCacheSize(int)
+ */
+public final class StatementCache {
+    private final int maxSize;
+    private final LinkedHashMap<String, Long> idle =
+            new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    StatementCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /** @return True if statements are cached at all. */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /** @return The maximum number of idle statements kept. */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return The number of idle statements currently kept. */
+    public synchronized int size() {
+        return idle.size();
+    }
+
+    /** @return The number of prepares served from the cache. */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /** @return The number of prepares that had to compile the statement. */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /** @return The number of idle statements finalized to make room for others. */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Removes an idle statement for the SQL.
+     *
+     * @return The statement handle, or 0 if none is cached.
+     */
+    synchronized long take(String sql) {
+        Long pointer = idle.remove(sql);
+        if (pointer == null) {
+            misses++;
+            return 0;
+        }
+        hits++;
+        return pointer.longValue();
+    }
+
+    /**
+     * Keeps an idle statement, which must have been reset.
+     *
+     * @return A handle the caller must finalize (the least recently used one if the cache is full,
+     *     or the one replaced by this SQL), or 0.
+     */
+    synchronized long put(String sql, long pointer) {
+        Long replaced = idle.put(sql, pointer);
+        if (replaced != null) {
+            return replaced.longValue();
+        }
+        if (idle.size() <= maxSize) {
+            return 0;
+        }
+        Iterator<Map.Entry<String, Long>> eldest = idle.entrySet().iterator();
+        long evicted = eldest.next().getValue().longValue();
+        eldest.remove();
+        evictions++;
+        return evicted;
+    }
+
+    /**
+     * Removes every idle statement.
+     *
+     * @return The handles, which the caller must finalize.
+     */
+    synchronized List<Long> clear() {
+        List<Long> pointers = new ArrayList<Long>(idle.values());
+        idle.clear();
+        return pointers;
+    }
+}
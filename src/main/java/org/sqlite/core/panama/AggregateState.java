@@ -0,0 +1,157 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * The state of one group of an aggregate function: a fixed number of 8 byte slots in the memory
+ * SQLite allocates per group with sqlite3_aggregate_context. SQLite zeroes that memory, so every
+ * slot starts out as 0 (or 0.0), and frees it after the final call; no Java object is created per
+ * group unless the function asks for one with {@link #setObject(Object)}.
+ *
+ * <p>A slot holds either a long or a double, as the function chooses; reading it as the other type
+ * reinterprets the bits. An instance is reused for every call of its registration and is only
+ * valid during the call it is passed to.
+ */
+public final class AggregateState
+{
+    private static final MethodHandle AGGREGATE_CONTEXT = NativeSymbols.link("sqlite3_aggregate_context",
+            MethodType.methodType(long.class, long.class, int.class),
+            FunctionDescriptor.of(CLinker.C_LONG_LONG, CLinker.C_LONG_LONG, CLinker.C_INT));
+
+    private static final MemorySegment ALL = MemorySegment.globalNativeSegment();
+
+    private final int slots;
+    /** Zeroed slots of a group no row was stepped into, which SQLite allocated no memory for. */
+    private final MemorySegment empty;
+    /** Per-group objects of the registration, by the address of the group's memory. */
+    private final Map<Long, Object> objects;
+    private long base;
+
+    AggregateState(int slots, ResourceScope scope, Map<Long, Object> objects)
+    {
+        this.slots = slots;
+        this.empty = MemorySegment.allocateNative(Math.max(8, 8L * slots), 8, scope);
+        this.objects = objects;
+    }
+
+    /**
+     * Points this at the memory of the group of a call.
+     *
+     * @param context The sqlite3_context* of the call.
+     * @param allocate True to allocate the memory if the group has none yet, as steps do.
+     * @return False if SQLite could not allocate the memory.
+     */
+    boolean bind(long context, boolean allocate)
+    {
+        long address;
+        try {
+            address = (long) AGGREGATE_CONTEXT.invokeExact(context, allocate ? Math.max(8, 8 * slots) : 0);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+        if (address == 0 && !allocate)
+        {
+            empty.fill((byte) 0);
+            address = empty.address().toRawLongValue();
+        }
+        base = address;
+        return address != 0;
+    }
+
+    void unbind()
+    {
+        base = 0;
+    }
+
+    /** Drops the object of the group; called once the group is final. */
+    void release()
+    {
+        if (!objects.isEmpty())
+            objects.remove(base);
+    }
+
+    /** @return The number of slots per group. */
+    public int slots()
+    {
+        return slots;
+    }
+
+    public long getLong(int slot) throws SQLException
+    {
+        return MemoryAccess.getLongAtOffset(ALL, offset(slot));
+    }
+
+    public void setLong(int slot, long value) throws SQLException
+    {
+        MemoryAccess.setLongAtOffset(ALL, offset(slot), value);
+    }
+
+    /** Adds to a long slot, e.g. a count or an integer sum. */
+    public void addLong(int slot, long delta) throws SQLException
+    {
+        long offset = offset(slot);
+        MemoryAccess.setLongAtOffset(ALL, offset, MemoryAccess.getLongAtOffset(ALL, offset) + delta);
+    }
+
+    public double getDouble(int slot) throws SQLException
+    {
+        return MemoryAccess.getDoubleAtOffset(ALL, offset(slot));
+    }
+
+    public void setDouble(int slot, double value) throws SQLException
+    {
+        MemoryAccess.setDoubleAtOffset(ALL, offset(slot), value);
+    }
+
+    /** Adds to a double slot, e.g. a floating point sum. */
+    public void addDouble(int slot, double delta) throws SQLException
+    {
+        long offset = offset(slot);
+        MemoryAccess.setDoubleAtOffset(ALL, offset, MemoryAccess.getDoubleAtOffset(ALL, offset) + delta);
+    }
+
+    /**
+     * @return The object set for this group, or null. Only for state that does not fit in slots,
+     *     e.g. the values a percentile needs.
+     */
+    public Object getObject() throws SQLException
+    {
+        check();
+        return objects.get(base);
+    }
+
+    /** Keeps an object for this group until its final call. */
+    public void setObject(Object value) throws SQLException
+    {
+        check();
+        if (value == null)
+            objects.remove(base);
+        else
+            objects.put(base, value);
+    }
+
+    private long offset(int slot) throws SQLException
+    {
+        check();
+        if (slot < 0 || slot >= slots)
+            throw new SQLException("slot " + slot + " out bounds [0," + slots + ")");
+        return base + 8L * slot;
+    }
+
+    private void check() throws SQLException
+    {
+        if (base == 0)
+            throw new SQLException("no aggregate context, not allowed to access the state");
+    }
+}
@@ -0,0 +1,78 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import jpassport.Utils;
+import org.sqlite.SQLiteConflictHandler;
+import org.sqlite.SQLiteUpdateListener;
+
+import java.sql.SQLException;
+
+/**
+ * The xConflict callback of one sqlite3changeset_apply: asks the handler what to do with each
+ * conflicting change. An exception thrown by the handler aborts the apply and is kept, to be
+ * rethrown once sqlite3changeset_apply returns.
+ */
+public final class ConflictCallback implements AutoCloseable
+{
+    private static final int SQLITE_CHANGESET_FOREIGN_KEY = 5;
+    private static final int SQLITE_CHANGESET_ABORT = 2;
+
+    private final SQLiteConflictHandler handler;
+    private final ResourceScope scope = ResourceScope.newConfinedScope();
+    private final MemorySegment op = MemorySegment.allocateNative(24, 8, scope);
+    private final PanamaCallbacks.Upcall upcall;
+    private Exception failure;
+
+    public ConflictCallback(SQLiteConflictHandler handler)
+    {
+        this.handler = handler;
+        this.upcall = PanamaCallbacks.createCallback(this, "conflict");
+    }
+
+    /** @return The address to pass to sqlite3changeset_apply as xConflict. */
+    public MemoryAddress address()
+    {
+        return upcall.address();
+    }
+
+    /** @return The exception the handler threw, or null. */
+    public Exception failure()
+    {
+        return failure;
+    }
+
+    public int conflict(MemoryAddress context, int conflict, MemoryAddress iterator)
+    {
+        try {
+            SQLiteUpdateListener.Type type = null;
+            String table = null;
+            // an iterator reporting foreign key violations is not at a change
+            if (conflict != SQLITE_CHANGESET_FOREIGN_KEY)
+            {
+                Sessions.op(iterator.toRawLongValue(), op);
+                table = Utils.readString(MemoryAccess.getAddressAtOffset(op, 0));
+                type = SQLiteUpdateListener.Type.of(MemoryAccess.getIntAtOffset(op, 12));
+            }
+            var action = handler.onConflict(SQLiteConflictHandler.Conflict.of(conflict), type, table);
+            // the actions are declared in the order of their SQLITE_CHANGESET_* codes
+            return action == null ? SQLITE_CHANGESET_ABORT : action.ordinal();
+        }
+        catch (SQLException | RuntimeException ex)
+        {
+            // an exception must not unwind through SQLite
+            if (failure == null)
+                failure = ex;
+            return SQLITE_CHANGESET_ABORT;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        upcall.close();
+        scope.close();
+    }
+}
@@ -0,0 +1,208 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemoryLayout;
+import jdk.incubator.foreign.MemorySegment;
+import jpassport.Utils;
+import org.sqlite.core.Codes;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The arguments of one call of a user defined function, read from the sqlite3_value** array SQLite
+ * passes to xFunc, xStep and xInverse.
+ *
+ * <p>{@link #load(MemoryAddress, int)} copies the sqlite3_value* pointers once per call into an
+ * array kept between calls; the typed accessors then pass the pointer straight to sqlite3_value_*
+ * through handles taking it as a plain long, so reading an argument allocates nothing (text and
+ * blobs aside) and takes no lock: SQLite only calls a function on the thread that is stepping a
+ * statement of its connection.
+ *
+ * <p>An instance is not thread safe; each registration of a function with a connection owns one.
+ */
+public final class FunctionArgs
+{
+    private static final MethodHandle VALUE_TYPE = link("sqlite3_value_type", int.class, CLinker.C_INT);
+    private static final MethodHandle VALUE_INT = link("sqlite3_value_int", int.class, CLinker.C_INT);
+    private static final MethodHandle VALUE_INT64 = link("sqlite3_value_int64", long.class, CLinker.C_LONG_LONG);
+    private static final MethodHandle VALUE_DOUBLE = link("sqlite3_value_double", double.class, CLinker.C_DOUBLE);
+    private static final MethodHandle VALUE_BYTES = link("sqlite3_value_bytes", int.class, CLinker.C_INT);
+    private static final MethodHandle VALUE_TEXT = link("sqlite3_value_text", MemoryAddress.class, CLinker.C_POINTER);
+    private static final MethodHandle VALUE_BLOB = link("sqlite3_value_blob", MemoryAddress.class, CLinker.C_POINTER);
+
+    private final Utf8Decoder textDecoder = new Utf8Decoder();
+    private long[] values = new long[8];
+    private int count;
+
+    /**
+     * Reads the argument pointers of a call.
+     *
+     * @param argv The sqlite3_value** SQLite passed to the callback.
+     * @param count The number of arguments.
+     */
+    public void load(MemoryAddress argv, int count)
+    {
+        if (count > values.length)
+            values = new long[Math.max(count, values.length * 2)];
+
+        MemorySegment all = MemorySegment.globalNativeSegment();
+        long base = argv.toRawLongValue();
+        for (int i = 0; i < count; i++)
+            values[i] = MemoryAccess.getLongAtOffset(all, base + 8L * i);
+        this.count = count;
+    }
+
+    /** Forgets the pointers of the last call, which are invalid once it returns. */
+    public void clear()
+    {
+        Arrays.fill(values, 0, count, 0);
+        count = 0;
+    }
+
+    /** @return The number of arguments of the call. */
+    public int count()
+    {
+        return count;
+    }
+
+    /**
+     * @return The datatype code of the argument: SQLITE_INTEGER, SQLITE_FLOAT, SQLITE_TEXT,
+     *     SQLITE_BLOB or SQLITE_NULL.
+     */
+    public int type(int arg) throws SQLException
+    {
+        return valueType(value(arg));
+    }
+
+    /** @return True if the argument is NULL. */
+    public boolean isNull(int arg) throws SQLException
+    {
+        return type(arg) == Codes.SQLITE_NULL;
+    }
+
+    /** @return The argument converted to a 32 bit integer, as sqlite3_value_int does. */
+    public int getInt(int arg) throws SQLException
+    {
+        return valueInt(value(arg));
+    }
+
+    /** @return The argument converted to a 64 bit integer, as sqlite3_value_int64 does. */
+    public long getLong(int arg) throws SQLException
+    {
+        return valueInt64(value(arg));
+    }
+
+    /** @return The argument converted to a double, as sqlite3_value_double does. */
+    public double getDouble(int arg) throws SQLException
+    {
+        return valueDouble(value(arg));
+    }
+
+    /** @return The argument as text, or null if it is NULL. */
+    public String getText(int arg) throws SQLException
+    {
+        return valueText(value(arg), textDecoder);
+    }
+
+    /** @return A copy of the argument as a blob, or null if it is NULL or empty. */
+    public byte[] getBlob(int arg) throws SQLException
+    {
+        return valueBlob(value(arg));
+    }
+
+    /** Reads a sqlite3_value* passed as a long; also used for values not passed as arguments. */
+    static int valueType(long value)
+    {
+        try {
+            return (int) VALUE_TYPE.invokeExact(value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    static int valueInt(long value)
+    {
+        try {
+            return (int) VALUE_INT.invokeExact(value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    static long valueInt64(long value)
+    {
+        try {
+            return (long) VALUE_INT64.invokeExact(value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    static double valueDouble(long value)
+    {
+        try {
+            return (double) VALUE_DOUBLE.invokeExact(value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    static String valueText(long value, Utf8Decoder decoder)
+    {
+        try {
+            // value_text must come first so that value_bytes reports the UTF-8 length
+            var text = (MemoryAddress) VALUE_TEXT.invokeExact(value);
+            if (text == MemoryAddress.NULL)
+                return null;
+            return decoder.decode(text, (int) VALUE_BYTES.invokeExact(value));
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    static byte[] valueBlob(long value)
+    {
+        try {
+            var blob = (MemoryAddress) VALUE_BLOB.invokeExact(value);
+            if (blob == MemoryAddress.NULL)
+                return null;
+            return Utils.toArrByte(blob, (int) VALUE_BYTES.invokeExact(value));
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    private long value(int arg) throws SQLException
+    {
+        if (arg < 0 || arg >= count)
+            throw new SQLException("arg " + arg + " out bounds [0," + count + ")");
+        return values[arg];
+    }
+
+    /** Links a sqlite3_value_* function taking the sqlite3_value* as a long. */
+    private static MethodHandle link(String name, Class<?> returnType, MemoryLayout returnLayout)
+    {
+        return NativeSymbols.link(
+                name,
+                MethodType.methodType(returnType, long.class),
+                FunctionDescriptor.of(returnLayout, CLinker.C_LONG_LONG));
+    }
+}
@@ -0,0 +1,171 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAddress;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.sql.SQLException;
+
+/**
+ * Sets the result of one call of a user defined function, through the sqlite3_context* SQLite
+ * passed to it.
+ *
+ * <p>Like {@link FunctionArgs}, the context is passed as a plain long and no lock is taken. Text
+ * and blobs are copied into a scratch buffer of this instance and handed to SQLite as
+ * SQLITE_TRANSIENT, so SQLite makes its own copy before the call returns.
+ *
+ * <p>An instance is not thread safe; each registration of a function with a connection owns one.
+ * Closing it frees the scratch buffer.
+ */
+public final class FunctionResult implements AutoCloseable
+{
+    private static final long SQLITE_TRANSIENT = -1;
+
+    private static final MethodHandle RESULT_NULL = NativeSymbols.link("sqlite3_result_null",
+            MethodType.methodType(void.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG));
+    private static final MethodHandle RESULT_INT = NativeSymbols.link("sqlite3_result_int",
+            MethodType.methodType(void.class, long.class, int.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG, CLinker.C_INT));
+    private static final MethodHandle RESULT_INT64 = NativeSymbols.link("sqlite3_result_int64",
+            MethodType.methodType(void.class, long.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG, CLinker.C_LONG_LONG));
+    private static final MethodHandle RESULT_DOUBLE = NativeSymbols.link("sqlite3_result_double",
+            MethodType.methodType(void.class, long.class, double.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG, CLinker.C_DOUBLE));
+    private static final MethodHandle RESULT_TEXT = NativeSymbols.link("sqlite3_result_text",
+            MethodType.methodType(void.class, long.class, MemoryAddress.class, int.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_INT, CLinker.C_LONG_LONG));
+    private static final MethodHandle RESULT_BLOB = NativeSymbols.link("sqlite3_result_blob",
+            MethodType.methodType(void.class, long.class, MemoryAddress.class, int.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_INT, CLinker.C_LONG_LONG));
+    private static final MethodHandle RESULT_ERROR = NativeSymbols.link("sqlite3_result_error",
+            MethodType.methodType(void.class, long.class, MemoryAddress.class, int.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_INT));
+
+    private final ScratchArena arena = new ScratchArena();
+    private long context;
+
+    /** @param context The sqlite3_context* of the call, or 0 once it has returned. */
+    public void setContext(long context)
+    {
+        this.context = context;
+    }
+
+    /** Sets a NULL result, which is also the result if no other is set. */
+    public void setNull() throws SQLException
+    {
+        long context = context();
+        try {
+            RESULT_NULL.invokeExact(context);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public void setInt(int value) throws SQLException
+    {
+        long context = context();
+        try {
+            RESULT_INT.invokeExact(context, value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public void setLong(long value) throws SQLException
+    {
+        long context = context();
+        try {
+            RESULT_INT64.invokeExact(context, value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public void setDouble(double value) throws SQLException
+    {
+        long context = context();
+        try {
+            RESULT_DOUBLE.invokeExact(context, value);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** Sets a text result, or NULL if value is null. */
+    public void setText(String value) throws SQLException
+    {
+        if (value == null)
+        {
+            setNull();
+            return;
+        }
+        long context = context();
+        int len = arena.encode(value);
+        try {
+            RESULT_TEXT.invokeExact(context, arena.address(), len, SQLITE_TRANSIENT);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** Sets a blob result, or NULL if value is null. */
+    public void setBlob(byte[] value) throws SQLException
+    {
+        if (value == null)
+        {
+            setNull();
+            return;
+        }
+        long context = context();
+        arena.copy(value, 0, value.length);
+        try {
+            RESULT_BLOB.invokeExact(context, arena.address(), value.length, SQLITE_TRANSIENT);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** Makes the statement calling the function fail with the message. */
+    public void setError(String message) throws SQLException
+    {
+        long context = context();
+        int len = arena.encode(message == null ? "" : message);
+        try {
+            RESULT_ERROR.invokeExact(context, arena.address(), len);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** Frees the scratch buffer. */
+    @Override
+    public void close()
+    {
+        arena.close();
+    }
+
+    private long context() throws SQLException
+    {
+        if (context == 0)
+            throw new SQLException("no context, not allowed to set the result");
+        return context;
+    }
+}
@@ -0,0 +1,56 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the NUL terminated database and table names the update hook passes into Java strings,
+ * decoding each name once. SQLite passes the names stored in its schema, so the same table arrives
+ * at the same address row after row; a cached name is returned after comparing its bytes with the
+ * ones at the address, which stay valid even if the schema was changed and the address reused.
+ *
+ * An instance is not thread safe; each connection owns one and uses it under its own lock.
+ */
+public final class NameInterner
+{
+    private static final int SIZE = 64; // a power of 2
+    private static final MemorySegment ALL = MemorySegment.globalNativeSegment();
+
+    private final long[] addresses = new long[SIZE];
+    private final byte[][] bytes = new byte[SIZE][];
+    private final String[] names = new String[SIZE];
+
+    /** @return The name at the address, or null if it is NULL. */
+    public String intern(MemoryAddress name)
+    {
+        long address = name.toRawLongValue();
+        if (address == 0)
+            return null;
+        int slot = (int) (address ^ (address >>> 17)) & (SIZE - 1);
+        if (addresses[slot] == address && matches(address, bytes[slot]))
+            return names[slot];
+
+        int length = 0;
+        while (MemoryAccess.getByteAtOffset(ALL, address + length) != 0)
+            length++;
+        byte[] copy = new byte[length];
+        MemorySegment.ofArray(copy).copyFrom(ALL.asSlice(address, length));
+        String decoded = new String(copy, StandardCharsets.UTF_8).intern();
+        addresses[slot] = address;
+        bytes[slot] = copy;
+        names[slot] = decoded;
+        return decoded;
+    }
+
+    private static boolean matches(long address, byte[] expected)
+    {
+        for (int i = 0; i < expected.length; i++) {
+            if (MemoryAccess.getByteAtOffset(ALL, address + i) != expected[i])
+                return false;
+        }
+        return MemoryAccess.getByteAtOffset(ALL, address + expected.length) == 0;
+    }
+}
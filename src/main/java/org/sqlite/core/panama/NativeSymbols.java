@@ -0,0 +1,44 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.SymbolLookup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+
+/**
+ * Links SQLite functions with signatures of our own choosing, next to the handles JPassport builds
+ * from {@link PanamaDB}. Pointers the caller keeps as longs (sqlite3_value*, sqlite3_context*) are
+ * passed as C_LONG_LONG, so calls through these handles create no MemoryAddress.
+ *
+ * <p>Only usable once the library has been loaded.
+ */
+final class NativeSymbols
+{
+    private NativeSymbols() {}
+
+    /**
+     * @param name The name of the SQLite function.
+     * @throws UnsatisfiedLinkError If the library does not export the function.
+     */
+    static MethodHandle link(String name, MethodType type, FunctionDescriptor descriptor)
+    {
+        return find(name, type, descriptor)
+                .orElseThrow(() -> new UnsatisfiedLinkError("SQLite function not found: " + name));
+    }
+
+    /**
+     * Links a function only some builds of SQLite have, e.g. those of compile time options.
+     *
+     * @param name The name of the SQLite function.
+     * @return The handle, or empty if the library does not export the function.
+     */
+    static Optional<MethodHandle> find(String name, MethodType type, FunctionDescriptor descriptor)
+    {
+        // the library was loaded with System.load by the class loader of this driver
+        return SymbolLookup.loaderLookup().lookup(name)
+                .map(symbol -> CLinker.getInstance().downcallHandle(symbol, type, descriptor));
+    }
+}
@@ -1,29 +1,79 @@
 package org.sqlite.core.panama;
 
 import jdk.incubator.foreign.*;
-import org.sqlite.core.PanamaDBImpl;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-public class PanamaCallbacks {
-
-    private final ResourceScope callbackScope = ResourceScope.newImplicitScope();
-
-    public MemoryAddress createCallback(Object ob, String methodName)
+/**
+ * Creates upcall stubs: native function pointers that call a method of a Java object.
+ *
+ * <p>The method lookup and the function descriptor are worked out once per callback class and
+ * method name, then shared by every stub of that shape; creating a stub only binds the receiver.
+ * Each stub lives in its own scope, released with {@link Upcall#close()} once SQLite can no
+ * longer call it, so replacing a callback does not hold on to the stub it replaced.
+ */
+public final class PanamaCallbacks {
+
+    /** Method handle and native signature of a callback method, per class and method name. */
+    private record Shape(MethodHandle handle, FunctionDescriptor descriptor) {}
+
+    private static final ClassValue<Map<String, Shape>> SHAPES = new ClassValue<>() {
+        @Override
+        protected Map<String, Shape> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private PanamaCallbacks() {}
+
+    /**
+     * Creates a stub calling the method of the object.
+     *
+     * @param ob The receiver of the calls.
+     * @param methodName A method of the class of ob, not overloaded, taking and returning only
+     *     primitives and MemoryAddress.
+     * @return The stub; close it once SQLite no longer holds its address.
+     */
+    public static Upcall createCallback(Object ob, String methodName)
     {
-        var methods = getDeclaredMethods(ob.getClass());
+        Shape shape = SHAPES.get(ob.getClass()).computeIfAbsent(methodName, name -> shapeOf(ob.getClass(), name));
+        var scope = ResourceScope.newSharedScope();
+        try {
+            var stub = CLinker.getInstance().upcallStub(shape.handle().bindTo(ob), shape.descriptor(), scope);
+            return new Upcall(stub, scope);
+        }
+        catch (RuntimeException | Error ex)
+        {
+            scope.close();
+            throw ex;
+        }
+    }
 
-        methods = methods.stream().filter(m -> m.getName().equals(methodName)).collect(Collectors.toList());
+    private static Shape shapeOf(Class<?> receiverType, String methodName)
+    {
+        // the method may be inherited, e.g. the hooks of PanamaDBImpl by ConfinedPanamaDB
+        Class<?> type = receiverType;
+        List<Method> methods = List.of();
+        while (type != null)
+        {
+            methods = getDeclaredMethods(type).stream().filter(m -> m.getName().equals(methodName)).collect(Collectors.toList());
+            if (!methods.isEmpty())
+                break;
+            type = type.getSuperclass();
+        }
         if (methods.size() == 0)
-            throw new IllegalArgumentException("Could not find method " + methodName + " in class " + ob.getClass().getName());
+            throw new IllegalArgumentException("Could not find method " + methodName + " in class " + receiverType.getName());
         else if (methods.size() > 1)
-            throw new IllegalArgumentException("Multiple overloads of method " + methodName + " in class " + ob.getClass().getName());
+            throw new IllegalArgumentException("Multiple overloads of method " + methodName + " in class " + type.getName());
 
         Method callbackMethod = methods.get(0);
 
@@ -47,10 +97,8 @@ public class PanamaCallbacks {
             fd = FunctionDescriptor.of(classToMemory(retType), memoryLayout);
 
         try {
-            var handle = MethodHandles.lookup().findVirtual(ob.getClass(), methodName, MethodType.methodType(retType, parameters));
-            var handleToCall = handle.bindTo(ob);
-
-            return CLinker.getInstance().upcallStub(handleToCall, fd, callbackScope);
+            var handle = MethodHandles.lookup().findVirtual(type, methodName, MethodType.methodType(retType, parameters));
+            return new Shape(handle, fd);
         }
         catch (NoSuchMethodException | IllegalAccessException ex)
         {
@@ -80,4 +128,37 @@ public class PanamaCallbacks {
 
         return CLinker.C_POINTER;
     }
+
+    /** An upcall stub and the scope that keeps it alive. */
+    public static final class Upcall implements AutoCloseable {
+        private final MemoryAddress address;
+        private final ResourceScope scope;
+
+        private Upcall(MemoryAddress address, ResourceScope scope)
+        {
+            this.address = address;
+            this.scope = scope;
+        }
+
+        /** @return The function pointer to hand to SQLite. */
+        public MemoryAddress address()
+        {
+            return address;
+        }
+
+        /** Frees the stub; SQLite must not call it anymore. Does nothing if already closed. */
+        @Override
+        public void close()
+        {
+            if (scope.isAlive())
+                scope.close();
+        }
+
+        /** Closes the stub, if any. */
+        public static void close(Upcall upcall)
+        {
+            if (upcall != null)
+                upcall.close();
+        }
+    }
 }
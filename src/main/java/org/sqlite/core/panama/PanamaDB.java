@@ -142,6 +142,8 @@ public interface PanamaDB extends Passport {
     long sqlite3_backup_init(long addr, String name, long dbHandle, String dbName);
     int sqlite3_backup_step(long handle, int n);
     void sqlite3_backup_finish(long handle);
+    int sqlite3_backup_remaining(long handle);
+    int sqlite3_backup_pagecount(long handle);
     int sqlite3_errcode(long handle);
     void sqlite3_sleep(int msec);
 
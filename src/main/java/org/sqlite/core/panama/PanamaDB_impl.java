@@ -551,6 +551,36 @@ Utils.toArr(v9, vv9);
         }
     }
 
+    private MethodHandle m_sqlite3_backup_remaining;
+    public int sqlite3_backup_remaining(long v1)
+    {
+        try  {
+            
+            var ret = (int) m_sqlite3_backup_remaining.invokeExact(v1);
+            
+            return ret;
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    private MethodHandle m_sqlite3_backup_pagecount;
+    public int sqlite3_backup_pagecount(long v1)
+    {
+        try  {
+            
+            var ret = (int) m_sqlite3_backup_pagecount.invokeExact(v1);
+            
+            return ret;
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
     private MethodHandle m_sqlite3_backup_init;
     public long sqlite3_backup_init(long v1,String v2,long v3,String v4)
     {
@@ -1268,6 +1298,135 @@ var vv2 = v2 == null ? MemoryAddress.NULL : toCString(v2, allocator).address();
         }
     }
 
+    // Hand written variants of the calls above. They take strings already encoded by the caller
+    // (see ScratchArena) and return raw pointers, so no scope or Java string is created per call.
+    // They are not declared in PanamaDB because JPassport binds every interface method by name.
+
+    /**
+     * Same native call as {@link #sqlite3_column_text(long, int)}, but returns the pointer owned
+     * by SQLite so the caller can decode it with a known length instead of scanning for the NUL.
+     */
+    public MemoryAddress sqlite3_column_text_ptr(long v1,int v2)
+    {
+        try  {
+            return (MemoryAddress) m_sqlite3_column_text.invokeExact(v1,v2);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_prepare_v2(long v1,MemoryAddress v2,int v3,MemoryAddress v4,long v5)
+    {
+        try  {
+            return (int) m_sqlite3_prepare_v2.invokeExact(v1,v2,v3,v4,v5);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_prepare_v3(long v1,MemoryAddress v2,int v3,int v4,MemoryAddress v5)
+    {
+        try  {
+            return (int) m_sqlite3_prepare_v3.invokeExact(v1,v2,v3,v4,v5,MemoryAddress.NULL);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_exec(long v1,MemoryAddress v2,int v3,int v4,MemoryAddress v5)
+    {
+        try  {
+            return (int) m_sqlite3_exec.invokeExact(v1,v2,v3,v4,v5);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_bind_text(long v1,int v2,MemoryAddress v3,int v4,int v5)
+    {
+        try  {
+            return (int) m_sqlite3_bind_text.invokeExact(v1,v2,v3,v4,v5);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_bind_blob(long v1,int v2,MemoryAddress v3,int v4,int v5)
+    {
+        try  {
+            return (int) m_sqlite3_bind_blob.invokeExact(v1,v2,v3,v4,v5);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public void sqlite3_result_text(MemoryAddress v1,MemoryAddress v2,int v3,long v4)
+    {
+        try  {
+            m_sqlite3_result_text.invokeExact(v1,v2,v3,v4);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public void sqlite3_result_error(MemoryAddress v1,MemoryAddress v2,int v3)
+    {
+        try  {
+            m_sqlite3_result_error.invokeExact(v1,v2,v3);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_create_function(long v1,MemoryAddress v2,int v3,int v4,long v5,MemoryAddress v6,MemoryAddress v7,MemoryAddress v8)
+    {
+        try  {
+            return (int) m_sqlite3_create_function.invokeExact(v1,v2,v3,v4,v5,v6,v7,v8);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_create_window_function(long v1,MemoryAddress v2,int v3,int v4,long v5,MemoryAddress v6,MemoryAddress v7,MemoryAddress v8,MemoryAddress v9,MemoryAddress v10)
+    {
+        try  {
+            return (int) m_sqlite3_create_window_function.invokeExact(v1,v2,v3,v4,v5,v6,v7,v8,v9,v10);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public int sqlite3_create_collation(long v1,MemoryAddress v2,int v3,MemoryAddress v4,MemoryAddress v5)
+    {
+        try  {
+            return (int) m_sqlite3_create_collation.invokeExact(v1,v2,v3,v4,v5);
+        }
+        catch(Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
     private void init(){
 		m_sqlite3_column_decltype = m_methods.get("sqlite3_column_decltype");
 		m_sqlite3_column_name = m_methods.get("sqlite3_column_name");
@@ -1300,6 +1459,8 @@ var vv2 = v2 == null ? MemoryAddress.NULL : toCString(v2, allocator).address();
 		m_sqlite3_table_column_metadata = m_methods.get("sqlite3_table_column_metadata");
 		m_sqlite3_backup_finish = m_methods.get("sqlite3_backup_finish");
 		m_sqlite3_backup_init = m_methods.get("sqlite3_backup_init");
+		m_sqlite3_backup_remaining = m_methods.get("sqlite3_backup_remaining");
+		m_sqlite3_backup_pagecount = m_methods.get("sqlite3_backup_pagecount");
 		m_sqlite3_result_int64 = m_methods.get("sqlite3_result_int64");
 		m_sqlite3_create_function = m_methods.get("sqlite3_create_function");
 		m_sqlite3_enable_shared_cache = m_methods.get("sqlite3_enable_shared_cache");
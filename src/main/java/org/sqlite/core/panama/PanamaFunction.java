@@ -1,39 +1,264 @@
 package org.sqlite.core.panama;
 
 import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.ResourceScope;
+import org.sqlite.AggregateFunction;
 import org.sqlite.Function;
+import org.sqlite.ScalarFunction;
+import org.sqlite.WindowFunction;
 import org.sqlite.core.PanamaDBImpl;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
+/**
+ * The registration of a function with a connection: the upcall stubs SQLite calls, and the
+ * argument cursor and result they use. Either wraps a {@link Function}, whose calls are serialized
+ * on it, or a {@link ScalarFunction} or {@link AggregateFunction}, which are called without any
+ * lock.
+ */
 public class PanamaFunction {
 
     private final Function function;
+    private final ScalarFunction scalar;
     private final PanamaDBImpl pDB;
+    private final List<PanamaCallbacks.Upcall> upcalls = new ArrayList<>(4);
+    private final FunctionArgs arguments = new FunctionArgs();
+    private final FunctionResult result;
+    private final AggregateFunction aggregate;
+    /** Holds the memory of the aggregate states; closed with the registration. */
+    private final ResourceScope scope;
+    private final AggregateState state;
+    /** Objects set on aggregate states, by the address of their group. */
+    private final Map<Long, Object> groupObjects;
+    /** True while a call of the scalar or aggregate function uses arguments, result and state. */
+    private boolean inCall;
+    /** Text encodings (SQLITE_UTF8, SQLITE_UTF16) of the SQLite definitions calling this function. */
+    private int encodings;
 
     public PanamaFunction(PanamaDBImpl db, Function call)
     {
         function = call;
+        scalar = null;
+        aggregate = null;
+        result = null;
+        scope = null;
+        state = null;
+        groupObjects = null;
         pDB = db;
     }
 
+    public PanamaFunction(PanamaDBImpl db, ScalarFunction call)
+    {
+        function = null;
+        scalar = call;
+        aggregate = null;
+        pDB = db;
+        result = new FunctionResult();
+        scope = null;
+        state = null;
+        groupObjects = null;
+    }
+
+    public PanamaFunction(PanamaDBImpl db, AggregateFunction call)
+    {
+        function = null;
+        scalar = null;
+        aggregate = call;
+        pDB = db;
+        result = new FunctionResult();
+        scope = ResourceScope.newSharedScope();
+        groupObjects = new HashMap<>();
+        state = new AggregateState(call.slots(), scope, groupObjects);
+    }
+
+    /** @return True if this wraps a {@link Function}, rather than one of the interfaces. */
+    public boolean wrapsFunction()
+    {
+        return function != null;
+    }
+
+    /** @return True if this wraps a {@link ScalarFunction}. */
+    public boolean isScalar()
+    {
+        return scalar != null;
+    }
+
+    /** @return True if this wraps a {@link Function.Aggregate} or an {@link AggregateFunction}. */
+    public boolean isAggregate()
+    {
+        return function instanceof Function.Aggregate || aggregate != null;
+    }
+
+    /** @return True if this wraps a {@link Function.Window} or a {@link WindowFunction}. */
+    public boolean isWindow()
+    {
+        return function instanceof Function.Window || aggregate instanceof WindowFunction;
+    }
+
+    public int encodings()
+    {
+        return encodings;
+    }
+
+    public void addEncoding(int encoding)
+    {
+        encodings |= encoding;
+    }
+
+    public void xScalar(long context, int args, MemoryAddress value)
+    {
+        // a function that runs a query calling itself gets a cursor of its own for the nested call
+        boolean nested = inCall;
+        var callArgs = nested ? new FunctionArgs() : arguments;
+        var callResult = nested ? new FunctionResult() : result;
+        inCall = true;
+        callArgs.load(value, args);
+        callResult.setContext(context);
+        try {
+            scalar.xFunc(callArgs, callResult);
+        }
+        catch (SQLException | RuntimeException ex)
+        {
+            setError(callResult, ex);
+        }
+        finally
+        {
+            callResult.setContext(0);
+            callArgs.clear();
+            if (nested)
+                callResult.close();
+            inCall = nested;
+        }
+    }
+
+    public void xAggStep(long context, int args, MemoryAddress value)
+    {
+        aggregateStep(context, args, value, false);
+    }
+
+    public void xAggInverse(long context, int args, MemoryAddress value)
+    {
+        aggregateStep(context, args, value, true);
+    }
+
+    public void xAggValue(long context)
+    {
+        aggregateResult(context, false);
+    }
+
+    public void xAggFinal(long context)
+    {
+        aggregateResult(context, true);
+    }
+
+    private void aggregateStep(long context, int args, MemoryAddress value, boolean inverse)
+    {
+        boolean nested = inCall;
+        var callArgs = nested ? new FunctionArgs() : arguments;
+        var callResult = nested ? new FunctionResult() : result;
+        var callScope = nested ? ResourceScope.newConfinedScope() : null;
+        var callState = nested ? new AggregateState(aggregate.slots(), callScope, groupObjects) : state;
+        inCall = true;
+        callResult.setContext(context);
+        try {
+            if (!callState.bind(context, true))
+                throw new SQLException("out of memory for the aggregate state");
+            callArgs.load(value, args);
+            if (inverse)
+                ((WindowFunction) aggregate).xInverse(callState, callArgs);
+            else
+                aggregate.xStep(callState, callArgs);
+        }
+        catch (SQLException | RuntimeException ex)
+        {
+            setError(callResult, ex);
+        }
+        finally
+        {
+            callState.unbind();
+            callResult.setContext(0);
+            callArgs.clear();
+            if (nested)
+            {
+                callResult.close();
+                callScope.close();
+            }
+            inCall = nested;
+        }
+    }
+
+    private void aggregateResult(long context, boolean last)
+    {
+        boolean nested = inCall;
+        var callResult = nested ? new FunctionResult() : result;
+        var callScope = nested ? ResourceScope.newConfinedScope() : null;
+        var callState = nested ? new AggregateState(aggregate.slots(), callScope, groupObjects) : state;
+        inCall = true;
+        callResult.setContext(context);
+        try {
+            // the last call must not allocate: a group no row was added to has no memory yet
+            if (!callState.bind(context, !last))
+                throw new SQLException("out of memory for the aggregate state");
+            if (last)
+                aggregate.xFinal(callState, callResult);
+            else
+                ((WindowFunction) aggregate).xValue(callState, callResult);
+        }
+        catch (SQLException | RuntimeException ex)
+        {
+            setError(callResult, ex);
+        }
+        finally
+        {
+            if (last)
+                callState.release();
+            callState.unbind();
+            callResult.setContext(0);
+            if (nested)
+            {
+                callResult.close();
+                callScope.close();
+            }
+            inCall = nested;
+        }
+    }
+
+    /** Reports the exception as the error of the call; an exception must not unwind through SQLite. */
+    private static void setError(FunctionResult result, Exception ex)
+    {
+        try {
+            result.setError(ex.getMessage() == null ? ex.toString() : ex.getMessage());
+        }
+        catch (SQLException ignored)
+        {
+            // the context is set, so this cannot happen
+        }
+    }
+
     public void xFunc(long context, int args, MemoryAddress value) throws SQLException
     {
         synchronized (function) {
-            function.setCallback(context, args, value.toRawLongValue());
+            arguments.load(value, args);
+            function.setCallback(context, args, value.toRawLongValue(), arguments);
             try {
                 function.xFunc();
             } catch (SQLException ex) {
                 pDB.setError(context, ex.getMessage());
             }
+            function.setCallback(0, 0, 0);
+            arguments.clear();
         }
-        function.setCallback(0, 0, 0);
     }
 
     public void xStep(long context, int args, MemoryAddress value) throws SQLException
     {
-        function.setCallback(context, args, value.toRawLongValue());
+        arguments.load(value, args);
+        function.setCallback(context, args, value.toRawLongValue(), arguments);
         try {
             ((Function.Aggregate)function).xStep();
         }
@@ -42,11 +267,13 @@ public class PanamaFunction {
             pDB.setError(context, ex.getMessage());
         }
         function.setCallback(0, 0, 0);
+        arguments.clear();
     }
 
     public void xInverse(long context, int args, MemoryAddress value) throws SQLException
     {
-        function.setCallback(context, args, value.toRawLongValue());
+        arguments.load(value, args);
+        function.setCallback(context, args, value.toRawLongValue(), arguments);
         try {
         ((Function.Window)function).xInverse();
         }
@@ -55,6 +282,7 @@ public class PanamaFunction {
             pDB.setError(context, ex.getMessage());
         }
         function.setCallback(0, 0, 0);
+        arguments.clear();
     }
 
     public void xFinal(long context) throws SQLException
@@ -91,37 +319,58 @@ public class PanamaFunction {
 
     public MemoryAddress getxStepCall()
     {
-        if (!(function instanceof Function.Aggregate))
+        if (!isAggregate())
             throw new IllegalArgumentException("Not an aggregate function!");
 
-        return getCall("xStep");
+        return getCall(aggregate != null ? "xAggStep" : "xStep");
     }
 
     public MemoryAddress getxInverseCall()
     {
-        if (!(function instanceof Function.Window))
+        if (!isWindow())
             throw new IllegalArgumentException("Not an aggregate function!");
 
-        return getCall("xInverse");
+        return getCall(aggregate != null ? "xAggInverse" : "xInverse");
     }
 
     public MemoryAddress getxFinalCall()
     {
-        if (!(function instanceof Function.Aggregate))
+        if (!isAggregate())
             throw new IllegalArgumentException("Not an aggregate function!");
 
-        return getCall("xFinal");
+        return getCall(aggregate != null ? "xAggFinal" : "xFinal");
     }
 
     public MemoryAddress getxValueCall()
     {
-        if (!(function instanceof Function.Aggregate))
+        if (!isAggregate())
             throw new IllegalArgumentException("Not an aggregate function!");
-        return getCall("xValue");
+        return getCall(aggregate != null ? "xAggValue" : "xValue");
+    }
+
+    public MemoryAddress getxScalarCall()
+    {
+        if (scalar == null)
+            throw new IllegalArgumentException("Not a scalar function!");
+        return getCall("xScalar");
     }
 
     public MemoryAddress getCall(String name)
     {
-        return pDB.getCallbackCreator().createCallback(this, name);
+        var upcall = PanamaCallbacks.createCallback(this, name);
+        upcalls.add(upcall);
+        return upcall.address();
+    }
+
+    /** Frees the stubs of the function, once it is no longer registered with SQLite. */
+    public void close()
+    {
+        for (var upcall : upcalls)
+            upcall.close();
+        upcalls.clear();
+        if (result != null)
+            result.close();
+        if (scope != null && scope.isAlive())
+            scope.close();
     }
 }
@@ -0,0 +1,85 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAddress;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * The sqlite3_preupdate_* functions, which SQLite only has when compiled with
+ * SQLITE_ENABLE_PREUPDATE_HOOK. They are linked when present rather than declared in
+ * {@link PanamaDB}, so a library without them still loads.
+ */
+public final class PreUpdateHook
+{
+    // the pArg of the previous hook it returns is always 0
+    private static final MethodHandle HOOK = NativeSymbols.find("sqlite3_preupdate_hook",
+            MethodType.methodType(MemoryAddress.class, long.class, MemoryAddress.class, long.class),
+            FunctionDescriptor.of(CLinker.C_POINTER, CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_LONG_LONG))
+            .map(MethodHandles::dropReturn)
+            .orElse(null);
+    private static final MethodHandle COUNT = NativeSymbols.find("sqlite3_preupdate_count",
+            MethodType.methodType(int.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG))
+            .orElse(null);
+    static final MethodHandle OLD = NativeSymbols.find("sqlite3_preupdate_old",
+            MethodType.methodType(int.class, long.class, int.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_INT, CLinker.C_LONG_LONG))
+            .orElse(null);
+    static final MethodHandle NEW = NativeSymbols.find("sqlite3_preupdate_new",
+            MethodType.methodType(int.class, long.class, int.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_INT, CLinker.C_LONG_LONG))
+            .orElse(null);
+
+    private PreUpdateHook() {}
+
+    /** @return True if the loaded SQLite library has the pre-update hook. */
+    public static boolean isSupported()
+    {
+        return HOOK != null && COUNT != null && OLD != null && NEW != null;
+    }
+
+    /** @throws SQLFeatureNotSupportedException If the library does not have the hook. */
+    public static void checkSupported() throws SQLException
+    {
+        if (!isSupported())
+            throw new SQLFeatureNotSupportedException(
+                    "the SQLite library was not compiled with SQLITE_ENABLE_PREUPDATE_HOOK");
+    }
+
+    /**
+     * Sets or clears the pre-update hook of a connection.
+     *
+     * @param db The sqlite3* of the connection.
+     * @param callback The hook, or NULL to clear it.
+     * @throws SQLFeatureNotSupportedException If the library does not have the hook.
+     */
+    public static void set(long db, MemoryAddress callback) throws SQLException
+    {
+        checkSupported();
+        try {
+            HOOK.invokeExact(db, callback, 0L);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** @return The number of columns of the row being changed; only valid within the hook. */
+    public static int count(long db)
+    {
+        try {
+            return (int) COUNT.invokeExact(db);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+}
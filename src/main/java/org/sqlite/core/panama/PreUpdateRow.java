@@ -0,0 +1,143 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.sqlite.core.Codes;
+
+import java.lang.invoke.MethodHandle;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The old or the new values of the row a pre-update hook reports, read with
+ * sqlite3_preupdate_old or sqlite3_preupdate_new.
+ *
+ * <p>A column is only fetched from SQLite when it is first read, and its sqlite3_value* is kept as
+ * a plain long for the rest of the hook, so listeners that look at a few columns of a wide row pay
+ * for those alone. Reading a column allocates nothing, text and blobs aside.
+ *
+ * <p>An instance is only valid during the hook it is passed to. It is not thread safe; each
+ * connection owns one for the old and one for the new values.
+ */
+public final class PreUpdateRow
+{
+    private final MethodHandle fetch;
+    private final Utf8Decoder textDecoder = new Utf8Decoder();
+    /** Receives the sqlite3_value* of sqlite3_preupdate_old/new. */
+    private final MemorySegment out = MemorySegment.allocateNative(8, 8, ResourceScope.newImplicitScope());
+    private final long outAddress = out.address().toRawLongValue();
+    private long[] values = new long[16];
+    private long db;
+    private int count;
+
+    /** @param old True for the values before the change, false for those after it. */
+    public PreUpdateRow(boolean old)
+    {
+        fetch = old ? PreUpdateHook.OLD : PreUpdateHook.NEW;
+    }
+
+    /**
+     * Makes the row read the columns of the change the hook of the connection is reporting.
+     *
+     * @param db The sqlite3* passed to the hook.
+     * @param count The number of columns, from sqlite3_preupdate_count.
+     */
+    public void bind(long db, int count)
+    {
+        if (count > values.length)
+            values = new long[Math.max(count, values.length * 2)];
+        this.db = db;
+        this.count = count;
+    }
+
+    /** Forgets the values of the change, which are invalid once the hook returns. */
+    public void clear()
+    {
+        Arrays.fill(values, 0, count, 0);
+        db = 0;
+        count = 0;
+    }
+
+    /** @return True while the row is bound to a change. */
+    public boolean isBound()
+    {
+        return db != 0;
+    }
+
+    /** @return The number of columns of the table. */
+    public int count()
+    {
+        return count;
+    }
+
+    /**
+     * @return The datatype code of the column: SQLITE_INTEGER, SQLITE_FLOAT, SQLITE_TEXT,
+     *     SQLITE_BLOB or SQLITE_NULL.
+     */
+    public int type(int column) throws SQLException
+    {
+        return FunctionArgs.valueType(value(column));
+    }
+
+    /** @return True if the column is NULL. */
+    public boolean isNull(int column) throws SQLException
+    {
+        return type(column) == Codes.SQLITE_NULL;
+    }
+
+    /** @return The column converted to a 32 bit integer. */
+    public int getInt(int column) throws SQLException
+    {
+        return FunctionArgs.valueInt(value(column));
+    }
+
+    /** @return The column converted to a 64 bit integer. */
+    public long getLong(int column) throws SQLException
+    {
+        return FunctionArgs.valueInt64(value(column));
+    }
+
+    /** @return The column converted to a double. */
+    public double getDouble(int column) throws SQLException
+    {
+        return FunctionArgs.valueDouble(value(column));
+    }
+
+    /** @return The column as text, or null if it is NULL. */
+    public String getText(int column) throws SQLException
+    {
+        return FunctionArgs.valueText(value(column), textDecoder);
+    }
+
+    /** @return A copy of the column as a blob, or null if it is NULL or empty. */
+    public byte[] getBlob(int column) throws SQLException
+    {
+        return FunctionArgs.valueBlob(value(column));
+    }
+
+    private long value(int column) throws SQLException
+    {
+        if (db == 0)
+            throw new SQLException("no change, the row is only valid during the pre-update hook");
+        if (column < 0 || column >= count)
+            throw new SQLException("column " + column + " out bounds [0," + count + ")");
+        long value = values[column];
+        if (value != 0)
+            return value;
+
+        int rc;
+        try {
+            rc = (int) fetch.invokeExact(db, column, outAddress);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+        if (rc != Codes.SQLITE_OK)
+            throw new SQLException("cannot read column " + column + " of the changed row, error " + rc);
+        value = MemoryAccess.getLong(out);
+        values[column] = value;
+        return value;
+    }
+}
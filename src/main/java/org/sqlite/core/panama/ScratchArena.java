@@ -0,0 +1,177 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * Reusable native buffer a connection encodes its string arguments into (SQL text, bound text
+ * values, function and collation names).
+ *
+ * Strings are written as NUL terminated UTF-8 directly from their chars, so encoding allocates
+ * nothing on the Java heap and the byte length is known without a second pass. The buffer only
+ * holds one string at a time: the address returned by {@link #address()} is valid until the next
+ * call to {@link #encode(String)} or {@link #close()}. The buffer grows to fit the largest string
+ * seen, and is given back once a large string has been followed by a small one.
+ *
+ * An instance is not thread safe; each connection owns one and uses it under its own lock.
+ */
+public final class ScratchArena implements AutoCloseable
+{
+    private static final long INITIAL_SIZE = 1024;
+    /** Buffers above this size are released when a small string comes along. */
+    private static final long MAX_RETAINED = 1024 * 1024;
+
+    private ResourceScope scope;
+    private MemorySegment buffer;
+    /** Out-parameter slot for calls such as sqlite3_prepare_v2(..., sqlite3_stmt **ppStmt, ...). */
+    private MemorySegment pointerSlot;
+    private ScratchArena nested;
+    private byte[] source;
+    private MemorySegment sourceSegment;
+
+    public ScratchArena()
+    {
+        allocate(INITIAL_SIZE);
+    }
+
+    /**
+     * Encodes the string as UTF-8 followed by a NUL terminator. Unpaired surrogates are replaced
+     * by '?', as {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @return The number of bytes written, excluding the terminator.
+     */
+    public int encode(String s)
+    {
+        int chars = s.length();
+        // a UTF-16 char never needs more than three UTF-8 bytes
+        ensureCapacity(3L * chars + 1);
+
+        MemorySegment out = buffer;
+        int pos = 0;
+        int i = 0;
+        while (i < chars && s.charAt(i) < 0x80)
+            MemoryAccess.setByteAtOffset(out, pos++, (byte) s.charAt(i++));
+
+        for (; i < chars; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                MemoryAccess.setByteAtOffset(out, pos++, (byte) c);
+            } else if (c < 0x800) {
+                MemoryAccess.setByteAtOffset(out, pos++, (byte) (0xC0 | (c >> 6)));
+                MemoryAccess.setByteAtOffset(out, pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < chars ? s.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int cp = Character.toCodePoint(c, low);
+                    MemoryAccess.setByteAtOffset(out, pos++, (byte) (0xF0 | (cp >> 18)));
+                    MemoryAccess.setByteAtOffset(out, pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    MemoryAccess.setByteAtOffset(out, pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    MemoryAccess.setByteAtOffset(out, pos++, (byte) (0x80 | (cp & 0x3F)));
+                    i++;
+                } else {
+                    MemoryAccess.setByteAtOffset(out, pos++, (byte) '?');
+                }
+            } else {
+                MemoryAccess.setByteAtOffset(out, pos++, (byte) (0xE0 | (c >> 12)));
+                MemoryAccess.setByteAtOffset(out, pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                MemoryAccess.setByteAtOffset(out, pos++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        MemoryAccess.setByteAtOffset(out, pos, (byte) 0);
+        return pos;
+    }
+
+    /**
+     * Copies bytes that are already encoded, e.g. UTF-8 text or a blob, followed by a NUL
+     * terminator.
+     */
+    public void copy(byte[] bytes, int offset, int length)
+    {
+        ensureCapacity(length + 1L);
+        if (bytes != source) {
+            // callers usually copy slices of the same array, so its segment view is kept
+            source = bytes;
+            sourceSegment = MemorySegment.ofArray(bytes);
+        }
+        buffer.asSlice(0, length).copyFrom(sourceSegment.asSlice(offset, length));
+        MemoryAccess.setByteAtOffset(buffer, length, (byte) 0);
+    }
+
+    /** @return The address of the last encoded string. */
+    public MemoryAddress address()
+    {
+        return buffer.address();
+    }
+
+    /** @return The address of a pointer sized out-parameter, cleared to NULL. */
+    public MemoryAddress pointerSlot()
+    {
+        if (pointerSlot == null)
+            allocate(INITIAL_SIZE);
+        MemoryAccess.setLong(pointerSlot, 0);
+        return pointerSlot.address();
+    }
+
+    /** @return The value a native call wrote into {@link #pointerSlot()}. */
+    public long pointerSlotValue()
+    {
+        return MemoryAccess.getLong(pointerSlot);
+    }
+
+    /**
+     * Returns a second arena to encode into while this one holds a string that must stay valid,
+     * e.g. the SQL of a running sqlite3_exec while a user function sets its result. It is created
+     * on first use and kept for reuse.
+     */
+    public ScratchArena nested()
+    {
+        if (nested == null)
+            nested = new ScratchArena();
+        return nested;
+    }
+
+    /** Frees the native memory. Using the arena again allocates a new buffer. */
+    @Override
+    public void close()
+    {
+        release();
+        source = null;
+        sourceSegment = null;
+        if (nested != null) {
+            nested.close();
+            nested = null;
+        }
+    }
+
+    private void ensureCapacity(long size)
+    {
+        if (buffer == null || size > buffer.byteSize())
+            allocate(Math.max(INITIAL_SIZE, Long.highestOneBit(size - 1) << 1));
+        else if (buffer.byteSize() > MAX_RETAINED && size <= INITIAL_SIZE)
+            allocate(INITIAL_SIZE);
+    }
+
+    private void release()
+    {
+        if (scope != null) {
+            scope.close();
+            scope = null;
+            buffer = null;
+            pointerSlot = null;
+        }
+    }
+
+    private void allocate(long size)
+    {
+        // connections may be used from several threads (one at a time), so a shared scope is needed
+        var newScope = ResourceScope.newSharedScope();
+        var newBuffer = MemorySegment.allocateNative(size, newScope);
+        var newSlot = MemorySegment.allocateNative(8, 8, newScope);
+        release();
+        scope = newScope;
+        buffer = newBuffer;
+        pointerSlot = newSlot;
+    }
+}
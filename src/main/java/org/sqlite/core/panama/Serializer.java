@@ -0,0 +1,157 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.sqlite.core.Codes;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * sqlite3_serialize and sqlite3_deserialize, which SQLite lacks when compiled with
+ * SQLITE_OMIT_DESERIALIZE; linked when present, like {@link Sessions}.
+ *
+ * <p>Callers hold the lock of the connection.
+ */
+public final class Serializer
+{
+    private static final int SQLITE_DESERIALIZE_FREEONCLOSE = 1;
+    private static final int SQLITE_DESERIALIZE_RESIZEABLE = 2;
+    private static final int SQLITE_DESERIALIZE_READONLY = 4;
+
+    private static final MethodHandle SERIALIZE = NativeSymbols.find("sqlite3_serialize",
+            MethodType.methodType(long.class, long.class, MemoryAddress.class, long.class, int.class),
+            FunctionDescriptor.of(CLinker.C_LONG_LONG, CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_LONG_LONG,
+                    CLinker.C_INT))
+            .orElse(null);
+    private static final MethodHandle DESERIALIZE = NativeSymbols.find("sqlite3_deserialize",
+            MethodType.methodType(int.class, long.class, MemoryAddress.class, long.class, long.class, long.class,
+                    int.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_LONG_LONG,
+                    CLinker.C_LONG_LONG, CLinker.C_LONG_LONG, CLinker.C_INT))
+            .orElse(null);
+    private static final MethodHandle MALLOC = NativeSymbols.link("sqlite3_malloc64",
+            MethodType.methodType(long.class, long.class),
+            FunctionDescriptor.of(CLinker.C_LONG_LONG, CLinker.C_LONG_LONG));
+    private static final MethodHandle FREE = NativeSymbols.link("sqlite3_free",
+            MethodType.methodType(void.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG));
+
+    private static final MemorySegment ALL = MemorySegment.globalNativeSegment();
+
+    private Serializer() {}
+
+    /** @throws SQLFeatureNotSupportedException If the library was compiled without them. */
+    public static void checkSupported() throws SQLException
+    {
+        if (SERIALIZE == null || DESERIALIZE == null)
+            throw new SQLFeatureNotSupportedException(
+                    "the SQLite library was compiled with SQLITE_OMIT_DESERIALIZE");
+    }
+
+    /**
+     * @param db The sqlite3* of the connection.
+     * @param schema The database to serialize, e.g. "main".
+     * @return A copy of the database image, as it would be written to disk.
+     */
+    public static ByteBuffer serialize(long db, String schema) throws SQLException
+    {
+        checkSupported();
+        try (var scope = ResourceScope.newConfinedScope()) {
+            var size = MemorySegment.allocateNative(8, 8, scope);
+            long data = (long) SERIALIZE.invokeExact(db, CLinker.toCString(schema, scope).address(),
+                    size.address().toRawLongValue(), 0);
+            long length = MemoryAccess.getLong(size);
+            // a database without any page has an empty image
+            if (data == 0 && length == 0)
+                return ByteBuffer.allocate(0);
+            if (data == 0)
+                throw new SQLException("cannot serialize database " + schema + ", out of memory or no such database");
+            try {
+                if (length > Integer.MAX_VALUE)
+                    throw new SQLException("database " + schema + " is too large to serialize: " + length + " bytes");
+                byte[] copy = new byte[(int) length];
+                MemorySegment.ofArray(copy).copyFrom(ALL.asSlice(data, length));
+                return ByteBuffer.wrap(copy);
+            }
+            finally
+            {
+                FREE.invokeExact(data);
+            }
+        }
+        catch (SQLException ex)
+        {
+            throw ex;
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /**
+     * Replaces a database of the connection with the image, from the position to the limit of
+     * the buffer.
+     *
+     * <p>A heap buffer is copied into memory SQLite owns, and the database can be written and grow.
+     * A direct buffer, e.g. a mapped file, is used in place: the database cannot grow beyond it,
+     * it is read-only if the buffer is, and the buffer must stay reachable as long as the
+     * connection uses it.
+     *
+     * @param db The sqlite3* of the connection.
+     * @param schema The database to replace, e.g. "main".
+     */
+    public static void deserialize(long db, String schema, ByteBuffer image) throws SQLException
+    {
+        checkSupported();
+        long length = image.remaining();
+        long data;
+        int flags;
+        if (image.isDirect())
+        {
+            data = MemorySegment.ofByteBuffer(image).address().toRawLongValue();
+            flags = image.isReadOnly() ? SQLITE_DESERIALIZE_READONLY : 0;
+        }
+        else
+        {
+            data = malloc(length);
+            ALL.asSlice(data, length).copyFrom(MemorySegment.ofByteBuffer(image));
+            flags = SQLITE_DESERIALIZE_FREEONCLOSE | SQLITE_DESERIALIZE_RESIZEABLE;
+        }
+
+        int rc;
+        try (var scope = ResourceScope.newConfinedScope()) {
+            // SQLite frees memory passed with FREEONCLOSE even if it fails
+            rc = (int) DESERIALIZE.invokeExact(db, CLinker.toCString(schema, scope).address(), data, length, length,
+                    flags);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+        if (rc != Codes.SQLITE_OK)
+            throw new SQLException("cannot deserialize database " + schema + ", error " + rc, null, rc);
+    }
+
+    private static long malloc(long size) throws SQLException
+    {
+        long data;
+        try {
+            data = (long) MALLOC.invokeExact(Math.max(1, size));
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+        if (data == 0)
+            throw new SQLException("out of memory for a database image of " + size + " bytes");
+        return data;
+    }
+}
@@ -0,0 +1,254 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.sqlite.core.Codes;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * The functions of the session extension (sqlite3session_*, sqlite3changeset_*), which SQLite
+ * only has when compiled with SQLITE_ENABLE_SESSION and SQLITE_ENABLE_PREUPDATE_HOOK. Like
+ * {@link PreUpdateHook}, they are linked when present rather than declared in {@link PanamaDB}.
+ *
+ * <p>Sessions and iterators are passed as plain longs. None of these functions is thread safe;
+ * callers hold the lock of the connection.
+ */
+public final class Sessions
+{
+    private static final MethodHandle CREATE = find("sqlite3session_create",
+            MethodType.methodType(int.class, long.class, MemoryAddress.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_POINTER, CLinker.C_LONG_LONG));
+    private static final MethodHandle ATTACH = find("sqlite3session_attach",
+            MethodType.methodType(int.class, long.class, MemoryAddress.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_POINTER));
+    private static final MethodHandle CHANGESET = find("sqlite3session_changeset",
+            MethodType.methodType(int.class, long.class, long.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_LONG_LONG, CLinker.C_LONG_LONG));
+    private static final MethodHandle PATCHSET = find("sqlite3session_patchset",
+            MethodType.methodType(int.class, long.class, long.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_LONG_LONG, CLinker.C_LONG_LONG));
+    private static final MethodHandle ENABLE = find("sqlite3session_enable",
+            MethodType.methodType(int.class, long.class, int.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_INT));
+    private static final MethodHandle IS_EMPTY = find("sqlite3session_isempty",
+            MethodType.methodType(int.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG));
+    private static final MethodHandle DELETE = find("sqlite3session_delete",
+            MethodType.methodType(void.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG));
+    private static final MethodHandle APPLY = find("sqlite3changeset_apply",
+            MethodType.methodType(int.class, long.class, int.class, MemoryAddress.class, MemoryAddress.class,
+                    MemoryAddress.class, MemoryAddress.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_INT, CLinker.C_POINTER,
+                    CLinker.C_POINTER, CLinker.C_POINTER, CLinker.C_POINTER));
+    private static final MethodHandle OP = find("sqlite3changeset_op",
+            MethodType.methodType(int.class, long.class, long.class, long.class, long.class, long.class),
+            FunctionDescriptor.of(CLinker.C_INT, CLinker.C_LONG_LONG, CLinker.C_LONG_LONG, CLinker.C_LONG_LONG,
+                    CLinker.C_LONG_LONG, CLinker.C_LONG_LONG));
+    private static final MethodHandle FREE = NativeSymbols.link("sqlite3_free",
+            MethodType.methodType(void.class, long.class),
+            FunctionDescriptor.ofVoid(CLinker.C_LONG_LONG));
+
+    private static final MemorySegment ALL = MemorySegment.globalNativeSegment();
+
+    private Sessions() {}
+
+    /** @return True if the loaded SQLite library has the session extension. */
+    public static boolean isSupported()
+    {
+        return CREATE != null && ATTACH != null && CHANGESET != null && PATCHSET != null && ENABLE != null
+                && IS_EMPTY != null && DELETE != null && APPLY != null && OP != null;
+    }
+
+    /** @throws SQLFeatureNotSupportedException If the library does not have the session extension. */
+    public static void checkSupported() throws SQLException
+    {
+        if (!isSupported())
+            throw new SQLFeatureNotSupportedException(
+                    "the SQLite library was not compiled with SQLITE_ENABLE_SESSION");
+    }
+
+    /**
+     * @param db The sqlite3* of the connection.
+     * @param database The name of the database to record, e.g. "main".
+     * @return The sqlite3_session*.
+     */
+    public static long create(long db, String database) throws SQLException
+    {
+        checkSupported();
+        try (var scope = ResourceScope.newConfinedScope()) {
+            var out = MemorySegment.allocateNative(8, 8, scope);
+            int rc = (int) CREATE.invokeExact(db, CLinker.toCString(database, scope).address(),
+                    out.address().toRawLongValue());
+            check(rc, "cannot create a session");
+            return MemoryAccess.getLong(out);
+        }
+        catch (SQLException ex)
+        {
+            throw ex;
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** @param table The table to record, or null for every table of the database. */
+    public static void attach(long session, String table) throws SQLException
+    {
+        try (var scope = ResourceScope.newConfinedScope()) {
+            var name = table == null ? MemoryAddress.NULL : CLinker.toCString(table, scope).address();
+            check((int) ATTACH.invokeExact(session, name), "cannot attach table " + table);
+        }
+        catch (SQLException ex)
+        {
+            throw ex;
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /**
+     * @param patchset True for a patchset, which omits the original values of updated and deleted
+     *     rows, false for a changeset.
+     * @return A copy of what the session recorded.
+     */
+    public static ByteBuffer changeset(long session, boolean patchset) throws SQLException
+    {
+        try (var scope = ResourceScope.newConfinedScope()) {
+            // int nChangeset at 0, void *pChangeset at 8
+            var out = MemorySegment.allocateNative(16, 8, scope);
+            long base = out.address().toRawLongValue();
+            int rc = patchset
+                    ? (int) PATCHSET.invokeExact(session, base, base + 8)
+                    : (int) CHANGESET.invokeExact(session, base, base + 8);
+            check(rc, "cannot create the " + (patchset ? "patchset" : "changeset"));
+            int size = MemoryAccess.getIntAtOffset(out, 0);
+            long data = MemoryAccess.getLongAtOffset(out, 8);
+            try {
+                byte[] copy = new byte[size];
+                MemorySegment.ofArray(copy).copyFrom(ALL.asSlice(data, size));
+                return ByteBuffer.wrap(copy);
+            }
+            finally
+            {
+                FREE.invokeExact(data);
+            }
+        }
+        catch (SQLException ex)
+        {
+            throw ex;
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** @return The state of the session after the call; enable is -1 to only query it. */
+    public static boolean enable(long session, int enable)
+    {
+        try {
+            return (int) ENABLE.invokeExact(session, enable) != 0;
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /** @return True if the session recorded no change. */
+    public static boolean isEmpty(long session)
+    {
+        try {
+            return (int) IS_EMPTY.invokeExact(session) != 0;
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    public static void delete(long session)
+    {
+        try {
+            DELETE.invokeExact(session);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /**
+     * Applies a changeset or patchset to the database.
+     *
+     * @param db The sqlite3* of the connection.
+     * @param changeset The changeset; a heap buffer is copied to native memory first.
+     * @param conflict The xConflict callback.
+     * @return The result code of sqlite3changeset_apply.
+     */
+    public static int apply(long db, ByteBuffer changeset, MemoryAddress conflict) throws SQLException
+    {
+        checkSupported();
+        try (var scope = ResourceScope.newConfinedScope()) {
+            MemorySegment data;
+            if (changeset.isDirect())
+                data = MemorySegment.ofByteBuffer(changeset);
+            else
+            {
+                data = MemorySegment.allocateNative(Math.max(1, changeset.remaining()), scope);
+                data.asByteBuffer().put(changeset.duplicate());
+            }
+            return (int) APPLY.invokeExact(db, changeset.remaining(), data.address(), MemoryAddress.NULL,
+                    conflict, MemoryAddress.NULL);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+    }
+
+    /**
+     * Reads the change an iterator passed to xConflict is at.
+     *
+     * @param iterator The sqlite3_changeset_iter*.
+     * @param out 24 bytes receiving the table name pointer at 0, the column count at 8 and the
+     *     operation code at 12.
+     */
+    static void op(long iterator, MemorySegment out) throws SQLException
+    {
+        long base = out.address().toRawLongValue();
+        int rc;
+        try {
+            rc = (int) OP.invokeExact(iterator, base, base + 8, base + 12, base + 16);
+        }
+        catch (Throwable th)
+        {
+            throw new Error(th);
+        }
+        check(rc, "cannot read the conflicting change");
+    }
+
+    private static void check(int rc, String message) throws SQLException
+    {
+        if (rc != Codes.SQLITE_OK)
+            throw new SQLException(message + ", error " + rc, null, rc);
+    }
+
+    private static MethodHandle find(String name, MethodType type, FunctionDescriptor descriptor)
+    {
+        return NativeSymbols.find(name, type, descriptor).orElse(null);
+    }
+}
@@ -0,0 +1,65 @@
+package org.sqlite.core.panama;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 text owned by SQLite (sqlite3_column_text, sqlite3_value_text) into Java strings.
+ *
+ * The byte length is always supplied by the caller (sqlite3_column_bytes), so the text is never
+ * scanned for its terminating NUL and embedded NULs are preserved. The bytes are copied once into
+ * a reusable scratch array, and text that is pure ASCII is built as a Latin-1 string without running
+ * the UTF-8 decoder.
+ *
+ * An instance is not thread safe; each connection owns one and uses it under its own lock.
+ */
+public final class Utf8Decoder
+{
+    /** Scratch arrays larger than this are not kept between calls. */
+    private static final int MAX_RETAINED = 64 * 1024;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param text Pointer to the first byte of the text; may be NULL.
+     * @param length Number of bytes to decode, excluding any terminator.
+     * @return The decoded string, or null if text is NULL.
+     */
+    public String decode(MemoryAddress text, int length)
+    {
+        if (text == MemoryAddress.NULL)
+            return null;
+        if (length <= 0)
+            return "";
+
+        MemorySegment src = text.asSegment(length, ResourceScope.globalScope());
+        var charset = isAscii(src, length) ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+        if (length > MAX_RETAINED)
+            return new String(src.toByteArray(), charset);
+
+        if (length > scratch.length)
+            scratch = new byte[Math.min(MAX_RETAINED, Integer.highestOneBit(length - 1) << 1)];
+        MemorySegment.ofArray(scratch).asSlice(0, length).copyFrom(src);
+        return new String(scratch, 0, length, charset);
+    }
+
+    /** Checks eight bytes at a time for a set high bit. */
+    static boolean isAscii(MemorySegment src, int length)
+    {
+        int i = 0;
+        for (int limit = length & ~7; i < limit; i += 8) {
+            if ((MemoryAccess.getLongAtOffset(src, i) & HIGH_BITS) != 0)
+                return false;
+        }
+        for (; i < length; i++) {
+            if (MemoryAccess.getByteAtOffset(src, i) < 0)
+                return false;
+        }
+        return true;
+    }
+}
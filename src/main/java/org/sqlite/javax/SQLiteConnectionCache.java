@@ -0,0 +1,429 @@
+/*--------------------------------------------------------------------------
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *--------------------------------------------------------------------------*/
+package org.sqlite.javax;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import org.sqlite.JDBC;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+
+/**
+ * Connections to many database files, e.g. one per tenant, kept open between uses. A connection
+ * returned to the cache stays open with its prepared statements (see {@link
+ * SQLiteConfig#setStatementCacheSize(int)}) and the functions the {@link Initializer} registered,
+ * so the next {@link #getConnection(String)} of the same file does not open it again.
+ *
+ * <p>At most {@link #getMaxOpen()} connections are open at once. Opening another one closes the
+ * least recently used idle connection, or waits for a connection to be returned if none is idle.
+ * Connections idle longer than {@link #setIdleTimeout(Duration)} are closed when the cache is
+ * next used, or by {@link #evictIdle()}.
+ */
+public class SQLiteConnectionCache implements AutoCloseable {
+    /** Prepares a connection once, when it is opened, e.g. by registering functions. */
+    @FunctionalInterface
+    public interface Initializer {
+        void initialize(SQLiteConnection conn) throws SQLException;
+    }
+
+    private final Properties properties;
+    private final int maxOpen;
+    private final Initializer initializer;
+    private final Stats stats = new Stats();
+
+    private volatile long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+    private volatile long idleTimeoutNanos = TimeUnit.MINUTES.toNanos(10);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // the idle connections of each file, the most recently returned first
+    private final Map<String, ArrayDeque<Idle>> idleByFile = new HashMap<>();
+    // every idle connection, the least recently returned first
+    private final LinkedHashSet<Idle> idle = new LinkedHashSet<>();
+    private final Map<SQLitePooledConnection, String> files = new HashMap<>();
+    private int open;
+    private boolean closed;
+
+    private final ConnectionEventListener listener =
+            new ConnectionEventListener() {
+                public void connectionClosed(ConnectionEvent event) {
+                    release((SQLitePooledConnection) event.getSource());
+                }
+
+                public void connectionErrorOccurred(ConnectionEvent event) {
+                    List<SQLitePooledConnection> discarded = new ArrayList<>(1);
+                    lock.lock();
+                    try {
+                        discard((SQLitePooledConnection) event.getSource(), discarded);
+                        update();
+                        available.signal();
+                    } finally {
+                        lock.unlock();
+                        closeDiscarded(discarded);
+                    }
+                }
+            };
+
+    /**
+     * @param config The configuration of every connection.
+     * @param maxOpen The maximum number of open connections, idle or in use.
+     * @param initializer Called with every connection the cache opens; may be null.
+     */
+    public SQLiteConnectionCache(SQLiteConfig config, int maxOpen, Initializer initializer) {
+        if (maxOpen < 1) {
+            throw new IllegalArgumentException("maxOpen must be positive: " + maxOpen);
+        }
+        this.properties = new Properties();
+        this.properties.putAll(config.toProperties());
+        this.maxOpen = maxOpen;
+        this.initializer = initializer;
+    }
+
+    /**
+     * @param maxWait How long to wait for a connection when all are in use; 30 seconds by
+     *     default.
+     */
+    public void setMaxWait(Duration maxWait) {
+        maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * @param idleTimeout How long a connection may stay idle before it is closed; 10 minutes by
+     *     default.
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /** @return The maximum number of open connections. */
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    /** @return The hits, misses and opening times of the cache. */
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns a connection to the database file, open already if a connection to it is idle in
+     * the cache. Closing the connection returns it to the cache.
+     *
+     * @param fileName The database file; relative names resolve against the working directory.
+     * @return A connection to the file, used by nobody else until it is closed.
+     */
+    public Connection getConnection(String fileName) throws SQLException {
+        String file = new File(fileName).getAbsolutePath();
+        long start = System.nanoTime();
+        long remaining = maxWaitNanos;
+        List<SQLitePooledConnection> discarded = new ArrayList<>();
+        lock.lock();
+        try {
+            evictIdle(start, discarded);
+            while (true) {
+                if (closed) {
+                    throw new SQLException("The connection cache is closed");
+                }
+                ArrayDeque<Idle> forFile = idleByFile.get(file);
+                if (forFile != null) {
+                    Idle entry = forFile.peekFirst();
+                    removeIdle(entry);
+                    SQLiteConnection physical = entry.conn.getPhysicalConn();
+                    if (physical != null && !physical.getDatabase().isClosed()) {
+                        stats.hits.incrementAndGet();
+                        update();
+                        return entry.conn.getConnection();
+                    }
+                    discard(entry.conn, discarded);
+                    continue;
+                }
+                if (open < maxOpen) {
+                    open++;
+                    break;
+                }
+                if (!idle.isEmpty()) {
+                    // make room by closing the least recently used idle connection
+                    Idle coldest = idle.iterator().next();
+                    removeIdle(coldest);
+                    discard(coldest.conn, discarded);
+                    stats.evictions.incrementAndGet();
+                    continue;
+                }
+                if (remaining <= 0) {
+                    stats.timeouts.incrementAndGet();
+                    throw new SQLTimeoutException(
+                            "Timed out waiting for one of " + maxOpen + " connections");
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+            stats.misses.incrementAndGet();
+            update();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", e);
+        } finally {
+            lock.unlock();
+            closeDiscarded(discarded);
+        }
+
+        // opening runs outside the lock so that hits do not wait for it
+        long openStart = System.nanoTime();
+        SQLitePooledConnection conn = null;
+        try {
+            SQLiteConnection physical = JDBC.createConnection(JDBC.PREFIX + file, properties);
+            conn = new SQLitePooledConnection(physical);
+            if (initializer != null) {
+                initializer.initialize(physical);
+            }
+        } catch (Throwable e) {
+            // also on errors, or the slot stays taken for good
+            lock.lock();
+            try {
+                open--;
+                update();
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (Throwable suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        stats.opened(System.nanoTime() - openStart);
+        lock.lock();
+        try {
+            files.put(conn, file);
+        } finally {
+            lock.unlock();
+        }
+        conn.addConnectionEventListener(listener);
+        return conn.getConnection();
+    }
+
+    /** Closes the connections idle for longer than the idle timeout. */
+    public void evictIdle() {
+        List<SQLitePooledConnection> discarded = new ArrayList<>();
+        lock.lock();
+        try {
+            evictIdle(System.nanoTime(), discarded);
+            update();
+        } finally {
+            lock.unlock();
+            closeDiscarded(discarded);
+        }
+    }
+
+    /**
+     * Closes the idle connections; the others are closed when they are returned. Getting a
+     * connection fails from then on.
+     */
+    public void close() {
+        List<SQLitePooledConnection> discarded = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Iterator<Idle> it = idle.iterator(); it.hasNext(); ) {
+                Idle entry = it.next();
+                it.remove();
+                discard(entry.conn, discarded);
+            }
+            idleByFile.clear();
+            update();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+            closeDiscarded(discarded);
+        }
+    }
+
+    private void release(SQLitePooledConnection conn) {
+        long now = System.nanoTime();
+        List<SQLitePooledConnection> discarded = new ArrayList<>();
+        lock.lock();
+        try {
+            String file = files.get(conn);
+            SQLiteConnection physical = conn.getPhysicalConn();
+            if (closed || file == null || physical == null || physical.getDatabase().isClosed()) {
+                discard(conn, discarded);
+            } else {
+                Idle entry = new Idle(file, conn, now);
+                idleByFile.computeIfAbsent(file, k -> new ArrayDeque<>()).addFirst(entry);
+                idle.add(entry);
+            }
+            evictIdle(now, discarded);
+            update();
+            available.signal();
+        } finally {
+            lock.unlock();
+            closeDiscarded(discarded);
+        }
+    }
+
+    /** The caller holds the lock. */
+    private void evictIdle(long now, List<SQLitePooledConnection> discarded) {
+        while (!idle.isEmpty()) {
+            Idle entry = idle.iterator().next();
+            if (now - entry.since < idleTimeoutNanos) {
+                break;
+            }
+            removeIdle(entry);
+            discard(entry.conn, discarded);
+            stats.expirations.incrementAndGet();
+        }
+    }
+
+    /** The caller holds the lock. */
+    private void removeIdle(Idle entry) {
+        idle.remove(entry);
+        ArrayDeque<Idle> forFile = idleByFile.get(entry.file);
+        forFile.remove(entry);
+        if (forFile.isEmpty()) {
+            idleByFile.remove(entry.file);
+        }
+    }
+
+    /**
+     * Gives up the slot of a connection, and adds it to the connections to close once the lock
+     * is released, so that nobody waits for the cache while SQLite closes them; the caller holds
+     * the lock.
+     */
+    private void discard(SQLitePooledConnection conn, List<SQLitePooledConnection> discarded) {
+        if (files.remove(conn) == null) {
+            return;
+        }
+        open--;
+        discarded.add(conn);
+    }
+
+    private static void closeDiscarded(List<SQLitePooledConnection> discarded) {
+        for (SQLitePooledConnection conn : discarded) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                // it is gone either way
+            }
+        }
+    }
+
+    private void update() {
+        stats.open = open;
+        stats.idle = idle.size();
+    }
+
+    private static final class Idle {
+        final String file;
+        final SQLitePooledConnection conn;
+        final long since;
+
+        Idle(String file, SQLitePooledConnection conn, long since) {
+            this.file = file;
+            this.conn = conn;
+            this.since = since;
+        }
+    }
+
+    /** The hits, misses and opening times of a cache. */
+    public static final class Stats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong expirations = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong opens = new AtomicLong();
+        private final AtomicLong totalOpenNanos = new AtomicLong();
+        private final AtomicLong maxOpenNanos = new AtomicLong();
+        private volatile int open;
+        private volatile int idle;
+
+        private Stats() {}
+
+        private void opened(long nanos) {
+            opens.incrementAndGet();
+            totalOpenNanos.addAndGet(nanos);
+            maxOpenNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /** @return How many connections were handed out already open. */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /** @return How many connections had to be opened. */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /** @return How many idle connections were closed to make room for another file. */
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        /** @return How many idle connections were closed after the idle timeout. */
+        public long getExpirations() {
+            return expirations.get();
+        }
+
+        /** @return How many waits for a connection gave up after the maximum wait. */
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        /** @return How many connections were opened and initialized successfully. */
+        public long getOpens() {
+            return opens.get();
+        }
+
+        /** @return The total time spent opening and initializing connections, in nanoseconds. */
+        public long getTotalOpenNanos() {
+            return totalOpenNanos.get();
+        }
+
+        /** @return The longest time opening and initializing a connection took, in nanoseconds. */
+        public long getMaxOpenNanos() {
+            return maxOpenNanos.get();
+        }
+
+        /** @return The number of open connections, in use or idle. */
+        public int getOpenConnections() {
+            return open;
+        }
+
+        /** @return The number of open connections in the cache. */
+        public int getIdleConnections() {
+            return idle;
+        }
+    }
+}
@@ -0,0 +1,538 @@
+/*--------------------------------------------------------------------------
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *--------------------------------------------------------------------------*/
+package org.sqlite.javax;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.DataSource;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+
+/**
+ * A pool of connections to one database in WAL mode, keeping a single writer connection and up to
+ * a given number of read-only connections. Under WAL, readers never block the writer or each
+ * other, while writers always serialize on the database's write lock; so the pool queues writers
+ * in Java rather than letting them spin on {@code SQLITE_BUSY}.
+ *
+ * <p>A connection from {@link #getConnection()} takes a physical connection on its first use:
+ * the writer, or a reader if {@link Connection#setReadOnly(boolean)} was called with true before
+ * that. {@link #getConnection(String)} picks by the statement that is about to run. Closing the
+ * connection rolls back an unfinished transaction and returns the physical connection to the
+ * pool.
+ *
+ * <p>The writer stays open for the life of the pool, which keeps the WAL and its index around
+ * for the readers. Readers idle longer than {@link #setIdleTimeout(Duration)} are closed.
+ *
+ * @see SQLiteConnectionPoolDataSource#createPool(int)
+ */
+public class SQLiteConnectionPool implements DataSource, AutoCloseable {
+    private final String url;
+    private final Slots writer;
+    private final Slots readers;
+
+    private volatile long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+    private volatile long idleTimeoutNanos = TimeUnit.MINUTES.toNanos(10);
+
+    private PrintWriter logger;
+    private int loginTimeout = 1;
+
+    /**
+     * Creates a pool and opens its writer connection, switching the database to WAL mode.
+     *
+     * @param url The URL of the database file, e.g. "jdbc:sqlite:app.db".
+     * @param config The configuration of every connection; readers also get it, made read-only.
+     * @param maxReaders The maximum number of read-only connections.
+     */
+    public SQLiteConnectionPool(String url, SQLiteConfig config, int maxReaders)
+            throws SQLException {
+        if (maxReaders < 1) {
+            throw new IllegalArgumentException("maxReaders must be positive: " + maxReaders);
+        }
+        this.url = url;
+
+        // a configuration keeps the properties it was created from, so copy them
+        Properties writerProperties = new Properties();
+        writerProperties.putAll(config.toProperties());
+        SQLiteConfig writerConfig = new SQLiteConfig(writerProperties);
+        writerConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        this.writer = new Slots(writerConfig, 1);
+
+        // a read-only connection cannot change the journal mode, the writer already did
+        Properties readerProperties = new Properties();
+        readerProperties.putAll(config.toProperties());
+        readerProperties.remove(SQLiteConfig.Pragma.JOURNAL_MODE.pragmaName);
+        SQLiteConfig readerConfig = new SQLiteConfig(readerProperties);
+        readerConfig.setReadOnly(true);
+        this.readers = new Slots(readerConfig, maxReaders);
+
+        writer.release(writer.acquire());
+    }
+
+    /**
+     * @param maxWait How long getting a physical connection may wait before failing with {@link
+     *     SQLTimeoutException}; 30 seconds by default.
+     */
+    public void setMaxWait(Duration maxWait) {
+        maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * @param idleTimeout How long a read-only connection may stay unused in the pool before it is
+     *     closed; 10 minutes by default.
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /** @return The URL of the database. */
+    public String getUrl() {
+        return url;
+    }
+
+    /** @return The waits for the writer connection. */
+    public Stats getWriterStats() {
+        return writer.stats;
+    }
+
+    /** @return The waits for read-only connections. */
+    public Stats getReaderStats() {
+        return readers.stats;
+    }
+
+    /** @return A connection that uses the writer, unless made read-only before its first use. */
+    public Connection getConnection() throws SQLException {
+        return handle(false);
+    }
+
+    /**
+     * The user and password are ignored, as SQLite has no users.
+     *
+     * @see #getConnection()
+     */
+    public Connection getConnection(String username, String password) throws SQLException {
+        return handle(false);
+    }
+
+    /**
+     * Returns a connection for the statement: a read-only connection for a {@code SELECT}, {@code
+     * VALUES} or {@code EXPLAIN}, otherwise the writer. A {@code WITH} may lead into a write and
+     * goes to the writer.
+     *
+     * @param sql The statement that is about to run on the connection.
+     * @return A connection for it.
+     */
+    public Connection getConnection(String sql) throws SQLException {
+        return handle(isReadOnly(sql));
+    }
+
+    /**
+     * Closes the idle connections; the others are closed when they are returned. Waiting for a
+     * connection fails from then on.
+     */
+    public void close() throws SQLException {
+        readers.close();
+        writer.close();
+    }
+
+    /**
+     * @param sql An SQL statement.
+     * @return True if the statement surely does not write, judged by its first keyword.
+     */
+    static boolean isReadOnly(String sql) {
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else {
+                break;
+            }
+        }
+        return startsWithKeyword(sql, i, "select")
+                || startsWithKeyword(sql, i, "values")
+                || startsWithKeyword(sql, i, "explain");
+    }
+
+    private static boolean startsWithKeyword(String sql, int offset, String keyword) {
+        int end = offset + keyword.length();
+        return sql.regionMatches(true, offset, keyword, 0, keyword.length())
+                && (end == sql.length() || !Character.isLetterOrDigit(sql.charAt(end)));
+    }
+
+    private Connection handle(boolean readOnly) {
+        return new Handle(readOnly);
+    }
+
+    /**
+     * A connection from the pool, which takes a physical connection on the first call that needs
+     * one and gives it back on close.
+     */
+    private class Handle extends DelegatingConnection {
+        private boolean readOnly;
+        private Connection bound;
+        private boolean isClosed;
+
+        Handle(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        protected Connection delegate() throws SQLException {
+            if (isClosed) {
+                throw new SQLException("Connection is closed");
+            }
+            if (bound == null) {
+                bound = (readOnly ? readers : writer).acquire().getConnection();
+            }
+            return bound;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!isClosed) {
+                isClosed = true;
+                if (bound != null) {
+                    bound.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return isClosed || (bound != null && bound.isClosed());
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        @Override
+        public void setReadOnly(boolean ro) throws SQLException {
+            if (bound != null && ro != readOnly) {
+                throw new SQLException(
+                        "Cannot change read-only flag after the connection was used");
+            }
+            readOnly = ro;
+        }
+
+        @Override
+        public String toString() {
+            return "SQLiteConnectionPool connection to " + url;
+        }
+    }
+
+    /** The waits of a pool for one kind of connection. */
+    public static final class Stats {
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong waits = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private volatile int open;
+        private volatile int idle;
+
+        private Stats() {}
+
+        private void waited(long nanos, boolean acquired) {
+            if (acquired) {
+                acquisitions.incrementAndGet();
+            } else {
+                timeouts.incrementAndGet();
+            }
+            if (nanos > 0) {
+                waits.incrementAndGet();
+                totalWaitNanos.addAndGet(nanos);
+                maxWaitNanos.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        /** @return How many times a physical connection was handed out. */
+        public long getAcquisitions() {
+            return acquisitions.get();
+        }
+
+        /** @return How many of them, or of the timeouts, had to wait for another thread. */
+        public long getWaits() {
+            return waits.get();
+        }
+
+        /** @return How many waits gave up after the maximum wait. */
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        /** @return The total time spent waiting, in nanoseconds. */
+        public long getTotalWaitNanos() {
+            return totalWaitNanos.get();
+        }
+
+        /** @return The longest wait, in nanoseconds. */
+        public long getMaxWaitNanos() {
+            return maxWaitNanos.get();
+        }
+
+        /** @return The number of open physical connections, in use or idle. */
+        public int getOpenConnections() {
+            return open;
+        }
+
+        /** @return The number of open physical connections in the pool. */
+        public int getIdleConnections() {
+            return idle;
+        }
+    }
+
+    /** The physical connections of one kind, opened with the same configuration. */
+    private class Slots implements ConnectionEventListener {
+        private final SQLiteConfig config;
+        private final int max;
+        private final Stats stats = new Stats();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        // the most recently returned first, so the least used ones age out at the end
+        private final ArrayDeque<SQLitePooledConnection> idle = new ArrayDeque<>();
+        private final ArrayDeque<Long> idleSince = new ArrayDeque<>();
+        private int open;
+        private boolean closed;
+
+        Slots(SQLiteConfig config, int max) {
+            this.config = config;
+            this.max = max;
+        }
+
+        SQLitePooledConnection acquire() throws SQLException {
+            long start = System.nanoTime();
+            long remaining = maxWaitNanos;
+            boolean waited = false;
+            List<SQLitePooledConnection> discarded = new ArrayList<>();
+            lock.lock();
+            try {
+                evictIdle(start, discarded);
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("The connection pool is closed");
+                    }
+                    SQLitePooledConnection conn = idle.pollFirst();
+                    if (conn != null) {
+                        idleSince.pollFirst();
+                        if (isValid(conn)) {
+                            update();
+                            stats.waited(waited ? System.nanoTime() - start : 0, true);
+                            return conn;
+                        }
+                        discard(conn, discarded);
+                        continue;
+                    }
+                    if (open < max) {
+                        open++;
+                        update();
+                        break;
+                    }
+                    if (remaining <= 0) {
+                        stats.waited(System.nanoTime() - start, false);
+                        throw new SQLTimeoutException(
+                                "Timed out waiting for a "
+                                        + (this == writer ? "writer" : "read-only")
+                                        + " connection to "
+                                        + url);
+                    }
+                    waited = true;
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection", e);
+            } finally {
+                lock.unlock();
+                closeDiscarded(discarded);
+            }
+
+            // opening runs outside the lock so that it does not hold up returned connections
+            SQLitePooledConnection conn;
+            try {
+                conn = new SQLitePooledConnection((SQLiteConnection) config.createConnection(url));
+            } catch (Throwable e) {
+                // also on errors, or the slot stays taken for good
+                lock.lock();
+                try {
+                    open--;
+                    update();
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+            conn.addConnectionEventListener(this);
+            stats.waited(waited ? System.nanoTime() - start : 0, true);
+            return conn;
+        }
+
+        void release(SQLitePooledConnection conn) {
+            long now = System.nanoTime();
+            List<SQLitePooledConnection> discarded = new ArrayList<>();
+            lock.lock();
+            try {
+                if (closed || !isValid(conn)) {
+                    discard(conn, discarded);
+                } else {
+                    idle.addFirst(conn);
+                    idleSince.addFirst(now);
+                }
+                evictIdle(now, discarded);
+                update();
+                available.signal();
+            } finally {
+                lock.unlock();
+                closeDiscarded(discarded);
+            }
+        }
+
+        /** Discards the connections idle for too long; the caller holds the lock. */
+        private void evictIdle(long now, List<SQLitePooledConnection> discarded) {
+            // the writer stays open for the readers
+            if (this == writer) {
+                return;
+            }
+            while (!idleSince.isEmpty() && now - idleSince.peekLast() >= idleTimeoutNanos) {
+                idleSince.pollLast();
+                discard(idle.pollLast(), discarded);
+            }
+        }
+
+        void close() {
+            List<SQLitePooledConnection> discarded = new ArrayList<>();
+            lock.lock();
+            try {
+                closed = true;
+                while (!idle.isEmpty()) {
+                    idleSince.pollFirst();
+                    discard(idle.pollFirst(), discarded);
+                }
+                update();
+                available.signalAll();
+            } finally {
+                lock.unlock();
+                closeDiscarded(discarded);
+            }
+        }
+
+        public void connectionClosed(ConnectionEvent event) {
+            release((SQLitePooledConnection) event.getSource());
+        }
+
+        public void connectionErrorOccurred(ConnectionEvent event) {
+            List<SQLitePooledConnection> discarded = new ArrayList<>(1);
+            lock.lock();
+            try {
+                discard((SQLitePooledConnection) event.getSource(), discarded);
+                update();
+                available.signal();
+            } finally {
+                lock.unlock();
+                closeDiscarded(discarded);
+            }
+        }
+
+        /** Checks a connection without a round trip to SQLite. */
+        private boolean isValid(SQLitePooledConnection conn) {
+            SQLiteConnection physical = conn.getPhysicalConn();
+            return physical != null && !physical.getDatabase().isClosed();
+        }
+
+        /**
+         * Gives up the slot of a connection, and adds it to the connections to close once the
+         * lock is released; the caller holds the lock.
+         */
+        private void discard(SQLitePooledConnection conn, List<SQLitePooledConnection> discarded) {
+            if (conn.getPhysicalConn() == null || discarded.contains(conn)) {
+                return;
+            }
+            open--;
+            discarded.add(conn);
+        }
+
+        private void closeDiscarded(List<SQLitePooledConnection> discarded) {
+            for (SQLitePooledConnection conn : discarded) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    // it is gone either way
+                }
+            }
+        }
+
+        private void update() {
+            stats.open = open;
+            stats.idle = idle.size();
+        }
+    }
+
+    /** @see javax.sql.DataSource#getLogWriter() */
+    public PrintWriter getLogWriter() throws SQLException {
+        return logger;
+    }
+
+    /** @see javax.sql.DataSource#setLogWriter(java.io.PrintWriter) */
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logger = out;
+    }
+
+    /** @see javax.sql.DataSource#getLoginTimeout() */
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    /** @see javax.sql.DataSource#setLoginTimeout(int) */
+    public void setLoginTimeout(int seconds) throws SQLException {
+        loginTimeout = seconds;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return (T) this;
+    }
+}
@@ -47,4 +47,16 @@ public class SQLiteConnectionPoolDataSource extends SQLiteDataSource
     public PooledConnection getPooledConnection(String user, String password) throws SQLException {
         return new SQLitePooledConnection(getConnection(user, password));
     }
+
+    /**
+     * Creates a pool of one writer and up to the given number of read-only connections to the
+     * database of this data source, which is switched to WAL mode.
+     *
+     * @param maxReaders The maximum number of read-only connections.
+     * @return The pool; close it to close its connections.
+     * @see SQLiteConnectionPool
+     */
+    public SQLiteConnectionPool createPool(int maxReaders) throws SQLException {
+        return new SQLiteConnectionPool(getUrl(), getConfig(), maxReaders);
+    }
 }
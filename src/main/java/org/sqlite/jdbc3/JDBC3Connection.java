@@ -14,6 +14,7 @@ import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.sqlite.SQLiteConnection;
 import org.sqlite.SQLiteOpenMode;
+import org.sqlite.SQLiteOpenPlan;
 
 public abstract class JDBC3Connection extends SQLiteConnection {
     private final AtomicInteger savePoint = new AtomicInteger(0);
@@ -23,6 +24,10 @@ public abstract class JDBC3Connection extends SQLiteConnection {
         super(url, fileName, prop);
     }
 
+    protected JDBC3Connection(SQLiteOpenPlan plan) throws SQLException {
+        super(plan);
+    }
+
     /** @see java.sql.Connection#getCatalog() */
     public String getCatalog() throws SQLException {
         checkOpen();
@@ -33,7 +33,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
     public void clearParameters() throws SQLException {
         checkOpen();
         conn.getDatabase().clear_bindings(pointer);
-        if (batch != null) for (int i = batchPos; i < batchPos + paramCount; i++) batch[i] = null;
+        parameters.clearRow();
     }
 
     /** @see java.sql.PreparedStatement#execute() */
@@ -44,7 +44,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
 
         boolean success = false;
         try {
-            resultsWaiting = conn.getDatabase().execute(this, batch);
+            resultsWaiting = conn.getDatabase().execute(this, parameters);
             success = true;
             return columnCount != 0;
         } finally {
@@ -65,7 +65,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
 
         boolean success = false;
         try {
-            resultsWaiting = conn.getDatabase().execute(this, batch);
+            resultsWaiting = conn.getDatabase().execute(this, parameters);
             success = true;
         } finally {
             if (!success && pointer != 0) conn.getDatabase().reset(pointer);
@@ -84,23 +84,14 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         rs.close();
         conn.getDatabase().reset(pointer);
 
-        return conn.getDatabase().executeUpdate(this, batch);
+        return conn.getDatabase().executeUpdate(this, parameters);
     }
 
     /** @see java.sql.PreparedStatement#addBatch() */
     public void addBatch() throws SQLException {
         checkOpen();
-        batchPos += paramCount;
+        parameters.addRow();
         batchQueryCount++;
-        if (batch == null) {
-            batch = new Object[paramCount];
-        }
-        if (batchPos + paramCount > batch.length) {
-            Object[] nb = new Object[batch.length * 2];
-            System.arraycopy(batch, 0, nb, 0, batch.length);
-            batch = nb;
-        }
-        System.arraycopy(batch, batchPos - paramCount, batch, batchPos, paramCount);
     }
 
     // ParameterMetaData FUNCTIONS //////////////////////////////////
@@ -253,22 +244,22 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
 
     /** @see java.sql.PreparedStatement#setDouble(int, double) */
     public void setDouble(int pos, double value) throws SQLException {
-        batch(pos, new Double(value));
+        batch(pos, value);
     }
 
     /** @see java.sql.PreparedStatement#setFloat(int, float) */
     public void setFloat(int pos, float value) throws SQLException {
-        batch(pos, new Float(value));
+        batch(pos, (double) value);
     }
 
     /** @see java.sql.PreparedStatement#setInt(int, int) */
     public void setInt(int pos, int value) throws SQLException {
-        batch(pos, new Integer(value));
+        batch(pos, value);
     }
 
     /** @see java.sql.PreparedStatement#setLong(int, long) */
     public void setLong(int pos, long value) throws SQLException {
-        batch(pos, new Long(value));
+        batch(pos, value);
     }
 
     /** @see java.sql.PreparedStatement#setNull(int, int) */
@@ -292,7 +283,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         } else if (value instanceof Integer) {
             batch(pos, value);
         } else if (value instanceof Short) {
-            batch(pos, new Integer(((Short) value).intValue()));
+            batch(pos, value);
         } else if (value instanceof Float) {
             batch(pos, value);
         } else if (value instanceof Double) {
@@ -22,6 +22,7 @@ import java.util.regex.Pattern;
 import org.sqlite.core.CoreResultSet;
 import org.sqlite.core.CoreStatement;
 import org.sqlite.core.DB;
+import org.sqlite.core.RowValues;
 import org.sqlite.date.FastDateFormat;
 
 public abstract class JDBC3ResultSet extends CoreResultSet {
@@ -69,7 +70,13 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
         }
 
         // do the real work
-        int statusCode = getDatabase().step(stmt.pointer);
+        int statusCode;
+        if (isFetching()) {
+            statusCode = nextFetched();
+        } else {
+            rowChanged();
+            statusCode = getDatabase().step(stmt.pointer);
+        }
         switch (statusCode) {
             case SQLITE_DONE:
                 close(); // agressive closing to avoid writer starvation
@@ -146,7 +153,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#wasNull() */
     public boolean wasNull() throws SQLException {
-        return getDatabase().column_type(stmt.pointer, markCol(lastCol)) == SQLITE_NULL;
+        return currentRow().column_type(markCol(lastCol)) == SQLITE_NULL;
     }
 
     // DATA ACCESS FUNCTIONS ////////////////////////////////////////
@@ -221,7 +228,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getBytes(int) */
     public byte[] getBytes(int col) throws SQLException {
-        return getDatabase().column_blob(stmt.pointer, markCol(col));
+        return currentRow().column_blob(markCol(col));
     }
 
     /** @see java.sql.ResultSet#getBytes(java.lang.String) */
@@ -242,8 +249,8 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getDate(int) */
     public Date getDate(int col) throws SQLException {
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
+        RowValues values = currentRow();
+        switch (values.column_type(markCol(col))) {
             case SQLITE_NULL:
                 return null;
 
@@ -252,7 +259,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
                     return new Date(
                             getConnectionConfig()
                                     .getDateFormat()
-                                    .parse(db.column_text(stmt.pointer, markCol(col)))
+                                    .parse(values.column_text(markCol(col)))
                                     .getTime());
                 } catch (Exception e) {
                     SQLException error = new SQLException("Error parsing date");
@@ -263,12 +270,12 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
             case SQLITE_FLOAT:
                 return new Date(
-                        julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)))
+                        julianDateToCalendar(values.column_double(markCol(col)))
                                 .getTimeInMillis());
 
             default: // SQLITE_INTEGER:
                 return new Date(
-                        db.column_long(stmt.pointer, markCol(col))
+                        values.column_long(markCol(col))
                                 * getConnectionConfig().getDateMultiplier());
         }
     }
@@ -277,8 +284,8 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
     public Date getDate(int col, Calendar cal) throws SQLException {
         checkCalendar(cal);
 
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
+        RowValues values = currentRow();
+        switch (values.column_type(markCol(col))) {
             case SQLITE_NULL:
                 return null;
 
@@ -289,7 +296,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
                                     getConnectionConfig().getDateStringFormat(), cal.getTimeZone());
 
                     return new java.sql.Date(
-                            dateFormat.parse(db.column_text(stmt.pointer, markCol(col))).getTime());
+                            dateFormat.parse(values.column_text(markCol(col))).getTime());
                 } catch (Exception e) {
                     SQLException error = new SQLException("Error parsing time stamp");
                     error.initCause(e);
@@ -299,12 +306,12 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
             case SQLITE_FLOAT:
                 return new Date(
-                        julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)), cal)
+                        julianDateToCalendar(values.column_double(markCol(col)), cal)
                                 .getTimeInMillis());
 
             default: // SQLITE_INTEGER:
                 cal.setTimeInMillis(
-                        db.column_long(stmt.pointer, markCol(col))
+                        values.column_long(markCol(col))
                                 * getConnectionConfig().getDateMultiplier());
                 return new Date(cal.getTime().getTime());
         }
@@ -322,11 +329,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getDouble(int) */
     public double getDouble(int col) throws SQLException {
-        DB db = getDatabase();
-        if (db.column_type(stmt.pointer, markCol(col)) == SQLITE_NULL) {
+        RowValues values = currentRow();
+        if (values.column_type(markCol(col)) == SQLITE_NULL) {
             return 0;
         }
-        return db.column_double(stmt.pointer, markCol(col));
+        return values.column_double(markCol(col));
     }
 
     /** @see java.sql.ResultSet#getDouble(java.lang.String) */
@@ -336,11 +343,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getFloat(int) */
     public float getFloat(int col) throws SQLException {
-        DB db = getDatabase();
-        if (db.column_type(stmt.pointer, markCol(col)) == SQLITE_NULL) {
+        RowValues values = currentRow();
+        if (values.column_type(markCol(col)) == SQLITE_NULL) {
             return 0;
         }
-        return (float) db.column_double(stmt.pointer, markCol(col));
+        return (float) values.column_double(markCol(col));
     }
 
     /** @see java.sql.ResultSet#getFloat(java.lang.String) */
@@ -350,8 +357,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getInt(int) */
     public int getInt(int col) throws SQLException {
-        DB db = getDatabase();
-        return db.column_int(stmt.pointer, markCol(col));
+        return currentRow().column_int(markCol(col));
     }
 
     /** @see java.sql.ResultSet#getInt(java.lang.String) */
@@ -361,8 +367,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getLong(int) */
     public long getLong(int col) throws SQLException {
-        DB db = getDatabase();
-        return db.column_long(stmt.pointer, markCol(col));
+        return currentRow().column_long(markCol(col));
     }
 
     /** @see java.sql.ResultSet#getLong(java.lang.String) */
@@ -382,8 +387,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getString(int) */
     public String getString(int col) throws SQLException {
-        DB db = getDatabase();
-        return db.column_text(stmt.pointer, markCol(col));
+        return currentRow().column_text(markCol(col));
     }
 
     /** @see java.sql.ResultSet#getString(java.lang.String) */
@@ -393,8 +397,8 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getTime(int) */
     public Time getTime(int col) throws SQLException {
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
+        RowValues values = currentRow();
+        switch (values.column_type(markCol(col))) {
             case SQLITE_NULL:
                 return null;
 
@@ -403,7 +407,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
                     return new Time(
                             getConnectionConfig()
                                     .getDateFormat()
-                                    .parse(db.column_text(stmt.pointer, markCol(col)))
+                                    .parse(values.column_text(markCol(col)))
                                     .getTime());
                 } catch (Exception e) {
                     SQLException error = new SQLException("Error parsing time");
@@ -414,12 +418,12 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
             case SQLITE_FLOAT:
                 return new Time(
-                        julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)))
+                        julianDateToCalendar(values.column_double(markCol(col)))
                                 .getTimeInMillis());
 
             default: // SQLITE_INTEGER
                 return new Time(
-                        db.column_long(stmt.pointer, markCol(col))
+                        values.column_long(markCol(col))
                                 * getConnectionConfig().getDateMultiplier());
         }
     }
@@ -427,8 +431,8 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
     /** @see java.sql.ResultSet#getTime(int, java.util.Calendar) */
     public Time getTime(int col, Calendar cal) throws SQLException {
         checkCalendar(cal);
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
+        RowValues values = currentRow();
+        switch (values.column_type(markCol(col))) {
             case SQLITE_NULL:
                 return null;
 
@@ -439,7 +443,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
                                     getConnectionConfig().getDateStringFormat(), cal.getTimeZone());
 
                     return new Time(
-                            dateFormat.parse(db.column_text(stmt.pointer, markCol(col))).getTime());
+                            dateFormat.parse(values.column_text(markCol(col))).getTime());
                 } catch (Exception e) {
                     SQLException error = new SQLException("Error parsing time");
                     error.initCause(e);
@@ -449,12 +453,12 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
             case SQLITE_FLOAT:
                 return new Time(
-                        julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)), cal)
+                        julianDateToCalendar(values.column_double(markCol(col)), cal)
                                 .getTimeInMillis());
 
             default: // SQLITE_INTEGER
                 cal.setTimeInMillis(
-                        db.column_long(stmt.pointer, markCol(col))
+                        values.column_long(markCol(col))
                                 * getConnectionConfig().getDateMultiplier());
                 return new Time(cal.getTime().getTime());
         }
@@ -472,8 +476,8 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getTimestamp(int) */
     public Timestamp getTimestamp(int col) throws SQLException {
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
+        RowValues values = currentRow();
+        switch (values.column_type(markCol(col))) {
             case SQLITE_NULL:
                 return null;
 
@@ -482,7 +486,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
                     return new Timestamp(
                             getConnectionConfig()
                                     .getDateFormat()
-                                    .parse(db.column_text(stmt.pointer, markCol(col)))
+                                    .parse(values.column_text(markCol(col)))
                                     .getTime());
                 } catch (Exception e) {
                     SQLException error = new SQLException("Error parsing time stamp");
@@ -493,12 +497,12 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
             case SQLITE_FLOAT:
                 return new Timestamp(
-                        julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)))
+                        julianDateToCalendar(values.column_double(markCol(col)))
                                 .getTimeInMillis());
 
             default: // SQLITE_INTEGER:
                 return new Timestamp(
-                        db.column_long(stmt.pointer, markCol(col))
+                        values.column_long(markCol(col))
                                 * getConnectionConfig().getDateMultiplier());
         }
     }
@@ -509,8 +513,8 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
             return getTimestamp(col);
         }
 
-        DB db = getDatabase();
-        switch (db.column_type(stmt.pointer, markCol(col))) {
+        RowValues values = currentRow();
+        switch (values.column_type(markCol(col))) {
             case SQLITE_NULL:
                 return null;
 
@@ -521,7 +525,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
                                     getConnectionConfig().getDateStringFormat(), cal.getTimeZone());
 
                     return new Timestamp(
-                            dateFormat.parse(db.column_text(stmt.pointer, markCol(col))).getTime());
+                            dateFormat.parse(values.column_text(markCol(col))).getTime());
                 } catch (Exception e) {
                     SQLException error = new SQLException("Error parsing time stamp");
                     error.initCause(e);
@@ -531,12 +535,12 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
             case SQLITE_FLOAT:
                 return new Timestamp(
-                        julianDateToCalendar(db.column_double(stmt.pointer, markCol(col)), cal)
+                        julianDateToCalendar(values.column_double(markCol(col)), cal)
                                 .getTimeInMillis());
 
             default: // SQLITE_INTEGER
                 cal.setTimeInMillis(
-                        db.column_long(stmt.pointer, markCol(col))
+                        values.column_long(markCol(col))
                                 * getConnectionConfig().getDateMultiplier());
 
                 return new Timestamp(cal.getTime().getTime());
@@ -555,7 +559,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getObject(int) */
     public Object getObject(int col) throws SQLException {
-        switch (getDatabase().column_type(stmt.pointer, markCol(col))) {
+        switch (currentRow().column_type(markCol(col))) {
             case SQLITE_INTEGER:
                 long val = getLong(col);
                 if (val > Integer.MAX_VALUE || val < Integer.MIN_VALUE) {
@@ -86,6 +86,7 @@ public abstract class JDBC3Statement extends CoreStatement {
         } else {
             try {
                 changes = db.total_changes();
+                db.schemaMayChange(sql);
 
                 // directly invokes the exec API to support multiple SQL statements
                 int statusCode = db._exec(sql);
@@ -161,23 +162,23 @@ public abstract class JDBC3Statement extends CoreStatement {
 
         int[] changes = new int[batchPos];
         DB db = conn.getDatabase();
-        synchronized (db) {
-            try {
-                for (int i = 0; i < changes.length; i++) {
-                    try {
-                        this.sql = (String) batch[i];
-                        db.prepare(this);
-                        changes[i] = db.executeUpdate(this, null);
-                    } catch (SQLException e) {
-                        throw new BatchUpdateException(
-                                "batch entry " + i + ": " + e.getMessage(), changes);
-                    } finally {
-                        db.finalize(this);
-                    }
+        db.getLock().lock();
+        try {
+            for (int i = 0; i < changes.length; i++) {
+                try {
+                    this.sql = (String) batch[i];
+                    db.prepare(this);
+                    changes[i] = db.executeUpdate(this, (Object[]) null);
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(
+                            "batch entry " + i + ": " + e.getMessage(), changes);
+                } finally {
+                    db.finalize(this);
                 }
-            } finally {
-                clearBatch();
             }
+        } finally {
+            clearBatch();
+            db.getLock().unlock();
         }
 
         return changes;
@@ -11,6 +11,7 @@ import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLXML;
 import java.sql.Statement;
 import java.util.Properties;
+import org.sqlite.SQLiteOpenPlan;
 import org.sqlite.jdbc3.JDBC3Connection;
 
 public class JDBC4Connection extends JDBC3Connection {
@@ -19,6 +20,10 @@ public class JDBC4Connection extends JDBC3Connection {
         super(url, fileName, prop);
     }
 
+    public JDBC4Connection(SQLiteOpenPlan plan) throws SQLException {
+        super(plan);
+    }
+
     public Statement createStatement(int rst, int rsc, int rsh) throws SQLException {
         checkOpen();
         checkCursor(rst, rsc, rsh);
@@ -10,14 +10,29 @@
 package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -83,4 +98,159 @@ public class BackupTest {
         // System.err.println("backup done.");
 
     }
+
+    @Test
+    public void pacedBackup() throws Exception {
+        SQLiteConnection conn = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("create table sample(id integer primary key, data blob)");
+        stmt.executeUpdate(
+                "with recursive n(i) as (select 1 union all select i + 1 from n where i < 2000)"
+                        + " insert into sample select i, randomblob(1000) from n");
+
+        File tmpFile = File.createTempFile("backup-paced", ".sqlite");
+        tmpFile.deleteOnExit();
+        final List<int[]> progress = new CopyOnWriteArrayList<int[]>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Void> done =
+                    conn.backup(
+                            "main",
+                            tmpFile.getAbsolutePath(),
+                            20,
+                            Duration.ofMillis(1),
+                            (remaining, pageCount) ->
+                                    progress.add(new int[] {remaining, pageCount}),
+                            executor);
+            // the connection keeps serving statements, and its writes end up in the copy
+            for (int i = 0; i < 20; i++) {
+                stmt.executeUpdate("insert into sample(data) values (randomblob(10))");
+            }
+            done.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        stmt.close();
+        conn.close();
+
+        assertTrue(progress.size() > 10, "steps: " + progress.size());
+        int[] last = progress.get(progress.size() - 1);
+        assertEquals(0, last[0]);
+        assertTrue(last[1] > 400, "pages: " + last[1]);
+
+        Connection copy = DriverManager.getConnection("jdbc:sqlite:" + tmpFile.getAbsolutePath());
+        ResultSet rs = copy.createStatement().executeQuery("select count(*) from sample");
+        assertTrue(rs.next());
+        assertEquals(2020, rs.getInt(1));
+        rs.close();
+        copy.close();
+    }
+
+    @Test
+    public void cancelBackup() throws Exception {
+        SQLiteConnection conn = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("create table sample(id integer primary key, data blob)");
+        stmt.executeUpdate(
+                "with recursive n(i) as (select 1 union all select i + 1 from n where i < 500)"
+                        + " insert into sample select i, randomblob(1000) from n");
+
+        File tmpFile = File.createTempFile("backup-cancel", ".sqlite");
+        tmpFile.deleteOnExit();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger steps = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Void> done =
+                    conn.backup(
+                            "main",
+                            tmpFile.getAbsolutePath(),
+                            1,
+                            Duration.ofMillis(20),
+                            (remaining, pageCount) -> {
+                                steps.incrementAndGet();
+                                started.countDown();
+                            },
+                            executor);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(done.cancel(false));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(steps.get() < 100, "steps: " + steps.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        // the backup was finished, or closing the connection would fail
+        stmt.close();
+        conn.close();
+    }
+
+    @Test
+    public void pacedBackupOfConfinedConnection() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setThreadConfined(true);
+        try (SQLiteConnection conn = (SQLiteConnection) config.createConnection("jdbc:sqlite:")) {
+            File tmpFile = File.createTempFile("backup-confined", ".sqlite");
+            tmpFile.deleteOnExit();
+            // the steps would run on the executor, next to the unlocked calls of the owner
+            assertThrows(
+                    SQLFeatureNotSupportedException.class,
+                    () ->
+                            conn.backup(
+                                    "main",
+                                    tmpFile.getAbsolutePath(),
+                                    20,
+                                    Duration.ZERO,
+                                    null,
+                                    Runnable::run));
+            // a backup on the owner thread is fine
+            assertEquals(0, conn.getDatabase().backup("main", tmpFile.getAbsolutePath(), null));
+        }
+    }
+
+    @Test
+    public void serializeAndDeserialize() throws Exception {
+        SQLiteConnection source = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        Statement stmt = source.createStatement();
+        stmt.executeUpdate("create table sample(id integer primary key, name)");
+        stmt.executeUpdate("insert into sample values(1, 'leo'), (2, 'yui')");
+        ByteBuffer image = source.serialize("main");
+        stmt.close();
+        source.close();
+
+        // a heap image is copied, and the fork can be written to
+        SQLiteConnection fork = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        fork.deserialize("main", image);
+        stmt = fork.createStatement();
+        stmt.executeUpdate("insert into sample values(3, 'tom')");
+        ResultSet rs = stmt.executeQuery("select count(*) from sample");
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        rs.close();
+        stmt.close();
+        fork.close();
+
+        // a read-only mapped file is used in place
+        File tmpFile = File.createTempFile("serialized", ".sqlite");
+        tmpFile.deleteOnExit();
+        try (FileChannel file =
+                FileChannel.open(
+                        tmpFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            file.write(image.duplicate());
+            SQLiteConnection mapped =
+                    (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+            mapped.deserialize("main", file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+            stmt = mapped.createStatement();
+            rs = stmt.executeQuery("select name from sample where id = 2");
+            assertTrue(rs.next());
+            assertEquals("yui", rs.getString(1));
+            rs.close();
+            assertThrows(
+                    SQLException.class,
+                    () -> mapped.createStatement().executeUpdate("delete from sample"));
+            stmt.close();
+            mapped.close();
+        }
+    }
 }
+
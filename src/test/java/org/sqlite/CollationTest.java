@@ -6,12 +6,16 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -70,6 +74,54 @@ public class CollationTest {
                 received.stream().distinct().sorted().toArray());
     }
 
+    @Test
+    public void utf8Collations() throws SQLException {
+        Collation.create(conn, "ANOCASE", Utf8Collations.ASCII_NOCASE);
+        Collation.create(conn, "UNOCASE", Utf8Collations.UNICODE_NOCASE);
+        Collation.create(conn, "NATSORT", Utf8Collations.NATURAL);
+        Collation.create(
+                conn, "LOCALE", Utf8Collations.collator(Collator.getInstance(Locale.FRENCH), 16));
+        Collation.create(conn, "BYLENGTH", (a, b) -> Long.compare(a.byteSize(), b.byteSize()));
+
+        assertOrder("ANOCASE", "", "abcdefgh1", "ABCDEFGH2", "abcdefgh3", "Z");
+        assertOrder("UNOCASE", "", "apple", "\u00c9clair", "\u00e9CLAIRS", "\u00d6l", "\u0416");
+        assertOrder(
+                "NATSORT", "file1", "file2", "file9", "file010", "file10", "file10b", "file100");
+        assertOrder("LOCALE", "cote", "c\u00f4te", "cot\u00e9", "c\u00f4t\u00e9");
+        assertOrder("BYLENGTH", "x", "\u00e9", "\u20ac", "\ud83d\ude00");
+
+        ResultSet rs = stat.executeQuery("select 'stra\u00dfe' = 'STRA\u00dfE' collate UNOCASE,"
+                + " '\u00e9t\u00e9' = '\u00c9T\u00c9' collate UNOCASE, 'a' = 'A' collate ANOCASE,"
+                + " '\u00e9' = '\u00c9' collate ANOCASE;");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertEquals(1, rs.getInt(2));
+        assertEquals(1, rs.getInt(3));
+        assertEquals(0, rs.getInt(4));
+        rs.close();
+    }
+
+    /** Inserts the values shuffled and checks that the collation sorts them back. */
+    private void assertOrder(String collation, String... sorted) throws SQLException {
+        stat.executeUpdate("drop table if exists t; create table t (c1);");
+        PreparedStatement insert = conn.prepareStatement("insert into t values (?);");
+        ArrayList<String> shuffled = new ArrayList<>(Arrays.asList(sorted));
+        Collections.shuffle(shuffled, new Random(42));
+        for (String value : shuffled) {
+            insert.setString(1, value);
+            insert.executeUpdate();
+        }
+        insert.close();
+
+        ArrayList<String> actual = new ArrayList<>();
+        ResultSet rs = stat.executeQuery("select c1 from t order by c1 collate " + collation + ";");
+        while (rs.next()) {
+            actual.add(rs.getString(1));
+        }
+        rs.close();
+        assertEquals(Arrays.asList(sorted), actual, collation);
+    }
+
     @Disabled
     @Test
     public void unicodeCollation() throws SQLException {
@@ -21,10 +21,13 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -266,6 +269,84 @@ public class ConnectionTest {
         }
     }
 
+    @Test
+    public void waitersParkOnConnectionLock() throws Exception {
+        final Connection conn = DriverManager.getConnection("jdbc:sqlite:");
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Function.create(
+                conn,
+                "hold",
+                new Function() {
+                    @Override
+                    public void xFunc() throws SQLException {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new SQLException(e);
+                        }
+                        result(1);
+                    }
+                });
+
+        ExecutorService holder = Executors.newSingleThreadExecutor();
+        try {
+            // the statement holds the connection lock while hold() blocks inside sqlite3_step
+            Future<Integer> held =
+                    holder.submit(
+                            () -> {
+                                ResultSet rs = conn.createStatement().executeQuery("select hold()");
+                                return rs.next() ? rs.getInt(1) : -1;
+                            });
+            entered.await();
+
+            final int[] waited = new int[1];
+            Thread waiter =
+                    newVirtualOrPlatformThread(
+                            () -> {
+                                try (Statement stat = conn.createStatement()) {
+                                    ResultSet rs = stat.executeQuery("select 2");
+                                    waited[0] = rs.next() ? rs.getInt(1) : -1;
+                                } catch (SQLException e) {
+                                    waited[0] = -2;
+                                }
+                            });
+            waiter.start();
+
+            ReentrantLock lock = ((SQLiteConnection) conn).getDatabase().getLock();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!lock.hasQueuedThread(waiter) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(lock.hasQueuedThread(waiter), "waiter queued on the connection lock");
+            // parked, not blocked on a monitor: a virtual thread would not pin its carrier
+            assertEquals(Thread.State.WAITING, waiter.getState());
+
+            release.countDown();
+            assertEquals(1, held.get().intValue());
+            waiter.join(10000);
+            assertEquals(2, waited[0]);
+        } finally {
+            release.countDown();
+            holder.shutdown();
+            conn.close();
+        }
+    }
+
+    /** @return A virtual thread on JDK 21 and later, a platform thread before. */
+    private static Thread newVirtualOrPlatformThread(Runnable task) throws Exception {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (Thread)
+                    Class.forName("java.lang.Thread$Builder")
+                            .getMethod("unstarted", Runnable.class)
+                            .invoke(builder, task);
+        } catch (NoSuchMethodException e) {
+            return new Thread(task);
+        }
+    }
+
     public static File copyToTemp(String fileName) throws IOException {
         InputStream in = ConnectionTest.class.getResourceAsStream(fileName);
         File dir = new File("target");
@@ -370,6 +451,73 @@ public class ConnectionTest {
         stat.close();
     }
 
+    @Test
+    public void threadConfined() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setThreadConfined(true);
+        config.setCheckThreadConfinement(true);
+        assertTrue(
+                (config.getOpenModeFlags() & SQLiteOpenMode.NOMUTEX.flag) != 0,
+                "opened without SQLite mutexes");
+
+        try (Connection conn = config.createConnection("jdbc:sqlite:");
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table test (id integer, v text)");
+            PreparedStatement prep = conn.prepareStatement("insert into test values (?, ?)");
+            for (int i = 0; i < 3; i++) {
+                prep.setInt(1, i);
+                prep.setString(2, "v" + i);
+                prep.addBatch();
+            }
+            prep.executeBatch();
+            prep.close();
+
+            ResultSet rs = stat.executeQuery("select count(*), max(v) from test");
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+            assertEquals("v2", rs.getString(2));
+            rs.close();
+
+            // hooks resolve against the class that declares them
+            SQLiteConnection sqlite = conn.unwrap(SQLiteConnection.class);
+            AtomicInteger updates = new AtomicInteger();
+            AtomicInteger commits = new AtomicInteger();
+            sqlite.addUpdateListener((type, database, table, rowId) -> updates.incrementAndGet());
+            sqlite.addCommitListener(
+                    new SQLiteCommitListener() {
+                        @Override
+                        public void onCommit() {
+                            commits.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onRollback() {}
+                    });
+            stat.executeUpdate("insert into test values (3, 'v3')");
+            assertEquals(1, updates.get());
+            assertEquals(1, commits.get());
+
+            // the check rejects any other thread
+            PreparedStatement query = conn.prepareStatement("select v from test where id = ?");
+            query.setInt(1, 1);
+            ExecutorService other = Executors.newSingleThreadExecutor();
+            try {
+                Future<?> use = other.submit(() -> query.executeQuery().next());
+                ExecutionException e = assertThrows(ExecutionException.class, use::get);
+                assertTrue(e.getCause() instanceof SQLException);
+                assertTrue(e.getCause().getMessage().contains("confined"));
+            } finally {
+                other.shutdown();
+            }
+            query.close();
+        }
+
+        // the flag survives a round trip through properties
+        SQLiteConfig copy = new SQLiteConfig(config.toProperties());
+        assertTrue(copy.isThreadConfined());
+        assertTrue((copy.getOpenModeFlags() & SQLiteOpenMode.NOMUTEX.flag) != 0);
+    }
+
     @Test
     public void ignoreUnknownParametersInURI() throws Exception {
         Connection conn =
@@ -9,6 +9,10 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -58,4 +62,161 @@ public class FetchSizeTest {
         assertTrue(rs.next());
         assertFalse(rs.next());
     }
+
+    @Test
+    public void fetchedRowsMatchSteppedRows() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (i, r, s, b)");
+        PreparedStatement insert = conn.prepareStatement("insert into t values (?, ?, ?, ?)");
+        double[] reals = {0.1, 1.0, -2.5, 1e15, 1e14, 123456789.123456789, 1.5e-5, 1e300, -0.0};
+        String[] texts = {"12abc", "  -7", "1.5e3x", "\u00e9t\u00e9", "", "9999999999999999999999"};
+        for (int i = 0; i < 23; i++) {
+            insert.setInt(1, i);
+            insert.setDouble(2, reals[i % reals.length]);
+            if (i % 5 == 4) {
+                insert.setNull(3, java.sql.Types.VARCHAR);
+            } else {
+                insert.setString(3, texts[i % texts.length]);
+            }
+            insert.setBytes(4, new byte[] {(byte) i, 0, (byte) 0xff});
+            insert.executeUpdate();
+        }
+        insert.close();
+
+        List<String> stepped = readAll(stat, 0);
+        assertEquals(23, stepped.size());
+        assertEquals(stepped, readAll(stat, 2));
+        assertEquals(stepped, readAll(stat, 5));
+        assertEquals(stepped, readAll(stat, 100));
+        stat.close();
+    }
+
+    @Test
+    public void fetchedConversionsMatchSteppedConversions() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (i integer primary key, v)");
+        String[] values = {
+            "-0.0",
+            "0.1 + 0.2",
+            "123456789012345.67",
+            "0.1234567890123455",
+            "999999999999999.5",
+            "1e15",
+            "1e-5",
+            "4.9e-324",
+            "1.7976931348623157e308",
+            "1e999",
+            "-1e999",
+            "9.2233720368547758e18",
+            "-9.2233720368547758e18",
+            "' 12 '",
+            "'0x10'",
+            "'1e'",
+            "'-'",
+            "'.5'",
+            "'5.'",
+            "'1e400'",
+            "'  -1.5e-3abc'",
+            "'99999999999999999999'",
+            "x'3132'",
+            "x'00ff'",
+            "-9223372036854775808",
+            "9223372036854775807"
+        };
+        for (int i = 0; i < values.length; i++) {
+            stat.executeUpdate("insert into t values (" + i + ", " + values[i] + ")");
+        }
+
+        List<String> stepped = readValues(stat, 0);
+        assertEquals(values.length, stepped.size());
+        assertEquals(stepped, readValues(stat, 4));
+        assertEquals(stepped, readValues(stat, 100));
+        stat.close();
+    }
+
+    @Test
+    public void fetchSizeRespectsMaxRowsAndPersists() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (c)");
+        for (int i = 0; i < 10; i++) {
+            stat.executeUpdate("insert into t values (" + i + ")");
+        }
+        stat.setFetchSize(3);
+        stat.setMaxRows(7);
+
+        for (int run = 0; run < 2; run++) {
+            ResultSet rs = stat.executeQuery("select c from t order by c");
+            assertEquals(3, rs.getFetchSize());
+            for (int i = 0; i < 7; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+            }
+            assertFalse(rs.next());
+            rs.close();
+        }
+        stat.close();
+    }
+
+    @Test
+    public void loweringFetchSizeKeepsBufferedRows() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (c)");
+        for (int i = 0; i < 10; i++) {
+            stat.executeUpdate("insert into t values (" + i + ")");
+        }
+        ResultSet rs = stat.executeQuery("select c from t order by c");
+        rs.setFetchSize(4);
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        rs.setFetchSize(0);
+        for (int i = 2; i < 10; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        stat.close();
+    }
+
+    private static List<String> readAll(Statement stat, int fetchSize) throws SQLException {
+        List<String> values = new ArrayList<>();
+        ResultSet rs = stat.executeQuery("select i, r, s, b from t order by i");
+        rs.setFetchSize(fetchSize);
+        while (rs.next()) {
+            StringBuilder sb = new StringBuilder();
+            for (int col = 1; col <= 4; col++) {
+                sb.append(rs.getString(col)).append('|');
+                sb.append(rs.wasNull()).append('|');
+                sb.append(rs.getLong(col)).append('|');
+                sb.append(rs.getInt(col)).append('|');
+                sb.append(rs.getDouble(col)).append('|');
+                sb.append(Arrays.toString(rs.getBytes(col))).append('|');
+                Object value = rs.getObject(col);
+                sb.append(value instanceof byte[] ? Arrays.toString((byte[]) value) : value);
+                sb.append(';');
+            }
+            values.add(sb.toString());
+        }
+        rs.close();
+        return values;
+    }
+
+    private static List<String> readValues(Statement stat, int fetchSize) throws SQLException {
+        List<String> values = new ArrayList<>();
+        ResultSet rs = stat.executeQuery("select v from t order by i");
+        rs.setFetchSize(fetchSize);
+        while (rs.next()) {
+            // every getter reads the same cell, so each conversion starts from the stored value
+            values.add(
+                    rs.getString(1)
+                            + '|'
+                            + rs.getLong(1)
+                            + '|'
+                            + rs.getDouble(1)
+                            + '|'
+                            + Arrays.toString(rs.getBytes(1)));
+        }
+        rs.close();
+        return values;
+    }
 }
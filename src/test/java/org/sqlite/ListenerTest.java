@@ -1,16 +1,33 @@
 package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.sqlite.core.panama.PreUpdateHook;
+import org.sqlite.core.panama.PreUpdateRow;
 
 public class ListenerTest {
 
@@ -193,6 +210,174 @@ public class ListenerTest {
         connectionOne.removeCommitListener(commitListener);
     }
 
+    @Test
+    public void testPublishChanges() throws Exception {
+        final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SQLiteChangePublisher publisher = connectionOne.publishChanges(executor, 4);
+            publisher.subscribe(
+                    new Flow.Subscriber<SQLiteChangeBatch>() {
+                        @Override
+                        public void onSubscribe(Flow.Subscription subscription) {
+                            subscription.request(Long.MAX_VALUE);
+                        }
+
+                        @Override
+                        public void onNext(SQLiteChangeBatch batch) {
+                            received.add(batch);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            received.add(throwable);
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            received.add("complete");
+                        }
+                    });
+
+            Statement statement = connectionOne.createStatement();
+            connectionOne.setAutoCommit(false);
+            for (int i = 0; i < 3000; i++) {
+                statement.execute("INSERT INTO sample (description) VALUES ('test: " + i + "')");
+            }
+            statement.execute("UPDATE sample SET description = 'first' WHERE id = 1");
+            connectionOne.commit();
+
+            SQLiteChangeBatch batch = (SQLiteChangeBatch) received.poll(5, TimeUnit.SECONDS);
+            assertEquals(3001, batch.size());
+            for (int i = 0; i < 3000; i++) {
+                assertEquals(SQLiteUpdateListener.Type.INSERT, batch.type(i));
+                assertEquals(i + 1, batch.rowId(i));
+            }
+            assertEquals(SQLiteUpdateListener.Type.UPDATE, batch.type(3000));
+            assertEquals("main", batch.database(3000));
+            assertSame(batch.table(0), batch.table(3000));
+            assertEquals("sample", batch.table(0));
+
+            // a rolled back transaction publishes nothing
+            statement.execute("DELETE FROM sample");
+            connectionOne.rollback();
+            connectionOne.setAutoCommit(true);
+            statement.execute("DELETE FROM sample WHERE id = 2");
+
+            batch = (SQLiteChangeBatch) received.poll(5, TimeUnit.SECONDS);
+            assertEquals(1, batch.size());
+            assertEquals(SQLiteUpdateListener.Type.DELETE, batch.type(0));
+            assertEquals(2, batch.rowId(0));
+
+            publisher.close();
+            assertEquals("complete", received.poll(5, TimeUnit.SECONDS));
+
+            statement.execute("DELETE FROM sample WHERE id = 3");
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPublishOnlyWhatCommitted() throws Exception {
+        final BlockingQueue<SQLiteChangeBatch> received =
+                new LinkedBlockingQueue<SQLiteChangeBatch>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SQLiteChangePublisher publisher = connectionOne.publishChanges(executor, 4)) {
+            publisher.subscribe(
+                    new Flow.Subscriber<SQLiteChangeBatch>() {
+                        @Override
+                        public void onSubscribe(Flow.Subscription subscription) {
+                            subscription.request(Long.MAX_VALUE);
+                        }
+
+                        @Override
+                        public void onNext(SQLiteChangeBatch batch) {
+                            received.add(batch);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {}
+
+                        @Override
+                        public void onComplete() {}
+                    });
+
+            Statement statement = connectionOne.createStatement();
+            connectionOne.setAutoCommit(false);
+            statement.execute("INSERT INTO sample (id, description) VALUES (1, 'one')");
+            // the first row is undone when the second one fails
+            assertThrows(
+                    SQLException.class,
+                    () ->
+                            statement.execute(
+                                    "INSERT INTO sample (id, description)"
+                                            + " VALUES (2, 'two'), (1, 'duplicate')"));
+
+            // a reader keeps the commit from getting its lock
+            connectionOne.setBusyTimeout(0);
+            connectionTwo.setAutoCommit(false);
+            connectionTwo.createStatement().executeQuery("SELECT * FROM sample").close();
+            assertThrows(SQLException.class, () -> connectionOne.commit());
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+
+            connectionTwo.rollback();
+            connectionOne.commit();
+            SQLiteChangeBatch batch = received.poll(5, TimeUnit.SECONDS);
+            assertEquals(1, batch.size());
+            assertEquals(SQLiteUpdateListener.Type.INSERT, batch.type(0));
+            assertEquals(1, batch.rowId(0));
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreUpdateHookUnsupported() {
+        assumeFalse(PreUpdateHook.isSupported());
+        assertThrows(
+                SQLFeatureNotSupportedException.class,
+                () -> connectionOne.addPreUpdateListener((type, db, table, o, n, or, nr) -> {}));
+    }
+
+    @Test
+    public void testPreUpdateHook() throws Exception {
+        assumeTrue(PreUpdateHook.isSupported());
+        final List<String> changes = new ArrayList<String>();
+        SQLitePreUpdateListener listener =
+                new SQLitePreUpdateListener() {
+                    @Override
+                    public void onPreUpdate(
+                            SQLiteUpdateListener.Type type,
+                            String database,
+                            String table,
+                            long oldRowId,
+                            long newRowId,
+                            PreUpdateRow oldRow,
+                            PreUpdateRow newRow)
+                            throws SQLException {
+                        String before = oldRow == null ? "-" : oldRow.getText(1);
+                        String after = newRow == null ? "-" : newRow.getText(1);
+                        changes.add(type + " " + table + " " + before + " " + after);
+                    }
+                };
+
+        connectionOne.addPreUpdateListener(listener);
+        Statement statement = connectionOne.createStatement();
+        statement.execute("INSERT INTO sample (description) VALUES ('one')");
+        statement.execute("UPDATE sample SET description = 'two'");
+        statement.execute("DELETE FROM sample WHERE id = 1");
+        connectionOne.removePreUpdateListener(listener);
+        statement.execute("INSERT INTO sample (description) VALUES ('three')");
+
+        assertEquals(
+                Arrays.asList(
+                        "INSERT sample - one", "UPDATE sample one two", "DELETE sample two -"),
+                changes);
+    }
+
     private static class Update {
         private final SQLiteUpdateListener.Type type;
         private final String database;
@@ -7,9 +7,11 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
@@ -18,11 +20,14 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.StringTokenizer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.sqlite.core.NativeDB;
+import org.sqlite.core.StatementCache;
 
 /** These tests are designed to stress PreparedStatements on memory dbs. */
 public class PrepStmtTest {
@@ -475,6 +480,306 @@ public class PrepStmtTest {
         rs.close();
     }
 
+    @Test
+    public void batchKeepsValuesOfEveryRow() throws SQLException {
+        stat.executeUpdate("create table test (i, r, s, b);");
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?,?,?,?);");
+        int rows = 5000;
+        for (int i = 0; i < rows; i++) {
+            prep.setLong(1, Long.MAX_VALUE - i);
+            if (i % 3 == 0) {
+                prep.setDouble(2, i / 4.0);
+            }
+            if (i % 7 != 0) {
+                // every seventh row keeps the previous row's text
+                prep.setString(3, "r\u00e9ow \ud83d\ude00 " + i);
+            }
+            prep.setBytes(4, i % 5 == 0 ? null : new byte[] {(byte) i, 0, (byte) (i >> 8)});
+            prep.addBatch();
+        }
+        assertEquals(rows, prep.executeBatch().length);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select i, r, s, b from test order by rowid;");
+        String text = null;
+        for (int i = 0; i < rows; i++) {
+            assertTrue(rs.next());
+            assertEquals(Long.MAX_VALUE - i, rs.getLong(1));
+            assertEquals((i - i % 3) / 4.0, rs.getDouble(2));
+            if (i % 7 != 0) {
+                text = "r\u00e9ow \ud83d\ude00 " + i;
+            }
+            assertEquals(text, rs.getString(3));
+            if (i % 5 == 0) {
+                assertNull(rs.getBytes(4));
+            } else {
+                assertArrayEq(new byte[] {(byte) i, 0, (byte) (i >> 8)}, rs.getBytes(4));
+            }
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void batchOnTheJniBackend() throws SQLException {
+        // the JNI backend is used where no plain sqlite3 library is bundled, e.g. on Mac
+        assumeTrue(((SQLiteConnection) conn).getDatabase() instanceof NativeDB);
+
+        stat.executeUpdate("create table test (id integer primary key, i, r, s, b);");
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?,?,?,?,?);");
+        for (int i = 0; i < 3; i++) {
+            prep.setInt(1, i);
+            prep.setLong(2, Long.MIN_VALUE + i);
+            prep.setDouble(3, i / 2.0);
+            prep.setString(4, "\u00fcber " + i);
+            prep.setBytes(5, i == 1 ? null : new byte[] {(byte) i, 0});
+            prep.addBatch();
+        }
+        assertArrayEq(new int[] {1, 1, 1}, prep.executeBatch());
+
+        // the duplicate key fails the third row, after the first two were inserted
+        for (int i = 3; i < 6; i++) {
+            prep.setInt(1, i == 5 ? 0 : i);
+            prep.addBatch();
+        }
+        assertThrows(SQLException.class, prep::executeBatch);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select i, r, s, b from test where id = 2;");
+        assertTrue(rs.next());
+        assertEquals(Long.MIN_VALUE + 2, rs.getLong(1));
+        assertEquals(1.0, rs.getDouble(2));
+        assertEquals("\u00fcber 2", rs.getString(3));
+        assertArrayEq(new byte[] {2, 0}, rs.getBytes(4));
+        rs.close();
+        rs = stat.executeQuery("select count(*) from test;");
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(1));
+        rs.close();
+    }
+
+    @Test
+    public void reusedTextParameters() throws SQLException {
+        stat.executeUpdate("create table test (a, b);");
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?,?);");
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            large.append("\u00fcber ").append(i);
+            // b keeps its first value while a is rewritten on every execution
+            if (i == 0) {
+                prep.setString(2, "kept");
+            }
+            prep.setString(1, large.toString());
+            assertEquals(1, prep.executeUpdate());
+        }
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select a, b from test order by rowid desc limit 1;");
+        assertTrue(rs.next());
+        assertEquals(large.toString(), rs.getString(1));
+        assertEquals("kept", rs.getString(2));
+        rs.close();
+    }
+
+    @Test
+    public void rewrittenBatchInserts() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setRewriteBatchedInserts(true);
+        try (Connection rewriting = config.createConnection("jdbc:sqlite:");
+                Statement s = rewriting.createStatement()) {
+            s.executeUpdate("create table test (id integer primary key, v);");
+            ((SQLiteConnection) rewriting).setLimit(SQLiteLimits.SQLITE_LIMIT_VARIABLE_NUMBER, 20);
+
+            PreparedStatement prep =
+                    rewriting.prepareStatement("INSERT INTO test (id, v)\n VALUES ( ?, ? );");
+            for (int i = 0; i < 37; i++) {
+                prep.setInt(1, i);
+                prep.setString(2, "v" + i);
+                prep.addBatch();
+            }
+            int[] counts = prep.executeBatch();
+            assertEquals(37, counts.length);
+            for (int count : counts) {
+                assertEquals(1, count);
+            }
+
+            ResultSet rs = s.executeQuery("select count(*), sum(id), max(v) from test;");
+            assertTrue(rs.next());
+            assertEquals(37, rs.getInt(1));
+            assertEquals(36 * 37 / 2, rs.getInt(2));
+            assertEquals("v9", rs.getString(3));
+            rs.close();
+
+            // rows 37..46 are inserted, then the chunk holding the duplicate key fails as a whole
+            for (int i = 37; i < 60; i++) {
+                prep.setInt(1, i == 55 ? 3 : i);
+                prep.setString(2, "w" + i);
+                prep.addBatch();
+            }
+            try {
+                prep.executeBatch();
+                fail("duplicate key");
+            } catch (BatchUpdateException e) {
+                assertEquals(10, e.getUpdateCounts().length);
+            }
+            rs = s.executeQuery("select count(*) from test;");
+            assertTrue(rs.next());
+            assertEquals(47, rs.getInt(1));
+            rs.close();
+            prep.close();
+
+            prep = rewriting.prepareStatement("insert or ignore into test values (?, ?)");
+            for (int i = 0; i < 4; i++) {
+                prep.setInt(1, 1000 + i % 2);
+                prep.setNull(2, Types.NULL);
+                prep.addBatch();
+            }
+            counts = prep.executeBatch();
+            assertEquals(4, counts.length);
+            assertEquals(Statement.SUCCESS_NO_INFO, counts[0]);
+            prep.close();
+
+            // not a single-row VALUES insert: executed row by row
+            prep = rewriting.prepareStatement("insert into test (v) select ? union all select ?");
+            prep.setString(1, "a");
+            prep.setString(2, "b");
+            prep.addBatch();
+            prep.addBatch();
+            assertArrayEq(new int[] {2, 2}, prep.executeBatch());
+            prep.close();
+        }
+    }
+
+    @Test
+    public void rewrittenBatchInsertsMeasureSqlInBytes() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setRewriteBatchedInserts(true);
+        StringBuilder name = new StringBuilder("\"");
+        for (int i = 0; i < 100; i++) {
+            name.append('\u00e9');
+        }
+        String table = name.append('"').toString();
+        try (Connection rewriting = config.createConnection("jdbc:sqlite:");
+                Statement s = rewriting.createStatement()) {
+            s.executeUpdate("create table " + table + " (v);");
+            // 102 chars but 202 bytes of table name: chunks sized by chars would be too long
+            ((SQLiteConnection) rewriting).setLimit(SQLiteLimits.SQLITE_LIMIT_SQL_LENGTH, 300);
+
+            PreparedStatement prep =
+                    rewriting.prepareStatement("insert into " + table + " values (?);");
+            for (int i = 0; i < 50; i++) {
+                prep.setInt(1, i);
+                prep.addBatch();
+            }
+            assertEquals(50, prep.executeBatch().length);
+            prep.close();
+
+            ResultSet rs = s.executeQuery("select count(*) from " + table + ";");
+            assertTrue(rs.next());
+            assertEquals(50, rs.getInt(1));
+            rs.close();
+        }
+    }
+
+    @Test
+    public void cachedStatements() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStatementCacheSize(2);
+        try (Connection caching = config.createConnection("jdbc:sqlite:");
+                Statement s = caching.createStatement()) {
+            StatementCache cache = ((SQLiteConnection) caching).getStatementCache();
+            assertTrue(cache.isEnabled());
+            assertEquals(2, cache.getMaxSize());
+            s.executeUpdate("create table test (id integer primary key, v);");
+
+            for (int i = 0; i < 3; i++) {
+                PreparedStatement prep = caching.prepareStatement("insert into test values (?, ?)");
+                prep.setInt(1, i);
+                if (i == 0) {
+                    prep.setString(2, "first");
+                }
+                assertEquals(1, prep.executeUpdate());
+                prep.close();
+            }
+            assertEquals(2, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.size());
+
+            // a reused statement starts with cleared parameters and a reset cursor
+            PreparedStatement query =
+                    caching.prepareStatement("select id, v from test order by id");
+            ResultSet rs = query.executeQuery();
+            assertTrue(rs.next());
+            query.close();
+            query = caching.prepareStatement("select v from test where id = ?");
+            query.close();
+            query = caching.prepareStatement("select count(*) from test where v is null");
+            query.close();
+            assertEquals(2, cache.getEvictionCount());
+            assertEquals(2, cache.size());
+
+            query = caching.prepareStatement("select count(*) from test where v is null");
+            rs = query.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            query.close();
+
+            // changing the schema drops the cached statements
+            s.executeUpdate("alter table test add column w;");
+            assertEquals(0, cache.size());
+            query = caching.prepareStatement("select * from test where id = ?");
+            query.setInt(1, 0);
+            rs = query.executeQuery();
+            assertEquals(3, rs.getMetaData().getColumnCount());
+            assertTrue(rs.next());
+            assertEquals("first", rs.getString(2));
+            query.close();
+
+            // two open statements with the same SQL do not share a handle
+            PreparedStatement a = caching.prepareStatement("select v from test where id = ?");
+            PreparedStatement b = caching.prepareStatement("select v from test where id = ?");
+            a.setInt(1, 0);
+            b.setInt(1, 1);
+            ResultSet ra = a.executeQuery();
+            ResultSet rb = b.executeQuery();
+            assertTrue(ra.next());
+            assertTrue(rb.next());
+            assertEquals("first", ra.getString(1));
+            assertNull(rb.getString(1));
+            a.close();
+            b.close();
+        }
+        assertFalse(((SQLiteConnection) conn).getStatementCache().isEnabled());
+    }
+
+    @Test
+    public void cachedStatementsSurviveSqlThatKeepsTheSchema() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStatementCacheSize(4);
+        try (Connection caching = config.createConnection("jdbc:sqlite:");
+                Statement s = caching.createStatement()) {
+            StatementCache cache = ((SQLiteConnection) caching).getStatementCache();
+            s.executeUpdate("create table test (created, drop_count);");
+            s.executeUpdate("create table \"drop\"\"x\" (a);");
+            caching.prepareStatement("select created from test").close();
+            assertEquals(1, cache.size());
+
+            // the keywords appear, but no statement starts with them
+            s.executeUpdate("insert into test values ('create table x (a)', 1);");
+            s.executeUpdate("update test set drop_count = 2 where created = 'drop';");
+            s.executeUpdate("/* alter */ -- vacuum\n insert into \"drop\"\"x\" values (1);");
+            assertEquals(1, cache.size());
+
+            s.executeUpdate("attach ':memory:' as other;");
+            assertEquals(0, cache.size());
+
+            caching.prepareStatement("select created from test").close();
+            assertEquals(1, cache.size());
+            s.executeUpdate("insert into test values (1, 2); detach database other;");
+            assertEquals(0, cache.size());
+        }
+    }
+
     @Test
     public void batchZeroParams() throws Exception {
         stat.executeUpdate("create table test (c1);");
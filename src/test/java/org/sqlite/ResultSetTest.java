@@ -1,7 +1,9 @@
 package org.sqlite;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -158,4 +160,71 @@ public class ResultSetTest {
         assertEquals(nonAsciiString, resultSet.getString(1));
         assertFalse(resultSet.next());
     }
+
+    @Test
+    public void testReturnsTextWithEmbeddedNul() throws SQLException {
+        ResultSet resultSet = stat.executeQuery("select cast(x'61006263' as text)");
+
+        assertTrue(resultSet.next());
+        assertEquals("a\0bc", resultSet.getString(1));
+    }
+
+    @Test
+    public void testReturnsLongMixedText() throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i % 7 == 0 ? "\u00e9\ud83d\ude00" : "abcdefgh");
+        }
+        String text = sb.toString();
+        PreparedStatement pstat = conn.prepareStatement("select ?, 'short', ''");
+        pstat.setString(1, text);
+
+        ResultSet resultSet = pstat.executeQuery();
+
+        assertTrue(resultSet.next());
+        assertEquals(text, resultSet.getString(1));
+        assertEquals("short", resultSet.getString(2));
+        assertEquals("", resultSet.getString(3));
+    }
+
+    @Test
+    public void testRowValuesKeepSqliteConversions() throws SQLException {
+        ResultSet resultSet =
+                stat.executeQuery(
+                        "select 42, 1.5, '12abc', x'0102', null, 'text', 9223372036854775807");
+
+        assertTrue(resultSet.next());
+        assertEquals("42", resultSet.getString(1));
+        assertEquals(42.0, resultSet.getDouble(1));
+        assertEquals("1.5", resultSet.getString(2));
+        assertEquals(1, resultSet.getInt(2));
+        assertEquals(12, resultSet.getInt(3));
+        assertEquals(12.0, resultSet.getDouble(3));
+        assertEquals("\u0001\u0002", resultSet.getString(4));
+        assertArrayEquals(new byte[] {1, 2}, resultSet.getBytes(4));
+        assertEquals(0, resultSet.getInt(5));
+        assertTrue(resultSet.wasNull());
+        assertArrayEquals("text".getBytes(), resultSet.getBytes(6));
+        assertFalse(resultSet.wasNull());
+        assertEquals(-1, resultSet.getInt(7));
+        assertEquals(Long.MAX_VALUE, resultSet.getLong(7));
+    }
+
+    @Test
+    public void testRowValuesFollowCursor() throws SQLException {
+        stat.executeUpdate("insert into test values (2, 'second', null)");
+        ResultSet resultSet =
+                stat.executeQuery("select id, description, foo from test order by id");
+
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+        assertEquals("bar", resultSet.getString(3));
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getInt(1));
+        assertEquals("second", resultSet.getString(2));
+        assertNull(resultSet.getString(3));
+        assertTrue(resultSet.wasNull());
+        assertFalse(resultSet.next());
+        assertThrows(SQLException.class, () -> resultSet.getInt(1));
+    }
 }
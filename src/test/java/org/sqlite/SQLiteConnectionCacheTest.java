@@ -0,0 +1,201 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.javax.SQLiteConnectionCache;
+
+public class SQLiteConnectionCacheTest {
+    private File dir;
+    private SQLiteConnectionCache cache;
+    private int initialized;
+
+    @BeforeEach
+    public void createCache() throws Exception {
+        LoadDriver.load();
+        dir = Files.createTempDirectory("connection-cache").toFile();
+        dir.deleteOnExit();
+        cache =
+                new SQLiteConnectionCache(
+                        new SQLiteConfig(),
+                        2,
+                        conn -> {
+                            initialized++;
+                            Function.create(
+                                    conn,
+                                    "tenant",
+                                    new Function() {
+                                        @Override
+                                        public void xFunc() throws SQLException {
+                                            result("tenant");
+                                        }
+                                    });
+                        });
+        cache.setMaxWait(Duration.ofMillis(100));
+    }
+
+    @AfterEach
+    public void closeCache() {
+        cache.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void warmConnectionsAreReused() throws SQLException {
+        SQLiteConnection physical;
+        try (Connection conn = cache.getConnection(file("a"))) {
+            conn.createStatement().executeUpdate("create table t (id integer);");
+            physical = conn.unwrap(SQLiteConnection.class);
+        }
+        try (Connection conn = cache.getConnection(file("a"))) {
+            assertSame(physical, conn.unwrap(SQLiteConnection.class));
+            assertEquals("tenant", query(conn, "select tenant();"));
+            assertEquals("0", query(conn, "select count(*) from t;"));
+        }
+        SQLiteConnectionCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getOpens());
+        assertTrue(stats.getMaxOpenNanos() > 0);
+        assertEquals(stats.getMaxOpenNanos(), stats.getTotalOpenNanos());
+        assertEquals(1, stats.getIdleConnections());
+        assertEquals(1, initialized);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws SQLException {
+        SQLiteConnection a;
+        try (Connection conn = cache.getConnection(file("a"))) {
+            a = conn.unwrap(SQLiteConnection.class);
+        }
+        SQLiteConnection b;
+        try (Connection conn = cache.getConnection(file("b"))) {
+            b = conn.unwrap(SQLiteConnection.class);
+        }
+        try (Connection conn = cache.getConnection(file("c"))) {
+            assertTrue(a.isClosed());
+            assertFalse(b.isClosed());
+
+            // with b in use too, there is no room for another file
+            try (Connection conn2 = cache.getConnection(file("b"))) {
+                assertSame(b, conn2.unwrap(SQLiteConnection.class));
+                assertThrows(SQLTimeoutException.class, () -> cache.getConnection(file("d")));
+            }
+        }
+        SQLiteConnectionCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(1, stats.getTimeouts());
+        assertEquals(2, stats.getOpenConnections());
+        assertEquals(3, initialized);
+    }
+
+    @Test
+    public void idleConnectionsExpire() throws SQLException {
+        SQLiteConnection a;
+        try (Connection conn = cache.getConnection(file("a"))) {
+            a = conn.unwrap(SQLiteConnection.class);
+        }
+        cache.setIdleTimeout(Duration.ZERO);
+        cache.evictIdle();
+        assertTrue(a.isClosed());
+        assertEquals(1, cache.getStats().getExpirations());
+        assertEquals(0, cache.getStats().getOpenConnections());
+
+        try (Connection conn = cache.getConnection(file("a"))) {
+            assertNotSame(a, conn.unwrap(SQLiteConnection.class));
+        }
+        cache.close();
+        assertThrows(SQLException.class, () -> cache.getConnection(file("a")));
+        assertEquals(0, cache.getStats().getOpenConnections());
+    }
+
+    @Test
+    public void failedOpensFreeTheirSlot() throws SQLException {
+        boolean[] fail = {true};
+        try (SQLiteConnectionCache failing =
+                new SQLiteConnectionCache(
+                        new SQLiteConfig(),
+                        1,
+                        conn -> {
+                            if (fail[0]) {
+                                throw new AssertionError("not an SQLException");
+                            }
+                        })) {
+            failing.setMaxWait(Duration.ofMillis(100));
+            assertThrows(AssertionError.class, () -> failing.getConnection(file("a")));
+            assertEquals(0, failing.getStats().getOpenConnections());
+
+            fail[0] = false;
+            try (Connection conn = failing.getConnection(file("a"))) {
+                assertEquals("1", query(conn, "select 1;"));
+            }
+        }
+    }
+
+    @Test
+    public void confinedConnectionsFollowTheirCheckout() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setThreadConfined(true);
+        config.setCheckThreadConfinement(true);
+        try (SQLiteConnectionCache confined = new SQLiteConnectionCache(config, 1, null)) {
+            SQLiteConnection physical;
+            try (Connection conn = confined.getConnection(file("a"))) {
+                conn.createStatement().executeUpdate("create table t (id integer);");
+                physical = conn.unwrap(SQLiteConnection.class);
+            }
+
+            ExecutorService other = Executors.newSingleThreadExecutor();
+            try {
+                Connection handedOver = other.submit(() -> confined.getConnection(file("a"))).get();
+                assertSame(physical, handedOver.unwrap(SQLiteConnection.class));
+                String count = "select count(*) from t;";
+                assertEquals("0", other.submit(() -> query(handedOver, count)).get());
+                // checked out by the other thread, so this one may not use it
+                assertThrows(SQLException.class, () -> query(handedOver, count));
+                other.submit(
+                                () -> {
+                                    handedOver.close();
+                                    return null;
+                                })
+                        .get();
+            } finally {
+                other.shutdown();
+            }
+
+            try (Connection conn = confined.getConnection(file("a"))) {
+                assertEquals("0", query(conn, "select count(*) from t;"));
+            }
+        }
+    }
+
+    private String file(String name) {
+        return new File(dir, name + ".db").getPath();
+    }
+
+    private static String query(Connection conn, String sql) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+}
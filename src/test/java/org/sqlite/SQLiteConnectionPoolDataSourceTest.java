@@ -15,12 +15,19 @@ package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
 import javax.sql.ConnectionPoolDataSource;
 import javax.sql.PooledConnection;
 
@@ -28,6 +35,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.sqlite.javax.SQLiteConnectionPoolDataSource;
+import org.sqlite.javax.SQLitePooledConnection;
 
 public class SQLiteConnectionPoolDataSourceTest {
 
@@ -66,6 +74,49 @@ public class SQLiteConnectionPoolDataSourceTest {
         assertTrue(handle.isClosed());
     }
 
+    @Test
+    public void connectionEventsTest() throws SQLException {
+        ConnectionPoolDataSource ds = new SQLiteConnectionPoolDataSource();
+        PooledConnection pooledConn = ds.getPooledConnection();
+        final List<String> events = new ArrayList<String>();
+        pooledConn.addConnectionEventListener(
+                new ConnectionEventListener() {
+                    public void connectionClosed(ConnectionEvent event) {
+                        events.add("closed");
+                    }
+
+                    public void connectionErrorOccurred(ConnectionEvent event) {
+                        events.add("error " + event.getSQLException().getMessage());
+                    }
+                });
+
+        Connection handle = pooledConn.getConnection();
+        assertFalse(Proxy.isProxyClass(handle.getClass()));
+        SQLiteConnection physical = handle.unwrap(SQLiteConnection.class);
+        assertSame(((SQLitePooledConnection) pooledConn).getPhysicalConn(), physical);
+
+        handle.setAutoCommit(false);
+        handle.createStatement().execute("create table t (id integer)");
+        handle.close();
+        handle.close();
+        assertEquals(Arrays.asList("closed"), events);
+        // closing rolled back the transaction and restored auto-commit
+        assertTrue(physical.getAutoCommit());
+        assertFalse(physical.getMetaData().getTables(null, null, "t", null).next());
+
+        handle = pooledConn.getConnection();
+        physical.close();
+        try {
+            handle.createStatement();
+            fail();
+        } catch (SQLException e) {
+            assertEquals("database connection closed", e.getMessage());
+        }
+        assertEquals(Arrays.asList("closed", "error database connection closed"), events);
+        assertTrue(handle.isClosed());
+        pooledConn.close();
+    }
+
     @Disabled
     @Test
     public void proxyConnectionCloseTest() throws SQLException {
@@ -0,0 +1,142 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.javax.SQLiteConnectionPool;
+import org.sqlite.javax.SQLiteConnectionPoolDataSource;
+
+public class SQLiteConnectionPoolTest {
+    private SQLiteConnectionPool pool;
+
+    @BeforeEach
+    public void createPool() throws Exception {
+        LoadDriver.load();
+        File file = File.createTempFile("pool-test", ".sqlite");
+        file.deleteOnExit();
+        new File(file.getPath() + "-wal").deleteOnExit();
+        new File(file.getPath() + "-shm").deleteOnExit();
+
+        SQLiteConnectionPoolDataSource ds = new SQLiteConnectionPoolDataSource();
+        ds.setUrl("jdbc:sqlite:" + file.getAbsolutePath());
+        pool = ds.createPool(2);
+        pool.setMaxWait(Duration.ofMillis(200));
+        try (Connection conn = pool.getConnection();
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, name text);");
+            stat.executeUpdate("insert into t values (1, 'one');");
+        }
+    }
+
+    @AfterEach
+    public void closePool() throws SQLException {
+        pool.close();
+    }
+
+    @Test
+    public void readersDoNotWaitForTheWriter() throws SQLException {
+        try (Connection writer = pool.getConnection()) {
+            assertFalse(writer.isReadOnly());
+            writer.setAutoCommit(false);
+            try (Statement stat = writer.createStatement()) {
+                stat.executeUpdate("insert into t values (2, 'two');");
+                assertEquals("wal", query(writer, "pragma journal_mode;"));
+            }
+
+            // WAL readers see the last commit while the write is in progress
+            Connection reader1 = pool.getConnection();
+            reader1.setReadOnly(true);
+            Connection reader2 = pool.getConnection("  /* count */ SELECT count(*) from t;");
+            assertTrue(reader2.isReadOnly());
+            assertEquals("1", query(reader1, "select count(*) from t;"));
+            assertEquals("1", query(reader2, "select count(*) from t;"));
+            assertThrows(
+                    SQLException.class,
+                    () -> reader1.createStatement().executeUpdate("delete from t;"));
+            assertThrows(SQLException.class, () -> reader1.setReadOnly(false));
+
+            // both readers are in use
+            Connection reader3 = pool.getConnection("select 1;");
+            assertThrows(SQLTimeoutException.class, () -> query(reader3, "select 1;"));
+            reader1.close();
+            assertEquals("1", query(reader3, "select 1;"));
+            reader2.close();
+            reader3.close();
+            writer.commit();
+        }
+
+        SQLiteConnectionPool.Stats readers = pool.getReaderStats();
+        assertEquals(2, readers.getOpenConnections());
+        assertEquals(2, readers.getIdleConnections());
+        assertEquals(1, readers.getTimeouts());
+        assertEquals(3, readers.getAcquisitions());
+        assertTrue(readers.getWaits() >= 1);
+        assertTrue(readers.getMaxWaitNanos() >= Duration.ofMillis(200).toNanos());
+    }
+
+    @Test
+    public void writersWaitForEachOther() throws SQLException {
+        assertFalse(pool.getConnection("with x as (select 1) delete from t;").isReadOnly());
+        try (Connection writer = pool.getConnection()) {
+            writer.setAutoCommit(false);
+            writer.createStatement().executeUpdate("insert into t values (2, 'two');");
+
+            Connection other = pool.getConnection("insert into t values (3, 'three');");
+            assertThrows(SQLTimeoutException.class, other::createStatement);
+            other.close();
+            assertTrue(other.isClosed());
+        }
+        assertEquals(1, pool.getWriterStats().getTimeouts());
+
+        // closing rolled back the unfinished transaction
+        try (Connection writer = pool.getConnection()) {
+            assertEquals("1", query(writer, "select count(*) from t;"));
+            assertTrue(writer.getAutoCommit());
+        }
+        assertEquals(1, pool.getWriterStats().getOpenConnections());
+    }
+
+    @Test
+    public void physicalConnectionsAreReused() throws SQLException {
+        SQLiteConnection first;
+        try (Connection conn = pool.getConnection("select 1;")) {
+            first = conn.unwrap(SQLiteConnection.class);
+        }
+        try (Connection conn = pool.getConnection("select 1;")) {
+            assertSame(first, conn.unwrap(SQLiteConnection.class));
+        }
+        assertEquals(1, pool.getReaderStats().getOpenConnections());
+
+        pool.setIdleTimeout(Duration.ZERO);
+        SQLiteConnection second;
+        try (Connection conn = pool.getConnection("select 1;")) {
+            second = conn.unwrap(SQLiteConnection.class);
+            assertNotSame(first, second);
+            assertTrue(first.isClosed());
+        }
+        assertEquals(0, pool.getReaderStats().getOpenConnections());
+        assertTrue(second.isClosed());
+    }
+
+    private static String query(Connection conn, String sql) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+}
@@ -10,10 +10,14 @@
 package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.ByteOrder;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -90,4 +94,87 @@ public class SQLiteDataSourceTest {
             }
         }
     }
+
+    @Test
+    public void openPlan() throws Exception {
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:file:plan?mode=memory&cache_size=123&foreign_keys=true");
+        ds.setUserVersion(7);
+
+        for (int i = 0; i < 2; i++) {
+            Connection conn = ds.getConnection();
+            try {
+                assertEquals("123", pragma(conn, "cache_size"));
+                assertEquals("1", pragma(conn, "foreign_keys"));
+                assertEquals("7", pragma(conn, "user_version"));
+            } finally {
+                conn.close();
+            }
+        }
+
+        // the configuration overrides the URL, also after the first connection
+        ds.setCacheSize(456);
+        ds.setEnforceForeignKeys(false);
+        Connection conn = ds.getConnection();
+        try {
+            assertEquals("456", pragma(conn, "cache_size"));
+            assertEquals("0", pragma(conn, "foreign_keys"));
+        } finally {
+            conn.close();
+        }
+
+        ds.setUrl("jdbc:sqlite:file:plan2?mode=memory&cache_size=oops");
+        ds.getConfig().setPragma(SQLiteConfig.Pragma.CACHE_SIZE, "789");
+        conn = ds.getConnection();
+        try {
+            assertEquals("789", pragma(conn, "cache_size"));
+        } finally {
+            conn.close();
+        }
+
+        ds.getConfig().setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "no such mode");
+        SQLException e = assertThrows(SQLException.class, ds::getConnection);
+        assertTrue(e.getMessage().contains("journal_mode"), e.getMessage());
+    }
+
+    @Test
+    public void pragmaValuesRunNoStatements() throws Exception {
+        try (Connection conn =
+                DriverManager.getConnection("jdbc:sqlite:file:inj?mode=memory&cache=shared")) {
+            SQLException e =
+                    assertThrows(
+                            SQLException.class,
+                            () ->
+                                    DriverManager.getConnection(
+                                            "jdbc:sqlite:file:inj?mode=memory&cache=shared"
+                                                    + "&cache_size=100;create table pwn(x)"));
+            assertTrue(e.getMessage().contains("cache_size"), e.getMessage());
+            try (Statement stat = conn.createStatement();
+                    ResultSet rs = stat.executeQuery("select count(*) from sqlite_master")) {
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "'memory';create table pwn(x)");
+        assertThrows(SQLException.class, () -> config.createConnection("jdbc:sqlite:"));
+
+        // quoted values may hold anything but their own quote
+        config.setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "'memory'");
+        config.setPragma(SQLiteConfig.Pragma.CACHE_SIZE, "-2000");
+        try (Connection conn = config.createConnection("jdbc:sqlite:")) {
+            assertEquals("memory", pragma(conn, "journal_mode"));
+            assertEquals("-2000", pragma(conn, "cache_size"));
+        }
+    }
+
+    private static String pragma(Connection conn, String name) throws SQLException {
+        Statement stat = conn.createStatement();
+        try {
+            ResultSet rs = stat.executeQuery("pragma " + name);
+            return rs.getString(1);
+        } finally {
+            stat.close();
+        }
+    }
 }
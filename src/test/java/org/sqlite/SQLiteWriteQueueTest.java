@@ -0,0 +1,150 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SQLiteWriteQueueTest {
+    private SQLiteConnection conn;
+
+    @BeforeEach
+    public void connect() throws Exception {
+        LoadDriver.load();
+        conn = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, name text not null);");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void groupCommit() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try (SQLiteWriteQueue queue = new SQLiteWriteQueue(conn, 100)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int base = t * 250;
+                Thread thread =
+                        new Thread(
+                                () -> {
+                                    for (int i = 0; i < 250; i++) {
+                                        CompletableFuture<Integer> f =
+                                                queue.submit(
+                                                        "insert into t values (?, ?);",
+                                                        base + i,
+                                                        "row " + (base + i));
+                                        synchronized (futures) {
+                                            futures.add(f);
+                                        }
+                                    }
+                                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            synchronized (futures) {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            }
+            assertEquals(1000, queue.getCommittedWrites());
+            assertTrue(queue.getCommits() >= 10, "commits: " + queue.getCommits());
+        }
+        assertTrue(conn.getAutoCommit());
+        assertEquals(1000, count());
+    }
+
+    @Test
+    public void failuresStayIsolated() throws Exception {
+        CompletableFuture<Integer> first;
+        CompletableFuture<Integer> failed;
+        CompletableFuture<String> lambda;
+        try (SQLiteWriteQueue queue = new SQLiteWriteQueue(conn, 100)) {
+            first = queue.submit("insert into t values (1, 'one');");
+            failed =
+                    queue.submit(
+                            conn -> {
+                                try (Statement stat = conn.createStatement()) {
+                                    stat.executeUpdate("insert into t values (2, 'two');");
+                                    // violates not null
+                                    return stat.executeUpdate("insert into t values (3, null);");
+                                }
+                            });
+            lambda =
+                    queue.submit(
+                            conn -> {
+                                try (Statement stat = conn.createStatement();
+                                        ResultSet rs =
+                                                stat.executeQuery(
+                                                        "select name from t where id = 1;")) {
+                                    rs.next();
+                                    return rs.getString(1);
+                                }
+                            });
+        }
+        assertEquals(1, first.join());
+        assertEquals("one", lambda.join());
+        CompletionException e = assertThrows(CompletionException.class, failed::join);
+        assertTrue(e.getCause() instanceof SQLException, e.getCause().toString());
+        // the failed write left no trace, the others were committed
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void errorsStayIsolated() throws Exception {
+        CompletableFuture<Integer> failed;
+        CompletableFuture<Integer> next;
+        try (SQLiteWriteQueue queue = new SQLiteWriteQueue(conn, 1)) {
+            failed =
+                    queue.submit(
+                            conn -> {
+                                try (Statement stat = conn.createStatement()) {
+                                    stat.executeUpdate("insert into t values (1, 'one');");
+                                }
+                                throw new AssertionError("not an SQLException");
+                            });
+            next = queue.submit("insert into t values (2, 'two');");
+            // the writer thread survived the error and still takes writes
+            assertEquals(1, next.get(5, TimeUnit.SECONDS));
+        }
+        CompletionException e = assertThrows(CompletionException.class, failed::join);
+        assertTrue(e.getCause() instanceof AssertionError, e.getCause().toString());
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void submitAfterClose() throws Exception {
+        SQLiteWriteQueue queue = new SQLiteWriteQueue(conn, 10);
+        queue.close();
+        CompletableFuture<Integer> f = queue.submit("insert into t values (1, 'one');");
+        assertTrue(f.isCompletedExceptionally());
+        assertFalse(conn.isClosed());
+        assertEquals(0, count());
+    }
+
+    private int count() throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select count(*) from t;")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.ByteBuffer;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.core.panama.Sessions;
+
+/** Tests changesets of the session extension, where the SQLite library has it. */
+public class SessionTest {
+    private SQLiteConnection source;
+    private SQLiteConnection replica;
+
+    @BeforeEach
+    public void connect() throws Exception {
+        LoadDriver.load();
+        source = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        replica = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        for (SQLiteConnection conn : new SQLiteConnection[] {source, replica}) {
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("create table stock (id integer primary key, name text, qty);");
+                stat.executeUpdate("insert into stock values (1, 'apple', 10), (2, 'pear', 5);");
+            }
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        source.close();
+        replica.close();
+    }
+
+    @Test
+    public void unsupported() throws SQLException {
+        assumeFalse(Sessions.isSupported());
+        assertThrows(SQLFeatureNotSupportedException.class, () -> source.createSession("main"));
+        assertThrows(
+                SQLFeatureNotSupportedException.class,
+                () -> replica.applyChangeset(ByteBuffer.allocate(0), SQLiteConflictHandler.ABORT));
+    }
+
+    @Test
+    public void replicateChanges() throws SQLException {
+        assumeTrue(Sessions.isSupported());
+        ByteBuffer changeset;
+        ByteBuffer patchset;
+        try (SQLiteSession session = source.createSession("main")) {
+            session.attach(null);
+            assertTrue(session.isEmpty());
+            try (Statement stat = source.createStatement()) {
+                stat.executeUpdate("update stock set qty = qty - 1 where id = 1;");
+                stat.executeUpdate("delete from stock where id = 2;");
+                stat.executeUpdate("insert into stock values (3, 'plum', 7);");
+            }
+            assertFalse(session.isEmpty());
+            changeset = session.changeset();
+            patchset = session.patchset();
+        }
+        assertTrue(patchset.remaining() < changeset.remaining());
+
+        replica.applyChangeset(changeset, SQLiteConflictHandler.ABORT);
+        assertEquals("1 apple 9|3 plum 7", rows(replica));
+
+        // the same changes again conflict with every row
+        final List<String> conflicts = new ArrayList<String>();
+        replica.applyChangeset(
+                changeset,
+                (conflict, type, table) -> {
+                    conflicts.add(conflict + " " + type + " " + table);
+                    return SQLiteConflictHandler.Action.OMIT;
+                });
+        assertEquals(3, conflicts.size(), conflicts.toString());
+        assertTrue(conflicts.contains("CONFLICT INSERT stock"), conflicts.toString());
+        assertEquals("1 apple 9|3 plum 7", rows(replica));
+    }
+
+    @Test
+    public void conflictHandlers() throws SQLException {
+        assumeTrue(Sessions.isSupported());
+        ByteBuffer changeset;
+        try (SQLiteSession session = source.createSession("main")) {
+            session.attach("stock");
+            try (Statement stat = source.createStatement()) {
+                stat.executeUpdate("update stock set qty = 11 where id = 1;");
+                stat.executeUpdate("update stock set qty = 6 where id = 2;");
+            }
+            changeset = session.changeset();
+        }
+        try (Statement stat = replica.createStatement()) {
+            stat.executeUpdate("update stock set qty = 0 where id = 1;");
+        }
+
+        // aborting rolls back every change of the changeset
+        assertThrows(
+                SQLException.class,
+                () -> replica.applyChangeset(changeset, SQLiteConflictHandler.ABORT));
+        assertEquals("1 apple 0|2 pear 5", rows(replica));
+
+        SQLException e =
+                assertThrows(
+                        SQLException.class,
+                        () ->
+                                replica.applyChangeset(
+                                        changeset,
+                                        (conflict, type, table) -> {
+                                            throw new SQLException("no conflicts wanted");
+                                        }));
+        assertEquals("no conflicts wanted", e.getCause().getMessage());
+        assertEquals("1 apple 0|2 pear 5", rows(replica));
+
+        replica.applyChangeset(changeset, SQLiteConflictHandler.OMIT);
+        assertEquals("1 apple 0|2 pear 6", rows(replica));
+
+        replica.applyChangeset(changeset, SQLiteConflictHandler.REPLACE);
+        assertEquals("1 apple 11|2 pear 6", rows(replica));
+    }
+
+    private static String rows(SQLiteConnection conn) throws SQLException {
+        StringBuilder rows = new StringBuilder();
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select id, name, qty from stock order by id;")) {
+            while (rs.next()) {
+                if (rows.length() > 0) {
+                    rows.append('|');
+                }
+                rows.append(rs.getLong(1)).append(' ').append(rs.getString(2)).append(' ');
+                rows.append(rs.getLong(3));
+            }
+        }
+        return rows.toString();
+    }
+}
@@ -2,6 +2,7 @@ package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
@@ -10,11 +11,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.sqlite.core.panama.AggregateState;
+import org.sqlite.core.panama.FunctionArgs;
+import org.sqlite.core.panama.FunctionResult;
 
 /** Tests User Defined Functions. */
 public class UDFTest {
@@ -53,6 +59,29 @@ public class UDFTest {
         assertEquals(val, 4);
     }
 
+    @Test
+    public void returningTextDuringMultiStatementExec() throws SQLException {
+        Function.create(
+                conn,
+                "label",
+                new Function() {
+                    @Override
+                    public void xFunc() throws SQLException {
+                        result("row-" + value_text(0) + "-\u00e9\u00e8");
+                    }
+                });
+        stat.executeUpdate(
+                "create table t (v text); "
+                        + "insert into t values (label('one')); "
+                        + "insert into t values (label('two'));");
+        ResultSet rs = stat.executeQuery("select v from t order by rowid;");
+        assertTrue(rs.next());
+        assertEquals("row-one-\u00e9\u00e8", rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals("row-two-\u00e9\u00e8", rs.getString(1));
+        rs.close();
+    }
+
     @Test
     public void returning() throws SQLException {
         Function.create(
@@ -400,6 +429,435 @@ public class UDFTest {
         Function.destroy(conn, "f1");
     }
 
+    @Test
+    public void argumentCursor() throws SQLException {
+        Function.create(
+                conn,
+                "describe",
+                new Function() {
+                    @Override
+                    public void xFunc() throws SQLException {
+                        StringBuilder out = new StringBuilder();
+                        for (int i = 0; i < arguments().count(); i++) {
+                            switch (arguments().type(i)) {
+                                case 1:
+                                    out.append(arguments().getLong(i));
+                                    break;
+                                case 2:
+                                    out.append(arguments().getDouble(i));
+                                    break;
+                                case 3:
+                                    out.append(arguments().getText(i));
+                                    break;
+                                case 4:
+                                    out.append(arguments().getBlob(i).length);
+                                    break;
+                                default:
+                                    out.append(arguments().isNull(i) ? "null" : "?");
+                            }
+                            out.append('|');
+                        }
+                        assertEquals(arguments().getInt(0), value_int(0));
+                        assertThrows(SQLException.class, () -> arguments().getInt(args()));
+                        result(out.toString());
+                    }
+                });
+        stat.executeUpdate("create table t (n integer);");
+        for (int i = 0; i < 100; i++) {
+            stat.executeUpdate("insert into t values (" + i + ");");
+        }
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select describe(n, n * 0.5, 'a\u00e9' || n, x'0102', null)"
+                                + " from t order by n;");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(rs.next());
+            assertEquals(i + "|" + (i * 0.5) + "|a\u00e9" + i + "|2|null|", rs.getString(1));
+        }
+        rs.close();
+    }
+
+    @Test
+    public void scalarLambdas() throws SQLException {
+        Function.createLong(conn, "ladd", Function.FLAG_DETERMINISTIC, (a, b) -> a + b);
+        Function.createLong(conn, "lneg", Function.FLAG_INNOCUOUS, a -> -a);
+        Function.createDouble(conn, "dhalf", 0, a -> a / 2);
+        Function.create(
+                conn,
+                "greet",
+                -1,
+                Function.FLAG_DETERMINISTIC | Function.FLAG_INNOCUOUS,
+                (args, result) -> {
+                    if (args.count() == 0) {
+                        throw new SQLException("nobody to greet");
+                    }
+                    result.setText("hello " + args.getText(0));
+                });
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select ladd(40, 2), lneg(7), dhalf(3), greet('\u00e9t\u00e9'),"
+                                + " ladd(1, null);");
+        assertTrue(rs.next());
+        assertEquals(42, rs.getLong(1));
+        assertEquals(-7, rs.getLong(2));
+        assertEquals(1.5, rs.getDouble(3));
+        assertEquals("hello \u00e9t\u00e9", rs.getString(4));
+        rs.getLong(5);
+        assertTrue(rs.wasNull());
+        rs.close();
+
+        SQLException e =
+                assertThrows(SQLException.class, () -> stat.executeQuery("select greet();"));
+        assertTrue(e.getMessage().contains("nobody to greet"), e.getMessage());
+
+        // replacing and destroying frees the previous registration
+        Function.createLong(conn, "ladd", 0, (a, b) -> a * b);
+        rs = stat.executeQuery("select ladd(6, 7);");
+        assertTrue(rs.next());
+        assertEquals(42, rs.getLong(1));
+        rs.close();
+        Function.destroy(conn, "ladd", 2);
+        assertThrows(SQLException.class, () -> stat.executeQuery("select ladd(6, 7);"));
+
+        // a Function subclass replaces a scalar function of the same name and arity
+        Function.createLong(conn, "lneg", 0, a -> a);
+        Function.create(
+                conn,
+                "lneg",
+                new Function() {
+                    @Override
+                    public void xFunc() throws SQLException {
+                        result(-2 * value_int(0));
+                    }
+                },
+                1,
+                0);
+        rs = stat.executeQuery("select lneg(7);");
+        assertTrue(rs.next());
+        assertEquals(-14, rs.getLong(1));
+        rs.close();
+    }
+
+    @Test
+    public void scalarLambdaSharedByConnections() throws Exception {
+        ScalarFunction square = (args, result) -> result.setLong(args.getLong(0) * args.getLong(0));
+        int threads = 4;
+        Thread[] workers = new Thread[threads];
+        Throwable[] failures = new Throwable[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            workers[t] =
+                    new Thread(
+                            () -> {
+                                try (Connection c = DriverManager.getConnection("jdbc:sqlite:");
+                                        Statement s = c.createStatement()) {
+                                    Function.create(c, "square", 1, 0, square);
+                                    ResultSet rs =
+                                            s.executeQuery(
+                                                    "with recursive n(i) as"
+                                                            + " (select 1 union all"
+                                                            + " select i + 1 from n"
+                                                            + " where i < 10000)"
+                                                            + " select sum(square(i)) from n;");
+                                    assertTrue(rs.next());
+                                    assertEquals(333383335000L, rs.getLong(1));
+                                    rs.close();
+                                } catch (Throwable e) {
+                                    failures[index] = e;
+                                }
+                            });
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            if (failures[t] != null) {
+                throw new AssertionError(failures[t]);
+            }
+        }
+    }
+
+    @Test
+    public void aggregateState() throws SQLException {
+        Function.create(
+                conn,
+                "savg",
+                1,
+                Function.FLAG_DETERMINISTIC,
+                new AggregateFunction() {
+                    @Override
+                    public int slots() {
+                        return 2;
+                    }
+
+                    @Override
+                    public void xStep(AggregateState state, FunctionArgs args)
+                            throws SQLException {
+                        if (!args.isNull(0)) {
+                            state.addDouble(0, args.getDouble(0));
+                            state.addLong(1, 1);
+                        }
+                    }
+
+                    @Override
+                    public void xFinal(AggregateState state, FunctionResult result)
+                            throws SQLException {
+                        long count = state.getLong(1);
+                        if (count == 0) {
+                            result.setNull();
+                        } else {
+                            result.setDouble(state.getDouble(0) / count);
+                        }
+                    }
+                });
+        Function.create(
+                conn,
+                "smedian",
+                1,
+                0,
+                new AggregateFunction() {
+                    @Override
+                    public int slots() {
+                        return 0;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void xStep(AggregateState state, FunctionArgs args)
+                            throws SQLException {
+                        List<Long> values = (List<Long>) state.getObject();
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            state.setObject(values);
+                        }
+                        values.add(args.getLong(0));
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void xFinal(AggregateState state, FunctionResult result)
+                            throws SQLException {
+                        List<Long> values = (List<Long>) state.getObject();
+                        if (values != null) {
+                            Collections.sort(values);
+                            result.setLong(values.get(values.size() / 2));
+                        }
+                    }
+                });
+        Function.create(
+                conn,
+                "ssum",
+                1,
+                0,
+                new WindowFunction() {
+                    @Override
+                    public int slots() {
+                        return 1;
+                    }
+
+                    @Override
+                    public void xStep(AggregateState state, FunctionArgs args)
+                            throws SQLException {
+                        state.addLong(0, args.getLong(0));
+                    }
+
+                    @Override
+                    public void xInverse(AggregateState state, FunctionArgs args)
+                            throws SQLException {
+                        state.addLong(0, -args.getLong(0));
+                    }
+
+                    @Override
+                    public void xValue(AggregateState state, FunctionResult result)
+                            throws SQLException {
+                        result.setLong(state.getLong(0));
+                    }
+
+                    @Override
+                    public void xFinal(AggregateState state, FunctionResult result)
+                            throws SQLException {
+                        result.setLong(state.getLong(0));
+                    }
+                });
+
+        stat.executeUpdate("create table agg(g text, v integer);");
+        stat.executeUpdate(
+                "insert into agg values ('a', 1), ('a', 2), ('a', 9), ('b', 4), ('b', null),"
+                        + " ('c', 5), ('c', 6), ('c', 7), ('c', 100);");
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select g, savg(v), smedian(v), ssum(v) from agg where v is not null"
+                                + " group by g order by g;");
+        assertTrue(rs.next());
+        assertEquals("a", rs.getString(1));
+        assertEquals(4.0, rs.getDouble(2));
+        assertEquals(2, rs.getLong(3));
+        assertEquals(12, rs.getLong(4));
+        assertTrue(rs.next());
+        assertEquals("b", rs.getString(1));
+        assertEquals(4.0, rs.getDouble(2));
+        assertEquals(4, rs.getLong(3));
+        assertTrue(rs.next());
+        assertEquals("c", rs.getString(1));
+        assertEquals(29.5, rs.getDouble(2));
+        assertEquals(7, rs.getLong(3));
+        assertEquals(118, rs.getLong(4));
+        assertTrue(!rs.next());
+        rs.close();
+
+        // a group no row was stepped into has zeroed state
+        rs = stat.executeQuery("select savg(v), smedian(v), ssum(v) from agg where 0;");
+        assertTrue(rs.next());
+        rs.getDouble(1);
+        assertTrue(rs.wasNull());
+        rs.getLong(2);
+        assertTrue(rs.wasNull());
+        assertEquals(0, rs.getLong(3));
+        rs.close();
+
+        // a moving sum over the current and the previous row
+        rs =
+                stat.executeQuery(
+                        "select ssum(v) over"
+                                + " (order by rowid rows between 1 preceding and current row)"
+                                + " from agg where g = 'c';");
+        long[] expected = {5, 11, 13, 107};
+        for (long e : expected) {
+            assertTrue(rs.next());
+            assertEquals(e, rs.getLong(1));
+        }
+        assertTrue(!rs.next());
+        rs.close();
+
+        // errors fail the statement instead of escaping into SQLite
+        Function.create(
+                conn,
+                "sbad",
+                1,
+                0,
+                new AggregateFunction() {
+                    @Override
+                    public int slots() {
+                        return 1;
+                    }
+
+                    @Override
+                    public void xStep(AggregateState state, FunctionArgs args)
+                            throws SQLException {
+                        state.setLong(1, 0);
+                    }
+
+                    @Override
+                    public void xFinal(AggregateState state, FunctionResult result) {}
+                });
+        SQLException e =
+                assertThrows(
+                        SQLException.class, () -> stat.executeQuery("select sbad(v) from agg;"));
+        assertTrue(e.getMessage().contains("slot 1 out bounds"), e.getMessage());
+    }
+
+    @Test
+    public void replacingCallbacks() throws SQLException {
+        for (int i = 0; i < 200; i++) {
+            final int n = i;
+            Function.create(
+                    conn,
+                    i % 2 == 0 ? "f1" : "F1",
+                    new Function() {
+                        @Override
+                        public void xFunc() throws SQLException {
+                            result(n);
+                        }
+                    });
+            ResultSet rs = stat.executeQuery("select f1();");
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            rs.close();
+
+            Collation.create(
+                    conn,
+                    "c1",
+                    new Collation() {
+                        @Override
+                        public int xCompare(String str1, String str2) {
+                            return n % 2 == 0 ? str1.compareTo(str2) : str2.compareTo(str1);
+                        }
+                    });
+            rs = stat.executeQuery("select min(v collate c1) from (select 'a' v union select 'b')");
+            assertTrue(rs.next());
+            assertEquals(i % 2 == 0 ? "a" : "b", rs.getString(1));
+            rs.close();
+
+            SQLiteConnection sqlite = (SQLiteConnection) conn;
+            ProgressHandler.setHandler(
+                    sqlite,
+                    1,
+                    new ProgressHandler() {
+                        @Override
+                        public int progress() {
+                            return 0;
+                        }
+                    });
+            ProgressHandler.clearHandler(sqlite);
+            BusyHandler.setHandler(
+                    sqlite,
+                    new BusyHandler() {
+                        @Override
+                        public int callback(int nbPrevInvok) {
+                            return 0;
+                        }
+                    });
+            BusyHandler.clearHandler(sqlite);
+        }
+
+        Function.destroy(conn, "f1");
+        assertThrows(SQLException.class, () -> stat.executeQuery("select f1();"));
+    }
+
+    @Test
+    public void namesDifferingInNonAsciiCase() throws SQLException {
+        // SQLite folds only ASCII letters, so each of these names is a callback of its own
+        String[] names = {"\u00e9", "\u00c9", "k", "\u212a"};
+        for (int i = 0; i < names.length; i++) {
+            final int n = i;
+            Function.create(
+                    conn,
+                    names[i],
+                    new Function() {
+                        @Override
+                        public void xFunc() throws SQLException {
+                            result(n);
+                        }
+                    });
+            Collation.create(
+                    conn,
+                    names[i],
+                    new Collation() {
+                        @Override
+                        public int xCompare(String str1, String str2) {
+                            return n % 2 == 0 ? str1.compareTo(str2) : str2.compareTo(str1);
+                        }
+                    });
+        }
+        for (int i = 0; i < names.length; i++) {
+            ResultSet rs = stat.executeQuery("select \"" + names[i] + "\"();");
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            rs.close();
+
+            rs =
+                    stat.executeQuery(
+                            "select min(v collate \""
+                                    + names[i]
+                                    + "\") from (select 'a' v union select 'b')");
+            assertTrue(rs.next());
+            assertEquals(i % 2 == 0 ? "a" : "b", rs.getString(1));
+            rs.close();
+        }
+    }
+
     @Test
     public void manyfunctions() throws SQLException {
         Function.create(